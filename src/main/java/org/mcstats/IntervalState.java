@@ -0,0 +1,71 @@
+package org.mcstats;
+
+import org.mcstats.generator.IncrementalAggregation;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The servers and server plugins of one graphing interval, as read by the graph generators.
+ *
+ * When servers only live in memory, {@link MCStats#freezeIntervalData()} swaps in empty state for the next interval and
+ * hands the old state out as an IntervalState, so graphs are generated from it while new requests keep coming in.
+ */
+public class IntervalState {
+
+    /**
+     * The servers in the interval
+     */
+    private final Collection<Server> servers;
+
+    /**
+     * Server plugins mapped by their plugins
+     */
+    private final Map<Plugin, Set<ServerPlugin>> serverPluginsByPlugin;
+
+    /**
+     * Running totals kept during the interval, or null if they are not kept
+     */
+    private final IncrementalAggregation.Totals totals;
+
+    public IntervalState(Collection<Server> servers, Map<Plugin, Set<ServerPlugin>> serverPluginsByPlugin, IncrementalAggregation.Totals totals) {
+        this.servers = servers;
+        this.serverPluginsByPlugin = serverPluginsByPlugin;
+        this.totals = totals;
+    }
+
+    /**
+     * Get the servers in the interval
+     *
+     * @return
+     */
+    public Collection<Server> getServers() {
+        return Collections.unmodifiableCollection(servers);
+    }
+
+    /**
+     * Get the server plugins for a given plugin
+     *
+     * @param plugin
+     * @return
+     */
+    public Set<ServerPlugin> getServerPlugins(Plugin plugin) {
+        Set<ServerPlugin> serverPlugins = serverPluginsByPlugin.get(plugin);
+        return serverPlugins == null ? Collections.emptySet() : Collections.unmodifiableSet(serverPlugins);
+    }
+
+    /**
+     * Get the running totals kept during the interval
+     *
+     * @return the totals, or null if they are not kept
+     */
+    public IncrementalAggregation.Totals getTotals() {
+        return totals;
+    }
+
+}
@@ -3,6 +3,7 @@ package org.mcstats;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
 import com.google.common.collect.Sets;
 import it.sauronsoftware.cron4j.Scheduler;
 import org.apache.log4j.Logger;
@@ -12,24 +13,35 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.mcstats.cron.CronGraphGenerator;
+import org.mcstats.cron.CronGraphRollup;
 import org.mcstats.cron.CronRanking;
 import org.mcstats.db.Database;
 import org.mcstats.db.GraphStore;
+import org.mcstats.db.LocalGraphStore;
 import org.mcstats.db.MongoDBGraphStore;
+import org.mcstats.db.SegmentGraphStore;
 import org.mcstats.db.PluginOnlyMySQLDatabase;
+import org.mcstats.db.ServerSnapshot;
+import org.mcstats.generator.IncrementalAggregation;
 import org.mcstats.handler.BlackholeHandler;
+import org.mcstats.handler.HeavyHitters;
+import org.mcstats.handler.IngestMetrics;
+import org.mcstats.handler.KeepAlivePolicy;
 import org.mcstats.handler.ReportHandler;
+import org.mcstats.handler.RequestMeters;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.PluginVersion;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
-import org.mcstats.util.RequestCalculator;
 import org.mcstats.util.ServerBuildIdentifier;
+import org.mcstats.util.UpdateGate;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -37,10 +49,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class MCStats {
 
@@ -56,11 +69,6 @@ public class MCStats {
      */
     private org.eclipse.jetty.server.Server webServer;
 
-    /**
-     * The amount of requests that have been served
-     */
-    private AtomicLong requests = new AtomicLong(0);
-
     /**
      * MCStats configuration
      */
@@ -87,19 +95,34 @@ public class MCStats {
     private ReportHandler handler;
 
     /**
-     * The server build identifier
+     * Latency of each stage of handling a report
      */
-    private final ServerBuildIdentifier serverBuildIdentifier = new ServerBuildIdentifier();
+    private final IngestMetrics ingestMetrics = new IngestMetrics();
+
+    /**
+     * The plugins, servers and countries sending the most requests
+     */
+    private HeavyHitters heavyHitters;
+
+    /**
+     * Running graph totals updated as requests are applied, or null if they are not kept
+     */
+    private volatile IncrementalAggregation incrementalAggregation;
+
+    /**
+     * Snapshots of the in-memory server state
+     */
+    private final ServerSnapshot serverSnapshot = new ServerSnapshot(this);
 
     /**
-     * The request calculator for requests per second since the server started
+     * The server build identifier
      */
-    private final RequestCalculator requestsAllTime;
+    private final ServerBuildIdentifier serverBuildIdentifier = new ServerBuildIdentifier();
 
     /**
-     * The request calculator for requests per second for the last 5 seconds
+     * Request rates
      */
-    private final RequestCalculator requestsFiveSeconds;
+    private final RequestMeters requestMeters = new RequestMeters();
 
     /**
      * Debug mode
@@ -107,37 +130,52 @@ public class MCStats {
     private boolean debug = false;
 
     /**
-     * A map of all of the currently loaded servers
+     * Loads servers into the server cache
      */
-    private final LoadingCache<String, Server> servers = CacheBuilder.newBuilder()
-            .maximumSize(400000) // 100k
-            .build(new CacheLoader<String, Server>() {
+    private final CacheLoader<String, Server> serverLoader = new CacheLoader<String, Server>() {
 
-                public Server load(String key) {
-                    Server server = database.loadServer(key);
+        public Server load(String key) {
+            Server server = database.loadServer(key);
 
-                    if (server == null) {
-                        server = database.createServer(key);
-                    }
+            if (server == null) {
+                server = database.createServer(key);
+            }
 
-                    if (server == null) {
-                        logger.error("Failed to create server for \"" + key + "\"");
-                        return null;
-                    }
+            if (server == null) {
+                logger.error("Failed to create server for \"" + key + "\"");
+                return null;
+            }
 
-                    // Now load the plugins
-                    for (ServerPlugin serverPlugin : database.loadServerPlugins(server)) {
-                        server.addPlugin(serverPlugin);
-                    }
+            // Now load the plugins
+            for (ServerPlugin serverPlugin : database.loadServerPlugins(server)) {
+                server.addPlugin(serverPlugin);
+            }
 
-                    if (database.isServerBlacklisted(server)) {
-                        server.setBlacklisted(true);
-                    }
+            if (database.isServerBlacklisted(server)) {
+                server.setBlacklisted(true);
+            }
 
-                    return server;
-                }
+            return server;
+        }
 
-            });
+    };
+
+    /**
+     * Takes servers evicted from the server cache out of the running totals, as the scan no longer sees them either.
+     * Frozen caches are not written to, so evictions only come from the current cache and belong to the current totals.
+     */
+    private final RemovalListener<String, Server> serverRemovalListener = notification -> {
+        IncrementalAggregation aggregation = incrementalAggregation;
+
+        if (aggregation != null && notification.wasEvicted()) {
+            aggregation.evict(notification.getKey());
+        }
+    };
+
+    /**
+     * A map of all of the currently loaded servers. Swapped for an empty cache when the interval is frozen.
+     */
+    private volatile LoadingCache<String, Server> servers = createServerCache();
 
     /**
      * A map of all of the currently loaded pluginsByName, by the plugin's name
@@ -155,27 +193,62 @@ public class MCStats {
     private final Map<String, String> countries = new ConcurrentHashMap<>();
 
     /**
-     * Cache of server plugins mapped by their plugins
+     * Cache of server plugins mapped by their plugins. Swapped for an empty map when the interval is frozen.
      */
-    private final Map<Plugin, Set<ServerPlugin>> serverPluginsByPlugin = new ConcurrentHashMap<>();
+    private volatile Map<Plugin, Set<ServerPlugin>> serverPluginsByPlugin = new ConcurrentHashMap<>();
 
-    private MCStats() {
-        Callable<Long> requestsCallable = requests::get;
+    /**
+     * Entered while a request is applied and closed while the interval is swapped, so a request is applied either
+     * entirely to the frozen interval or entirely to the next one
+     */
+    private final UpdateGate intervalGate = new UpdateGate();
 
-        requestsAllTime = new RequestCalculator(RequestCalculator.CalculationMethod.ALL_TIME, requestsCallable);
-        requestsFiveSeconds = new RequestCalculator(RequestCalculator.CalculationMethod.FIVE_SECONDS, requestsCallable);
+    MCStats() {
     }
 
     /**
-     * Reset data used for each interval
+     * Hand the interval's servers and server plugins over to graph generation and start the next interval with empty
+     * state, so requests keep being accepted while graphs are generated. Requests already being applied are finished
+     * first, and no request touches the frozen state afterwards.
+     *
+     * If servers are persisted in the database nothing is swapped and the live state is returned.
+     *
+     * @return the frozen interval
      */
-    public void resetIntervalData() {
-        if (database instanceof PluginOnlyMySQLDatabase) {
+    public IntervalState freezeIntervalData() {
+        ingestMetrics.reset();
+        heavyHitters.reset();
+
+        IncrementalAggregation aggregation = incrementalAggregation;
+
+        if (!(database instanceof PluginOnlyMySQLDatabase)) {
+            return new IntervalState(getCachedServers(), serverPluginsByPlugin, aggregation == null ? null : aggregation.getTotals());
+        }
+
+        LoadingCache<String, Server> frozenServers;
+        Map<Plugin, Set<ServerPlugin>> frozenServerPlugins;
+        IncrementalAggregation.Totals frozenTotals;
+
+        intervalGate.close();
+
+        try {
+            // reset the database first so the new cache does not load the frozen servers back out of it
             ((PluginOnlyMySQLDatabase) database).resetIntervalData();
-            servers.invalidateAll();
-            resetInternalCaches();
-            serverPluginsByPlugin.clear();
+
+            frozenServers = servers;
+            frozenServerPlugins = serverPluginsByPlugin;
+
+            servers = createServerCache();
+            serverPluginsByPlugin = new ConcurrentHashMap<>();
+            frozenTotals = aggregation == null ? null : aggregation.freeze();
+        } finally {
+            intervalGate.open();
         }
+
+        // queued requests belong to the new interval, so only the pending database writes are dropped
+        databaseQueue.clear();
+
+        return new IntervalState(new ArrayList<>(frozenServers.asMap().values()), frozenServerPlugins, frozenTotals);
     }
 
     /**
@@ -196,43 +269,88 @@ public class MCStats {
     }
 
     /**
-     * Reset any internal caches
+     * Reset any internal caches. Requests waiting on the applier shards were already accepted, so they are left to be
+     * applied.
      */
     public void resetInternalCaches() {
         databaseQueue.clear();
-        handler.clearQueue();
+    }
+
+    /**
+     * Create an empty server cache
+     *
+     * @return
+     */
+    private LoadingCache<String, Server> createServerCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(400000) // 100k
+                .removalListener(serverRemovalListener)
+                .build(serverLoader);
     }
 
     /**
      * Starts the MCStats backend
      */
     public void start() {
-        config = new Properties();
+        if (!init()) {
+            return;
+        }
+
+        // Servers only live in memory, so pick up the last snapshot before any requests come in
+        if (database instanceof PluginOnlyMySQLDatabase) {
+            startSnapshots();
+        }
+
+        // Create & open the webserver
+        createWebServer();
+    }
+
+    /**
+     * Loads the config, connects to the databases and loads all plugins and graphs. This is everything
+     * {@link #start()} does except opening the web server, so it can also be used by offline tools.
+     *
+     * @return true if the backend was initialized
+     */
+    public boolean init() {
+        Properties config = new Properties();
 
         try {
             config.load(new FileInputStream("mcstats.properties"));
         } catch (IOException e) {
             e.printStackTrace();
-            return;
+            return false;
         }
 
+        init(config, null);
+        return true;
+    }
+
+    /**
+     * Initializes with the given config and loads all plugins and graphs out of the given database
+     *
+     * @param config
+     * @param database the database to use, or null to connect to the MySQL database in the config
+     */
+    public void init(Properties config, Database database) {
+        this.config = config;
         debug = config.getProperty("debug").equalsIgnoreCase("true");
 
         logger.info("Starting MCStats");
         logger.info("Debug mode is " + (debug ? "ON" : "OFF"));
 
         databaseQueue = new DatabaseQueue(this);
+        heavyHitters = new HeavyHitters(this);
 
         // Connect to the database
-        connectToDatabase();
+        this.database = database == null ? connectToDatabase() : database;
 
-        countries.putAll(database.loadCountries());
+        countries.putAll(this.database.loadCountries());
         logger.info("Loaded " + countries.size() + " countries");
 
-        graphStore = new MongoDBGraphStore(this);
+        graphStore = createGraphStore();
 
         // Load all of the pluginsByName
-        for (Plugin plugin : database.loadPlugins()) {
+        for (Plugin plugin : this.database.loadPlugins()) {
             if (plugin.getId() >= 0) {
                 addPlugin(plugin);
                 serverPluginsByPlugin.put(plugin, Sets.newSetFromMap(new ConcurrentHashMap<>()));
@@ -243,16 +361,13 @@ public class MCStats {
 
         int numGraphs = 0;
         for (Plugin plugin : pluginsByName.values()) {
-            for (Graph graph : database.loadGraphs(plugin)) {
+            for (Graph graph : this.database.loadGraphs(plugin)) {
                 plugin.addGraph(graph);
                 numGraphs ++;
             }
         }
 
         logger.info("Loaded " + numGraphs + " graphs");
-
-        // Create & open the webserver
-        createWebServer();
     }
 
     /**
@@ -321,23 +436,8 @@ public class MCStats {
             return;
         }
 
-        Set<ServerPlugin> serverPlugins = serverPluginsByPlugin.get(serverPlugin.getPlugin());
-
-        if (serverPlugins == null) {
-            serverPlugins = Sets.newSetFromMap(new ConcurrentHashMap<>());
-            serverPluginsByPlugin.put(serverPlugin.getPlugin(), serverPlugins);
-        }
-
-        serverPlugins.add(serverPlugin);
-    }
-
-    /**
-     * Increment and return the amount of requests server on the server
-     *
-     * @return
-     */
-    public long incrementAndGetRequests() {
-        return requests.incrementAndGet();
+        serverPluginsByPlugin.computeIfAbsent(serverPlugin.getPlugin(), plugin -> Sets.newSetFromMap(new ConcurrentHashMap<>()))
+                .add(serverPlugin);
     }
 
     /**
@@ -385,19 +485,28 @@ public class MCStats {
             return graph;
         }
 
-        graph = database.loadGraph(plugin, name);
+        // graphs are generated on several threads, so make sure only one of them creates the graph
+        synchronized (plugin) {
+            graph = plugin.getGraph(name);
 
-        if (graph == null) {
-            graph = database.createGraph(plugin, name);
-        }
+            if (graph != null) {
+                return graph;
+            }
 
-        if (graph == null) {
-            logger.error("Failed to create graph for " + plugin.getName() + ", \"" + name + "\"");
-            return null;
-        }
+            graph = database.loadGraph(plugin, name);
 
-        plugin.addGraph(graph);
-        return graph;
+            if (graph == null) {
+                graph = database.createGraph(plugin, name);
+            }
+
+            if (graph == null) {
+                logger.error("Failed to create graph for " + plugin.getName() + ", \"" + name + "\"");
+                return null;
+            }
+
+            plugin.addGraph(graph);
+            return graph;
+        }
     }
 
     /**
@@ -543,6 +652,15 @@ public class MCStats {
         }
     }
 
+    /**
+     * Put a server into the server cache
+     *
+     * @param server
+     */
+    public void cacheServer(Server server) {
+        servers.put(server.getGUID(), server);
+    }
+
     /**
      * Get the number of currently open connections
      *
@@ -593,7 +711,7 @@ public class MCStats {
         webServer.addConnector(connector);
 
         org.eclipse.jetty.server.Server blackholeServer = new org.eclipse.jetty.server.Server();
-        blackholeServer.setHandler(new BlackholeHandler());
+        blackholeServer.setHandler(new BlackholeHandler(new KeepAlivePolicy(this)));
         ServerConnector connector2 = new ServerConnector(blackholeServer, 1, 1);
         connector2.setHost(listenHost);
         connector2.setPort(blackholePort);
@@ -604,6 +722,17 @@ public class MCStats {
             Scheduler scheduler = new Scheduler();
             scheduler.schedule("*/30 * * * *", new CronGraphGenerator(this));
             scheduler.schedule("45 * * * *", new CronRanking(this));
+
+            if (Boolean.parseBoolean(config.getProperty("graphs.rollup", "false"))) {
+                MongoDBGraphStore mongo = findMongoGraphStore();
+
+                if (mongo != null) {
+                    scheduler.schedule("15 * * * *", new CronGraphRollup(this, mongo));
+                } else {
+                    logger.warn("Graph data is only rolled up in MongoDB, not rolling up");
+                }
+            }
+
             scheduler.start();
             logger.info("Graph & rank generator is active");
         } else {
@@ -633,13 +762,161 @@ public class MCStats {
 
     /**
      * Connect to the database
+     *
+     * @return the connected database
      */
-    private void connectToDatabase() {
+    Database connectToDatabase() {
         // Create the database
-        database = new PluginOnlyMySQLDatabase(this, config.getProperty("mysql.hostname"), config.getProperty("mysql.database"),
+        Database database = new PluginOnlyMySQLDatabase(this, config.getProperty("mysql.hostname"), config.getProperty("mysql.database"),
                 config.getProperty("mysql.username"), config.getProperty("mysql.password"));
 
         logger.info("Connected to MySQL");
+        return database;
+    }
+
+    /**
+     * Restore the last server snapshot and start writing new ones every snapshot.interval seconds
+     */
+    private void startSnapshots() {
+        Path path = Paths.get(config.getProperty("snapshot.path", "snapshot/servers.snap"));
+        int interval = Integer.parseInt(config.getProperty("snapshot.interval", "300"));
+        int maxAge = Integer.parseInt(config.getProperty("snapshot.maxAge", "1800"));
+
+        if (interval <= 0) {
+            logger.info("Server snapshots are disabled");
+            return;
+        }
+
+        try {
+            serverSnapshot.restore(path, maxAge);
+        } catch (Exception e) {
+            logger.error("Failed to restore server snapshot " + path, e);
+        }
+
+        Runnable writeSnapshot = () -> {
+            try {
+                serverSnapshot.write(path, getCachedServers());
+            } catch (Exception e) {
+                logger.error("Failed to write server snapshot " + path, e);
+            }
+        };
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Server Snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(writeSnapshot, interval, interval, TimeUnit.SECONDS);
+
+        // a clean shutdown leaves a snapshot that is only seconds old
+        Runtime.getRuntime().addShutdownHook(new Thread(writeSnapshot, "Server Snapshot Shutdown"));
+    }
+
+    /**
+     * Create the graph store set by graphs.store
+     *
+     * @return
+     */
+    private GraphStore createGraphStore() {
+        String store = config.getProperty("graphs.store", "mongo");
+
+        if (store.equalsIgnoreCase("local")) {
+            logger.info("Storing graph data in memory");
+            return new LocalGraphStore();
+        }
+
+        if (store.equalsIgnoreCase("segments")) {
+            Path path = Paths.get(config.getProperty("graphs.segments.path", "graphs"));
+            boolean forward = config.getProperty("graphs.segments.forward", "false").equalsIgnoreCase("true");
+
+            try {
+                GraphStore segments = new SegmentGraphStore(path, forward ? new MongoDBGraphStore(this) : null);
+                logger.info("Storing graph data in segments in " + path + (forward ? " and in MongoDB" : ""));
+                return segments;
+            } catch (IOException e) {
+                logger.error("Failed to open graph segments in " + path + ", storing graph data in memory", e);
+                return new LocalGraphStore();
+            }
+        }
+
+        return new MongoDBGraphStore(this);
+    }
+
+    /**
+     * Find the MongoDB store graph data ends up in
+     *
+     * @return the store, or null if graph data is not stored in MongoDB
+     */
+    private MongoDBGraphStore findMongoGraphStore() {
+        GraphStore store = graphStore;
+
+        if (store instanceof SegmentGraphStore) {
+            store = ((SegmentGraphStore) store).getNext();
+        }
+
+        return store instanceof MongoDBGraphStore ? (MongoDBGraphStore) store : null;
+    }
+
+    /**
+     * Get the latency of each stage of handling a report
+     *
+     * @return
+     */
+    public IngestMetrics getIngestMetrics() {
+        return ingestMetrics;
+    }
+
+    /**
+     * Get the plugins, servers and countries sending the most requests
+     *
+     * @return
+     */
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    /**
+     * Get the running graph totals updated as requests are applied
+     *
+     * @return the aggregation, or null if totals are not kept
+     */
+    public IncrementalAggregation getIncrementalAggregation() {
+        return incrementalAggregation;
+    }
+
+    /**
+     * Start keeping running graph totals as requests are applied. Servers already in memory are added right away.
+     *
+     * @param incrementalAggregation
+     */
+    public void setIncrementalAggregation(IncrementalAggregation incrementalAggregation) {
+        intervalGate.close();
+
+        try {
+            this.incrementalAggregation = incrementalAggregation;
+            incrementalAggregation.seed(getCachedServers());
+        } finally {
+            intervalGate.open();
+        }
+    }
+
+    /**
+     * Get the gate entered while a request is applied to the interval's state
+     *
+     * @return
+     */
+    public UpdateGate getIntervalGate() {
+        return intervalGate;
+    }
+
+    /**
+     * Get the server snapshots
+     *
+     * @return
+     */
+    public ServerSnapshot getServerSnapshot() {
+        return serverSnapshot;
     }
 
     /**
@@ -670,21 +947,12 @@ public class MCStats {
     }
 
     /**
-     * Get the request calculator for all-time requests
-     *
-     * @return
-     */
-    public RequestCalculator getRequestCalculatorAllTime() {
-        return requestsAllTime;
-    }
-
-    /**
-     * Get the request calculator for requests in the last 5 seconds
+     * Get the request rate meters
      *
      * @return
      */
-    public RequestCalculator getRequestCalculatorFiveSeconds() {
-        return requestsFiveSeconds;
+    public RequestMeters getRequestMeters() {
+        return requestMeters;
     }
 
     /**
@@ -0,0 +1,379 @@
+package org.mcstats.cache;
+
+import java.util.Arrays;
+
+/**
+ * Remembers when a server last sent data for a plugin, keyed by a 128-bit hash of the server GUID and the plugin id.
+ *
+ * Entries live in one bucket per interval. Only the newest buckets are kept, and a bucket is emptied when it is
+ * reused for a new interval, so memory is bounded without dropping anything sent in the current interval. Each
+ * bucket is an open addressing table of primitive arrays split into segments that are locked independently.
+ */
+public class LastSendCache {
+
+    /**
+     * Amount of independently locked segments, must be a power of two
+     */
+    private static final int SEGMENTS = 64;
+
+    /**
+     * Initial slots per segment bucket, must be a power of two
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Length of an interval, in seconds
+     */
+    private final int intervalLength;
+
+    /**
+     * Amount of intervals that are kept
+     */
+    private final int intervalsKept;
+
+    /**
+     * The maximum amount of entries a segment bucket can hold
+     */
+    private final int maxSegmentEntries;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param intervalLength length of an interval, in seconds
+     * @param intervalsKept amount of intervals that are kept, including the current one
+     * @param maxEntries the maximum amount of entries per interval
+     */
+    public LastSendCache(int intervalLength, int intervalsKept, int maxEntries) {
+        this.intervalLength = intervalLength;
+        this.intervalsKept = intervalsKept;
+        maxSegmentEntries = Math.max(1, maxEntries / SEGMENTS);
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Store the time a server sent data for a plugin and return the previous time it did
+     *
+     * @param serverId
+     * @param pluginId
+     * @param now the current time, in seconds
+     * @return the previous time in seconds or 0 if it is not known
+     */
+    public int getAndSet(String serverId, int pluginId, int now) {
+        long high = hash(serverId, 0x9E3779B97F4A7C15L);
+        long low = hash(serverId, 0xC2B2AE3D27D4EB4FL);
+        int slotHash = mix(high ^ low, pluginId);
+
+        Segment segment = segments[slotHash & (SEGMENTS - 1)];
+
+        synchronized (segment) {
+            return segment.getAndSet(high, low, pluginId, slotHash >>> 6, now);
+        }
+    }
+
+    /**
+     * Get the amount of lookups that found a previous time
+     *
+     * @return
+     */
+    public long getHits() {
+        long hits = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Get the amount of lookups
+     *
+     * @return
+     */
+    public long getLookups() {
+        long lookups = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                lookups += segment.lookups;
+            }
+        }
+
+        return lookups;
+    }
+
+    /**
+     * Get the ratio of lookups that found a previous time
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long lookups = getLookups();
+        return lookups == 0 ? 0 : getHits() / (double) lookups;
+    }
+
+    /**
+     * Get the amount of entries that could not be stored because their bucket was full
+     *
+     * @return
+     */
+    public long getRejected() {
+        long rejected = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                rejected += segment.rejected;
+            }
+        }
+
+        return rejected;
+    }
+
+    /**
+     * Get the amount of entries in all kept buckets
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Bucket bucket : segment.buckets) {
+                    size += bucket.size;
+                }
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Get the ratio of used slots to allocated slots across all kept buckets
+     *
+     * @return
+     */
+    public double getOccupancy() {
+        long used = 0;
+        long capacity = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Bucket bucket : segment.buckets) {
+                    used += bucket.size;
+                    capacity += bucket.times.length;
+                }
+            }
+        }
+
+        return capacity == 0 ? 0 : used / (double) capacity;
+    }
+
+    /**
+     * 64-bit hash of a string
+     *
+     * @param value
+     * @param seed
+     * @return
+     */
+    private static long hash(String value, long seed) {
+        long hash = seed;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+            hash ^= hash >>> 29;
+        }
+
+        // final avalanche so similar GUIDs end up far apart
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Combine the server hash and plugin id into the hash used to pick a segment and slot
+     *
+     * @param hash
+     * @param pluginId
+     * @return
+     */
+    private static int mix(long hash, int pluginId) {
+        hash ^= pluginId * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        hash *= 0xD6E8FEB86659FD93L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private class Segment {
+
+        /**
+         * One bucket per kept interval, indexed by interval % intervalsKept
+         */
+        private final Bucket[] buckets = new Bucket[intervalsKept];
+
+        private long lookups;
+        private long hits;
+        private long rejected;
+
+        public Segment() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        public int getAndSet(long high, long low, int pluginId, int slotHash, int now) {
+            int interval = now / intervalLength;
+            Bucket current = buckets[interval % intervalsKept];
+
+            if (current.interval != interval) {
+                current.reset(interval);
+            }
+
+            lookups++;
+
+            int slot = current.find(high, low, pluginId, slotHash);
+            int previous = 0;
+
+            if (slot >= 0) {
+                previous = current.times[slot];
+                current.times[slot] = now;
+            } else {
+                // look through older intervals, newest first
+                for (int i = 1; i < intervalsKept && previous == 0; i++) {
+                    Bucket older = buckets[(interval - i) % intervalsKept];
+
+                    if (older.interval == interval - i) {
+                        int olderSlot = older.find(high, low, pluginId, slotHash);
+
+                        if (olderSlot >= 0) {
+                            previous = older.times[olderSlot];
+                        }
+                    }
+                }
+
+                if (!current.insert(~slot, high, low, pluginId, slotHash, now)) {
+                    rejected++;
+                }
+            }
+
+            if (previous != 0) {
+                hits++;
+            }
+
+            return previous;
+        }
+
+    }
+
+    private class Bucket {
+
+        /**
+         * The interval this bucket holds, or -1 if it has not been used yet
+         */
+        private int interval = -1;
+
+        private long[] highs = new long[INITIAL_CAPACITY];
+        private long[] lows = new long[INITIAL_CAPACITY];
+        private int[] plugins = new int[INITIAL_CAPACITY];
+
+        /**
+         * The stored time of each slot; 0 means the slot is empty
+         */
+        private int[] times = new int[INITIAL_CAPACITY];
+
+        private int size;
+
+        /**
+         * Empty the bucket for a new interval. The arrays are kept so they do not have to grow again.
+         *
+         * @param interval
+         */
+        public void reset(int interval) {
+            this.interval = interval;
+
+            if (size > 0) {
+                Arrays.fill(times, 0);
+                size = 0;
+            }
+        }
+
+        /**
+         * Find the slot of a key
+         *
+         * @return the slot, or the bitwise complement of the empty slot it would go in
+         */
+        public int find(long high, long low, int pluginId, int slotHash) {
+            int mask = times.length - 1;
+            int slot = slotHash & mask;
+
+            while (times[slot] != 0) {
+                if (highs[slot] == high && lows[slot] == low && plugins[slot] == pluginId) {
+                    return slot;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return ~slot;
+        }
+
+        /**
+         * Insert a key that is not in the bucket
+         *
+         * @param slot the empty slot returned by {@link #find(long, long, int, int)}
+         * @return false if the bucket is full
+         */
+        public boolean insert(int slot, long high, long low, int pluginId, int slotHash, int now) {
+            if (size >= maxSegmentEntries) {
+                return false;
+            }
+
+            // keep the load under 3/4
+            if ((size + 1) * 4 > times.length * 3) {
+                grow();
+                slot = ~find(high, low, pluginId, slotHash);
+            }
+
+            highs[slot] = high;
+            lows[slot] = low;
+            plugins[slot] = pluginId;
+            times[slot] = now;
+            size++;
+            return true;
+        }
+
+        /**
+         * Double the capacity and rehash every entry
+         */
+        private void grow() {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            int[] oldPlugins = plugins;
+            int[] oldTimes = times;
+
+            int capacity = oldTimes.length * 2;
+            highs = new long[capacity];
+            lows = new long[capacity];
+            plugins = new int[capacity];
+            times = new int[capacity];
+
+            for (int i = 0; i < oldTimes.length; i++) {
+                if (oldTimes[i] != 0) {
+                    int slot = ~find(oldHighs[i], oldLows[i], oldPlugins[i], mix(oldHighs[i] ^ oldLows[i], oldPlugins[i]) >>> 6);
+                    highs[slot] = oldHighs[i];
+                    lows[slot] = oldLows[i];
+                    plugins[slot] = oldPlugins[i];
+                    times[slot] = oldTimes[i];
+                }
+            }
+        }
+
+    }
+
+}
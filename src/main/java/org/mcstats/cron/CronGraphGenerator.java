@@ -1,11 +1,14 @@
 package org.mcstats.cron;
 
+import org.mcstats.IntervalState;
 import org.mcstats.MCStats;
 import org.mcstats.db.GraphStore;
-import org.mcstats.db.MongoDBGraphStore;
+import org.mcstats.db.WriteBehindGraphStore;
+import org.mcstats.generator.ColumnTable;
 import org.mcstats.generator.DecoderAggregator;
-import org.mcstats.generator.GeneratedData;
+import org.mcstats.generator.FusedAggregator;
 import org.mcstats.generator.GraphGenerator;
+import org.mcstats.generator.IncrementalAggregation;
 import org.mcstats.generator.IncrementAggregator;
 import org.mcstats.generator.MergeAggregator;
 import org.mcstats.generator.ReflectionAggregator;
@@ -17,17 +20,16 @@ import org.mcstats.generator.aggregator.RevisionAggregator;
 import org.mcstats.generator.aggregator.VersionChangesAggregator;
 import org.mcstats.generator.aggregator.VersionDemographicsAggregator;
 import org.mcstats.handler.ReportHandler;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.ServerPlugin;
-import org.mcstats.util.Tuple;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class CronGraphGenerator implements Runnable {
@@ -41,6 +43,26 @@ public class CronGraphGenerator implements Runnable {
      */
     private List<GraphGenerator> generators = new LinkedList<>();
 
+    /**
+     * The pool graphs are aggregated on, or null to aggregate on the cron thread
+     */
+    private ForkJoinPool pool = null;
+
+    /**
+     * Running totals of the generators that support it, or null if they are not kept
+     */
+    private IncrementalAggregation incremental = null;
+
+    /**
+     * True to scan and compare the scanned data against the running totals, false to use the running totals
+     */
+    private boolean verifyIncremental = false;
+
+    /**
+     * Stores graphs in the background while the next ones are generated, or null to store them on the cron thread
+     */
+    private WriteBehindGraphStore writeBehind = null;
+
     public CronGraphGenerator(MCStats mcstats) {
         this.mcstats = mcstats;
 
@@ -84,8 +106,8 @@ public class CronGraphGenerator implements Runnable {
 
         generators.add(new RankAggregator());
 
-        generators.add(new DecoderAggregator<Integer>("online_mode", "Auth Mode", value -> {
-            switch (value) {
+        generators.add(new DecoderAggregator("online_mode", "Auth Mode", value -> {
+            switch ((int) value) {
                 case 1:
                     return "Online";
                 case 0:
@@ -94,6 +116,35 @@ public class CronGraphGenerator implements Runnable {
                     return "Unknown";
             }
         }));
+
+        int parallelism = Integer.parseInt(mcstats.getConfig().getProperty("graphs.parallelism", "0"));
+
+        if (parallelism <= 0) {
+            // leave most cores to jetty and the request appliers, which keep running while graphs are generated
+            parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        }
+
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+            logger.info("Aggregating graphs on " + parallelism + " threads");
+        }
+
+        String incrementalMode = mcstats.getConfig().getProperty("graphs.incremental", "off");
+
+        if (!incrementalMode.equalsIgnoreCase("off")) {
+            verifyIncremental = incrementalMode.equalsIgnoreCase("verify");
+            incremental = new IncrementalAggregation(mcstats, generators);
+            mcstats.setIncrementalAggregation(incremental);
+            logger.info("Keeping running graph totals (" + (verifyIncremental ? "verifying" : "in use") + ")");
+        }
+
+        int writers = Integer.parseInt(mcstats.getConfig().getProperty("graphs.writers", "2"));
+
+        if (writers > 0) {
+            int queueSize = Integer.parseInt(mcstats.getConfig().getProperty("graphs.writeQueue", "4096"));
+            writeBehind = new WriteBehindGraphStore(mcstats.getGraphStore(), writers, queueSize);
+            logger.info("Storing graphs on " + writers + " threads, up to " + queueSize + " graphs behind");
+        }
     }
 
     /**
@@ -102,8 +153,6 @@ public class CronGraphGenerator implements Runnable {
     public void run() {
         try {
             logger.info("Beginning graph generation");
-            GraphStore store = mcstats.getGraphStore();
-            ReportHandler.SOFT_IGNORE_REQUESTS = true;
 
             if (mcstats.countRecentServers() < 50000) {
                 logger.info("Not enough data. Auto correcting internal caches.");
@@ -111,79 +160,135 @@ public class CronGraphGenerator implements Runnable {
                 return;
             }
 
-            long start = System.currentTimeMillis();
+            // requests are no longer ignored while generating, they go into the next interval
+            long requestsBefore = mcstats.getRequestMeters().getTotal().getCount();
+            generate(ReportHandler.normalizeTime());
+            logger.info("Accepted " + (mcstats.getRequestMeters().getTotal().getCount() - requestsBefore) + " requests during graph generation");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            for (GraphGenerator generator : generators) {
-                logger.info("Generating graph for: " + generator);
+    /**
+     * Freeze the interval data, then generate and store every graph for the given epoch from it
+     *
+     * @param epoch
+     */
+    public void generate(int epoch) {
+        GraphStore store = writeBehind != null ? writeBehind : mcstats.getGraphStore();
+        long blockedBefore = writeBehind != null ? writeBehind.getBlockedTime() : 0;
+        long start = System.currentTimeMillis();
 
-                Map<Column, GeneratedData> data = generator.generate(mcstats);
+        IntervalState interval = mcstats.freezeIntervalData();
+        IncrementalAggregation.Totals totals = incremental == null ? null : interval.getTotals();
 
-                int epoch = ReportHandler.normalizeTime();
+        if (totals != null) {
+            totals.expire();
+            logger.info("Running totals cover " + totals.countServers() + " servers and " + totals.countServerPlugins() + " server plugins");
+        }
 
-                logger.info("Storing " + data.size() + " columns of data");
+        // everything not read from the running totals is generated in one pass over the servers
+        List<GraphGenerator> scanned = new ArrayList<>();
 
-                Map<Graph, List<Tuple<Column, GeneratedData>>> grouped = new HashMap<>();
+        for (GraphGenerator generator : generators) {
+            if (totals == null || verifyIncremental || !incremental.supports(generator)) {
+                scanned.add(generator);
+            } else if (!incremental.isComplete(generator, totals)) {
+                // scanning creates the missing columns, so the next interval's totals have them
+                logger.info("Running totals are missing new columns for " + generator + ", scanning it");
+                scanned.add(generator);
+            }
+        }
 
-                // group together the data for each graph
-                for (Map.Entry<Column, GeneratedData> entry : data.entrySet()) {
-                    Column column = entry.getKey();
-                    GeneratedData columnData = entry.getValue();
+        FusedAggregator fused = new FusedAggregator(scanned, pool);
+        long passStart = System.nanoTime();
+        fused.aggregate(mcstats, interval);
+        logger.info("Scanned " + fused.getVisited() + " servers and server plugins in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - passStart) + "ms");
+
+        for (GraphGenerator generator : generators) {
+            ColumnTable data;
+            long generatorStart = System.nanoTime();
+            long time;
+
+            if (!scanned.contains(generator)) {
+                data = incremental.generate(generator, totals);
+                time = System.nanoTime() - generatorStart;
+            } else if (fused.supports(generator)) {
+                data = fused.get(generator);
+                time = fused.getTime(generator);
+
+                if (totals != null && incremental.supports(generator) && incremental.isComplete(generator, totals)) {
+                    verify(generator, data, incremental.generate(generator, totals));
+                }
+            } else {
+                data = generator.generate(mcstats, interval);
+                time = System.nanoTime() - generatorStart;
+            }
+
+            logger.info("Generated " + generator + " in " + TimeUnit.NANOSECONDS.toMillis(time) + "ms, storing " + data.size() + " columns of data");
 
-                    if (column == null || columnData == null) {
-                        continue;
-                    }
+            // the columns of each graph are stored together, straight out of the table, which is left alone afterwards
+            // because the store may still be reading it until the generation is finished
+            for (Map.Entry<Graph, int[]> entry : data.slotsByGraph().entrySet()) {
+                store.batchInsert(entry.getKey(), data, entry.getValue(), epoch);
+            }
 
-                    List<Tuple<Column, GeneratedData>> listdata = grouped.get(column.getGraph());
+            // logger.info("Aggregated: " + data);
+        }
 
-                    if (listdata == null) {
-                        listdata = new ArrayList<>();
-                        grouped.put(column.getGraph(), listdata);
-                    }
+        logger.info("Beginning final stage of graph generation");
 
-                    listdata.add(new Tuple<>(column, columnData));
-                }
+        for (Plugin plugin : mcstats.getCachedPlugins()) {
+            int numServers30 = 0;
 
-                for (Map.Entry<Graph, List<Tuple<Column, GeneratedData>>> entry : grouped.entrySet()) {
-                    List<Tuple<Column, GeneratedData>> listdata = entry.getValue();
-                    store.batchInsert(entry.getKey(), listdata, epoch);
+            for (ServerPlugin serverPlugin : interval.getServerPlugins(plugin)) {
+                if (serverPlugin.recentlyUpdated()) {
+                    serverPlugin.getServer().setViolationCount(0);
+                    // serverPlugin.getServer().save();
+                    // serverPlugin.save();
+                    numServers30 ++;
                 }
+            }
 
-                grouped.clear();
-                data.clear();
+            plugin.setServerCount30(numServers30);
+            plugin.saveNow();
+        }
 
-                // logger.info("Aggregated: " + data);
-            }
+        long finishStart = System.currentTimeMillis();
+        store.finishGeneration(epoch);
 
-            logger.info("Beginning final stage of graph generation");
+        if (writeBehind != null) {
+            logger.info("Waited " + TimeUnit.NANOSECONDS.toMillis(writeBehind.getBlockedTime() - blockedBefore) + "ms for room to queue graphs and "
+                    + (System.currentTimeMillis() - finishStart) + "ms for the store to finish");
+        }
 
-            for (Plugin plugin : mcstats.getCachedPlugins()) {
-                int numServers30 = 0;
+        System.gc();
+        System.runFinalization();
+        System.gc();
 
-                for (ServerPlugin serverPlugin : mcstats.getServerPlugins(plugin)) {
-                    if (serverPlugin.recentlyUpdated()) {
-                        serverPlugin.getServer().setViolationCount(0);
-                        // serverPlugin.getServer().save();
-                        // serverPlugin.save();
-                        numServers30 ++;
-                    }
-                }
+        logger.info("Finished graph generation in " + (System.currentTimeMillis() - start) + "ms");
+    }
 
-                plugin.setServerCount30(numServers30);
-                plugin.saveNow();
-            }
+    /**
+     * Log where the running totals differ from the scanned data
+     *
+     * @param generator
+     * @param scanned
+     * @param incremental
+     */
+    private void verify(GraphGenerator generator, ColumnTable scanned, ColumnTable incremental) {
+        List<String> mismatches = IncrementalAggregation.diff(scanned, incremental);
 
-            ((MongoDBGraphStore) store).finishGeneration();
-            mcstats.resetIntervalData();
+        if (mismatches.isEmpty()) {
+            logger.info("Running totals match for " + scanned.size() + " columns");
+            return;
+        }
 
-            System.gc();
-            System.runFinalization();
-            System.gc();
+        logger.warning("Running totals differ in " + mismatches.size() + " of " + scanned.size() + " columns for " + generator);
 
-            logger.info("Finished graph generation in " + (System.currentTimeMillis() - start) + "ms");
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            ReportHandler.SOFT_IGNORE_REQUESTS = false;
+        for (String mismatch : mismatches.subList(0, Math.min(10, mismatches.size()))) {
+            logger.warning("  " + mismatch);
         }
     }
+
 }
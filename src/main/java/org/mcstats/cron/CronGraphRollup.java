@@ -0,0 +1,55 @@
+package org.mcstats.cron;
+
+import org.mcstats.MCStats;
+import org.mcstats.db.GraphRollup;
+import org.mcstats.db.MongoDBGraphStore;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+public class CronGraphRollup implements Runnable {
+
+    private Logger logger = Logger.getLogger(getClass().getSimpleName());
+
+    private GraphRollup rollup;
+
+    /**
+     * True while a run is in progress, so catching up on a lot of data does not overlap with the next run
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public CronGraphRollup(MCStats mcstats, MongoDBGraphStore store) {
+        Map<GraphRollup.Resolution, Integer> retention = new EnumMap<>(GraphRollup.Resolution.class);
+
+        for (GraphRollup.Resolution resolution : GraphRollup.Resolution.values()) {
+            retention.put(resolution, Integer.parseInt(mcstats.getConfig().getProperty("graphs.rollup.retention." + resolution.getKey(), "0")));
+        }
+
+        int bulkSize = Integer.parseInt(mcstats.getConfig().getProperty("mongo.bulkSize", "1000"));
+        int retries = Integer.parseInt(mcstats.getConfig().getProperty("mongo.retries", "3"));
+
+        rollup = new GraphRollup(store.getDatabase(), store.getCollection(), store.getStatisticCollection(), store.getWriteConcern(), bulkSize, retries, retention);
+        logger.info("Rolling up graph data, keeping " + retention + " days");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Still rolling up graph data from the last run");
+            return;
+        }
+
+        try {
+            rollup.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            running.set(false);
+        }
+    }
+
+}
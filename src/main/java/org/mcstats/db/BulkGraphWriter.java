@@ -0,0 +1,438 @@
+package org.mcstats.db;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import org.mcstats.util.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Writes the graph documents of an epoch as unordered bulk inserts of a fixed amount of documents each, on several
+ * threads so the bulks go over separate connections. A bulk is sent as soon as it is full, so documents are written
+ * while the rest of the epoch is still being generated; flushing sends the last bulk and waits for all of them.
+ *
+ * A bulk that fails is retried, resending only the documents that were not written. The driver gives each document
+ * its _id before the first attempt, so a document that was written even though its bulk failed is rejected as a
+ * duplicate when resent, and counted as written instead of twice.
+ */
+public class BulkGraphWriter {
+
+    private Logger logger = Logger.getLogger("MongoDB");
+
+    /**
+     * The error code of a duplicate key
+     */
+    private static final int DUPLICATE_KEY = 11000;
+
+    /**
+     * The encoded size of the _id the driver adds to a document: type, "_id" and a 12 byte ObjectId
+     */
+    private static final int OBJECT_ID_SIZE = 1 + 4 + 12;
+
+    /**
+     * How long to wait before the first retry, doubled on every further retry, in milliseconds
+     */
+    private static final long RETRY_DELAY = 100;
+
+    /**
+     * The collection written to
+     */
+    private final DBCollection coll;
+
+    /**
+     * The write concern bulks are executed with
+     */
+    private final WriteConcern writeConcern;
+
+    /**
+     * The most documents in one bulk
+     */
+    private final int bulkSize;
+
+    /**
+     * How many times a bulk is retried before its documents are given up on
+     */
+    private final int retries;
+
+    /**
+     * Executes the bulks
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Documents waiting for their bulk to fill up
+     */
+    private List<DBObject> pending = new ArrayList<>();
+
+    /**
+     * Bulks sent since the last flush
+     */
+    private List<SentBulk> sent = new ArrayList<>();
+
+    /**
+     * When the first document since the last flush was added, in milliseconds
+     */
+    private long started = 0;
+
+    /**
+     * Documents and bytes written when the last flush finished
+     */
+    private long documentsFlushed = 0;
+    private long bytesFlushed = 0;
+
+    /**
+     * Documents and bytes written, and documents given up on
+     */
+    private final AtomicLong documentsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Times a bulk was retried
+     */
+    private final AtomicLong retried = new AtomicLong();
+
+    /**
+     * Latency of executing each bulk
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param coll
+     * @param writeConcern
+     * @param bulkSize the most documents in one bulk
+     * @param writers how many bulks are written at the same time
+     * @param retries how many times a bulk is retried
+     */
+    public BulkGraphWriter(DBCollection coll, WriteConcern writeConcern, int bulkSize, int writers, int retries) {
+        this.coll = coll;
+        this.writeConcern = writeConcern;
+        this.bulkSize = Math.max(1, bulkSize);
+        this.retries = Math.max(0, retries);
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, writers), runnable -> {
+            Thread thread = new Thread(runnable, "Graph Writer " + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add a document, sending its bulk if it is full
+     *
+     * @param document
+     */
+    public synchronized void add(DBObject document) {
+        if (started == 0) {
+            started = System.currentTimeMillis();
+        }
+
+        pending.add(document);
+
+        if (pending.size() >= bulkSize) {
+            send();
+        }
+    }
+
+    /**
+     * Send every pending document and wait until everything sent since the last flush is written or given up on
+     *
+     * @return the amount of documents given up on
+     */
+    public long flush() {
+        List<SentBulk> bulks;
+        long start;
+
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                send();
+            }
+
+            bulks = sent;
+            sent = new ArrayList<>();
+            start = started;
+            started = 0;
+        }
+
+        if (bulks.isEmpty()) {
+            return 0;
+        }
+
+        long lost = 0;
+
+        for (int i = 0; i < bulks.size(); i++) {
+            SentBulk bulk = bulks.get(i);
+
+            try {
+                lost += bulk.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                // the bulks not waited for are not known to be written
+                for (int j = i; j < bulks.size(); j++) {
+                    lost += bulks.get(j).size;
+                }
+
+                break;
+            } catch (ExecutionException e) {
+                failed.addAndGet(bulk.size);
+                lost += bulk.size;
+                logger.severe("Graph bulk write of " + bulk.size + " documents failed: " + e.getCause());
+            }
+        }
+
+        long documents;
+        long bytes;
+
+        synchronized (this) {
+            documents = documentsWritten.get() - documentsFlushed;
+            bytes = bytesWritten.get() - bytesFlushed;
+            documentsFlushed += documents;
+            bytesFlushed += bytes;
+        }
+
+        logger.info("Wrote " + documents + " graph documents (" + (bytes / 1024) + " KiB) in " + bulks.size() + " bulks in "
+                + (System.currentTimeMillis() - start) + "ms" + (lost > 0 ? ", gave up on " + lost : ""));
+        return lost;
+    }
+
+    /**
+     * Send the pending documents as one bulk. Callers synchronize on the writer.
+     */
+    private void send() {
+        List<DBObject> bulk = pending;
+        pending = new ArrayList<>(bulkSize);
+        sent.add(new SentBulk(executor.submit(() -> write(bulk)), bulk.size()));
+    }
+
+    /**
+     * Get the amount of documents written
+     *
+     * @return
+     */
+    public long getDocuments() {
+        return documentsWritten.get();
+    }
+
+    /**
+     * Get the encoded size of the documents written, in bytes
+     *
+     * @return
+     */
+    public long getBytes() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Get the amount of documents given up on after every retry failed
+     *
+     * @return
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Get the amount of times a bulk was retried
+     *
+     * @return
+     */
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * Get the latency of executing each bulk, including failed attempts
+     *
+     * @return
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Write one bulk, retrying the documents that were not written
+     *
+     * @param documents
+     * @return the amount of documents given up on
+     */
+    private int write(List<DBObject> documents) throws InterruptedException {
+        List<DBObject> remaining = documents;
+
+        for (int attempt = 0; ; attempt++) {
+            remaining = execute(remaining);
+
+            if (remaining.isEmpty()) {
+                return 0;
+            }
+
+            if (attempt == retries) {
+                failed.addAndGet(remaining.size());
+                logger.severe("Giving up on " + remaining.size() + " graph documents after " + (attempt + 1) + " attempts");
+                return remaining.size();
+            }
+
+            retried.incrementAndGet();
+            Thread.sleep(RETRY_DELAY << attempt);
+        }
+    }
+
+    /**
+     * Execute one unordered bulk
+     *
+     * @param documents
+     * @return the documents that were not written
+     */
+    private List<DBObject> execute(List<DBObject> documents) {
+        BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+
+        for (DBObject document : documents) {
+            bulk.insert(document);
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            bulk.execute(writeConcern);
+            written(documents);
+            return new ArrayList<>();
+        } catch (BulkWriteException e) {
+            List<DBObject> remaining = new ArrayList<>();
+            boolean[] rejected = new boolean[documents.size()];
+
+            for (BulkWriteError error : e.getWriteErrors()) {
+                rejected[error.getIndex()] = true;
+
+                // already written by an earlier attempt
+                if (error.getCode() == DUPLICATE_KEY) {
+                    written(documents.get(error.getIndex()));
+                } else {
+                    remaining.add(documents.get(error.getIndex()));
+                }
+            }
+
+            for (int i = 0; i < documents.size(); i++) {
+                if (!rejected[i]) {
+                    written(documents.get(i));
+                }
+            }
+
+            logger.warning("Graph bulk write rejected " + e.getWriteErrors().size() + " of " + documents.size() + " documents: "
+                    + e.getWriteErrors().get(0).getMessage());
+            return remaining;
+        } catch (MongoException e) {
+            logger.warning("Graph bulk write of " + documents.size() + " documents failed: " + e.getMessage());
+            return new ArrayList<>(documents);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count documents as written
+     *
+     * @param documents
+     */
+    private void written(List<DBObject> documents) {
+        for (DBObject document : documents) {
+            written(document);
+        }
+    }
+
+    /**
+     * Count a document as written
+     *
+     * @param document
+     */
+    private void written(DBObject document) {
+        documentsWritten.incrementAndGet();
+        bytesWritten.addAndGet(sizeOf(document) + (document.containsField("_id") ? 0 : OBJECT_ID_SIZE));
+    }
+
+    /**
+     * Calculate the BSON encoded size of a document made of numbers, strings and nested documents
+     *
+     * @param document
+     * @return the size in bytes
+     */
+    static int sizeOf(DBObject document) {
+        // length and terminator
+        int size = 4 + 1;
+
+        for (String key : document.keySet()) {
+            // type and the key as a cstring
+            size += 1 + key.getBytes(StandardCharsets.UTF_8).length + 1 + sizeOfValue(document.get(key));
+        }
+
+        return size;
+    }
+
+    /**
+     * Calculate the BSON encoded size of a value, without its type and key
+     *
+     * @param value
+     * @return the size in bytes
+     */
+    private static int sizeOfValue(Object value) {
+        if (value instanceof Integer) {
+            return 4;
+        } else if (value instanceof Long || value instanceof Double) {
+            return 8;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof String) {
+            return 4 + ((String) value).getBytes(StandardCharsets.UTF_8).length + 1;
+        } else if (value instanceof DBObject) {
+            return sizeOf((DBObject) value);
+        } else if (value instanceof Map) {
+            int size = 4 + 1;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 1 + entry.getKey().toString().getBytes(StandardCharsets.UTF_8).length + 1 + sizeOfValue(entry.getValue());
+            }
+
+            return size;
+        } else if (value == null) {
+            return 0;
+        }
+
+        // ObjectId
+        return 12;
+    }
+
+    /**
+     * A bulk that was sent and how many documents it holds
+     */
+    private static class SentBulk {
+
+        /**
+         * The amount of documents given up on, once written
+         */
+        private final Future<Integer> result;
+
+        private final int size;
+
+        private SentBulk(Future<Integer> result, int size) {
+            this.result = result;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,478 @@
+package org.mcstats.db;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Rolls the graph data of finished epochs up into coarser resolutions, each in its own collection next to the raw
+ * one, so charts over months or years read a few hundred documents per graph instead of tens of thousands. Each
+ * resolution is rolled up from the one before it, and a bucket is only rolled up once every epoch in it is finished.
+ *
+ * A rolled up column holds the sum and count of every epoch merged into it, the smallest and largest single value
+ * emitted to it and the amount of epochs merged, so sum / epochs is the average value of an epoch. Raw documents hold
+ * the sum, count, min and max of their epoch; legacy raw documents without a min and max count their sum as both.
+ *
+ * Progress is checkpointed in the statistic document as the start of the next bucket of each resolution. The documents
+ * of a bucket are removed before it is written, so a bucket that was written but not checkpointed, e.g. after a crash,
+ * is written again instead of twice.
+ */
+public class GraphRollup {
+
+    private Logger logger = Logger.getLogger("MongoDB");
+
+    /**
+     * Seconds in a day
+     */
+    private static final int DAY = 86400;
+
+    /**
+     * The resolutions graph data is kept in, finest first
+     */
+    public enum Resolution {
+
+        RAW("raw", 1800, 0),
+        HOURLY("hourly", 3600, 0),
+        DAILY("daily", DAY, 0),
+        // weeks start on monday, the first one on 1970-01-05
+        WEEKLY("weekly", 7 * DAY, 4 * DAY);
+
+        /**
+         * The name used in collections, checkpoints and settings
+         */
+        private final String key;
+
+        /**
+         * The length of a bucket, and where buckets start relative to the unix epoch, in seconds
+         */
+        private final int seconds;
+        private final int offset;
+
+        Resolution(String key, int seconds, int offset) {
+            this.key = key;
+            this.seconds = seconds;
+            this.offset = offset;
+        }
+
+        /**
+         * Get the start of the bucket an epoch is in
+         *
+         * @param epoch
+         * @return
+         */
+        public int bucket(int epoch) {
+            return (int) (Math.floorDiv((long) epoch - offset, seconds) * seconds + offset);
+        }
+
+        /**
+         * Get the name used in collections, checkpoints and settings
+         *
+         * @return
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Get the length of a bucket
+         *
+         * @return the length in seconds
+         */
+        public int getSeconds() {
+            return seconds;
+        }
+
+    }
+
+    /**
+     * The collection of each resolution
+     */
+    private final Map<Resolution, DBCollection> collections = new EnumMap<>(Resolution.class);
+
+    /**
+     * Writes the buckets of each rolled up resolution
+     */
+    private final Map<Resolution, BulkGraphWriter> writers = new EnumMap<>(Resolution.class);
+
+    /**
+     * How many days of each resolution are kept, 0 to keep everything
+     */
+    private final Map<Resolution, Integer> retention;
+
+    /**
+     * The collection holding the statistic document
+     */
+    private final DBCollection statistic;
+
+    private final WriteConcern writeConcern;
+
+    /**
+     * @param db
+     * @param raw the collection graph data is generated into
+     * @param statistic the collection holding the statistic document
+     * @param writeConcern
+     * @param bulkSize the most documents in one bulk
+     * @param retries how many times a bulk is retried
+     * @param retention how many days of each resolution are kept, 0 or missing to keep everything
+     */
+    public GraphRollup(DB db, DBCollection raw, DBCollection statistic, WriteConcern writeConcern, int bulkSize, int retries, Map<Resolution, Integer> retention) {
+        this.statistic = statistic;
+        this.writeConcern = writeConcern;
+        this.retention = retention;
+
+        // rolling up reads the raw buckets and removes raw data past its retention by epoch. The raw collection already
+        // holds years of data, so its index is built in the background instead of locking the database while it builds
+        raw.createIndex(new BasicDBObject("epoch", 1), new BasicDBObject("background", true));
+        collections.put(Resolution.RAW, raw);
+
+        for (Resolution resolution : Resolution.values()) {
+            if (resolution == Resolution.RAW) {
+                continue;
+            }
+
+            DBCollection coll = db.getCollection(raw.getName() + "_" + resolution.getKey());
+
+            // charts read by graph, rolling up reads and removes by epoch
+            coll.createIndex(new BasicDBObject().append("plugin", 1).append("graph", 1).append("epoch", 1), new BasicDBObject("background", true));
+            coll.createIndex(new BasicDBObject("epoch", 1), new BasicDBObject("background", true));
+
+            collections.put(resolution, coll);
+            writers.put(resolution, new BulkGraphWriter(coll, writeConcern, bulkSize, 1, retries));
+        }
+    }
+
+    /**
+     * Roll up every finished bucket, then remove data that is past its retention
+     */
+    public void run() {
+        DBObject document = statistic.findOne(new BasicDBObject("_id", 1));
+        Object max = document == null ? null : document.get("max");
+
+        if (!(max instanceof DBObject)) {
+            logger.info("Nothing generated yet, not rolling up graph data");
+            return;
+        }
+
+        Object checkpoints = document.get("rollup");
+        Map<Resolution, Integer> ends = new EnumMap<>(Resolution.class);
+
+        int end = rawEnd(document);
+        ends.put(Resolution.RAW, end);
+
+        if (end <= getLong((DBObject) max, "epoch", 0)) {
+            logger.warning("Epoch " + end + " was not completely written, not rolling up past it");
+        }
+
+        Resolution[] resolutions = Resolution.values();
+
+        for (int i = 1; i < resolutions.length && end != 0; i++) {
+            int next = checkpoints instanceof DBObject ? (int) getLong((DBObject) checkpoints, resolutions[i].getKey(), 0) : 0;
+            end = rollUp(resolutions[i - 1], resolutions[i], next, end);
+            ends.put(resolutions[i], end);
+        }
+
+        expire(ends);
+    }
+
+    /**
+     * Get the end of the raw data that is complete: the end of the last finished generation, or the start of the first
+     * epoch whose documents were not all written, whichever comes first. Nothing after an incomplete epoch is rolled up
+     * until it is written again and taken out of the statistic document's incomplete list.
+     *
+     * @param document the statistic document
+     * @return the end, exclusive
+     */
+    static int rawEnd(DBObject document) {
+        int end = (int) getLong((DBObject) document.get("max"), "epoch", 0) + Resolution.RAW.getSeconds();
+        Object incomplete = document.get("incomplete");
+
+        if (incomplete instanceof List) {
+            for (Object epoch : (List<?>) incomplete) {
+                if (epoch instanceof Number && ((Number) epoch).intValue() < end) {
+                    end = ((Number) epoch).intValue();
+                }
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Roll up the finished buckets of a resolution
+     *
+     * @param source the resolution rolled up from
+     * @param target
+     * @param next the start of the next bucket to roll up, or 0 to start at the oldest source data
+     * @param sourceEnd the end of the finished source data, exclusive
+     * @return the start of the next bucket to roll up, or 0 if there is no source data
+     */
+    private int rollUp(Resolution source, Resolution target, int next, int sourceEnd) {
+        int bucket = next;
+
+        if (bucket == 0) {
+            int first = findEpoch(source, Integer.MIN_VALUE);
+
+            if (first == 0) {
+                return 0;
+            }
+
+            bucket = target.bucket(first);
+        }
+
+        long start = System.currentTimeMillis();
+        int buckets = 0;
+        int documents = 0;
+
+        while (bucket + target.getSeconds() <= sourceEnd) {
+            Bucket merged = new Bucket();
+
+            try (DBCursor cursor = collections.get(source).find(range(bucket, bucket + target.getSeconds())).batchSize(1000)) {
+                for (DBObject document : cursor) {
+                    merged.add(document);
+                }
+            }
+
+            if (merged.isEmpty()) {
+                // skip ahead to the bucket of the next source data there is
+                int following = findEpoch(source, bucket + target.getSeconds());
+                bucket = following == 0 ? target.bucket(sourceEnd) : Math.max(bucket + target.getSeconds(), target.bucket(following));
+                continue;
+            }
+
+            collections.get(target).remove(new BasicDBObject("epoch", bucket), writeConcern);
+
+            BulkGraphWriter writer = writers.get(target);
+            List<DBObject> rolledUp = merged.toDocuments(bucket);
+
+            for (DBObject document : rolledUp) {
+                writer.add(document);
+            }
+
+            if (writer.flush() > 0) {
+                logger.warning("Failed to write the " + target.getKey() + " rollup of " + bucket + ", retrying it on the next run");
+                break;
+            }
+
+            bucket += target.getSeconds();
+            checkpoint(target, bucket);
+            buckets++;
+            documents += rolledUp.size();
+        }
+
+        if (bucket != next) {
+            checkpoint(target, bucket);
+        }
+
+        if (buckets > 0) {
+            logger.info("Rolled up " + buckets + " " + target.getKey() + " buckets into " + documents + " documents in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        return bucket;
+    }
+
+    /**
+     * Remove the data of each resolution that is past its retention and already rolled up into the next one
+     *
+     * @param ends the end of the data of each resolution that is rolled up, exclusive
+     */
+    private void expire(Map<Resolution, Integer> ends) {
+        int now = (int) (System.currentTimeMillis() / 1000L);
+        Resolution[] resolutions = Resolution.values();
+
+        for (int i = 0; i < resolutions.length; i++) {
+            int days = retention.getOrDefault(resolutions[i], 0);
+
+            if (days <= 0) {
+                continue;
+            }
+
+            int cutoff = now - days * DAY;
+
+            if (i + 1 < resolutions.length) {
+                int rolledUp = ends.getOrDefault(resolutions[i + 1], 0);
+
+                if (rolledUp == 0) {
+                    continue;
+                }
+
+                cutoff = Math.min(cutoff, rolledUp);
+            }
+
+            collections.get(resolutions[i]).remove(new BasicDBObject("epoch", new BasicDBObject("$lt", cutoff)), writeConcern);
+        }
+    }
+
+    /**
+     * Get the first epoch of a resolution that has data
+     *
+     * @param resolution
+     * @param from the earliest epoch to look at
+     * @return the epoch, or 0 if there is none
+     */
+    private int findEpoch(Resolution resolution, int from) {
+        try (DBCursor cursor = collections.get(resolution).find(new BasicDBObject("epoch", new BasicDBObject("$gte", from)))
+                .sort(new BasicDBObject("epoch", 1)).limit(1)) {
+            return cursor.hasNext() ? (int) getLong(cursor.next(), "epoch", 0) : 0;
+        }
+    }
+
+    /**
+     * Save the start of the next bucket of a resolution to roll up
+     *
+     * @param resolution
+     * @param next
+     */
+    private void checkpoint(Resolution resolution, int next) {
+        DBObject query = new BasicDBObject().append("_id", 1);
+        DBObject op = new BasicDBObject().append("$set", new BasicDBObject("rollup." + resolution.getKey(), next));
+
+        statistic.update(query, op, true, false);
+    }
+
+    /**
+     * Query the documents of the epochs in a range
+     *
+     * @param from inclusive
+     * @param to exclusive
+     * @return
+     */
+    private static DBObject range(int from, int to) {
+        return new BasicDBObject("epoch", new BasicDBObject().append("$gte", from).append("$lt", to));
+    }
+
+    /**
+     * Read a number from a document
+     *
+     * @param document
+     * @param key
+     * @param def the value if the field is missing
+     * @return
+     */
+    private static long getLong(DBObject document, String key, long def) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    /**
+     * The graph documents of one bucket, merged column by column
+     */
+    static class Bucket {
+
+        /**
+         * Indexes of the merged values of a column
+         */
+        private static final int SUM = 0;
+        private static final int COUNT = 1;
+        private static final int MIN = 2;
+        private static final int MAX = 3;
+        private static final int EPOCHS = 4;
+
+        /**
+         * The merged columns of each graph by their id, keyed by the plugin id in the high and the graph id in the low bits
+         */
+        private final Map<Long, Map<String, long[]>> graphs = new HashMap<>();
+
+        /**
+         * Merge a raw or rolled up graph document into the bucket
+         *
+         * @param document
+         */
+        void add(DBObject document) {
+            Object data = document.get("data");
+
+            if (!(data instanceof DBObject)) {
+                return;
+            }
+
+            long key = (getLong(document, "plugin", 0) << 32) | (getLong(document, "graph", 0) & 0xFFFFFFFFL);
+            Map<String, long[]> columns = graphs.computeIfAbsent(key, k -> new HashMap<>());
+
+            for (String id : ((DBObject) data).keySet()) {
+                Object value = ((DBObject) data).get(id);
+
+                if (!(value instanceof DBObject)) {
+                    continue;
+                }
+
+                DBObject column = (DBObject) value;
+                long sum = getLong(column, "sum", 0);
+                long count = getLong(column, "count", 0);
+
+                // a raw epoch has no epochs, and legacy raw documents have no min or max either
+                long min = getLong(column, "min", sum);
+                long max = getLong(column, "max", sum);
+                long epochs = getLong(column, "epochs", 1);
+
+                long[] merged = columns.get(id);
+
+                if (merged == null) {
+                    columns.put(id, new long[] { sum, count, min, max, epochs });
+                } else {
+                    merged[SUM] += sum;
+                    merged[COUNT] += count;
+                    merged[MIN] = Math.min(merged[MIN], min);
+                    merged[MAX] = Math.max(merged[MAX], max);
+                    merged[EPOCHS] += epochs;
+                }
+            }
+        }
+
+        /**
+         * Check if nothing was merged into the bucket
+         *
+         * @return
+         */
+        boolean isEmpty() {
+            return graphs.isEmpty();
+        }
+
+        /**
+         * Create one document per graph holding its merged columns
+         *
+         * @param epoch the start of the bucket
+         * @return
+         */
+        List<DBObject> toDocuments(int epoch) {
+            List<DBObject> documents = new ArrayList<>(graphs.size());
+
+            for (Map.Entry<Long, Map<String, long[]>> entry : graphs.entrySet()) {
+                BasicDBObject data = new BasicDBObject();
+
+                for (Map.Entry<String, long[]> column : entry.getValue().entrySet()) {
+                    long[] merged = column.getValue();
+                    BasicDBObject col = new BasicDBObject();
+
+                    if (merged[SUM] != 0) {
+                        col.append("sum", MongoDBGraphStore.toBson(merged[SUM]));
+                    }
+
+                    if (merged[COUNT] != 0) {
+                        col.append("count", MongoDBGraphStore.toBson(merged[COUNT]));
+                    }
+
+                    col.append("min", MongoDBGraphStore.toBson(merged[MIN]));
+                    col.append("max", MongoDBGraphStore.toBson(merged[MAX]));
+                    col.append("epochs", MongoDBGraphStore.toBson(merged[EPOCHS]));
+                    data.append(column.getKey(), col);
+                }
+
+                documents.add(new BasicDBObject().append("epoch", epoch).append("plugin", (int) (entry.getKey() >> 32))
+                        .append("graph", (int) (long) entry.getKey()).append("data", data));
+            }
+
+            return documents;
+        }
+
+    }
+
+}
@@ -1,11 +1,8 @@
 package org.mcstats.db;
 
-import org.mcstats.generator.GeneratedData;
+import org.mcstats.generator.ColumnTable;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
-import org.mcstats.util.Tuple;
-
-import java.util.List;
 
 public interface GraphStore {
 
@@ -20,13 +17,24 @@ public interface GraphStore {
      * @param max
      * @param min
      */
-    public void insert(Column column, int epoch, int sum, int count, int avg, int max, int min);
+    public void insert(Column column, int epoch, long sum, long count, long avg, long max, long min);
 
     /**
-     * Insert data into the graph store
+     * Insert the data of some columns of a table into the graph store. The store may keep reading the table until the
+     * generation is finished, so it must not be changed before then.
      *
+     * @param graph the graph every column is in
      * @param data
+     * @param slots the slots of the columns to insert
+     * @param epoch
+     */
+    public void batchInsert(Graph graph, ColumnTable data, int[] slots, int epoch);
+
+    /**
+     * Mark the graph generation for an epoch as finished
+     *
+     * @param epoch
      */
-    public void batchInsert(Graph graph, List<Tuple<Column, GeneratedData>> data, int epoch);
+    public void finishGeneration(int epoch);
 
 }
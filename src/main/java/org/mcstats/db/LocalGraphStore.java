@@ -0,0 +1,105 @@
+package org.mcstats.db;
+
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graph store that keeps everything in memory. It stands in for MongoDB when running offline, e.g. replaying request
+ * logs on a development machine, so generated data can be inspected without a database.
+ */
+public class LocalGraphStore implements GraphStore {
+
+    /**
+     * Stored data, keyed by epoch. Each table is guarded by its own lock.
+     */
+    private final Map<Integer, ColumnTable> data = new ConcurrentHashMap<>();
+
+    /**
+     * The amount of columns inserted
+     */
+    private final AtomicLong inserts = new AtomicLong();
+
+    /**
+     * The epoch of the last finished generation
+     */
+    private volatile int lastGeneration = 0;
+
+    public void insert(Column column, int epoch, long sum, long count, long avg, long max, long min) {
+        ColumnTable columns = getEpoch(epoch);
+
+        synchronized (columns) {
+            columns.put(column, count, sum, min, max);
+        }
+
+        inserts.incrementAndGet();
+    }
+
+    public void batchInsert(Graph graph, ColumnTable batchData, int[] slots, int epoch) {
+        ColumnTable columns = getEpoch(epoch);
+
+        synchronized (columns) {
+            for (int slot : slots) {
+                columns.put(batchData.getColumn(slot), batchData.getCount(slot), batchData.getSum(slot), batchData.getMin(slot), batchData.getMax(slot));
+            }
+        }
+
+        inserts.addAndGet(slots.length);
+    }
+
+    public void finishGeneration(int epoch) {
+        lastGeneration = epoch;
+    }
+
+    /**
+     * Get a copy of all data stored at an epoch
+     *
+     * @param epoch
+     * @return
+     */
+    public ColumnTable get(int epoch) {
+        ColumnTable copy = new ColumnTable();
+        ColumnTable columns = data.get(epoch);
+
+        if (columns != null) {
+            synchronized (columns) {
+                copy.merge(columns);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Get the amount of columns inserted
+     *
+     * @return
+     */
+    public long getInserts() {
+        return inserts.get();
+    }
+
+    /**
+     * Get the epoch of the last finished generation
+     *
+     * @return
+     */
+    public int getLastGeneration() {
+        return lastGeneration;
+    }
+
+    /**
+     * Get the column data for an epoch, creating it if needed
+     *
+     * @param epoch
+     * @return
+     */
+    private ColumnTable getEpoch(int epoch) {
+        return data.computeIfAbsent(epoch, key -> new ColumnTable());
+    }
+
+}
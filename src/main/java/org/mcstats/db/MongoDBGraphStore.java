@@ -7,15 +7,12 @@ import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.WriteConcern;
 import org.mcstats.MCStats;
-import org.mcstats.generator.GeneratedData;
-import org.mcstats.handler.ReportHandler;
+import org.mcstats.generator.ColumnTable;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
-import org.mcstats.util.Tuple;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.logging.Logger;
 
 public class MongoDBGraphStore implements GraphStore {
@@ -42,33 +39,68 @@ public class MongoDBGraphStore implements GraphStore {
      */
     private DBCollection collStatistic;
 
+    /**
+     * Writes the graph documents of each epoch
+     */
+    private BulkGraphWriter writer;
+
+    /**
+     * The write concern graph documents are written with
+     */
+    private WriteConcern writeConcern;
+
     public MongoDBGraphStore(MCStats mcstats) {
         try {
             client = new MongoClient(mcstats.getConfig().getProperty("mongo.host"));
 
-            client.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
+            String writeConcernName = mcstats.getConfig().getProperty("mongo.writeConcern", "ACKNOWLEDGED");
+            writeConcern = WriteConcern.valueOf(writeConcernName);
+
+            if (writeConcern == null) {
+                logger.warning("Unknown write concern " + writeConcernName + ", using ACKNOWLEDGED");
+                writeConcern = WriteConcern.ACKNOWLEDGED;
+            }
+
+            client.setWriteConcern(writeConcern);
 
             db = client.getDB(mcstats.getConfig().getProperty("mongo.db"));
             coll = db.getCollection(mcstats.getConfig().getProperty("mongo.collection"));
             collStatistic = db.getCollection("statistic");
 
-            logger.info("Connected to MongoDB");
+            int bulkSize = Integer.parseInt(mcstats.getConfig().getProperty("mongo.bulkSize", "1000"));
+            int writers = Integer.parseInt(mcstats.getConfig().getProperty("mongo.writers", "4"));
+            int retries = Integer.parseInt(mcstats.getConfig().getProperty("mongo.retries", "3"));
+            writer = new BulkGraphWriter(coll, writeConcern, bulkSize, writers, retries);
+
+            logger.info("Connected to MongoDB, writing graphs in bulks of " + bulkSize + " on " + writers + " threads (" + writeConcernName + ")");
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Finish graph generation
+     * Finish graph generation, writing every graph document of the epoch first. The epoch is only published as the
+     * latest one if all of its documents were written; otherwise it is recorded as incomplete, so it is not rolled up.
+     *
+     * @param epoch
      */
-    public void finishGeneration() {
+    public void finishGeneration(int epoch) {
+        long lost = writer.flush();
+
         DBObject query = new BasicDBObject().append("_id", 1);
-        DBObject op = new BasicDBObject().append("$set", new BasicDBObject("max.epoch", ReportHandler.normalizeTime()));
+        DBObject op;
+
+        if (lost > 0) {
+            logger.severe("Gave up on " + lost + " graph documents of epoch " + epoch + ", recording it as incomplete");
+            op = new BasicDBObject().append("$addToSet", new BasicDBObject("incomplete", epoch));
+        } else {
+            op = new BasicDBObject().append("$set", new BasicDBObject("max.epoch", epoch));
+        }
 
         collStatistic.update(query, op, true, false);
     }
 
-    public void insert(Column column, int epoch, int sum, int count, int avg, int max, int min) {
+    public void insert(Column column, int epoch, long sum, long count, long avg, long max, long min) {
         Graph graph = column.getGraph();
         Plugin plugin = column.getPlugin();
 
@@ -79,34 +111,24 @@ public class MongoDBGraphStore implements GraphStore {
         BasicDBObject col = new BasicDBObject();
 
         if (sum != 0) {
-            col.append("sum", sum);
+            col.append("sum", toBson(sum));
         }
 
         if (count != 0) {
-            col.append("count", count);
+            col.append("count", toBson(count));
         }
 
-        /*
-        if (avg != 0) {
-            col.append("avg", avg);
-        }
-
-        if (max != 0) {
-            col.append("max", max);
-        }
-
-        if (min != 0) {
-            col.append("min", min);
-        }
-        */
+        // always written, as 0 is a real min or max
+        col.append("min", toBson(min));
+        col.append("max", toBson(max));
 
         data.append(Integer.toString(column.getId()), col);
         toset.append("data", data);
 
-        coll.insert(toset);
+        writer.add(toset);
     }
 
-    public void batchInsert(Graph graph, List<Tuple<Column, GeneratedData>> batchData, int epoch) {
+    public void batchInsert(Graph graph, ColumnTable batchData, int[] slots, int epoch) {
         Plugin plugin = graph.getPlugin();
 
         // logger.info(String.format("batchInsert(%s, %d, %d, %d, %d, %d, %d)", column.toString(), epoch, sum, count, avg, max, min));
@@ -114,44 +136,92 @@ public class MongoDBGraphStore implements GraphStore {
         BasicDBObject toset = new BasicDBObject().append("epoch", epoch).append("plugin", plugin.getId()).append("graph", graph.getId());
         BasicDBObject data = new BasicDBObject();
 
-        for (Tuple<Column, GeneratedData> tuple : batchData) {
+        for (int slot : slots) {
             BasicDBObject col = new BasicDBObject();
-            Column column = tuple.first();
-            GeneratedData gdata = tuple.second();
+            Column column = batchData.getColumn(slot);
 
-            int sum = gdata.getSum();
-            int count = gdata.getCount();
-            int avg = gdata.getAverage();
-            int max = gdata.getMax();
-            int min = gdata.getMin();
+            long sum = batchData.getSum(slot);
+            long count = batchData.getCount(slot);
+            long max = batchData.getMax(slot);
+            long min = batchData.getMin(slot);
 
             if (sum != 0) {
-                col.append("sum", sum);
+                col.append("sum", toBson(sum));
             }
 
             if (count != 0) {
-                col.append("count", count);
-            }
-
-            /*
-            if (avg != 0) {
-                col.append("avg", avg);
-            }
-
-            if (max != 0) {
-                col.append("max", max);
+                col.append("count", toBson(count));
             }
 
-            if (min != 0) {
-                col.append("min", min);
-            }
-            */
+            // always written, as 0 is a real min or max
+            col.append("min", toBson(min));
+            col.append("max", toBson(max));
 
             data.append(Integer.toString(column.getId()), col);
         }
 
         toset.append("data", data);
 
-        coll.insert(toset);
+        writer.add(toset);
+    }
+
+    /**
+     * Get the writer graph documents are written with
+     *
+     * @return
+     */
+    public BulkGraphWriter getWriter() {
+        return writer;
     }
+
+    /**
+     * Get the database graph data is stored in
+     *
+     * @return
+     */
+    public DB getDatabase() {
+        return db;
+    }
+
+    /**
+     * Get the collection graph documents are generated into
+     *
+     * @return
+     */
+    public DBCollection getCollection() {
+        return coll;
+    }
+
+    /**
+     * Get the collection holding the statistic document
+     *
+     * @return
+     */
+    public DBCollection getStatisticCollection() {
+        return collStatistic;
+    }
+
+    /**
+     * Get the write concern graph documents are written with
+     *
+     * @return
+     */
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * Convert a value to the smallest BSON number that holds it, so values that fit are still stored as 32 bit ints
+     *
+     * @param value
+     * @return
+     */
+    static Number toBson(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+
+        return value;
+    }
+
 }
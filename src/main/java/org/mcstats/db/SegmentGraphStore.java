@@ -0,0 +1,423 @@
+package org.mcstats.db;
+
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Graph store that appends fixed width records to one memory mapped segment file per epoch. It needs nothing but a
+ * directory, so it can stand in for MongoDB on offline runs and benchmarks, and it can also sit in front of another
+ * store as a local write-through copy of everything sent to it.
+ *
+ * <pre>
+ * segment := header record*
+ * header  := int(MAGIC) int(VERSION) int(epoch) int(flags) long(records) long(0)                      32 bytes
+ * record  := int(plugin) int(graph) int(column) int(epoch) long(sum) long(count) long(min) long(max)  48 bytes
+ * </pre>
+ *
+ * Everything is big endian. Records of a batch are written before the record count in the header is raised, so a
+ * segment that was not finished, e.g. after a crash, can be read up to its last complete batch and is appended to when
+ * the same epoch is stored again. Finishing an epoch sets {@link #FLAG_FINISHED} and forces the segment to disk.
+ *
+ * Like the other stores, a segment holds one value per graph and column: when a column is stored again, e.g. because an
+ * unfinished epoch was generated again, its last record replaces the earlier ones when the segment is read.
+ */
+public class SegmentGraphStore implements GraphStore {
+
+    private Logger logger = Logger.getLogger("Segments");
+
+    /**
+     * First bytes of every segment, "MCGS"
+     */
+    public static final int MAGIC = 0x4D434753;
+
+    /**
+     * Format version
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Set in the header once an epoch was finished
+     */
+    public static final int FLAG_FINISHED = 1;
+
+    /**
+     * File extension of segments
+     */
+    public static final String EXTENSION = ".gseg";
+
+    static final int HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 48;
+
+    /**
+     * Offsets of the header fields
+     */
+    private static final int FLAGS_OFFSET = 12;
+    private static final int RECORDS_OFFSET = 16;
+
+    /**
+     * Bytes mapped for a new segment; the mapping doubles whenever it is full
+     */
+    private static final int INITIAL_SIZE = HEADER_SIZE + 16384 * RECORD_SIZE;
+
+    /**
+     * The directory segments are stored in
+     */
+    private final Path directory;
+
+    /**
+     * The store everything is passed on to, or null
+     */
+    private final GraphStore next;
+
+    /**
+     * Segments of epochs that are not finished yet
+     */
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * The amount of records appended
+     */
+    private final AtomicLong appended = new AtomicLong();
+
+    /**
+     * @param directory the directory to store segments in, created if needed
+     * @param next the store to pass everything on to after it was appended, or null
+     * @throws IOException
+     */
+    public SegmentGraphStore(Path directory, GraphStore next) throws IOException {
+        this.directory = directory;
+        this.next = next;
+        Files.createDirectories(directory);
+    }
+
+    public void insert(Column column, int epoch, long sum, long count, long avg, long max, long min) {
+        try {
+            Segment segment = getSegment(epoch);
+
+            synchronized (segment) {
+                segment.reserve(1);
+                segment.append(column, sum, count, min, max);
+                segment.commit();
+            }
+
+            appended.incrementAndGet();
+        } catch (IOException e) {
+            logger.severe("Failed to append to the segment of " + epoch + ": " + e.getMessage());
+        }
+
+        if (next != null) {
+            next.insert(column, epoch, sum, count, avg, max, min);
+        }
+    }
+
+    public void batchInsert(Graph graph, ColumnTable data, int[] slots, int epoch) {
+        try {
+            Segment segment = getSegment(epoch);
+
+            synchronized (segment) {
+                segment.reserve(slots.length);
+
+                for (int slot : slots) {
+                    segment.append(data.getColumn(slot), data.getSum(slot), data.getCount(slot), data.getMin(slot), data.getMax(slot));
+                }
+
+                segment.commit();
+            }
+
+            appended.addAndGet(slots.length);
+        } catch (IOException e) {
+            logger.severe("Failed to append to the segment of " + epoch + ": " + e.getMessage());
+        }
+
+        if (next != null) {
+            next.batchInsert(graph, data, slots, epoch);
+        }
+    }
+
+    public void finishGeneration(int epoch) {
+        Segment segment = segments.remove(epoch);
+
+        if (segment != null) {
+            try {
+                synchronized (segment) {
+                    segment.finish();
+                }
+            } catch (IOException e) {
+                logger.severe("Failed to finish the segment of " + epoch + ": " + e.getMessage());
+            }
+        }
+
+        if (next != null) {
+            next.finishGeneration(epoch);
+        }
+    }
+
+    /**
+     * Get the epochs that have a segment, oldest first
+     *
+     * @return
+     * @throws IOException
+     */
+    public List<Integer> listEpochs() throws IOException {
+        List<Integer> epochs = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+
+                try {
+                    epochs.add(Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+
+        Collections.sort(epochs);
+        return epochs;
+    }
+
+    /**
+     * Read the committed records of an epoch, one per graph and column. A column that was stored more than once is read
+     * with its last record.
+     *
+     * @param epoch
+     * @param visitor
+     * @return true if the epoch was finished
+     * @throws IOException if the segment does not exist or is not a segment
+     */
+    public boolean read(int epoch, RecordVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(getPath(epoch), StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            checkHeader(header, epoch);
+
+            long records = header.getLong(RECORDS_OFFSET);
+
+            if (records > 0) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, records * RECORD_SIZE);
+                int size = (int) (records * RECORD_SIZE);
+
+                // where the last record of each graph and column is
+                Map<Long, Integer> last = new HashMap<>();
+
+                for (int position = 0; position < size; position += RECORD_SIZE) {
+                    last.put(getKey(buffer, position), position);
+                }
+
+                for (int position = 0; position < size; position += RECORD_SIZE) {
+                    if (last.size() < records && last.get(getKey(buffer, position)) != position) {
+                        continue;
+                    }
+
+                    visitor.visit(buffer.getInt(position), buffer.getInt(position + 4), buffer.getInt(position + 8), buffer.getInt(position + 12),
+                            buffer.getLong(position + 16), buffer.getLong(position + 24), buffer.getLong(position + 32), buffer.getLong(position + 40));
+                }
+            }
+
+            return (header.getInt(FLAGS_OFFSET) & FLAG_FINISHED) != 0;
+        }
+    }
+
+    /**
+     * Get the store everything is passed on to
+     *
+     * @return the store, or null if there is none
+     */
+    public GraphStore getNext() {
+        return next;
+    }
+
+    /**
+     * Get the amount of records appended
+     *
+     * @return
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * Get the path of an epoch's segment
+     *
+     * @param epoch
+     * @return
+     */
+    private Path getPath(int epoch) {
+        return directory.resolve(epoch + EXTENSION);
+    }
+
+    /**
+     * Get the segment of an epoch, opening it if needed
+     *
+     * @param epoch
+     * @return
+     */
+    private Segment getSegment(int epoch) throws IOException {
+        Segment segment = segments.get(epoch);
+
+        if (segment == null) {
+            synchronized (segments) {
+                segment = segments.get(epoch);
+
+                if (segment == null) {
+                    segment = new Segment(epoch);
+                    segments.put(epoch, segment);
+                }
+            }
+        }
+
+        return segment;
+    }
+
+    /**
+     * Get the graph and column of a record as one key
+     *
+     * @param buffer
+     * @param position
+     * @return
+     */
+    private static long getKey(MappedByteBuffer buffer, int position) {
+        return ((long) buffer.getInt(position + 4) << 32) | (buffer.getInt(position + 8) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Check that a header belongs to a segment of an epoch
+     *
+     * @param header
+     * @param epoch
+     * @throws IOException
+     */
+    private static void checkHeader(MappedByteBuffer header, int epoch) throws IOException {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != epoch) {
+            throw new IOException("Not a version " + VERSION + " segment of " + epoch);
+        }
+    }
+
+    /**
+     * Visits the records of a segment
+     */
+    public interface RecordVisitor {
+
+        void visit(int plugin, int graph, int column, int epoch, long sum, long count, long min, long max);
+
+    }
+
+    /**
+     * The open segment of an epoch. Callers synchronize on it.
+     */
+    private class Segment {
+
+        private final int epoch;
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        /**
+         * Records committed, and records appended since the last commit
+         */
+        private long records;
+        private int uncommitted = 0;
+
+        private Segment(int epoch) throws IOException {
+            this.epoch = epoch;
+            channel = FileChannel.open(getPath(epoch), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            if (channel.size() >= HEADER_SIZE) {
+                // an epoch that was not finished, keep appending to it
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+                checkHeader(buffer, epoch);
+                records = buffer.getLong(RECORDS_OFFSET);
+                buffer.putInt(FLAGS_OFFSET, 0);
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_SIZE);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, epoch);
+                buffer.putInt(FLAGS_OFFSET, 0);
+                buffer.putLong(RECORDS_OFFSET, 0);
+                records = 0;
+            }
+        }
+
+        /**
+         * Make sure there is room for more records, growing the mapping if needed
+         *
+         * @param amount
+         */
+        private void reserve(int amount) throws IOException {
+            long needed = HEADER_SIZE + (records + uncommitted + amount) * RECORD_SIZE;
+
+            if (needed <= buffer.capacity()) {
+                return;
+            }
+
+            long size = buffer.capacity();
+
+            while (size < needed) {
+                size *= 2;
+            }
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment of " + epoch + " is full");
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * Append a record, which is read once it is committed. There must be room for it.
+         */
+        private void append(Column column, long sum, long count, long min, long max) {
+            int position = (int) (HEADER_SIZE + (records + uncommitted) * RECORD_SIZE);
+
+            buffer.putInt(position, column.getPlugin().getId());
+            buffer.putInt(position + 4, column.getGraph().getId());
+            buffer.putInt(position + 8, column.getId());
+            buffer.putInt(position + 12, epoch);
+            buffer.putLong(position + 16, sum);
+            buffer.putLong(position + 24, count);
+            buffer.putLong(position + 32, min);
+            buffer.putLong(position + 40, max);
+            uncommitted++;
+        }
+
+        /**
+         * Make the appended records part of the segment
+         */
+        private void commit() {
+            records += uncommitted;
+            uncommitted = 0;
+            buffer.putLong(RECORDS_OFFSET, records);
+        }
+
+        /**
+         * Mark the segment finished, write it to disk and close it
+         */
+        private void finish() throws IOException {
+            buffer.putInt(FLAGS_OFFSET, FLAG_FINISHED);
+            buffer.force();
+            channel.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,500 @@
+package org.mcstats.db;
+
+import org.apache.log4j.Logger;
+import org.mcstats.MCStats;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.Tuple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the servers and server plugins {@link PluginOnlyMySQLDatabase} only keeps in memory, so a restart can
+ * pick up where it left off instead of starting the interval empty. Snapshots are memory-mapped files:
+ *
+ * <pre>
+ * snapshot := MAGIC VERSION long(created millis) int(stringCount) int(serverCount) string* server*
+ * string   := int(byteLength) utf8
+ * server   := str(guid) str(country) int(players) str(serverVersion) str(osname) str(osarch) str(osversion)
+ *             str(javaName) str(javaVersion) int(cores) int(onlineMode) int(created) str(serverSoftware)
+ *             str(minecraftVersion) int(violations) byte(blacklisted) int(lastSentData) int(pluginCount) plugin*
+ * plugin   := int(pluginId) str(version) int(revision) int(updated)
+ *             int(customDataCount) (str(graph) str(column) long(value))*
+ *             int(versionChangeCount) (str(from) str(to))*
+ * str      := int(index into the strings) or -1 for null
+ * </pre>
+ *
+ * Writing is best effort: the model objects are read while requests keep updating them.
+ */
+public class ServerSnapshot {
+
+    private Logger logger = Logger.getLogger("ServerSnapshot");
+
+    /**
+     * First bytes of every snapshot
+     */
+    private static final int MAGIC = ('M' << 24) | ('C' << 16) | ('S' << 8) | 'S';
+
+    /**
+     * Format version
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the fixed header
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+
+    /**
+     * The MCStats object
+     */
+    private final MCStats mcstats;
+
+    /**
+     * When the restored snapshot was written, in milliseconds, or 0 if none was restored
+     */
+    private volatile long restoredCreated = 0;
+
+    /**
+     * When the last snapshot was restored, in milliseconds
+     */
+    private volatile long restoredAt = 0;
+
+    private volatile int restoredServers = 0;
+
+    /**
+     * When the last snapshot was written, in milliseconds, or 0 if none was written yet
+     */
+    private volatile long lastWritten = 0;
+
+    /**
+     * How long writing the last snapshot took, in milliseconds
+     */
+    private volatile long lastWriteTime = 0;
+
+    /**
+     * Size of the last written snapshot, in bytes
+     */
+    private volatile long lastSize = 0;
+
+    public ServerSnapshot(MCStats mcstats) {
+        this.mcstats = mcstats;
+    }
+
+    /**
+     * Write a snapshot of the given servers. It is written next to the path and moved over it once complete.
+     *
+     * @param path
+     * @param servers
+     * @throws IOException
+     */
+    public void write(Path path, Collection<Server> servers) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(servers.size() * 128 + 64);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        int serverCount = 0;
+
+        for (Server server : servers) {
+            writeString(body, server.getGUID(), stringIndexes, strings);
+            writeString(body, server.getCountry(), stringIndexes, strings);
+            body.writeInt(server.getPlayers());
+            writeString(body, server.getServerVersion(), stringIndexes, strings);
+            writeString(body, server.getOSName(), stringIndexes, strings);
+            writeString(body, server.getOSArch(), stringIndexes, strings);
+            writeString(body, server.getOSVersion(), stringIndexes, strings);
+            writeString(body, server.getJavaName(), stringIndexes, strings);
+            writeString(body, server.getJavaVersion(), stringIndexes, strings);
+            body.writeInt(server.getCores());
+            body.writeInt(server.getOnlineMode());
+            body.writeInt(server.getCreated());
+            writeString(body, server.getServerSoftware(), stringIndexes, strings);
+            writeString(body, server.getMinecraftVersion(), stringIndexes, strings);
+            body.writeInt(server.getViolationCount());
+            body.writeByte(server.isBlacklisted() ? 1 : 0);
+            body.writeInt(server.getLastSentData());
+
+            List<ServerPlugin> serverPlugins = new ArrayList<>(server.getPlugins().values());
+            body.writeInt(serverPlugins.size());
+
+            for (ServerPlugin serverPlugin : serverPlugins) {
+                body.writeInt(serverPlugin.getPlugin().getId());
+                writeString(body, serverPlugin.getVersion(), stringIndexes, strings);
+                body.writeInt(serverPlugin.getRevision());
+                body.writeInt(serverPlugin.getUpdated());
+
+                // the custom data map is replaced, never changed, so it can be iterated while requests come in
+                Map<Column, Long> customData = serverPlugin.getCustomData();
+                body.writeInt(customData == null ? 0 : customData.size());
+
+                if (customData != null) {
+                    for (Map.Entry<Column, Long> entry : customData.entrySet()) {
+                        writeString(body, entry.getKey().getGraph().getName(), stringIndexes, strings);
+                        writeString(body, entry.getKey().getName(), stringIndexes, strings);
+                        body.writeLong(entry.getValue());
+                    }
+                }
+
+                List<Tuple<String, String>> versionChanges;
+
+                try {
+                    versionChanges = new ArrayList<>(serverPlugin.getVersionChanges());
+                } catch (ConcurrentModificationException e) {
+                    // changed while copying; the next snapshot will have it
+                    versionChanges = new ArrayList<>();
+                }
+
+                body.writeInt(versionChanges.size());
+
+                for (Tuple<String, String> change : versionChanges) {
+                    writeString(body, change.first(), stringIndexes, strings);
+                    writeString(body, change.second(), stringIndexes, strings);
+                }
+            }
+
+            serverCount++;
+        }
+
+        body.flush();
+
+        byte[][] encodedStrings = new byte[strings.size()][];
+        long size = HEADER_SIZE + bodyBytes.size();
+
+        for (int i = 0; i < encodedStrings.length; i++) {
+            encodedStrings[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            size += 4 + encodedStrings[i].length;
+        }
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large to map: " + size + " bytes");
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(start);
+            buffer.putInt(encodedStrings.length);
+            buffer.putInt(serverCount);
+
+            for (byte[] encoded : encodedStrings) {
+                buffer.putInt(encoded.length);
+                buffer.put(encoded);
+            }
+
+            buffer.put(bodyBytes.toByteArray());
+            buffer.force();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        lastWritten = start;
+        lastSize = size;
+        lastWriteTime = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Restore the servers in a snapshot into the database and the server cache
+     *
+     * @param path
+     * @param maxAge the oldest snapshot that is restored, in seconds
+     * @return the amount of servers restored
+     * @throws IOException
+     */
+    public int restore(Path path, int maxAge) throws IOException {
+        if (!Files.exists(path)) {
+            logger.info("No snapshot to restore at " + path);
+            return 0;
+        }
+
+        if (!(mcstats.getDatabase() instanceof PluginOnlyMySQLDatabase)) {
+            throw new IllegalStateException("Snapshots can only be restored into a PluginOnlyMySQLDatabase");
+        }
+
+        return restore(path, maxAge, mcstats.getDatabase());
+    }
+
+    /**
+     * Restore the servers in a snapshot into a database that only keeps servers in memory and the server cache
+     *
+     * @param path an existing snapshot
+     * @param maxAge the oldest snapshot that is restored, in seconds
+     * @param database
+     * @return the amount of servers restored
+     * @throws IOException
+     */
+    int restore(Path path, int maxAge, Database database) throws IOException {
+        long start = System.currentTimeMillis();
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a server snapshot: " + path);
+        }
+
+        int version = buffer.getInt();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        long created = buffer.getLong();
+        long age = (start - created) / 1000;
+
+        if (age > maxAge) {
+            logger.info("Not restoring snapshot " + path + ", it is " + age + " seconds old");
+            return 0;
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        int serverCount = buffer.getInt();
+
+        for (int i = 0; i < strings.length; i++) {
+            byte[] encoded = new byte[buffer.getInt()];
+            buffer.get(encoded);
+            strings[i] = new String(encoded, StandardCharsets.UTF_8);
+        }
+
+        Map<Integer, Plugin> plugins = new HashMap<>();
+        Map<String, Column> columns = new HashMap<>();
+        int restored = 0;
+
+        for (int i = 0; i < serverCount; i++) {
+            String guid = readString(buffer, strings);
+            Server server = database.loadServer(guid);
+
+            if (server == null) {
+                server = database.createServer(guid);
+            }
+
+            server.setCountry(readString(buffer, strings));
+            server.setPlayers(buffer.getInt());
+            server.setServerVersion(readString(buffer, strings));
+            server.setOSName(readString(buffer, strings));
+            server.setOSArch(readString(buffer, strings));
+            server.setOSVersion(readString(buffer, strings));
+            server.setJavaName(readString(buffer, strings));
+            server.setJavaVersion(readString(buffer, strings));
+            server.setCores(buffer.getInt());
+            server.setOnlineMode(buffer.getInt());
+            server.setCreated(buffer.getInt());
+            server.setServerSoftware(readString(buffer, strings));
+            server.setMinecraftVersion(readString(buffer, strings));
+            server.setViolationCount(buffer.getInt());
+            boolean blacklisted = buffer.get() == 1;
+            server.setLastSentData(buffer.getInt());
+            server.setModified(false);
+
+            if (blacklisted) {
+                server.setBlacklisted(true);
+                database.blacklistServer(server);
+            }
+
+            int pluginCount = buffer.getInt();
+
+            for (int j = 0; j < pluginCount; j++) {
+                int pluginId = buffer.getInt();
+                String pluginVersion = readString(buffer, strings);
+                int revision = buffer.getInt();
+                int updated = buffer.getInt();
+
+                Plugin plugin = plugins.get(pluginId);
+
+                if (plugin == null && !plugins.containsKey(pluginId)) {
+                    plugin = mcstats.loadPlugin(pluginId);
+                    plugins.put(pluginId, plugin);
+                }
+
+                Map<Column, Long> customData = new HashMap<>();
+                int customDataCount = buffer.getInt();
+
+                for (int k = 0; k < customDataCount; k++) {
+                    String graphName = readString(buffer, strings);
+                    String columnName = readString(buffer, strings);
+                    long value = buffer.getLong();
+
+                    if (plugin != null) {
+                        Column column = loadColumn(plugin, graphName, columnName, columns);
+
+                        if (column != null) {
+                            customData.put(column, value);
+                        }
+                    }
+                }
+
+                int versionChangeCount = buffer.getInt();
+                List<Tuple<String, String>> versionChanges = new ArrayList<>(versionChangeCount);
+
+                for (int k = 0; k < versionChangeCount; k++) {
+                    versionChanges.add(new Tuple<>(readString(buffer, strings), readString(buffer, strings)));
+                }
+
+                // the plugin was removed since the snapshot was written
+                if (plugin == null) {
+                    continue;
+                }
+
+                ServerPlugin serverPlugin = database.createServerPlugin(server, plugin, pluginVersion);
+                serverPlugin.setRevision(revision);
+                serverPlugin.setUpdated(updated);
+                serverPlugin.setCustomData(customData);
+
+                for (Tuple<String, String> change : versionChanges) {
+                    serverPlugin.addVersionChange(change.first(), change.second());
+                }
+
+                serverPlugin.setModified(false);
+                server.addPlugin(serverPlugin);
+            }
+
+            mcstats.cacheServer(server);
+            restored++;
+        }
+
+        restoredCreated = created;
+        restoredAt = System.currentTimeMillis();
+        restoredServers = restored;
+
+        logger.info("Restored " + restored + " servers from a snapshot " + age + " seconds old in " + (restoredAt - start) + "ms");
+        return restored;
+    }
+
+    /**
+     * Get how old the restored snapshot was when it was restored, in seconds
+     *
+     * @return the age or -1 if no snapshot was restored
+     */
+    public long getRestoredAge() {
+        return restoredCreated == 0 ? -1 : (restoredAt - restoredCreated) / 1000;
+    }
+
+    /**
+     * Get the amount of servers restored from the last snapshot
+     *
+     * @return
+     */
+    public int getRestoredServers() {
+        return restoredServers;
+    }
+
+    /**
+     * Get how old the last written snapshot is, in seconds
+     *
+     * @return the age or -1 if no snapshot was written yet
+     */
+    public long getAge() {
+        return lastWritten == 0 ? -1 : (System.currentTimeMillis() - lastWritten) / 1000;
+    }
+
+    /**
+     * Get how long writing the last snapshot took, in milliseconds
+     *
+     * @return
+     */
+    public long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    /**
+     * Get the size of the last written snapshot, in bytes
+     *
+     * @return
+     */
+    public long getLastSize() {
+        return lastSize;
+    }
+
+    /**
+     * Resolve a column by its graph and column name
+     *
+     * @param plugin
+     * @param graphName
+     * @param columnName
+     * @param columns resolved columns, keyed by plugin id, graph and column name
+     * @return
+     */
+    private Column loadColumn(Plugin plugin, String graphName, String columnName, Map<String, Column> columns) {
+        String key = plugin.getId() + "\0" + graphName + "\0" + columnName;
+
+        if (columns.containsKey(key)) {
+            return columns.get(key);
+        }
+
+        Graph graph = mcstats.loadGraph(plugin, graphName);
+        Column column = graph == null ? null : graph.loadColumn(columnName);
+        columns.put(key, column);
+        return column;
+    }
+
+    /**
+     * Write a string as its index into the string table, adding it if needed
+     *
+     * @param output
+     * @param value
+     * @param indexes
+     * @param strings
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream output, String value, Map<String, Integer> indexes, List<String> strings) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        Integer index = indexes.get(value);
+
+        if (index == null) {
+            index = strings.size();
+            indexes.put(value, index);
+            strings.add(value);
+        }
+
+        output.writeInt(index);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String, Map, List)}
+     *
+     * @param buffer
+     * @param strings
+     * @return
+     */
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int index = buffer.getInt();
+        return index == -1 ? null : strings[index];
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.mcstats.db;
+
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Graph store that hands inserts to writer threads through a bounded queue, so graphs are stored while the next ones
+ * are still being generated. When the queue is full the caller blocks until a writer takes something off it, which
+ * keeps the generators from running further ahead of the store than the queue allows.
+ *
+ * Tables passed to {@link #batchInsert(Graph, ColumnTable, int[], int)} are read by the writers later, so they must not
+ * be changed until {@link #finishGeneration(int)} returned, which waits for every queued insert to be stored before
+ * finishing the epoch in the wrapped store.
+ */
+public class WriteBehindGraphStore implements GraphStore {
+
+    private Logger logger = Logger.getLogger("WriteBehind");
+
+    /**
+     * The store inserts are written to
+     */
+    private final GraphStore next;
+
+    /**
+     * Inserts waiting for a writer
+     */
+    private final BlockingQueue<Runnable> queue;
+
+    /**
+     * Inserts queued and not stored yet, guarded by itself
+     */
+    private final Object outstandingLock = new Object();
+    private long outstanding = 0;
+
+    /**
+     * Inserts stored, and time callers spent blocked on a full queue in nanoseconds
+     */
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    /**
+     * @param next the store to write to; it must accept inserts from several threads if there is more than one writer
+     * @param writers the amount of writer threads
+     * @param queueSize the most inserts waiting for a writer
+     */
+    public WriteBehindGraphStore(GraphStore next, int writers, int queueSize) {
+        this.next = next;
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+
+        for (int i = 0; i < Math.max(1, writers); i++) {
+            Thread thread = new Thread(this::drain, "Graph Store " + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void insert(Column column, int epoch, long sum, long count, long avg, long max, long min) {
+        enqueue(() -> next.insert(column, epoch, sum, count, avg, max, min));
+    }
+
+    public void batchInsert(Graph graph, ColumnTable data, int[] slots, int epoch) {
+        enqueue(() -> next.batchInsert(graph, data, slots, epoch));
+    }
+
+    public void finishGeneration(int epoch) {
+        synchronized (outstandingLock) {
+            while (outstanding > 0) {
+                try {
+                    outstandingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warning("Interrupted while waiting for " + outstanding + " inserts, finishing " + epoch + " anyway");
+                    break;
+                }
+            }
+        }
+
+        next.finishGeneration(epoch);
+    }
+
+    /**
+     * Get the store inserts are written to
+     *
+     * @return
+     */
+    public GraphStore getNext() {
+        return next;
+    }
+
+    /**
+     * Get the amount of inserts waiting for a writer
+     *
+     * @return
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Get the amount of inserts stored
+     *
+     * @return
+     */
+    public long getStored() {
+        return stored.get();
+    }
+
+    /**
+     * Get the time callers spent waiting for room in the queue
+     *
+     * @return the time in nanoseconds
+     */
+    public long getBlockedTime() {
+        return blocked.get();
+    }
+
+    /**
+     * Queue an insert, blocking while the queue is full
+     *
+     * @param insert
+     */
+    private void enqueue(Runnable insert) {
+        synchronized (outstandingLock) {
+            outstanding++;
+        }
+
+        if (queue.offer(insert)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            queue.put(insert);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for room in the queue, storing on the calling thread");
+            run(insert);
+        } finally {
+            blocked.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Store queued inserts until the thread is interrupted
+     */
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                run(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Store one insert and count it as done, whether it failed or not
+     *
+     * @param insert
+     */
+    private void run(Runnable insert) {
+        try {
+            insert.run();
+            stored.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to store graph data", e);
+        } finally {
+            synchronized (outstandingLock) {
+                if (--outstanding == 0) {
+                    outstandingLock.notifyAll();
+                }
+            }
+        }
+    }
+
+}
@@ -120,6 +120,33 @@ public class DecodedRequest {
         return result.toString();
     }
 
+    /**
+     * Create a shallow copy of the request
+     *
+     * @return
+     */
+    public DecodedRequest copy() {
+        DecodedRequest copy = new DecodedRequest();
+        copy.timestamp = timestamp;
+        copy.revision = revision;
+        copy.isPing = isPing;
+        copy.pluginName = pluginName;
+        copy.serverId = serverId;
+        copy.countryCode = countryCode;
+        copy.serverVersion = serverVersion;
+        copy.pluginVersion = pluginVersion;
+        copy.playersOnline = playersOnline;
+        copy.osname = osname;
+        copy.osversion = osversion;
+        copy.osarch = osarch;
+        copy.javaName = javaName;
+        copy.javaVersion = javaVersion;
+        copy.cores = cores;
+        copy.authMode = authMode;
+        copy.customData = customData;
+        return copy;
+    }
+
     /**
      * Converts the request to JSON
      *
@@ -0,0 +1,416 @@
+package org.mcstats.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Single pass reader for the form-urlencoded bodies sent by legacy (pre MCStats/R7) clients.
+ *
+ * The body is read into a reusable buffer and walked once. Keys are percent-decoded in place and matched against
+ * {@link Key} without creating a string; only the values of known keys and custom data entries (keys starting with
+ * "C" that have an integer value) are materialized. Pairs are split the same way {@code String.split} split them
+ * before, so malformed pairs are skipped exactly as they were.
+ *
+ * A reader keeps its buffers between calls to {@link #read(InputStream)} and is not thread safe.
+ */
+public class FormRequestReader {
+
+    /**
+     * The keys that are captured
+     */
+    public enum Key {
+
+        GUID("guid"),
+        SERVER("server"),
+        VERSION("version"),
+        PING("ping"),
+        REVISION("revision"),
+        PLAYERS("players"),
+        OSNAME("osname"),
+        OSARCH("osarch"),
+        OSVERSION("osversion"),
+        JAVA_VERSION("java_version"),
+        CORES("cores"),
+        ONLINE_MODE("online-mode");
+
+        /**
+         * The key as it appears in the request
+         */
+        private final char[] name;
+
+        Key(String name) {
+            this.name = name.toCharArray();
+        }
+
+    }
+
+    private static final Key[] KEYS = Key.values();
+
+    /**
+     * The raw body
+     */
+    private byte[] body = new byte[4096];
+    private int bodyLength;
+
+    /**
+     * Percent-decoded bytes of the current key or value
+     */
+    private byte[] decoded = new byte[256];
+    private int decodedLength;
+
+    /**
+     * Scratch space the decoded bytes are converted to
+     */
+    private char[] chars = new char[256];
+    private int length;
+
+    /**
+     * Captured value for each {@link Key}, indexed by ordinal. Null means the key was not present.
+     */
+    private final String[] values = new String[KEYS.length];
+
+    /**
+     * Custom data entries
+     */
+    private String[] customKeys = new String[32];
+    private int[] customValues = new int[32];
+    private int customCount;
+
+    /**
+     * Reads a request body from the given stream
+     *
+     * @param input
+     * @throws IOException if the stream could not be read or a pair contains an invalid percent escape
+     */
+    public void read(InputStream input) throws IOException {
+        reset();
+        readBody(input);
+
+        int start = 0;
+
+        while (start <= bodyLength) {
+            int end = indexOf((byte) '&', start, bodyLength);
+
+            if (end == -1) {
+                end = bodyLength;
+            }
+
+            readPair(start, end);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Check if a key was present in the body
+     *
+     * @param key
+     * @return
+     */
+    public boolean has(Key key) {
+        return values[key.ordinal()] != null;
+    }
+
+    /**
+     * Get the decoded value for a key
+     *
+     * @param key
+     * @return the value or null if the key was not present
+     */
+    public String get(Key key) {
+        return values[key.ordinal()];
+    }
+
+    /**
+     * Get the number of custom data entries
+     *
+     * @return
+     */
+    public int getCustomDataCount() {
+        return customCount;
+    }
+
+    /**
+     * Get the decoded key of a custom data entry, e.g. C~~Graph~~Column or CustomColumn
+     *
+     * @param index
+     * @return
+     */
+    public String getCustomDataKey(int index) {
+        return customKeys[index];
+    }
+
+    /**
+     * Get the value of a custom data entry
+     *
+     * @param index
+     * @return
+     */
+    public int getCustomDataValue(int index) {
+        return customValues[index];
+    }
+
+    /**
+     * Reset the reader so it can be used for another body
+     */
+    private void reset() {
+        bodyLength = 0;
+        Arrays.fill(values, null);
+        Arrays.fill(customKeys, 0, customCount, null);
+        customCount = 0;
+    }
+
+    /**
+     * Read the whole body into the buffer. Line breaks are dropped, the same as reading it line by line did.
+     *
+     * @param input
+     * @throws IOException
+     */
+    private void readBody(InputStream input) throws IOException {
+        int read;
+
+        while ((read = input.read(body, bodyLength, body.length - bodyLength)) != -1) {
+            int end = bodyLength + read;
+
+            for (int i = bodyLength; i < end; i++) {
+                byte b = body[i];
+
+                if (b != '\r' && b != '\n') {
+                    body[bodyLength++] = b;
+                }
+            }
+
+            if (bodyLength == body.length) {
+                body = Arrays.copyOf(body, body.length * 2);
+            }
+        }
+    }
+
+    /**
+     * Read a key/value pair from the body
+     *
+     * @param start
+     * @param end
+     * @throws IOException
+     */
+    private void readPair(int start, int end) throws IOException {
+        // trailing separators are ignored, then there must be exactly one left
+        while (end > start && body[end - 1] == '=') {
+            end--;
+        }
+
+        int separator = indexOf((byte) '=', start, end);
+
+        if (separator == -1 || indexOf((byte) '=', separator + 1, end) != -1) {
+            return;
+        }
+
+        decode(start, separator);
+        Key key = matchKey();
+
+        if (key != null) {
+            decode(separator + 1, end);
+            values[key.ordinal()] = new String(chars, 0, length);
+        } else if (length > 0 && chars[0] == 'C') {
+            String customKey = new String(chars, 0, length);
+            decode(separator + 1, end);
+
+            if (parseInt()) {
+                if (customCount == customKeys.length) {
+                    customKeys = Arrays.copyOf(customKeys, customCount * 2);
+                    customValues = Arrays.copyOf(customValues, customCount * 2);
+                }
+
+                customKeys[customCount] = customKey;
+                customValues[customCount] = parsedInt;
+                customCount++;
+            }
+        } else {
+            // still validate the value, an invalid escape fails the whole request
+            decode(separator + 1, end);
+        }
+    }
+
+    /**
+     * Percent-decode part of the body into the scratch buffer, as {@link java.net.URLDecoder} would using UTF-8
+     *
+     * @param start
+     * @param end
+     * @throws IOException if there is an invalid escape
+     */
+    private void decode(int start, int end) throws IOException {
+        if (decoded.length < end - start) {
+            decoded = new byte[end - start];
+        }
+
+        decodedLength = 0;
+
+        for (int i = start; i < end; i++) {
+            byte b = body[i];
+
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                if (i + 2 >= end) {
+                    throw new IOException("Incomplete trailing escape (%) pattern");
+                }
+
+                int high = Character.digit(body[i + 1], 16);
+                int low = Character.digit(body[i + 2], 16);
+
+                if (high < 0 || low < 0) {
+                    throw new IOException("Illegal hex characters in escape (%) pattern");
+                }
+
+                b = (byte) ((high << 4) | low);
+                i += 2;
+            }
+
+            decoded[decodedLength++] = b;
+        }
+
+        decodeUtf8();
+    }
+
+    /**
+     * Convert the decoded bytes to chars. Malformed input is replaced by U+FFFD.
+     */
+    private void decodeUtf8() {
+        if (chars.length < decodedLength) {
+            chars = new char[Math.max(decodedLength, chars.length * 2)];
+        }
+
+        length = 0;
+
+        for (int i = 0; i < decodedLength; i++) {
+            int first = decoded[i] & 0xFF;
+
+            if (first < 0x80) {
+                chars[length++] = (char) first;
+                continue;
+            }
+
+            int remaining;
+            int codePoint;
+
+            if ((first & 0xE0) == 0xC0) {
+                remaining = 1;
+                codePoint = first & 0x1F;
+            } else if ((first & 0xF0) == 0xE0) {
+                remaining = 2;
+                codePoint = first & 0x0F;
+            } else if ((first & 0xF8) == 0xF0) {
+                remaining = 3;
+                codePoint = first & 0x07;
+            } else {
+                chars[length++] = '\uFFFD';
+                continue;
+            }
+
+            boolean valid = true;
+
+            while (remaining-- > 0) {
+                if (i + 1 >= decodedLength || (decoded[i + 1] & 0xC0) != 0x80) {
+                    valid = false;
+                    break;
+                }
+
+                codePoint = (codePoint << 6) | (decoded[++i] & 0x3F);
+            }
+
+            if (valid && Character.isBmpCodePoint(codePoint)) {
+                chars[length++] = (char) codePoint;
+            } else if (valid && Character.isValidCodePoint(codePoint)) {
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[length++] = '\uFFFD';
+            }
+        }
+    }
+
+    /**
+     * The result of the last {@link #parseInt()}
+     */
+    private int parsedInt;
+
+    /**
+     * Parse the scratch buffer as an int, accepting the same input as {@link Integer#parseInt(String)}
+     *
+     * @return false if it is not an int
+     */
+    private boolean parseInt() {
+        if (length == 0) {
+            return false;
+        }
+
+        boolean negative = chars[0] == '-';
+        int i = (negative || chars[0] == '+') ? 1 : 0;
+
+        if (i == length) {
+            return false;
+        }
+
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+
+        for (; i < length; i++) {
+            int digit = Character.digit(chars[i], 10);
+
+            // accumulate negatively so Integer.MIN_VALUE can be represented
+            if (digit < 0 || result < (limit + digit) / 10) {
+                return false;
+            }
+
+            result = result * 10 - digit;
+        }
+
+        parsedInt = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Find the captured key matching the scratch buffer
+     *
+     * @return
+     */
+    private Key matchKey() {
+        for (Key key : KEYS) {
+            char[] name = key.name;
+
+            if (name.length != length) {
+                continue;
+            }
+
+            int i = 0;
+            while (i < length && chars[i] == name[i]) {
+                i++;
+            }
+
+            if (i == length) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Find a byte in the body
+     *
+     * @param b
+     * @param start
+     * @param end
+     * @return the index or -1 if it was not found
+     */
+    private int indexOf(byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (body[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+}
@@ -0,0 +1,1066 @@
+package org.mcstats.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Single pass JSON reader for the bodies sent by modern (MCStats/R7+) clients.
+ *
+ * The reader tokenizes the raw byte stream directly and only materializes the top level values listed in {@link Key}
+ * plus the contents of the "graphs" object; everything else is skipped without being decoded. Values are exposed
+ * with the same string conversions the json-simple based decoder relied on, and the grammar is exactly as lenient as
+ * json-simple's parser, so decoding stays identical.
+ *
+ * A reader keeps its buffers between calls to {@link #read(InputStream)} and is not thread safe.
+ */
+public class JsonRequestReader {
+
+    /**
+     * The top level keys that are captured
+     */
+    public enum Key {
+
+        GUID("guid"),
+        SERVER_VERSION("server_version"),
+        PLUGIN_VERSION("plugin_version"),
+        PING("ping"),
+        PLAYERS_ONLINE("players_online"),
+        OSNAME("osname"),
+        OSARCH("osarch"),
+        OSVERSION("osversion"),
+        JAVA_VERSION("java_version"),
+        CORES("cores"),
+        AUTH_MODE("auth_mode");
+
+        /**
+         * The key as it appears in the request
+         */
+        private final char[] name;
+
+        Key(String name) {
+            this.name = name.toCharArray();
+        }
+
+    }
+
+    /**
+     * The type of a captured value
+     */
+    public enum ValueType {
+        STRING, INTEGER, DECIMAL, TRUE, FALSE, NULL, OBJECT, ARRAY
+    }
+
+    /**
+     * Key used for the custom data object
+     */
+    private static final char[] GRAPHS_KEY = "graphs".toCharArray();
+
+    private static final Key[] KEYS = Key.values();
+
+    /**
+     * Marker for the end of the stream
+     */
+    private static final int EOF = -1;
+
+    /**
+     * The stream being read
+     */
+    private InputStream input;
+
+    /**
+     * Raw bytes read from the stream
+     */
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    /**
+     * Scratch space for decoded strings and numbers
+     */
+    private char[] chars = new char[256];
+    private int length;
+
+    /**
+     * Captured value for each {@link Key}, indexed by ordinal. A null type means the key was not present.
+     */
+    private final ValueType[] types = new ValueType[KEYS.length];
+    private final String[] strings = new String[KEYS.length];
+    private final long[] integers = new long[KEYS.length];
+
+    /**
+     * If the "graphs" key was present and what it contained
+     */
+    private ValueType graphsType;
+
+    /**
+     * If a graph in the custom data was something other than an object or null
+     */
+    private boolean invalidGraph;
+
+    /**
+     * Graphs in the custom data. Columns for graph i are stored in [graphColumnStart[i], graphColumnStart[i + 1])
+     */
+    private String[] graphNames = new String[8];
+    private boolean[] graphNull = new boolean[8];
+    private int[] graphColumnStart = new int[9];
+    private int graphCount;
+
+    /**
+     * Columns in the custom data
+     */
+    private String[] columnNames = new String[32];
+    private long[] columnValues = new long[32];
+    private int columnCount;
+
+    /**
+     * Reads a request body from the given stream. The stream is read until the end of the top level object.
+     *
+     * @param input
+     * @return false if the body is empty or not valid JSON
+     * @throws IOException if the stream could not be read or the body was valid JSON of an unexpected shape
+     */
+    public boolean read(InputStream input) throws IOException {
+        reset();
+        this.input = input;
+
+        try {
+            int c = skipWhitespace();
+
+            if (c == EOF) {
+                return false;
+            }
+
+            if (c != '{') {
+                // Syntax errors are reported as an invalid request, any other value is not an object
+                if (skipValue(null) == null) {
+                    return false;
+                }
+
+                throw new IOException("Request body is not a JSON object");
+            }
+
+            position++;
+
+            if (!readRootObject()) {
+                return false;
+            }
+
+            // Nothing but whitespace may follow the object
+            return skipWhitespace() == EOF;
+        } finally {
+            this.input = null;
+        }
+    }
+
+    /**
+     * Check if a key was present in the body
+     *
+     * @param key
+     * @return
+     */
+    public boolean has(Key key) {
+        return types[key.ordinal()] != null;
+    }
+
+    /**
+     * Get the type of the value for a key
+     *
+     * @param key
+     * @return the type or null if the key was not present
+     */
+    public ValueType type(Key key) {
+        return types[key.ordinal()];
+    }
+
+    /**
+     * Get the value for a key converted to a string, in the same way {@code String.valueOf(Object)} would convert
+     * a json-simple value. A missing key or JSON null gives "null".
+     *
+     * @param key
+     * @return
+     */
+    public String toString(Key key) {
+        int index = key.ordinal();
+
+        if (types[index] == null) {
+            return "null";
+        }
+
+        return strings[index];
+    }
+
+    /**
+     * Get the value for a key which must be a string, mirroring a {@code (String)} cast of a json-simple value
+     *
+     * @param key
+     * @return the string or null if the key was missing or null
+     * @throws IOException if the value is not a string
+     */
+    public String getString(Key key) throws IOException {
+        ValueType type = types[key.ordinal()];
+
+        if (type == null || type == ValueType.NULL) {
+            return null;
+        }
+
+        if (type != ValueType.STRING) {
+            throw new IOException("Expected a string for \"" + key.name().toLowerCase() + "\"");
+        }
+
+        return strings[key.ordinal()];
+    }
+
+    /**
+     * Attempt to parse a long from the value for a key
+     *
+     * @param key
+     * @return 0 if the key is missing or null and -1 if the value is not a whole number
+     */
+    public long tryParseLong(Key key) {
+        int index = key.ordinal();
+        return tryParseLong(types[index], integers[index], strings[index]);
+    }
+
+    /**
+     * Get the type of the "graphs" value
+     *
+     * @return the type or null if the key was not present
+     */
+    public ValueType getGraphsType() {
+        return graphsType;
+    }
+
+    /**
+     * Check if the custom data is usable: "graphs" is an object and each graph in it is an object or null
+     *
+     * @return
+     */
+    public boolean isGraphsValid() {
+        return graphsType == ValueType.OBJECT && !invalidGraph;
+    }
+
+    /**
+     * Get the number of graphs in the custom data
+     *
+     * @return
+     */
+    public int getGraphCount() {
+        return graphCount;
+    }
+
+    /**
+     * Get the name of a graph in the custom data
+     *
+     * @param graph
+     * @return
+     */
+    public String getGraphName(int graph) {
+        return graphNames[graph];
+    }
+
+    /**
+     * Check if a graph in the custom data was null instead of an object
+     *
+     * @param graph
+     * @return
+     */
+    public boolean isGraphNull(int graph) {
+        return graphNull[graph];
+    }
+
+    /**
+     * Get the index of the first column for a graph
+     *
+     * @param graph
+     * @return
+     */
+    public int getColumnStart(int graph) {
+        return graphColumnStart[graph];
+    }
+
+    /**
+     * Get the index after the last column for a graph
+     *
+     * @param graph
+     * @return
+     */
+    public int getColumnEnd(int graph) {
+        return graphColumnStart[graph + 1];
+    }
+
+    /**
+     * Get the name of a custom data column
+     *
+     * @param column
+     * @return
+     */
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * Get the value of a custom data column, parsed the same as {@link #tryParseLong(Key)}
+     *
+     * @param column
+     * @return
+     */
+    public long getColumnValue(int column) {
+        return columnValues[column];
+    }
+
+    /**
+     * Reset the reader so it can be used for another body
+     */
+    private void reset() {
+        position = 0;
+        limit = 0;
+        Arrays.fill(types, null);
+        Arrays.fill(strings, null);
+        graphsType = null;
+        clearGraphs();
+    }
+
+    /**
+     * Clear any captured custom data
+     */
+    private void clearGraphs() {
+        invalidGraph = false;
+        Arrays.fill(graphNames, 0, graphCount, null);
+        Arrays.fill(columnNames, 0, columnCount, null);
+        graphCount = 0;
+        columnCount = 0;
+    }
+
+    /**
+     * Read the members of the root object, after the opening brace
+     *
+     * @return false on a syntax error
+     * @throws IOException
+     */
+    private boolean readRootObject() throws IOException {
+        while (true) {
+            int c = skipSeparators(',');
+
+            if (c == '}') {
+                position++;
+                return true;
+            }
+
+            if (c != '"' || !readString()) {
+                return false;
+            }
+
+            skipSeparators(':');
+
+            Key key = matchKey();
+
+            if (key != null) {
+                if (!readValue(key)) {
+                    return false;
+                }
+            } else if (matches(GRAPHS_KEY)) {
+                if (!readGraphs()) {
+                    return false;
+                }
+            } else if (skipValue(null) == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read the value for a captured key
+     *
+     * @param key
+     * @return false on a syntax error
+     * @throws IOException
+     */
+    private boolean readValue(Key key) throws IOException {
+        int index = key.ordinal();
+        int c = skipWhitespace();
+        ValueType type;
+
+        if (c == '{' || c == '[') {
+            StringBuilder raw = new StringBuilder();
+            type = skipValue(raw);
+            strings[index] = raw.toString();
+        } else {
+            type = skipValue(null);
+
+            if (type == ValueType.INTEGER) {
+                if (!parseInteger()) {
+                    return false;
+                }
+
+                integers[index] = parsedInteger;
+                strings[index] = Long.toString(parsedInteger);
+            } else if (type == ValueType.DECIMAL) {
+                strings[index] = Double.toString(Double.parseDouble(new String(chars, 0, length)));
+            } else if (type == ValueType.STRING) {
+                strings[index] = new String(chars, 0, length);
+            } else if (type != null) {
+                strings[index] = scalarToString(type);
+            }
+        }
+
+        types[index] = type;
+        return type != null;
+    }
+
+    /**
+     * Read the "graphs" object into the custom data buffers
+     *
+     * @return false on a syntax error
+     * @throws IOException
+     */
+    private boolean readGraphs() throws IOException {
+        // a duplicate key replaces the earlier value
+        clearGraphs();
+
+        if (skipWhitespace() != '{') {
+            graphsType = skipValue(null);
+            return graphsType != null;
+        }
+
+        graphsType = ValueType.OBJECT;
+        position++;
+
+        while (true) {
+            int c = skipSeparators(',');
+
+            if (c == '}') {
+                position++;
+                return true;
+            }
+
+            if (c != '"' || !readString()) {
+                return false;
+            }
+
+            String graphName = new String(chars, 0, length);
+            skipSeparators(':');
+
+            if (!readColumns(graphName)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read the columns object of one graph
+     *
+     * @param graphName
+     * @return false on a syntax error
+     * @throws IOException
+     */
+    private boolean readColumns(String graphName) throws IOException {
+        boolean isNull = false;
+
+        if (skipWhitespace() != '{') {
+            ValueType type = skipValue(null);
+
+            if (type == null) {
+                return false;
+            }
+
+            // null is only a problem if the graph is used, anything else makes the custom data unusable
+            if (type != ValueType.NULL) {
+                invalidGraph = true;
+                return true;
+            }
+
+            isNull = true;
+        } else {
+            position++;
+        }
+
+        if (graphCount == graphNames.length) {
+            graphNames = Arrays.copyOf(graphNames, graphCount * 2);
+            graphNull = Arrays.copyOf(graphNull, graphCount * 2);
+            graphColumnStart = Arrays.copyOf(graphColumnStart, graphCount * 2 + 1);
+        }
+
+        int graph = graphCount++;
+        graphNames[graph] = graphName;
+        graphNull[graph] = isNull;
+        graphColumnStart[graph] = columnCount;
+        graphColumnStart[graph + 1] = columnCount;
+
+        if (isNull) {
+            return true;
+        }
+
+        while (true) {
+            int c = skipSeparators(',');
+
+            if (c == '}') {
+                position++;
+                return true;
+            }
+
+            if (c != '"' || !readString()) {
+                return false;
+            }
+
+            String columnName = new String(chars, 0, length);
+            long value;
+
+            c = skipSeparators(':');
+
+            if (c == '{' || c == '[') {
+                if (skipValue(null) == null) {
+                    return false;
+                }
+
+                value = -1L;
+            } else {
+                ValueType type = skipValue(null);
+
+                if (type == null) {
+                    return false;
+                }
+
+                if (type == ValueType.INTEGER) {
+                    if (!parseInteger()) {
+                        return false;
+                    }
+
+                    value = parsedInteger;
+                } else {
+                    value = tryParseLong(type, 0, type == ValueType.STRING ? new String(chars, 0, length) : null);
+                }
+            }
+
+            if (columnCount == columnNames.length) {
+                columnNames = Arrays.copyOf(columnNames, columnCount * 2);
+                columnValues = Arrays.copyOf(columnValues, columnCount * 2);
+            }
+
+            columnNames[columnCount] = columnName;
+            columnValues[columnCount] = value;
+            columnCount++;
+            graphColumnStart[graph + 1] = columnCount;
+        }
+    }
+
+    /**
+     * Skip over the next value. Scalars are left in the scratch buffer: the decoded contents of a string or the
+     * literal text of a number.
+     *
+     * @param raw if not null the compact text of the value is appended to it
+     * @return the type of the value that was skipped or null on a syntax error
+     * @throws IOException
+     */
+    private ValueType skipValue(StringBuilder raw) throws IOException {
+        int c = skipWhitespace();
+
+        switch (c) {
+            case '"':
+                if (!readString()) {
+                    return null;
+                }
+
+                if (raw != null) {
+                    raw.append('"').append(chars, 0, length).append('"');
+                }
+
+                return ValueType.STRING;
+
+            case '{':
+            case '[':
+                return skipContainer(raw);
+
+            case 't':
+                return literal("true", ValueType.TRUE, raw);
+
+            case 'f':
+                return literal("false", ValueType.FALSE, raw);
+
+            case 'n':
+                return literal("null", ValueType.NULL, raw);
+
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    ValueType type = readNumber();
+
+                    if (raw != null && type != null) {
+                        raw.append(chars, 0, length);
+                    }
+
+                    return type;
+                }
+
+                return null;
+        }
+    }
+
+    /**
+     * Skip an object or array
+     *
+     * @param raw
+     * @return
+     * @throws IOException
+     */
+    private ValueType skipContainer(StringBuilder raw) throws IOException {
+        boolean object = next() == '{';
+        char close = object ? '}' : ']';
+        boolean first = true;
+
+        if (raw != null) {
+            raw.append(object ? '{' : '[');
+        }
+
+        while (true) {
+            int c = skipSeparators(',');
+
+            if (c == close) {
+                position++;
+
+                if (raw != null) {
+                    raw.append(close);
+                }
+
+                return object ? ValueType.OBJECT : ValueType.ARRAY;
+            }
+
+            if (raw != null && !first) {
+                raw.append(',');
+            }
+
+            first = false;
+
+            if (object) {
+                if (c != '"' || !readString()) {
+                    return null;
+                }
+
+                if (raw != null) {
+                    raw.append('"').append(chars, 0, length).append("\":");
+                }
+
+                skipSeparators(':');
+            }
+
+            if (skipValue(raw) == null) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Read a literal (true, false, null)
+     *
+     * @param literal
+     * @param type
+     * @param raw
+     * @return
+     * @throws IOException
+     */
+    private ValueType literal(String literal, ValueType type, StringBuilder raw) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                return null;
+            }
+        }
+
+        if (raw != null) {
+            raw.append(literal);
+        }
+
+        return type;
+    }
+
+    /**
+     * Read a number into the scratch buffer
+     *
+     * @return INTEGER, DECIMAL or null if the number is malformed
+     * @throws IOException
+     */
+    private ValueType readNumber() throws IOException {
+        length = 0;
+        boolean decimal = false;
+
+        if (peek() == '-') {
+            append(next());
+        }
+
+        if (!readDigits()) {
+            return null;
+        }
+
+        if (peek() == '.') {
+            append(next());
+            decimal = true;
+
+            if (!readDigits()) {
+                return null;
+            }
+        }
+
+        int c = peek();
+
+        if (c == 'e' || c == 'E') {
+            append(next());
+            decimal = true;
+            c = peek();
+
+            if (c == '+' || c == '-') {
+                append(next());
+            }
+
+            if (!readDigits()) {
+                return null;
+            }
+        }
+
+        return decimal ? ValueType.DECIMAL : ValueType.INTEGER;
+    }
+
+    /**
+     * Read one or more digits into the scratch buffer
+     *
+     * @return false if there was not at least one digit
+     * @throws IOException
+     */
+    private boolean readDigits() throws IOException {
+        int start = length;
+        int c;
+
+        while ((c = peek()) >= '0' && c <= '9') {
+            append(next());
+        }
+
+        return length > start;
+    }
+
+    /**
+     * The result of the last {@link #parseInteger()}
+     */
+    private long parsedInteger;
+
+    /**
+     * Parse the integer in the scratch buffer
+     *
+     * @return false if it does not fit in a long
+     */
+    private boolean parseInteger() {
+        boolean negative = chars[0] == '-';
+        long result = 0;
+
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            int digit = chars[i] - '0';
+
+            // accumulate negatively so Long.MIN_VALUE can be represented
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                return false;
+            }
+
+            result = result * 10 - digit;
+        }
+
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                return false;
+            }
+
+            result = -result;
+        }
+
+        parsedInteger = result;
+        return true;
+    }
+
+    /**
+     * Read a string, after the opening quote, decoding it into the scratch buffer
+     *
+     * @return false if the string is malformed or unterminated
+     * @throws IOException
+     */
+    private boolean readString() throws IOException {
+        position++;
+        length = 0;
+
+        while (true) {
+            int c = next();
+
+            if (c == '"') {
+                return true;
+            } else if (c == EOF) {
+                return false;
+            } else if (c == '\\') {
+                c = next();
+
+                switch (c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        append((char) c);
+                        break;
+                    case 'b':
+                        append('\b');
+                        break;
+                    case 'f':
+                        append('\f');
+                        break;
+                    case 'n':
+                        append('\n');
+                        break;
+                    case 'r':
+                        append('\r');
+                        break;
+                    case 't':
+                        append('\t');
+                        break;
+                    case 'u':
+                        int value = 0;
+
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(next(), 16);
+
+                            if (digit < 0) {
+                                return false;
+                            }
+
+                            value = (value << 4) | digit;
+                        }
+
+                        append((char) value);
+                        break;
+                    default:
+                        return false;
+                }
+            } else if (c < 0x80) {
+                append((char) c);
+            } else {
+                decodeUtf8(c);
+            }
+        }
+    }
+
+    /**
+     * Decode a multi-byte UTF-8 sequence, given its first byte. Malformed input is replaced by U+FFFD.
+     *
+     * @param first
+     * @throws IOException
+     */
+    private void decodeUtf8(int first) throws IOException {
+        int remaining;
+        int codePoint;
+
+        if ((first & 0xE0) == 0xC0) {
+            remaining = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            remaining = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            remaining = 3;
+            codePoint = first & 0x07;
+        } else {
+            append('\uFFFD');
+            return;
+        }
+
+        while (remaining-- > 0) {
+            int c = peek();
+
+            if ((c & 0xC0) != 0x80) {
+                append('\uFFFD');
+                return;
+            }
+
+            position++;
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+
+        if (Character.isBmpCodePoint(codePoint)) {
+            append((char) codePoint);
+        } else if (Character.isValidCodePoint(codePoint)) {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        } else {
+            append('\uFFFD');
+        }
+    }
+
+    /**
+     * Find the captured key matching the scratch buffer
+     *
+     * @return
+     */
+    private Key matchKey() {
+        for (Key key : KEYS) {
+            if (matches(key.name)) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if the scratch buffer matches the given name
+     *
+     * @param name
+     * @return
+     */
+    private boolean matches(char[] name) {
+        if (name.length != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Append a char to the scratch buffer
+     *
+     * @param c
+     */
+    private void append(int c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+
+        chars[length++] = (char) c;
+    }
+
+    /**
+     * Skip whitespace
+     *
+     * @return the next byte, which is not consumed
+     * @throws IOException
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                position++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Skip whitespace and any number of the given separator. Like json-simple, separators are not enforced: missing
+     * or repeated commas and colons are accepted.
+     *
+     * @param separator
+     * @return the next byte, which is not consumed
+     * @throws IOException
+     */
+    private int skipSeparators(char separator) throws IOException {
+        int c;
+
+        while ((c = skipWhitespace()) == separator) {
+            position++;
+        }
+
+        return c;
+    }
+
+    /**
+     * Look at the next byte without consuming it
+     *
+     * @return
+     * @throws IOException
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+
+        return buffer[position] & 0xFF;
+    }
+
+    /**
+     * Consume the next byte
+     *
+     * @return
+     * @throws IOException
+     */
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Refill the byte buffer
+     *
+     * @return false at the end of the stream
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        int read;
+
+        do {
+            read = input.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Convert a literal to its string form
+     *
+     * @param type
+     * @return
+     */
+    private static String scalarToString(ValueType type) {
+        switch (type) {
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            default:
+                return "null";
+        }
+    }
+
+    /**
+     * Attempt to parse a long from a value
+     *
+     * @param type
+     * @param integer
+     * @param string
+     * @return
+     */
+    private static long tryParseLong(ValueType type, long integer, String string) {
+        if (type == null || type == ValueType.NULL) {
+            return 0;
+        }
+
+        if (type == ValueType.INTEGER) {
+            return integer;
+        }
+
+        if (type != ValueType.STRING) {
+            return -1L;
+        }
+
+        try {
+            return Long.parseLong(string);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+}
@@ -2,19 +2,23 @@ package org.mcstats.decoder;
 
 import org.eclipse.jetty.server.Request;
 import org.mcstats.MCStats;
+import org.mcstats.decoder.FormRequestReader.Key;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
-import org.mcstats.util.URLUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 public class LegacyRequestDecoder implements RequestDecoder {
 
+    /**
+     * Readers are reused by each request thread so their buffers are only allocated once
+     */
+    private static final ThreadLocal<FormRequestReader> readers = ThreadLocal.withInitial(FormRequestReader::new);
+
     private MCStats mcstats;
 
     public LegacyRequestDecoder(MCStats mcstats) {
@@ -25,30 +29,40 @@ public class LegacyRequestDecoder implements RequestDecoder {
      * {@inheritDoc}
      */
     public DecodedRequest decode(Plugin plugin, Request request) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), "UTF-8"));
-        String content = "";
+        InputStream input = request.getInputStream();
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            content += line;
+        try {
+            return decode(plugin, input);
+        } finally {
+            input.close();
         }
-        reader.close();
+    }
 
-        Map<String, String> post = processPostRequest(content);
+    /**
+     * Decode a request body
+     *
+     * @param plugin
+     * @param input
+     * @return
+     * @throws IOException
+     */
+    DecodedRequest decode(Plugin plugin, InputStream input) throws IOException {
+        FormRequestReader post = readers.get();
+        post.read(input);
 
-        if (!post.containsKey("guid")) {
+        if (!post.has(Key.GUID)) {
             return null;
         }
 
         DecodedRequest decoded = new DecodedRequest();
-        decoded.serverId = post.get("guid");
-        decoded.serverVersion = post.get("server");
-        decoded.pluginVersion = post.get("version");
-        decoded.isPing = post.containsKey("ping");
+        decoded.serverId = post.get(Key.GUID);
+        decoded.serverVersion = post.get(Key.SERVER);
+        decoded.pluginVersion = post.get(Key.VERSION);
+        decoded.isPing = post.has(Key.PING);
 
         try {
-            decoded.revision = post.containsKey("revision") ? Integer.parseInt(post.get("revision")) : 4;
-            decoded.playersOnline = post.containsKey("players") ? Integer.parseInt(post.get("players")) : 0;
+            decoded.revision = post.has(Key.REVISION) ? Integer.parseInt(post.get(Key.REVISION)) : 4;
+            decoded.playersOnline = post.has(Key.PLAYERS) ? Integer.parseInt(post.get(Key.PLAYERS)) : 0;
         } catch (NumberFormatException e) {
             return null;
         }
@@ -62,11 +76,11 @@ public class LegacyRequestDecoder implements RequestDecoder {
         }
 
         if (decoded.revision >= 6) {
-            decoded.osname = post.get("osname");
-            decoded.osarch = post.get("osarch");
-            decoded.osversion = post.get("osversion");
+            decoded.osname = post.get(Key.OSNAME);
+            decoded.osarch = post.get(Key.OSARCH);
+            decoded.osversion = post.get(Key.OSVERSION);
             decoded.javaName = "";
-            decoded.javaVersion = post.get("java_version");
+            decoded.javaVersion = post.get(Key.JAVA_VERSION);
             if (decoded.osname == null) {
                 decoded.osname = "Unknown";
                 decoded.osversion = "Unknown";
@@ -82,8 +96,8 @@ public class LegacyRequestDecoder implements RequestDecoder {
             }
             if (decoded.osname != null) {
                 try {
-                    decoded.cores = Integer.parseInt(post.get("cores"));
-                    decoded.authMode = Boolean.parseBoolean(post.get("online-mode")) ? 1 : 0;
+                    decoded.cores = Integer.parseInt(post.get(Key.CORES));
+                    decoded.authMode = Boolean.parseBoolean(post.get(Key.ONLINE_MODE)) ? 1 : 0;
                 } catch (Exception e) {
                     decoded.cores = 0;
                     decoded.authMode = -1;
@@ -100,22 +114,6 @@ public class LegacyRequestDecoder implements RequestDecoder {
         return decoded;
     }
 
-    private Map<String, String> processPostRequest(String content) {
-        Map store = new HashMap();
-        String arr[] = content.split("&");
-
-        for (String entry : arr) {
-            String data[] = entry.split("=");
-            if (data.length == 2) {
-                String key = URLUtils.decode(data[0]);
-                String value = URLUtils.decode(data[1]);
-                store.put(key, value);
-            }
-        }
-
-        return store;
-    }
-
     /**
      * Extract the custom data from the post request
      *
@@ -123,35 +121,42 @@ public class LegacyRequestDecoder implements RequestDecoder {
      * @param post
      * @return
      */
-    private Map<Column, Long> extractCustomData(Plugin plugin, Map<String, String> post) {
+    private Map<Column, Long> extractCustomData(Plugin plugin, FormRequestReader post) {
         Map<Column, Long> customData = new HashMap<>();
 
-        for (Map.Entry<String, String> entry : post.entrySet()) {
-            String postKey = entry.getKey();
-            String postValue = entry.getValue();
+        for (int i = 0; i < post.getCustomDataCount(); i++) {
+            String postKey = post.getCustomDataKey(i);
 
-            if (!postKey.startsWith("C")) {
+            // C~~graph~~column, splitting the same as split("~~") would
+            int graphStart = postKey.indexOf("~~");
+            int columnStart = graphStart == -1 ? -1 : postKey.indexOf("~~", graphStart + 2);
+
+            if (columnStart == -1) {
                 continue;
             }
 
-            long value;
-            try {
-                value = Integer.parseInt(postValue);
-            } catch (NumberFormatException e) {
+            int columnEnd = postKey.indexOf("~~", columnStart + 2);
+            String columnName;
+
+            if (columnEnd == -1) {
+                columnName = postKey.substring(columnStart + 2);
+            } else if (isOnlySeparators(postKey, columnEnd)) {
+                // trailing empty strings are dropped by split
+                columnName = postKey.substring(columnStart + 2, columnEnd);
+            } else {
                 continue;
             }
 
-            String graphData[] = postKey.split("~~");
+            if (columnName.isEmpty()) {
+                continue;
+            }
 
-            if (graphData.length == 3) {
-                String graphName = graphData[1];
-                String columnName = graphData[2];
-                Graph graph = mcstats.loadGraph(plugin, graphName);
-                if (graph != null && graph.getActive() != 0) {
-                    org.mcstats.model.Column column = graph.loadColumn(columnName);
-                    if (column != null) {
-                        customData.put(column, value);
-                    }
+            String graphName = postKey.substring(graphStart + 2, columnStart);
+            Graph graph = loadGraph(plugin, graphName);
+            if (graph != null && graph.getActive() != 0) {
+                Column column = loadColumn(graph, columnName);
+                if (column != null) {
+                    customData.put(column, (long) post.getCustomDataValue(i));
                 }
             }
         }
@@ -166,31 +171,19 @@ public class LegacyRequestDecoder implements RequestDecoder {
      * @param post
      * @return
      */
-    private Map<Column, Long> extractCustomDataLegacy(Plugin plugin, Map<String, String> post) {
+    private Map<Column, Long> extractCustomDataLegacy(Plugin plugin, FormRequestReader post) {
         Map<Column, Long> customData = new HashMap<>();
-        Graph graph = mcstats.loadGraph(plugin, "Default");
-
-        for (Map.Entry<String, String> entry : post.entrySet()) {
-            String postKey = entry.getKey();
-            String postValue = entry.getValue();
-
-            if (!postKey.startsWith("C")) {
-                continue;
-            }
+        Graph graph = loadGraph(plugin, "Default");
 
-            long value;
-            try {
-                value = Integer.parseInt(postValue);
-            } catch (NumberFormatException e) {
-                continue;
-            }
+        for (int i = 0; i < post.getCustomDataCount(); i++) {
+            String postKey = post.getCustomDataKey(i);
 
             if (postKey.startsWith("Custom")) {
-                String columnName = postKey.substring(6).replaceAll("_", " ");
+                String columnName = postKey.substring(6).replace('_', ' ');
                 if (graph != null) {
-                    Column column = graph.loadColumn(columnName);
+                    Column column = loadColumn(graph, columnName);
                     if (column != null) {
-                        customData.put(column, value);
+                        customData.put(column, (long) post.getCustomDataValue(i));
                     }
                 }
             }
@@ -199,4 +192,43 @@ public class LegacyRequestDecoder implements RequestDecoder {
         return customData;
     }
 
+    /**
+     * Check if the rest of a string is only made of "~~" separators
+     *
+     * @param value
+     * @param from
+     * @return
+     */
+    private boolean isOnlySeparators(String value, int from) {
+        for (int i = from; i < value.length(); i++) {
+            if (value.charAt(i) != '~') {
+                return false;
+            }
+        }
+
+        return (value.length() - from) % 2 == 0;
+    }
+
+    /**
+     * Load the graph custom data is being sent for
+     *
+     * @param plugin
+     * @param name
+     * @return
+     */
+    Graph loadGraph(Plugin plugin, String name) {
+        return mcstats.loadGraph(plugin, name);
+    }
+
+    /**
+     * Load the column custom data is being sent for
+     *
+     * @param graph
+     * @param name
+     * @return
+     */
+    Column loadColumn(Graph graph, String name) {
+        return graph.loadColumn(name);
+    }
+
 }
@@ -2,16 +2,14 @@ package org.mcstats.decoder;
 
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.server.Request;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
 import org.mcstats.MCStats;
+import org.mcstats.decoder.JsonRequestReader.Key;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
@@ -20,6 +18,11 @@ public class ModernRequestDecoder implements RequestDecoder {
 
     private final Logger logger = Logger.getLogger(ModernRequestDecoder.class);
 
+    /**
+     * Readers are reused by each request thread so their buffers are only allocated once
+     */
+    private static final ThreadLocal<JsonRequestReader> readers = ThreadLocal.withInitial(JsonRequestReader::new);
+
     private MCStats mcstats;
 
     public ModernRequestDecoder(MCStats mcstats) {
@@ -31,60 +34,65 @@ public class ModernRequestDecoder implements RequestDecoder {
      */
     public DecodedRequest decode(Plugin plugin, Request request) throws IOException {
         String encoding = request.getHeader("Content-Encoding");
-        String content = "";
 
-        BufferedReader reader;
+        InputStream input;
         if (encoding != null && encoding.equals("gzip")) {
-            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(request.getInputStream()), "UTF-8"));
+            input = new GZIPInputStream(request.getInputStream());
         } else {
-            reader = new BufferedReader(new InputStreamReader(request.getInputStream(), "UTF-8"));
+            input = request.getInputStream();
         }
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            content += line;
+        try {
+            return decode(plugin, input, request.getHeader("User-Agent"));
+        } finally {
+            input.close();
         }
+    }
 
-        reader.close();
-        JSONObject post = (JSONObject) JSONValue.parse(content);
+    /**
+     * Decode a request body
+     *
+     * @param plugin
+     * @param input the (decompressed) request body
+     * @param userAgent
+     * @return
+     * @throws IOException
+     */
+    DecodedRequest decode(Plugin plugin, InputStream input, String userAgent) throws IOException {
+        JsonRequestReader post = readers.get();
 
-        if (post == null || !post.containsKey("guid")) {
+        if (!post.read(input) || !post.has(Key.GUID)) {
             return null;
         }
 
         DecodedRequest decoded = new DecodedRequest();
-        decoded.serverId = String.valueOf(post.get("guid"));
-        decoded.serverVersion = (new StringBuilder()).append("").append(post.get("server_version")).toString();
-        decoded.pluginVersion = (new StringBuilder()).append("").append(post.get("plugin_version")).toString();
-        decoded.isPing = post.containsKey("ping");
-        decoded.revision = Integer.parseInt(request.getHeader("User-Agent").substring("MCStats/".length()));
-        decoded.playersOnline = Long.valueOf(tryParseLong(post.get("players_online"))).intValue();
-
-        if (post.containsKey("ping")) {
-            String pingVal = post.get("ping").toString();
+        decoded.serverId = post.toString(Key.GUID);
+        decoded.serverVersion = post.toString(Key.SERVER_VERSION);
+        decoded.pluginVersion = post.toString(Key.PLUGIN_VERSION);
+        decoded.revision = Integer.parseInt(userAgent.substring("MCStats/".length()));
+        decoded.playersOnline = (int) post.tryParseLong(Key.PLAYERS_ONLINE);
+
+        if (post.has(Key.PING)) {
+            String pingVal = requireNonNull(post, Key.PING);
             decoded.isPing = pingVal.equals("1") || Boolean.parseBoolean(pingVal);
         } else {
             decoded.isPing = false;
         }
 
-        if (decoded.serverId == null || decoded.serverVersion == null || decoded.pluginVersion == null) {
-            return null;
-        }
-
         if (decoded.playersOnline < 0 || decoded.playersOnline > 2000) {
             decoded.playersOnline = 0;
         }
 
         if (decoded.revision >= 6) {
-            decoded.osname = (String) post.get("osname");
-            decoded.osarch = (String) post.get("osarch");
-            decoded.osversion = (new StringBuilder()).append("").append(post.get("osversion")).toString();
+            decoded.osname = post.getString(Key.OSNAME);
+            decoded.osarch = post.getString(Key.OSARCH);
+            decoded.osversion = post.toString(Key.OSVERSION);
             decoded.javaName = "";
-            decoded.javaVersion = (String) post.get("java_version");
-            decoded.cores = Long.valueOf(tryParseLong(post.get("cores"))).intValue();
+            decoded.javaVersion = post.getString(Key.JAVA_VERSION);
+            decoded.cores = (int) post.tryParseLong(Key.CORES);
 
-            if (post.containsKey("auth_mode")) {
-                String authMode = post.get("auth_mode").toString();
+            if (post.has(Key.AUTH_MODE)) {
+                String authMode = requireNonNull(post, Key.AUTH_MODE);
 
                 try {
                     decoded.authMode = Integer.parseInt(authMode);
@@ -115,36 +123,40 @@ public class ModernRequestDecoder implements RequestDecoder {
     }
 
     /**
-     * Extract custom data from a json post
+     * Extract custom data from the graphs in a request
      *
      * @param plugin
      * @param post
      * @return
+     * @throws IOException if the graphs are not made of json objects
      */
-    private Map<Column, Long> extractCustomData(Plugin plugin, JSONObject post) {
-        Map<Column, Long> customData = new HashMap();
-        if (!post.containsKey("graphs")) {
+    private Map<Column, Long> extractCustomData(Plugin plugin, JsonRequestReader post) throws IOException {
+        Map<Column, Long> customData = new HashMap<>();
+        if (post.getGraphsType() == null) {
             return customData;
         }
 
-        JSONObject graphs = (JSONObject) post.get("graphs");
+        if (!post.isGraphsValid()) {
+            throw new IOException("Malformed graphs in request");
+        }
+
+        for (int i = 0; i < post.getGraphCount(); i++) {
+            if (isRepeatedLater(post, i)) {
+                continue;
+            }
 
-        for (Object o : graphs.entrySet()) {
-            Map.Entry<String, JSONObject> entry = (Map.Entry<String, JSONObject>) o;
-            String graphName = entry.getKey();
-            JSONObject columns = entry.getValue();
-            Graph graph = mcstats.loadGraph(plugin, graphName);
+            Graph graph = loadGraph(plugin, post.getGraphName(i));
 
             if (graph != null && graph.getActive() != 0) {
-                for (Object o2 : columns.entrySet()) {
-                    Map.Entry<String, Long> entryColumn = (Map.Entry<String, Long>) o2;
+                if (post.isGraphNull(i)) {
+                    throw new IOException("Missing columns for graph \"" + post.getGraphName(i) + "\"");
+                }
 
-                    String columnName = entryColumn.getKey();
-                    long value = tryParseLong(entryColumn.getValue());
-                    org.mcstats.model.Column column = graph.loadColumn(columnName);
+                for (int j = post.getColumnStart(i); j < post.getColumnEnd(i); j++) {
+                    Column column = loadColumn(graph, post.getColumnName(j));
 
                     if (column != null) {
-                        customData.put(column, value);
+                        customData.put(column, post.getColumnValue(j));
                     }
                 }
             }
@@ -154,25 +166,60 @@ public class ModernRequestDecoder implements RequestDecoder {
     }
 
     /**
-     * Attempt to parse a long from an object
+     * Check if a graph appears again later in the custom data, in which case the later one replaces it
      *
-     * @param input
+     * @param post
+     * @param graph
      * @return
      */
-    private long tryParseLong(Object input) {
-        if (input == null) {
-            return 0;
+    private boolean isRepeatedLater(JsonRequestReader post, int graph) {
+        String name = post.getGraphName(graph);
+
+        for (int i = graph + 1; i < post.getGraphCount(); i++) {
+            if (name.equals(post.getGraphName(i))) {
+                return true;
+            }
         }
 
-        String value = input.toString();
-        long longValue = -1L;
+        return false;
+    }
 
-        try {
-            longValue = Long.parseLong(value);
-            return longValue;
-        } catch (NumberFormatException e) {
-            return -1L;
+    /**
+     * Load the graph custom data is being sent for
+     *
+     * @param plugin
+     * @param name
+     * @return
+     */
+    Graph loadGraph(Plugin plugin, String name) {
+        return mcstats.loadGraph(plugin, name);
+    }
+
+    /**
+     * Load the column custom data is being sent for
+     *
+     * @param graph
+     * @param name
+     * @return
+     */
+    Column loadColumn(Graph graph, String name) {
+        return graph.loadColumn(name);
+    }
+
+    /**
+     * Get the string form of a value that json-simple would have had to dereference
+     *
+     * @param post
+     * @param key
+     * @return
+     * @throws IOException if the value is null
+     */
+    private String requireNonNull(JsonRequestReader post, Key key) throws IOException {
+        if (post.type(key) == JsonRequestReader.ValueType.NULL) {
+            throw new IOException("Unexpected null for \"" + key.name().toLowerCase() + "\"");
         }
+
+        return post.toString(key);
     }
 
 }
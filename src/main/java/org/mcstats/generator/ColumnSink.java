@@ -0,0 +1,35 @@
+package org.mcstats.generator;
+
+import org.mcstats.model.Column;
+
+/**
+ * Receives the column values aggregators generate for a server
+ */
+public interface ColumnSink {
+
+    /**
+     * Add a value to a column
+     *
+     * @param column the column, ignored if null
+     * @param value
+     */
+    public void emit(Column column, long value);
+
+    /**
+     * Check if graphs and columns that do not exist yet may be created for this sink. Creating them waits on the
+     * database, so sinks filled while requests are handled only use ones that already exist.
+     *
+     * @return
+     */
+    public default boolean createsColumns() {
+        return true;
+    }
+
+    /**
+     * Called instead of {@link #emit} when a value was dropped because its graph or column does not exist yet and this
+     * sink does not create them
+     */
+    public default void missing() {
+    }
+
+}
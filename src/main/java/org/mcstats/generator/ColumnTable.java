@@ -0,0 +1,254 @@
+package org.mcstats.generator;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Generated graph data, stored column-wise: every column gets a dense slot and its count, sum, min and max are kept in
+ * parallel primitive arrays at that slot. Columns are found by id through an int keyed open addressing table, so
+ * emitting to a column that was already seen allocates nothing.
+ *
+ * Sums and counts are 64 bit. The min and max are the smallest and largest single value emitted to the column.
+ */
+public class ColumnTable implements ColumnSink {
+
+    /**
+     * Slot of each column, by column id
+     */
+    private final TIntIntHashMap slots = new TIntIntHashMap(64, 0.5f, Integer.MIN_VALUE, -1);
+
+    /**
+     * Columns and their data, by slot
+     */
+    private Column[] columns = new Column[16];
+    private long[] counts = new long[16];
+    private long[] sums = new long[16];
+    private long[] mins = new long[16];
+    private long[] maxes = new long[16];
+
+    /**
+     * The amount of slots used
+     */
+    private int size = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void emit(Column column, long value) {
+        if (column == null) {
+            return;
+        }
+
+        int slot = slots.get(column.getId());
+
+        if (slot == -1) {
+            put(column, 1, value, value, value);
+            return;
+        }
+
+        counts[slot]++;
+        sums[slot] += value;
+
+        if (value < mins[slot]) {
+            mins[slot] = value;
+        }
+
+        if (value > maxes[slot]) {
+            maxes[slot] = value;
+        }
+    }
+
+    /**
+     * Set the data of a column, replacing anything emitted to it so far
+     *
+     * @param column
+     * @param count
+     * @param sum
+     * @param min
+     * @param max
+     */
+    public void put(Column column, long count, long sum, long min, long max) {
+        int slot = slots.get(column.getId());
+
+        if (slot == -1) {
+            slot = add(column);
+        }
+
+        counts[slot] = count;
+        sums[slot] = sum;
+        mins[slot] = min;
+        maxes[slot] = max;
+    }
+
+    /**
+     * Add the data of another table to this one
+     *
+     * @param other
+     */
+    public void merge(ColumnTable other) {
+        for (int i = 0; i < other.size; i++) {
+            int slot = slots.get(other.columns[i].getId());
+
+            if (slot == -1) {
+                put(other.columns[i], other.counts[i], other.sums[i], other.mins[i], other.maxes[i]);
+                continue;
+            }
+
+            counts[slot] += other.counts[i];
+            sums[slot] += other.sums[i];
+            mins[slot] = Math.min(mins[slot], other.mins[i]);
+            maxes[slot] = Math.max(maxes[slot], other.maxes[i]);
+        }
+    }
+
+    /**
+     * Get the amount of columns
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the slot of a column
+     *
+     * @param column
+     * @return the slot, or -1 if nothing was emitted to the column
+     */
+    public int slotOf(Column column) {
+        return slots.get(column.getId());
+    }
+
+    /**
+     * Get the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public Column getColumn(int slot) {
+        return columns[slot];
+    }
+
+    /**
+     * Get the amount of values emitted to the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public long getCount(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Get the sum of the values emitted to the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public long getSum(int slot) {
+        return sums[slot];
+    }
+
+    /**
+     * Get the smallest value emitted to the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public long getMin(int slot) {
+        return mins[slot];
+    }
+
+    /**
+     * Get the largest value emitted to the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public long getMax(int slot) {
+        return maxes[slot];
+    }
+
+    /**
+     * Get the average of the values emitted to the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public long getAverage(int slot) {
+        return counts[slot] == 0 ? 0 : sums[slot] / counts[slot];
+    }
+
+    /**
+     * Group the slots by the graph their column is in
+     *
+     * @return the slots of each graph, in slot order
+     */
+    public Map<Graph, int[]> slotsByGraph() {
+        // count first so every graph gets an array of the right size
+        Map<Graph, int[]> remaining = new IdentityHashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            remaining.computeIfAbsent(columns[i].getGraph(), key -> new int[1])[0]++;
+        }
+
+        Map<Graph, int[]> grouped = new IdentityHashMap<>(remaining.size());
+
+        for (int i = 0; i < size; i++) {
+            Graph graph = columns[i].getGraph();
+            int[] left = remaining.get(graph);
+            int[] graphSlots = grouped.computeIfAbsent(graph, key -> new int[left[0]]);
+            graphSlots[graphSlots.length - left[0]--] = i;
+        }
+
+        return grouped;
+    }
+
+    /**
+     * Describe the data of the column at a slot
+     *
+     * @param slot
+     * @return
+     */
+    public String describe(int slot) {
+        return String.format("(sum=%d, count=%d, avg=%d, max=%d, min=%d)", sums[slot], counts[slot], getAverage(slot), maxes[slot], mins[slot]);
+    }
+
+    /**
+     * Remove every column
+     */
+    public void clear() {
+        slots.clear();
+        Arrays.fill(columns, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Give a column a slot
+     *
+     * @param column
+     * @return the slot
+     */
+    private int add(Column column) {
+        if (size == columns.length) {
+            int capacity = size * 2;
+            columns = Arrays.copyOf(columns, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxes = Arrays.copyOf(maxes, capacity);
+        }
+
+        int slot = size++;
+        columns[slot] = column;
+        slots.put(column.getId(), slot);
+        return slot;
+    }
+
+}
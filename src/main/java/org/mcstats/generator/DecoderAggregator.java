@@ -2,14 +2,14 @@ package org.mcstats.generator;
 
 import org.mcstats.model.Server;
 
-public class DecoderAggregator<T> extends ReflectionAggregator {
+public class DecoderAggregator extends ReflectionAggregator {
 
     /**
      * The value decoder
      */
-    private Decoder<T> decoder;
+    private Decoder decoder;
 
-    public interface Decoder<T> {
+    public interface Decoder {
 
         /**
          * Decode the given value into a string
@@ -17,35 +17,38 @@ public class DecoderAggregator<T> extends ReflectionAggregator {
          * @param value
          * @return
          */
-        public String decode(T value);
+        public String decode(long value);
 
     }
 
     /**
-     * DecoderAggregator that feeds the value of the field to the decoder and returns the column name that will be used
+     * DecoderAggregator that feeds the value of a numeric field to the decoder and returns the column name that will be
+     * used
      *
      * @param fieldName
      * @param graphName
      * @param decoder
      */
-    public DecoderAggregator(String fieldName, String graphName, Decoder<T> decoder) {
+    public DecoderAggregator(String fieldName, String graphName, Decoder decoder) {
         super(fieldName, graphName);
         this.decoder = decoder;
+
+        if (!attribute.isNumeric()) {
+            throw new UnsupportedOperationException("Only numeric fields can be decoded: " + fieldName);
+        }
     }
 
     @Override
     public String getColumnName(Server server) {
         try {
-            @SuppressWarnings({"unchecked"})
-            T value = (T) field.get(server);
-            return decoder.decode(value);
+            return decoder.decode(attribute.getLong(server, 0));
         } catch (Exception e) {
             return "Unknown";
         }
     }
 
     @Override
-    public long getColumnValue(Object fieldValue, String usingColumn) {
+    public long getColumnValue(Server server, String usingColumn) {
         return 1;
     }
 
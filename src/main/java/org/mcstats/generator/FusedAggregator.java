@@ -0,0 +1,443 @@
+package org.mcstats.generator;
+
+import org.mcstats.IntervalState;
+import org.mcstats.MCStats;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates the data of many {@link SimpleAggregator}s in one pass, walking the servers and each plugin's server plugins
+ * once and handing every server to every aggregator, instead of each aggregator walking all of them itself.
+ *
+ * Aggregators emit into a {@link ColumnTable} each, so a pass allocates next to nothing once every column has been
+ * seen. Given a fork/join pool, the servers and server plugins are split into chunks that are aggregated on the pool's
+ * workers, every worker into its own tables, which are merged once at the end and kept for the next pass. Without one
+ * everything is aggregated on the calling thread, reusing the tables of the previous pass.
+ *
+ * The time spent in each aggregator is sampled on every {@link #SAMPLE_INTERVAL}th server and scaled up, since timing
+ * every call would cost about as much as the calls themselves.
+ */
+public class FusedAggregator {
+
+    /**
+     * Every how many servers each aggregator is timed
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The most servers or server plugins aggregated by one task
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * The aggregators to generate
+     */
+    private final List<SimpleAggregator> aggregators = new ArrayList<>();
+
+    /**
+     * Index of each aggregator in {@link #aggregators}
+     */
+    private final Map<SimpleAggregator, Integer> indexes = new IdentityHashMap<>();
+
+    /**
+     * The pool to aggregate on, or null to aggregate on the calling thread
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The result of the last pass
+     */
+    private final Partial result;
+
+    /**
+     * Cleared partials the workers of the next pass aggregate into
+     */
+    private final Queue<Partial> spare = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param generators the generators to generate; anything that is not a {@link SimpleAggregator} or a merge of them
+     *                   is ignored
+     * @param pool the pool to aggregate on, or null to aggregate on the calling thread
+     */
+    public FusedAggregator(List<GraphGenerator> generators, ForkJoinPool pool) {
+        this.pool = pool;
+
+        for (GraphGenerator generator : generators) {
+            register(generator);
+        }
+
+        result = new Partial();
+    }
+
+    /**
+     * Check if a generator's data is generated by this pass
+     *
+     * @param generator
+     * @return
+     */
+    public boolean supports(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                if (!supports(merged)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return indexes.containsKey(generator);
+    }
+
+    /**
+     * Walk the interval once and generate the data of every aggregator for all servers and every recently updated plugin
+     *
+     * @param mcstats
+     * @param interval
+     */
+    public void aggregate(MCStats mcstats, IntervalState interval) {
+        List<Plugin> plugins = new ArrayList<>();
+
+        for (Plugin plugin : mcstats.getCachedPlugins()) {
+            if (plugin.recentlyUpdated()) {
+                plugins.add(plugin);
+            }
+        }
+
+        aggregate(mcstats, interval, mcstats.loadPlugin(-1), plugins);
+    }
+
+    /**
+     * Walk the interval once and generate the data of every aggregator for all servers and the given plugins
+     *
+     * @param mcstats
+     * @param interval
+     * @param allServers the plugin all servers are aggregated under
+     * @param plugins
+     */
+    public void aggregate(MCStats mcstats, IntervalState interval, Plugin allServers, Collection<Plugin> plugins) {
+        List<Chunk> chunks = new ArrayList<>();
+
+        // all servers first
+        addChunks(chunks, allServers, interval.getServers().toArray());
+
+        for (Plugin plugin : plugins) {
+            addChunks(chunks, plugin, interval.getServerPlugins(plugin).toArray());
+        }
+
+        result.clear();
+
+        if (pool == null) {
+            for (Chunk chunk : chunks) {
+                result.aggregate(mcstats, chunk);
+            }
+        } else {
+            Map<Thread, Partial> partials = new ConcurrentHashMap<>();
+            pool.invoke(new AggregateTask(mcstats, chunks, 0, chunks.size(), partials));
+
+            for (Partial partial : partials.values()) {
+                result.merge(partial);
+                partial.clear();
+                spare.add(partial);
+            }
+        }
+    }
+
+    /**
+     * Get the data generated for a generator by the last pass. The table is reused by the next pass.
+     *
+     * @param generator a generator this pass {@link #supports(GraphGenerator)}
+     * @return
+     */
+    public ColumnTable get(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            ColumnTable merged = new ColumnTable();
+
+            for (GraphGenerator child : ((MergeAggregator) generator).getGenerators()) {
+                merged.merge(get(child));
+            }
+
+            return merged;
+        }
+
+        return result.data.get(indexes.get(generator));
+    }
+
+    /**
+     * Get the estimated time a generator took in the last pass, summed over all threads
+     *
+     * @param generator a generator this pass {@link #supports(GraphGenerator)}
+     * @return the estimated time, in nanoseconds
+     */
+    public long getTime(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            long time = 0;
+
+            for (GraphGenerator child : ((MergeAggregator) generator).getGenerators()) {
+                time += getTime(child);
+            }
+
+            return time;
+        }
+
+        if (result.sampled == 0) {
+            return 0;
+        }
+
+        return result.sampledTime[indexes.get(generator)] * result.visited / result.sampled;
+    }
+
+    /**
+     * Get the amount of servers and server plugins walked in the last pass
+     *
+     * @return
+     */
+    public long getVisited() {
+        return result.visited;
+    }
+
+    /**
+     * Split servers or server plugins into chunks
+     *
+     * @param chunks
+     * @param plugin
+     * @param items
+     */
+    private void addChunks(List<Chunk> chunks, Plugin plugin, Object[] items) {
+        for (int from = 0; from < items.length; from += CHUNK_SIZE) {
+            chunks.add(new Chunk(plugin, items, from, Math.min(items.length, from + CHUNK_SIZE)));
+        }
+    }
+
+    /**
+     * Add a generator and everything it merges
+     *
+     * @param generator
+     */
+    private void register(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                register(merged);
+            }
+        } else if (generator instanceof SimpleAggregator && !indexes.containsKey(generator)) {
+            indexes.put((SimpleAggregator) generator, aggregators.size());
+            aggregators.add((SimpleAggregator) generator);
+        }
+    }
+
+    /**
+     * A range of servers or server plugins aggregated under one plugin
+     */
+    private static class Chunk {
+
+        private final Plugin plugin;
+
+        /**
+         * Servers when aggregating all servers, otherwise server plugins
+         */
+        private final Object[] items;
+
+        private final int from;
+        private final int to;
+
+        private Chunk(Plugin plugin, Object[] items, int from, int to) {
+            this.plugin = plugin;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+    /**
+     * Data generated from some of the chunks
+     */
+    private class Partial {
+
+        /**
+         * Generated data per aggregator
+         */
+        private final List<ColumnTable> data = new ArrayList<>(aggregators.size());
+
+        /**
+         * Sampled time per aggregator, in nanoseconds
+         */
+        private final long[] sampledTime = new long[aggregators.size()];
+
+        /**
+         * Servers and server plugins walked, and how many of them were timed
+         */
+        private long visited = 0;
+        private long sampled = 0;
+
+        private Partial() {
+            for (int i = 0; i < aggregators.size(); i++) {
+                data.add(new ColumnTable());
+            }
+        }
+
+        /**
+         * Forget everything aggregated so far, keeping the tables' capacity
+         */
+        private void clear() {
+            for (ColumnTable table : data) {
+                table.clear();
+            }
+
+            Arrays.fill(sampledTime, 0);
+            visited = 0;
+            sampled = 0;
+        }
+
+        /**
+         * Hand every server in a chunk to every aggregator
+         *
+         * @param mcstats
+         * @param chunk
+         */
+        private void aggregate(MCStats mcstats, Chunk chunk) {
+            for (int i = chunk.from; i < chunk.to; i++) {
+                Object item = chunk.items[i];
+                Server server;
+
+                if (item instanceof ServerPlugin) {
+                    ServerPlugin serverPlugin = (ServerPlugin) item;
+
+                    if (!serverPlugin.recentlyUpdated()) {
+                        continue;
+                    }
+
+                    server = serverPlugin.getServer();
+                } else {
+                    server = (Server) item;
+
+                    if (!server.recentlySentData()) {
+                        continue;
+                    }
+                }
+
+                visit(mcstats, chunk.plugin, server);
+            }
+        }
+
+        /**
+         * Hand a server to every aggregator
+         *
+         * @param mcstats
+         * @param plugin
+         * @param server
+         */
+        private void visit(MCStats mcstats, Plugin plugin, Server server) {
+            boolean sample = (visited++ % SAMPLE_INTERVAL) == 0;
+
+            if (sample) {
+                sampled++;
+            }
+
+            for (int i = 0; i < aggregators.size(); i++) {
+                long start = sample ? System.nanoTime() : 0;
+
+                aggregators.get(i).emit(mcstats, plugin, server, data.get(i));
+
+                if (sample) {
+                    sampledTime[i] += System.nanoTime() - start;
+                }
+            }
+        }
+
+        /**
+         * Merge data generated from other chunks into this one
+         *
+         * @param other
+         */
+        private void merge(Partial other) {
+            for (int i = 0; i < aggregators.size(); i++) {
+                data.get(i).merge(other.data.get(i));
+                sampledTime[i] += other.sampledTime[i];
+            }
+
+            visited += other.visited;
+            sampled += other.sampled;
+        }
+
+    }
+
+    /**
+     * Aggregates a range of chunks, splitting it in half until a single chunk is left, which is aggregated into the
+     * partial of the worker running it
+     */
+    private class AggregateTask extends RecursiveAction {
+
+        private final MCStats mcstats;
+
+        private final List<Chunk> chunks;
+
+        private final int from;
+        private final int to;
+
+        /**
+         * The partial of every worker that aggregated a chunk in this pass
+         */
+        private final Map<Thread, Partial> partials;
+
+        private AggregateTask(MCStats mcstats, List<Chunk> chunks, int from, int to, Map<Thread, Partial> partials) {
+            this.mcstats = mcstats;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.partials = partials;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    partial().aggregate(mcstats, chunks.get(from));
+                }
+
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new AggregateTask(mcstats, chunks, from, middle, partials), new AggregateTask(mcstats, chunks, middle, to, partials));
+        }
+
+        /**
+         * Get the partial of the current worker, taking a spare one the first time it aggregates in this pass. Only the
+         * worker itself adds its partial, so no two workers can end up sharing one.
+         *
+         * @return
+         */
+        private Partial partial() {
+            Thread thread = Thread.currentThread();
+            Partial partial = partials.get(thread);
+
+            if (partial == null) {
+                partial = spare.poll();
+
+                if (partial == null) {
+                    partial = new Partial();
+                }
+
+                partials.put(thread, partial);
+            }
+
+            return partial;
+        }
+
+    }
+
+}
@@ -1,9 +1,7 @@
 package org.mcstats.generator;
 
+import org.mcstats.IntervalState;
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
-
-import java.util.Map;
 
 public interface GraphGenerator {
 
@@ -11,8 +9,9 @@ public interface GraphGenerator {
      * Generate graph data
      *
      * @param mcstats
+     * @param interval the interval to generate the data from
      * @return the generated data
      */
-    public Map<Column, GeneratedData> generate(MCStats mcstats);
+    public ColumnTable generate(MCStats mcstats, IntervalState interval);
 
 }
@@ -1,14 +1,9 @@
 package org.mcstats.generator;
 
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
-import org.mcstats.util.Tuple;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class IncrementAggregator extends SimpleAggregator {
 
@@ -46,19 +41,16 @@ public class IncrementAggregator extends SimpleAggregator {
      * {@inheritDoc}
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
-
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         try {
-            Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(columnName);
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
 
-            res.add(new Tuple<>(column, 1L));
+            if (graph != null) {
+                emitColumn(sink, graph, columnName, 1);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
-
-        return res;
     }
 
     @Override
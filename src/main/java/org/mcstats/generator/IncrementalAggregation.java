@@ -0,0 +1,974 @@
+package org.mcstats.generator;
+
+import org.mcstats.MCStats;
+import org.mcstats.model.Column;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Keeps running totals of what {@link SimpleAggregator}s would generate, updated as requests are applied, so their
+ * graphs can be read out of the totals instead of calling every aggregator for every server at the end of the interval.
+ *
+ * The values each server and server plugin last contributed are remembered by the server's GUID, as the column and
+ * value given to each aggregator in primitive arrays, so a server that is loaded again is not counted twice. When a
+ * server is updated its values are computed again into a reused buffer and only the columns whose value changed are
+ * touched, e.g. a server moving from game version A to B takes one off A and adds one to B. Servers that are evicted
+ * from the server cache are taken out right away, and servers and server plugins that stopped sending data within the
+ * last 30 minutes are taken out of the totals when they are read.
+ *
+ * Values are only emitted to graphs and columns that already exist, so handling a request never waits on creating
+ * them in the database. An aggregator that emitted to a column that does not exist yet is
+ * {@link #isComplete(GraphGenerator, Totals) incomplete} for that interval and has to be generated by scanning, which
+ * creates the column for the next one.
+ *
+ * An aggregator's values for a plugin are assumed to only change when that plugin's server plugin changes or when the
+ * aggregator's values for all servers change. Aggregators that change state when asked for their values opt out with
+ * {@link SimpleAggregator#isIncremental()} and are always generated by scanning.
+ */
+public class IncrementalAggregation {
+
+    /**
+     * How long a server or server plugin is counted after it last sent data, in seconds
+     */
+    private static final int WINDOW = 1800;
+
+    /**
+     * The MCStats object
+     */
+    private final MCStats mcstats;
+
+    /**
+     * The aggregators kept up to date
+     */
+    private final List<SimpleAggregator> aggregators = new ArrayList<>();
+
+    /**
+     * Index of each aggregator in {@link #aggregators}
+     */
+    private final Map<SimpleAggregator, Integer> indexes = new IdentityHashMap<>();
+
+    /**
+     * The buffer each thread computes values into
+     */
+    private final ThreadLocal<Values> buffers = ThreadLocal.withInitial(Values::new);
+
+    /**
+     * Totals requests are currently applied to
+     */
+    private volatile Totals current;
+
+    /**
+     * @param mcstats
+     * @param generators the generators to keep up to date; anything that is not a {@link SimpleAggregator} or a merge of
+     *                   them is ignored
+     */
+    public IncrementalAggregation(MCStats mcstats, List<GraphGenerator> generators) {
+        this.mcstats = mcstats;
+
+        for (GraphGenerator generator : generators) {
+            register(generator);
+        }
+
+        current = new Totals();
+    }
+
+    /**
+     * Check if a generator's data can be read out of the totals
+     *
+     * @param generator
+     * @return
+     */
+    public boolean supports(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                if (!supports(merged)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return indexes.containsKey(generator);
+    }
+
+    /**
+     * Check if a set of totals has all of a generator's data, i.e. none of its values were dropped because their
+     * column did not exist yet
+     *
+     * @param generator a generator this aggregation {@link #supports(GraphGenerator)}
+     * @param totals
+     * @return
+     */
+    public boolean isComplete(GraphGenerator generator, Totals totals) {
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                if (!isComplete(merged, totals)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return !totals.incomplete.contains(indexes.get(generator));
+    }
+
+    /**
+     * Get the totals requests are currently applied to
+     *
+     * @return
+     */
+    public Totals getTotals() {
+        return current;
+    }
+
+    /**
+     * Start applying requests to empty totals and return the previous ones
+     *
+     * @return
+     */
+    public Totals freeze() {
+        Totals frozen = current;
+        current = new Totals();
+        return frozen;
+    }
+
+    /**
+     * Apply a server after a request updated it. Only one thread may update a given server at a time.
+     *
+     * @param server
+     * @param updated the server plugin the request was for
+     */
+    public void update(Server server, ServerPlugin updated) {
+        current.update(server, updated);
+    }
+
+    /**
+     * Take a server that was evicted from the server cache out of the totals
+     *
+     * @param guid
+     */
+    public void evict(String guid) {
+        current.evict(guid);
+    }
+
+    /**
+     * Add servers that were loaded without going through requests, e.g. restored from a snapshot
+     *
+     * @param servers
+     */
+    public void seed(Collection<Server> servers) {
+        Totals totals = current;
+
+        for (Server server : servers) {
+            if (server.recentlySentData()) {
+                totals.update(server, null);
+            }
+        }
+    }
+
+    /**
+     * Read a generator's data out of a set of totals, the same way {@link GraphGenerator#generate} would generate it
+     *
+     * @param generator a generator this aggregation {@link #supports(GraphGenerator)}
+     * @param totals
+     * @return
+     */
+    public ColumnTable generate(GraphGenerator generator, Totals totals) {
+        ColumnTable data = new ColumnTable();
+
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                data.merge(generate(merged, totals));
+            }
+
+            return data;
+        }
+
+        int index = indexes.get(generator);
+        totals.refresh(index);
+
+        // the scan only aggregates plugins that were updated in the last 30 minutes
+        totals.tables[index].copyTo(data, column -> {
+            Plugin plugin = column.getPlugin();
+            return plugin == null || plugin.getId() == -1 || plugin.recentlyUpdated();
+        });
+
+        return data;
+    }
+
+    /**
+     * Compare generated data column by column
+     *
+     * @param expected
+     * @param actual
+     * @return a description of every mismatched column
+     */
+    public static List<String> diff(ColumnTable expected, ColumnTable actual) {
+        List<String> mismatches = new ArrayList<>();
+
+        for (int slot = 0; slot < expected.size(); slot++) {
+            Column column = expected.getColumn(slot);
+            int other = actual.slotOf(column);
+
+            if (other == -1) {
+                mismatches.add(column + ": missing, expected " + expected.describe(slot));
+            } else if (actual.getCount(other) != expected.getCount(slot) || actual.getSum(other) != expected.getSum(slot)
+                    || actual.getMin(other) != expected.getMin(slot) || actual.getMax(other) != expected.getMax(slot)) {
+                mismatches.add(column + ": " + actual.describe(other) + ", expected " + expected.describe(slot));
+            }
+        }
+
+        for (int slot = 0; slot < actual.size(); slot++) {
+            if (expected.slotOf(actual.getColumn(slot)) == -1) {
+                mismatches.add(actual.getColumn(slot) + ": unexpected " + actual.describe(slot));
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * Add a generator and everything it merges
+     *
+     * @param generator
+     */
+    private void register(GraphGenerator generator) {
+        if (generator instanceof MergeAggregator) {
+            for (GraphGenerator merged : ((MergeAggregator) generator).getGenerators()) {
+                register(merged);
+            }
+        } else if (generator instanceof SimpleAggregator && ((SimpleAggregator) generator).isIncremental()) {
+            SimpleAggregator aggregator = (SimpleAggregator) generator;
+
+            if (!indexes.containsKey(aggregator)) {
+                indexes.put(aggregator, aggregators.size());
+                aggregators.add(aggregator);
+            }
+        }
+    }
+
+    /**
+     * Running totals for one interval
+     */
+    public class Totals {
+
+        /**
+         * Per aggregator, the totals of each column
+         */
+        private final ColumnTotals[] tables = new ColumnTotals[aggregators.size()];
+
+        /**
+         * What each server contributed to the totals, by its GUID
+         */
+        private final Map<String, ServerContribution> servers = new ConcurrentHashMap<>();
+
+        /**
+         * Indexes of the aggregators that emitted to a graph or column that did not exist yet
+         */
+        private final Set<Integer> incomplete = ConcurrentHashMap.newKeySet();
+
+        private Totals() {
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new ColumnTotals();
+            }
+        }
+
+        /**
+         * Take servers and server plugins that have not sent data in the last 30 minutes out of the totals
+         */
+        public void expire() {
+            int cutoff = (int) (System.currentTimeMillis() / 1000L) - WINDOW;
+
+            for (Map.Entry<String, ServerContribution> entry : servers.entrySet()) {
+                ServerContribution contribution = entry.getValue();
+
+                synchronized (contribution) {
+                    if (contribution.time <= cutoff) {
+                        remove(contribution);
+                        servers.remove(entry.getKey(), contribution);
+                        continue;
+                    }
+
+                    for (Iterator<Contribution> iterator = contribution.plugins.values().iterator(); iterator.hasNext(); ) {
+                        Contribution pluginContribution = iterator.next();
+
+                        if (pluginContribution.time <= cutoff) {
+                            retract(pluginContribution);
+                            iterator.remove();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Get the amount of servers counted
+         *
+         * @return
+         */
+        public int countServers() {
+            return servers.size();
+        }
+
+        /**
+         * Get the amount of server plugins counted
+         *
+         * @return
+         */
+        public int countServerPlugins() {
+            int count = 0;
+
+            for (ServerContribution contribution : servers.values()) {
+                synchronized (contribution) {
+                    count += contribution.plugins.size();
+                }
+            }
+
+            return count;
+        }
+
+        /**
+         * Compute a server's values again and apply the difference
+         *
+         * @param server
+         * @param updated the server plugin the request was for, or null to compute every server plugin again
+         */
+        private void update(Server server, ServerPlugin updated) {
+            while (true) {
+                ServerContribution contribution = servers.get(server.getGUID());
+
+                if (contribution == null) {
+                    contribution = servers.computeIfAbsent(server.getGUID(), key -> new ServerContribution());
+                }
+
+                synchronized (contribution) {
+                    // evicted or expired while it was looked up, so it has to be added again
+                    if (contribution.removed) {
+                        continue;
+                    }
+
+                    update(server, updated, contribution);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Compute a server's values again and apply the difference to what it contributed
+         *
+         * @param server
+         * @param updated
+         * @param contribution
+         */
+        private void update(Server server, ServerPlugin updated, ServerContribution contribution) {
+            Plugin allServers = mcstats.loadPlugin(-1);
+            Values values = buffers.get();
+            boolean[] changed = values.changed;
+
+            for (int i = 0; i < tables.length; i++) {
+                changed[i] = apply(i, contribution, emit(i, allServers, server, values));
+            }
+
+            for (ServerPlugin serverPlugin : server.getPlugins().values()) {
+                if (updated == null) {
+                    if (serverPlugin.recentlyUpdated()) {
+                        updateServerPlugin(contribution, serverPlugin, values, null);
+                    }
+                } else if (serverPlugin == updated) {
+                    updateServerPlugin(contribution, serverPlugin, values, null);
+                } else if (contribution.plugins.containsKey(serverPlugin.getPlugin())) {
+                    // the server's other plugins only change where what it gives all servers changed
+                    updateServerPlugin(contribution, serverPlugin, values, changed);
+                }
+            }
+
+            contribution.time = server.getLastSentData();
+        }
+
+        /**
+         * Compute a server plugin's values again and apply the difference
+         *
+         * @param serverContribution
+         * @param serverPlugin
+         * @param values
+         * @param only the aggregators to compute again, or null for all of them
+         */
+        private void updateServerPlugin(ServerContribution serverContribution, ServerPlugin serverPlugin, Values values, boolean[] only) {
+            Plugin plugin = serverPlugin.getPlugin();
+            Contribution contribution = serverContribution.plugins.get(plugin);
+
+            if (contribution == null) {
+                contribution = new Contribution();
+                serverContribution.plugins.put(plugin, contribution);
+            }
+
+            for (int i = 0; i < tables.length; i++) {
+                if (only == null || only[i]) {
+                    apply(i, contribution, emit(i, plugin, serverPlugin.getServer(), values));
+                }
+            }
+
+            contribution.time = serverPlugin.getUpdated();
+        }
+
+        /**
+         * Take a server out of the totals
+         *
+         * @param guid
+         */
+        private void evict(String guid) {
+            ServerContribution contribution = servers.remove(guid);
+
+            if (contribution != null) {
+                synchronized (contribution) {
+                    remove(contribution);
+                }
+            }
+        }
+
+        /**
+         * Take everything a server and its plugins gave out of the totals. The caller holds the contribution's lock and
+         * takes it out of {@link #servers}.
+         *
+         * @param contribution
+         */
+        private void remove(ServerContribution contribution) {
+            retract(contribution);
+
+            for (Contribution pluginContribution : contribution.plugins.values()) {
+                retract(pluginContribution);
+            }
+
+            contribution.plugins.clear();
+            contribution.removed = true;
+        }
+
+        /**
+         * Get one aggregator's values for a server, leaving out columns that do not exist yet
+         *
+         * @param index
+         * @param plugin
+         * @param server
+         * @param values the buffer to fill
+         * @return the filled buffer
+         */
+        private Values emit(int index, Plugin plugin, Server server, Values values) {
+            values.size = 0;
+            values.missing = false;
+            aggregators.get(index).emit(mcstats, plugin, server, values);
+
+            if (values.missing) {
+                incomplete.add(index);
+            }
+
+            ColumnTotals table = tables[index];
+
+            for (int i = 0; i < values.size; i++) {
+                values.slots[i] = table.slotOf(values.columns[i]);
+            }
+
+            return values;
+        }
+
+        /**
+         * Replace what a contribution gave one aggregator's totals, only touching the columns whose value changed
+         *
+         * @param index
+         * @param contribution
+         * @param values
+         * @return true if the values changed
+         */
+        private boolean apply(int index, Contribution contribution, Values values) {
+            ColumnTotals table = tables[index];
+            int start = contribution.start(index);
+            int previous = contribution.ends[index] - start;
+            boolean changed = false;
+
+            for (int i = 0; i < Math.max(previous, values.size); i++) {
+                boolean hadValue = i < previous;
+                boolean hasValue = i < values.size;
+
+                if (hadValue && hasValue && contribution.slots[start + i] == values.slots[i] && contribution.values[start + i] == values.values[i]) {
+                    continue;
+                }
+
+                if (hadValue) {
+                    table.remove(contribution.slots[start + i], contribution.values[start + i]);
+                }
+
+                if (hasValue) {
+                    table.add(values.slots[i], values.values[i]);
+                }
+
+                changed = true;
+            }
+
+            if (changed) {
+                contribution.set(index, values);
+            }
+
+            return changed;
+        }
+
+        /**
+         * Take everything a contribution gave out of the totals
+         *
+         * @param contribution
+         */
+        private void retract(Contribution contribution) {
+            for (int i = 0; i < tables.length; i++) {
+                for (int entry = contribution.start(i); entry < contribution.ends[i]; entry++) {
+                    tables[i].remove(contribution.slots[entry], contribution.values[entry]);
+                }
+            }
+
+            Arrays.fill(contribution.ends, 0);
+        }
+
+        /**
+         * Find the smallest and largest value of the columns of one aggregator whose min or max may have been taken out,
+         * by going over what every server and server plugin currently gives it
+         *
+         * @param index
+         */
+        private void refresh(int index) {
+            ColumnTotals table = tables[index];
+
+            if (!table.stale) {
+                return;
+            }
+
+            table.stale = false;
+
+            int size = table.size();
+            long[] mins = new long[size];
+            long[] maxes = new long[size];
+            Arrays.fill(mins, Long.MAX_VALUE);
+            Arrays.fill(maxes, Long.MIN_VALUE);
+
+            for (ServerContribution contribution : servers.values()) {
+                synchronized (contribution) {
+                    contribution.fold(index, mins, maxes);
+
+                    for (Contribution pluginContribution : contribution.plugins.values()) {
+                        pluginContribution.fold(index, mins, maxes);
+                    }
+                }
+            }
+
+            table.refresh(mins, maxes);
+        }
+
+    }
+
+    /**
+     * The values a server or server plugin last gave each aggregator, as the slot of each column in the aggregator's
+     * {@link ColumnTotals} and the value given to it
+     */
+    private class Contribution {
+
+        /**
+         * Slots of the columns given to each aggregator, aggregator after aggregator
+         */
+        int[] slots = new int[aggregators.size()];
+
+        /**
+         * The value given to each of those columns
+         */
+        long[] values = new long[aggregators.size()];
+
+        /**
+         * Where each aggregator's entries end
+         */
+        final int[] ends = new int[aggregators.size()];
+
+        /**
+         * When the server or server plugin last sent data, in seconds
+         */
+        volatile int time;
+
+        /**
+         * Get where an aggregator's entries start
+         *
+         * @param index
+         * @return
+         */
+        int start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+
+        /**
+         * Replace an aggregator's entries
+         *
+         * @param index
+         * @param replacement
+         */
+        void set(int index, Values replacement) {
+            int start = start(index);
+            int end = ends[index];
+            int difference = replacement.size - (end - start);
+
+            if (difference != 0) {
+                int used = ends[ends.length - 1];
+
+                if (used + difference > slots.length) {
+                    int capacity = Math.max(used + difference, slots.length * 2);
+                    slots = Arrays.copyOf(slots, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+
+                System.arraycopy(slots, end, slots, end + difference, used - end);
+                System.arraycopy(values, end, values, end + difference, used - end);
+
+                for (int i = index; i < ends.length; i++) {
+                    ends[i] += difference;
+                }
+            }
+
+            System.arraycopy(replacement.slots, 0, slots, start, replacement.size);
+            System.arraycopy(replacement.values, 0, values, start, replacement.size);
+        }
+
+        /**
+         * Fold the values given to an aggregator into the smallest and largest value of each slot
+         *
+         * @param index
+         * @param mins
+         * @param maxes
+         */
+        void fold(int index, long[] mins, long[] maxes) {
+            for (int entry = start(index); entry < ends[index]; entry++) {
+                int slot = slots[entry];
+
+                // slots taken after the arrays were sized are left to the next refresh
+                if (slot < mins.length) {
+                    mins[slot] = Math.min(mins[slot], values[entry]);
+                    maxes[slot] = Math.max(maxes[slot], values[entry]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The values a server gave each aggregator for all servers, and what its plugins gave. Guarded by its own lock.
+     */
+    private class ServerContribution extends Contribution {
+
+        /**
+         * What the server gave each plugin
+         */
+        private final Map<Plugin, Contribution> plugins = new HashMap<>();
+
+        /**
+         * If the server was taken out of the totals, so whoever still holds the contribution adds it again
+         */
+        private boolean removed = false;
+
+    }
+
+    /**
+     * Collects an aggregator's values for a server, only taking columns that already exist. Every thread reuses its own.
+     */
+    private class Values implements ColumnSink {
+
+        private Column[] columns = new Column[4];
+
+        private int[] slots = new int[4];
+
+        private long[] values = new long[4];
+
+        private int size = 0;
+
+        /**
+         * If a value was dropped because its column does not exist yet
+         */
+        private boolean missing = false;
+
+        /**
+         * Which aggregators' values for all servers changed, so the server's plugins are computed again for them
+         */
+        private final boolean[] changed = new boolean[aggregators.size()];
+
+        @Override
+        public void emit(Column column, long value) {
+            if (column == null) {
+                return;
+            }
+
+            if (size == columns.length) {
+                columns = Arrays.copyOf(columns, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            columns[size] = column;
+            values[size] = value;
+            size++;
+        }
+
+        @Override
+        public boolean createsColumns() {
+            return false;
+        }
+
+        @Override
+        public void missing() {
+            missing = true;
+        }
+
+    }
+
+    /**
+     * The running count, sum, min and max of one aggregator's columns. Each column gets a slot the first time something
+     * is added to it, and its data lives at that slot in chunks of primitive arrays.
+     *
+     * Counts and sums are striped by thread and added up when they are read, so threads applying requests to the same
+     * column never write the same cell. The min and max only widen as values are added; a column whose smallest or
+     * largest value may have been taken out is marked stale and its min and max are found again when it is read.
+     */
+    private static class ColumnTotals {
+
+        /**
+         * Amount of stripes, must be a power of two
+         */
+        private static final int STRIPES = 8;
+
+        /**
+         * Slots per chunk, as a power of two
+         */
+        private static final int CHUNK_BITS = 8;
+
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        /**
+         * Slot of each column
+         */
+        private final Map<Column, Integer> slots = new ConcurrentHashMap<>();
+
+        /**
+         * The chunks of slots, replaced by a larger array when it is full
+         */
+        private volatile Chunk[] chunks = new Chunk[4];
+
+        /**
+         * The amount of slots taken
+         */
+        private int size = 0;
+
+        /**
+         * If any column is stale
+         */
+        private volatile boolean stale = false;
+
+        /**
+         * Get the slot of a column, giving it one if it has none yet
+         *
+         * @param column
+         * @return
+         */
+        private int slotOf(Column column) {
+            Integer slot = slots.get(column);
+            return slot != null ? slot : addSlot(column);
+        }
+
+        private synchronized int addSlot(Column column) {
+            Integer existing = slots.get(column);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            int slot = size;
+            int chunk = slot >>> CHUNK_BITS;
+
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunk * 2);
+            }
+
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Chunk();
+            }
+
+            // the slot is only visible to other threads once the map has it, after its chunk was published
+            size++;
+            slots.put(column, slot);
+            return slot;
+        }
+
+        /**
+         * Get the amount of slots taken
+         *
+         * @return
+         */
+        private synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Add a value to the column at a slot
+         *
+         * @param slot
+         * @param value
+         */
+        private void add(int slot, long value) {
+            Chunk chunk = chunks[slot >>> CHUNK_BITS];
+            int offset = slot & (CHUNK_SIZE - 1);
+            int cell = stripe() + offset;
+
+            chunk.counts.getAndIncrement(cell);
+            chunk.sums.getAndAdd(cell, value);
+
+            long min = chunk.mins.get(offset);
+            long max = chunk.maxes.get(offset);
+
+            if (value >= min && value <= max) {
+                return;
+            }
+
+            // a column that only ever had one value may have lost all of it, so that value can't be kept as an extreme
+            if (min == max) {
+                markStale(chunk, offset);
+            }
+
+            while (value < min && !chunk.mins.compareAndSet(offset, min, value)) {
+                min = chunk.mins.get(offset);
+            }
+
+            while (value > max && !chunk.maxes.compareAndSet(offset, max, value)) {
+                max = chunk.maxes.get(offset);
+            }
+        }
+
+        /**
+         * Take a value that was added before out of the column at a slot
+         *
+         * @param slot
+         * @param value
+         */
+        private void remove(int slot, long value) {
+            Chunk chunk = chunks[slot >>> CHUNK_BITS];
+            int offset = slot & (CHUNK_SIZE - 1);
+            int cell = stripe() + offset;
+
+            chunk.counts.getAndDecrement(cell);
+            chunk.sums.getAndAdd(cell, -value);
+
+            long min = chunk.mins.get(offset);
+            long max = chunk.maxes.get(offset);
+
+            // if every value is the same the rest are still that value, otherwise another one may be the extreme now
+            if (min != max && (value == min || value == max)) {
+                markStale(chunk, offset);
+            }
+        }
+
+        /**
+         * Replace the min and max of the stale columns
+         *
+         * @param mins the smallest value of each slot
+         * @param maxes the largest value of each slot
+         */
+        private void refresh(long[] mins, long[] maxes) {
+            Chunk[] chunks = this.chunks;
+
+            for (int slot = 0; slot < mins.length; slot++) {
+                Chunk chunk = chunks[slot >>> CHUNK_BITS];
+                int offset = slot & (CHUNK_SIZE - 1);
+
+                if (chunk.stale.compareAndSet(offset, 1, 0)) {
+                    chunk.mins.set(offset, mins[slot]);
+                    chunk.maxes.set(offset, maxes[slot]);
+                }
+            }
+        }
+
+        /**
+         * Put every column something is counted in into generated data
+         *
+         * @param data
+         * @param filter the columns to put
+         */
+        private void copyTo(ColumnTable data, Predicate<Column> filter) {
+            Chunk[] chunks = this.chunks;
+
+            for (Map.Entry<Column, Integer> entry : slots.entrySet()) {
+                Column column = entry.getKey();
+                int slot = entry.getValue();
+                Chunk chunk = chunks[slot >>> CHUNK_BITS];
+                int offset = slot & (CHUNK_SIZE - 1);
+                long count = 0;
+                long sum = 0;
+
+                for (int stripe = 0; stripe < STRIPES; stripe++) {
+                    count += chunk.counts.get(stripe * CHUNK_SIZE + offset);
+                    sum += chunk.sums.get(stripe * CHUNK_SIZE + offset);
+                }
+
+                if (count > 0 && filter.test(column)) {
+                    data.put(column, count, sum, chunk.mins.get(offset), chunk.maxes.get(offset));
+                }
+            }
+        }
+
+        private void markStale(Chunk chunk, int offset) {
+            chunk.stale.set(offset, 1);
+            stale = true;
+        }
+
+        /**
+         * Get the first cell of the current thread's stripe
+         *
+         * @return
+         */
+        private static int stripe() {
+            return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * CHUNK_SIZE;
+        }
+
+        /**
+         * The data of {@link #CHUNK_SIZE} slots. Counts and sums are laid out stripe after stripe.
+         */
+        private static class Chunk {
+
+            private final AtomicLongArray counts = new AtomicLongArray(STRIPES * CHUNK_SIZE);
+
+            private final AtomicLongArray sums = new AtomicLongArray(STRIPES * CHUNK_SIZE);
+
+            private final AtomicLongArray mins = new AtomicLongArray(CHUNK_SIZE);
+
+            private final AtomicLongArray maxes = new AtomicLongArray(CHUNK_SIZE);
+
+            /**
+             * 1 for each slot whose min and max have to be found again
+             */
+            private final AtomicIntegerArray stale = new AtomicIntegerArray(CHUNK_SIZE);
+
+            private Chunk() {
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    mins.set(i, Long.MAX_VALUE);
+                    maxes.set(i, Long.MIN_VALUE);
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -1,10 +1,9 @@
 package org.mcstats.generator;
 
+import org.mcstats.IntervalState;
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class MergeAggregator implements GraphGenerator {
 
@@ -17,17 +16,31 @@ public class MergeAggregator implements GraphGenerator {
         this.generators = generators;
     }
 
+    /**
+     * Get the generators that are merged
+     *
+     * @return
+     */
+    public GraphGenerator[] getGenerators() {
+        return generators.clone();
+    }
+
     /**
      * {@inheritDoc}
      */
-    public Map<Column, GeneratedData> generate(MCStats mcstats) {
-        Map<Column, GeneratedData> res = new HashMap<>();
+    public ColumnTable generate(MCStats mcstats, IntervalState interval) {
+        ColumnTable res = new ColumnTable();
 
         for (GraphGenerator generator : generators) {
-            res.putAll(generator.generate(mcstats));
+            res.merge(generator.generate(mcstats, interval));
         }
 
         return res;
     }
 
+    @Override
+    public String toString() {
+        return "MergeAggregator" + Arrays.toString(generators);
+    }
+
 }
@@ -1,15 +1,10 @@
 package org.mcstats.generator;
 
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
-import org.mcstats.util.Tuple;
-
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
+import org.mcstats.model.ServerAttribute;
 
 public class ReflectionAggregator extends SimpleAggregator {
 
@@ -24,9 +19,9 @@ public class ReflectionAggregator extends SimpleAggregator {
     protected String columnName;
 
     /**
-     * The method we are reflecting into
+     * The server attribute being aggregated
      */
-    protected Field field;
+    protected ServerAttribute attribute;
 
     /**
      * Create a new reflection aggregator that will use the value returned by
@@ -52,11 +47,10 @@ public class ReflectionAggregator extends SimpleAggregator {
      * @param columnName
      */
     public ReflectionAggregator(String fieldName, String graphName, String columnName) {
-        try {
-            this.field = Server.class.getDeclaredField(fieldName);
-            this.field.setAccessible(true);
-        } catch (Exception e) {
-            throw new UnsupportedOperationException(e);
+        this.attribute = ServerAttribute.forField(fieldName);
+
+        if (attribute == null) {
+            throw new UnsupportedOperationException("Unknown server field: " + fieldName);
         }
 
         this.graphName = graphName;
@@ -79,68 +73,53 @@ public class ReflectionAggregator extends SimpleAggregator {
     /**
      * Get the column's value
      *
-     * @param fieldValue
+     * @param server
      * @param usingColumn generally equal to getColumnName
      * @return
      */
-    public long getColumnValue(Object fieldValue, String usingColumn) {
-        long columnValue = 1;
-
-        // attempt to parse it as a string
-        if (usingColumn != null) {
-            try {
-                columnValue = Long.parseLong(fieldValue.toString());
-            } catch (Exception e) {
-                columnValue = 1;
-            }
+    public long getColumnValue(Server server, String usingColumn) {
+        if (usingColumn == null) {
+            return 1;
         }
 
-        return columnValue;
+        // strings that are not numbers count as 1
+        return attribute.getLong(server, 1);
     }
 
     /**
      * {@inheritDoc
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
-
-        if (field == null) {
-            return res;
-        }
-
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         try {
-            Object value = field.get(server);
-
             String usingColumn = getColumnName(server);
             long columnValue;
 
             if (usingColumn == null) {
-                usingColumn = value.toString();
+                usingColumn = attribute.getString(server);
                 columnValue = 1;
             } else {
-                columnValue = getColumnValue(value, usingColumn);
+                columnValue = getColumnValue(server, usingColumn);
             }
 
-            if (usingColumn.isEmpty()) {
-                return res;
+            if (usingColumn == null || usingColumn.isEmpty()) {
+                return;
             }
 
             // load the graph for the plugin
-            Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(usingColumn);
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
 
-            res.add(new Tuple<>(column, columnValue));
+            if (graph != null) {
+                emitColumn(sink, graph, usingColumn, columnValue);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
-
-        return res;
     }
 
     @Override
     public String toString() {
-        return String.format("ReflectionAggregator(fieldName = %s, graphName = %s, columnName = %s)", field.getName(), graphName, columnName);
+        return String.format("ReflectionAggregator(fieldName = %s, graphName = %s, columnName = %s)", attribute.getFieldName(), graphName, columnName);
     }
 
 }
@@ -1,15 +1,13 @@
 package org.mcstats.generator;
 
 import org.mcstats.MCStats;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
-import org.mcstats.util.Tuple;
+import org.mcstats.model.ServerAttribute;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ReflectionDonutAggregator extends SimpleAggregator {
 
@@ -29,14 +27,19 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
     private String outerColumnName;
 
     /**
-     * The inner donut's field
+     * Column names by inner and outer value
      */
-    private Field innerField;
+    private final Map<String, Map<String, String>> columnNames = new ConcurrentHashMap<>();
 
     /**
-     * The outer donut's field
+     * The inner donut's attribute
      */
-    private Field outerField;
+    private ServerAttribute innerAttribute;
+
+    /**
+     * The outer donut's attribute
+     */
+    private ServerAttribute outerAttribute;
 
     /**
      * Create a new reflection aggregator that will use the value returned by
@@ -65,13 +68,11 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
      * @param outerColumnName
      */
     public ReflectionDonutAggregator(String innerFieldName, String outerFieldName, String graphName, String innerColumnName, String outerColumnName) {
-        try {
-            this.innerField = Server.class.getDeclaredField(innerFieldName);
-            this.outerField = Server.class.getDeclaredField(outerFieldName);
-            this.innerField.setAccessible(true);
-            this.outerField.setAccessible(true);
-        } catch (Exception e) {
-            throw new UnsupportedOperationException(e);
+        this.innerAttribute = ServerAttribute.forField(innerFieldName);
+        this.outerAttribute = ServerAttribute.forField(outerFieldName);
+
+        if (innerAttribute == null || outerAttribute == null) {
+            throw new UnsupportedOperationException("Unknown server field: " + (innerAttribute == null ? innerFieldName : outerFieldName));
         }
 
         this.graphName = graphName;
@@ -87,50 +88,67 @@ public class ReflectionDonutAggregator extends SimpleAggregator {
      * {@inheritDoc
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
-
-        if (innerField == null || outerField == null) {
-            return res;
-        }
-
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         try {
-            Object innerValue = innerField.get(server);
-            Object outerValue = outerField.get(server);
-
             String usingInner = innerColumnName;
             String usingOuter = outerColumnName;
 
             long columnValue = 1;
 
-            // attempt to parse it as a string
             if (usingInner == null) {
-                usingInner = (String) innerValue;
+                usingInner = innerAttribute.getString(server);
             }
 
             if (usingOuter == null) {
-                usingOuter = (String) outerValue;
+                usingOuter = outerAttribute.getString(server);
             }
 
-            if (usingInner.isEmpty()) {
-                return res;
+            if (usingInner == null || usingInner.isEmpty()) {
+                return;
             }
 
             // load the graph for the plugin
-            Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(usingInner + "~=~" + usingOuter);
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
 
-            res.add(new Tuple<>(column, columnValue));
+            if (graph != null) {
+                emitColumn(sink, graph, getColumnName(usingInner, usingOuter), columnValue);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Get the column name for an inner and outer value, reusing names that were already built
+     *
+     * @param inner
+     * @param outer
+     * @return
+     */
+    private String getColumnName(String inner, String outer) {
+        if (outer == null) {
+            return inner + "~=~" + outer;
+        }
+
+        Map<String, String> names = columnNames.get(inner);
+
+        if (names == null) {
+            names = columnNames.computeIfAbsent(inner, key -> new ConcurrentHashMap<>());
+        }
+
+        String name = names.get(outer);
+
+        if (name == null) {
+            name = inner + "~=~" + outer;
+            names.put(outer, name);
+        }
 
-        return res;
+        return name;
     }
 
     @Override
     public String toString() {
-        return String.format("ReflectionDonutAggregator(innerFieldName = %s, outerFieldName = %s, graphName = %s, innerColumnName = %s, outerColumnName = %s)", innerField.getName(), outerField.getName(), graphName, innerColumnName, outerColumnName);
+        return String.format("ReflectionDonutAggregator(innerFieldName = %s, outerFieldName = %s, graphName = %s, innerColumnName = %s, outerColumnName = %s)", innerAttribute.getFieldName(), outerAttribute.getFieldName(), graphName, innerColumnName, outerColumnName);
     }
 
 }
@@ -1,15 +1,15 @@
 package org.mcstats.generator;
 
+import org.mcstats.IntervalState;
 import org.mcstats.MCStats;
 import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
-import org.mcstats.util.Tuple;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -24,6 +24,11 @@ public abstract class SimpleAggregator implements GraphGenerator {
      */
     private final Plugin plugin;
 
+    /**
+     * The graph emitted to for each plugin, so its name is not looked up for every server
+     */
+    private final Map<Plugin, Graph> graphs = new ConcurrentHashMap<>();
+
     /**
      * Aggregates from all servers
      */
@@ -41,17 +46,75 @@ public abstract class SimpleAggregator implements GraphGenerator {
     }
 
     /**
-     * Get the value to aggregate, given a server. It is assumed the given the server matches the aggregate definition
+     * Emit the values to aggregate, given a server. It is assumed the given the server matches the aggregate definition
      *
+     * @param mcstats
      * @param plugin
      * @param server
-     * @return
+     * @param sink
      */
-    public abstract List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server);
+    public abstract void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink);
+
+    /**
+     * Get the graph a plugin's values are emitted to. Sinks that do not {@link ColumnSink#createsColumns() create
+     * columns} only get a graph that already exists. The graph is remembered per plugin, so an aggregator always emits
+     * to the same graph.
+     *
+     * @param mcstats
+     * @param plugin
+     * @param graphName
+     * @param sink
+     * @return the graph, or null if there is none
+     */
+    protected Graph getGraph(MCStats mcstats, Plugin plugin, String graphName, ColumnSink sink) {
+        Graph graph = graphs.get(plugin);
+
+        if (graph != null) {
+            return graph;
+        }
 
-    private Map<Column, GeneratedData> aggregate(MCStats mcstats, Plugin plugin) {
-        Map<Column, GeneratedData> data = new HashMap<>();
+        graph = sink.createsColumns() ? mcstats.loadGraph(plugin, graphName) : plugin.getGraph(graphName);
+
+        if (graph == null) {
+            sink.missing();
+            return null;
+        }
+
+        graphs.put(plugin, graph);
+        return graph;
+    }
+
+    /**
+     * Emit a value to a column of a graph. Sinks that do not {@link ColumnSink#createsColumns() create columns} are
+     * only given columns that already exist.
+     *
+     * @param sink
+     * @param graph
+     * @param columnName
+     * @param value
+     */
+    protected void emitColumn(ColumnSink sink, Graph graph, String columnName, long value) {
+        Column column = sink.createsColumns() ? graph.loadColumn(columnName) : graph.getColumn(columnName);
+
+        if (column == null) {
+            sink.missing();
+            return;
+        }
 
+        sink.emit(column, value);
+    }
+
+    /**
+     * Check if this aggregator can be kept up to date by {@link IncrementalAggregation}, i.e. getting its values does
+     * not change any state and they can be asked for any number of times
+     *
+     * @return
+     */
+    public boolean isIncremental() {
+        return true;
+    }
+
+    private void aggregate(MCStats mcstats, IntervalState interval, Plugin plugin, ColumnTable data) {
         Plugin pluginValue;
 
         if (plugin == null) {
@@ -62,91 +125,37 @@ public abstract class SimpleAggregator implements GraphGenerator {
         }
 
         if (pluginValue.getId() == -1) {
-            for (Server server : mcstats.getCachedServers()) {
+            for (Server server : interval.getServers()) {
                 if (!server.recentlySentData()) {
                     continue;
                 }
 
-                List<Tuple<Column, Long>> values = getValues(mcstats, pluginValue, server);
-
-                if (values == null || values.size() == 0) {
-                    continue;
-                }
-
-                for (Tuple<Column, Long> value : values) {
-                    if (value != null) {
-                        Column column = value.first();
-                        long columnValue = value.second();
-
-                        GeneratedData current = data.get(column);
-
-                        if (current == null) {
-                            current = new GeneratedData();
-                            current.setCount(1);
-                            current.setMax((int) columnValue);
-                            current.setMin((int) columnValue);
-                            current.setSum((int) columnValue);
-                            data.put(column, current);
-                            continue;
-                        }
-
-                        current.incrementCount();
-                        current.incrementSum((int) columnValue);
-                    }
-                }
+                emit(mcstats, pluginValue, server, data);
             }
         } else {
-            for (ServerPlugin serverPlugin : mcstats.getServerPlugins(pluginValue)) {
+            for (ServerPlugin serverPlugin : interval.getServerPlugins(pluginValue)) {
                 if (!serverPlugin.recentlyUpdated()) {
                     continue;
                 }
 
-                List<Tuple<Column, Long>> values = getValues(mcstats, pluginValue, serverPlugin.getServer());
-
-                if (values == null || values.size() == 0) {
-                    continue;
-                }
-
-                for (Tuple<Column, Long> value : values) {
-                    if (value != null) {
-                        Column column = value.first();
-                        long columnValue = value.second();
-
-                        GeneratedData current = data.get(column);
-
-                        if (current == null) {
-                            current = new GeneratedData();
-                            current.setCount(1);
-                            current.setMax((int) columnValue);
-                            current.setMin((int) columnValue);
-                            current.setSum((int) columnValue);
-                            data.put(column, current);
-                            continue;
-                        }
-
-                        current.incrementCount();
-                        current.incrementSum((int) columnValue);
-                    }
-                }
+                emit(mcstats, pluginValue, serverPlugin.getServer(), data);
             }
         }
-
-        return data;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Map<Column, GeneratedData> generate(MCStats mcstats) {
-        Map<Column, GeneratedData> data = new HashMap<>();
+    public ColumnTable generate(MCStats mcstats, IntervalState interval) {
+        ColumnTable data = new ColumnTable();
 
         // aggregate all servers first
-        data.putAll(aggregate(mcstats, null));
+        aggregate(mcstats, interval, null, data);
 
         // aggregate all plugins
         for (Plugin plugin : mcstats.getCachedPlugins()) {
             if (plugin.recentlyUpdated()) {
-                data.putAll(aggregate(mcstats, plugin));
+                aggregate(mcstats, interval, plugin, data);
             }
         }
 
@@ -1,15 +1,11 @@
 package org.mcstats.generator.aggregator;
 
 import org.mcstats.MCStats;
+import org.mcstats.generator.ColumnSink;
 import org.mcstats.generator.SimpleAggregator;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
-import org.mcstats.util.Tuple;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class CountryAggregator extends SimpleAggregator {
 
@@ -26,9 +22,7 @@ public class CountryAggregator extends SimpleAggregator {
      * {@inheritDoc}
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
-
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         try {
             String countryName = mcstats.getCountryName(server.getCountry());
 
@@ -36,15 +30,19 @@ public class CountryAggregator extends SimpleAggregator {
                 countryName = "Unknown";
             }
 
-            Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(countryName);
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
 
-            res.add(new Tuple<>(column, 1L));
+            if (graph != null) {
+                emitColumn(sink, graph, countryName, 1);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        return res;
+    @Override
+    public String toString() {
+        return String.format("CountryAggregator(graphName = %s)", graphName);
     }
 
 }
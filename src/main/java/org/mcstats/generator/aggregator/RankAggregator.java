@@ -1,58 +1,42 @@
 package org.mcstats.generator.aggregator;
 
+import org.mcstats.IntervalState;
 import org.mcstats.MCStats;
-import org.mcstats.generator.GeneratedData;
+import org.mcstats.generator.ColumnTable;
 import org.mcstats.generator.GraphGenerator;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class RankAggregator implements GraphGenerator {
 
-    private Map<Column, GeneratedData> aggregate(MCStats mcstats, Plugin plugin) {
-        Map<Column, GeneratedData> data = new HashMap<>();
-
+    private void aggregate(MCStats mcstats, Plugin plugin, ColumnTable data) {
         if (plugin.getId() == -1 || plugin.getParent() != -1) {
-            return data;
+            return;
         }
 
         Graph graph = mcstats.loadGraph(plugin, "Rank");
         Column column = graph.loadColumn("Rank");
 
-        long columnValue = (long) plugin.getRank();
-
-        GeneratedData current = data.get(column);
-
-        if (current == null) {
-            current = new GeneratedData();
-            current.setCount(1);
-            current.setMax((int) columnValue);
-            current.setMin((int) columnValue);
-            current.setSum((int) columnValue);
-            data.put(column, current);
-            return data;
-        }
-
-        current.incrementCount();
-        current.incrementSum((int) columnValue);
-
-        return data;
+        data.emit(column, plugin.getRank());
     }
 
     /**
      * {@inheritDoc}
      */
-    public Map<Column, GeneratedData> generate(MCStats mcstats) {
-        Map<Column, GeneratedData> data = new HashMap<>();
+    public ColumnTable generate(MCStats mcstats, IntervalState interval) {
+        ColumnTable data = new ColumnTable();
 
         for (Plugin plugin : mcstats.getCachedPlugins()) {
-            data.putAll(aggregate(mcstats, plugin));
+            aggregate(mcstats, plugin, data);
         }
 
         return data;
     }
 
+    @Override
+    public String toString() {
+        return "RankAggregator()";
+    }
+
 }
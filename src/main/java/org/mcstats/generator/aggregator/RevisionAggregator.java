@@ -1,18 +1,15 @@
 package org.mcstats.generator.aggregator;
 
-import gnu.trove.map.hash.TIntIntHashMap;
-import gnu.trove.procedure.TIntIntProcedure;
 import org.mcstats.MCStats;
+import org.mcstats.generator.ColumnSink;
 import org.mcstats.generator.SimpleAggregator;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
-import org.mcstats.util.Tuple;
+import org.mcstats.util.NumberStrings;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 public class RevisionAggregator extends SimpleAggregator {
 
@@ -21,6 +18,11 @@ public class RevisionAggregator extends SimpleAggregator {
      */
     private String graphName;
 
+    /**
+     * The revisions of a server's plugins, reused by every server aggregated on the same thread
+     */
+    private final ThreadLocal<int[]> revisions = ThreadLocal.withInitial(() -> new int[16]);
+
     public RevisionAggregator(String graphName) {
         this.graphName = graphName;
     }
@@ -29,20 +31,23 @@ public class RevisionAggregator extends SimpleAggregator {
      * {@inheritDoc}
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         ServerPlugin serverPlugin = server.getPlugin(plugin);
-        final List<Tuple<Column, Long>> res = new ArrayList<>();
 
         try {
-            final Graph graph = mcstats.loadGraph(plugin, graphName);
+            final Graph graph = getGraph(mcstats, plugin, graphName, sink);
+
+            if (graph == null) {
+                return;
+            }
 
             if (serverPlugin != null) {
                 if (serverPlugin.getRevision() > 0) {
-                    Column column = graph.loadColumn(Integer.toString(serverPlugin.getRevision()));
-                    res.add(new Tuple<>(column, 1L));
+                    emitColumn(sink, graph, NumberStrings.toString(serverPlugin.getRevision()), 1);
                 }
             } else {
-                TIntIntHashMap sums = new TIntIntHashMap();
+                int[] buffer = revisions.get();
+                int count = 0;
 
                 for (ServerPlugin serverPlugin2 : server.getPlugins().values()) {
                     int revision = serverPlugin2.getRevision();
@@ -51,24 +56,36 @@ public class RevisionAggregator extends SimpleAggregator {
                         continue;
                     }
 
-                    if (sums.containsKey(revision)) {
-                        sums.put(revision, sums.get(revision) + 1);
-                    } else {
-                        sums.put(revision, 1);
+                    if (count == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, count * 2);
+                        revisions.set(buffer);
                     }
+
+                    buffer[count++] = revision;
                 }
 
-                sums.forEachEntry((key, value) -> {
-                    Column column = graph.loadColumn(Integer.toString(key));
-                    res.add(new Tuple<>(column, (long) value));
-                    return true;
-                });
+                // equal revisions end up next to each other, so each one is emitted once with how often it was seen
+                Arrays.sort(buffer, 0, count);
+
+                for (int from = 0; from < count; ) {
+                    int to = from + 1;
+
+                    while (to < count && buffer[to] == buffer[from]) {
+                        to++;
+                    }
+
+                    emitColumn(sink, graph, NumberStrings.toString(buffer[from]), to - from);
+                    from = to;
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        return res;
+    @Override
+    public String toString() {
+        return String.format("RevisionAggregator(graphName = %s)", graphName);
     }
 
 }
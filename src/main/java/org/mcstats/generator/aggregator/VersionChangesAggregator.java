@@ -1,17 +1,14 @@
 package org.mcstats.generator.aggregator;
 
 import org.mcstats.MCStats;
+import org.mcstats.generator.ColumnSink;
 import org.mcstats.generator.SimpleAggregator;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
 import org.mcstats.util.Tuple;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class VersionChangesAggregator extends SimpleAggregator {
 
     /**
@@ -27,16 +24,19 @@ public class VersionChangesAggregator extends SimpleAggregator {
      * {@inheritDoc}
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         ServerPlugin serverPlugin = server.getPlugin(plugin);
 
         if (serverPlugin == null) {
-            return res;
+            return;
         }
 
         try {
-            Graph graph = mcstats.loadGraph(plugin, graphName);
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
+
+            if (graph == null) {
+                return;
+            }
 
             for (Tuple<String, String> tuple : serverPlugin.getVersionChanges()) {
                 if (tuple == null) {
@@ -47,17 +47,27 @@ public class VersionChangesAggregator extends SimpleAggregator {
                 String newVersion = tuple.second();
 
                 // plot old version at some point, too?
-                Column newColumn = graph.loadColumn(newVersion);
-
-                res.add(new Tuple<>(newColumn, 1L));
+                emitColumn(sink, graph, newVersion, 1);
             }
 
             serverPlugin.clearVersionChanges();
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIncremental() {
+        // version changes are cleared once they are aggregated
+        return false;
+    }
 
-        return res;
+    @Override
+    public String toString() {
+        return String.format("VersionChangesAggregator(graphName = %s)", graphName);
     }
 
 }
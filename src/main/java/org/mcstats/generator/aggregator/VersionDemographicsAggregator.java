@@ -1,16 +1,12 @@
 package org.mcstats.generator.aggregator;
 
 import org.mcstats.MCStats;
+import org.mcstats.generator.ColumnSink;
 import org.mcstats.generator.SimpleAggregator;
-import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
 import org.mcstats.model.Server;
 import org.mcstats.model.ServerPlugin;
-import org.mcstats.util.Tuple;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class VersionDemographicsAggregator extends SimpleAggregator {
 
@@ -27,24 +23,27 @@ public class VersionDemographicsAggregator extends SimpleAggregator {
      * {@inheritDoc}
      */
     @Override
-    public List<Tuple<Column, Long>> getValues(MCStats mcstats, Plugin plugin, Server server) {
-        List<Tuple<Column, Long>> res = new ArrayList<>();
+    public void emit(MCStats mcstats, Plugin plugin, Server server, ColumnSink sink) {
         ServerPlugin serverPlugin = server.getPlugin(plugin);
 
         if (serverPlugin == null) {
-            return res;
+            return;
         }
 
         try {
-            Graph graph = mcstats.loadGraph(plugin, graphName);
-            Column column = graph.loadColumn(serverPlugin.getVersion());
+            Graph graph = getGraph(mcstats, plugin, graphName, sink);
 
-            res.add(new Tuple<>(column, 1L));
+            if (graph != null) {
+                emitColumn(sink, graph, serverPlugin.getVersion(), 1);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        return res;
+    @Override
+    public String toString() {
+        return String.format("VersionDemographicsAggregator(graphName = %s)", graphName);
     }
 
 }
@@ -0,0 +1,188 @@
+package org.mcstats.handler;
+
+import org.mcstats.MCStats;
+import org.mcstats.util.CountMinSketch;
+import org.mcstats.util.TopK;
+import org.mcstats.util.Tuple;
+
+import java.util.List;
+
+/**
+ * The plugins, servers and countries sending the most requests and causing the most violations this interval. Every
+ * combination is counted in a fixed-size {@link CountMinSketch} feeding a {@link TopK} list, so memory is fixed and
+ * recording costs the same no matter how many distinct keys are seen.
+ */
+public class HeavyHitters {
+
+    /**
+     * What is counted
+     */
+    public enum Kind {
+
+        REQUESTS,
+
+        /**
+         * Version changes counted against a server
+         */
+        VIOLATIONS
+
+    }
+
+    /**
+     * What requests are counted by
+     */
+    public enum Dimension {
+
+        PLUGIN,
+
+        /**
+         * The server's GUID
+         */
+        SERVER,
+
+        COUNTRY
+
+    }
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    /**
+     * Sketches and lists indexed by [kind][dimension]
+     */
+    private final CountMinSketch[][] sketches = new CountMinSketch[Kind.values().length][DIMENSIONS.length];
+    private final TopK[][] lists = new TopK[Kind.values().length][DIMENSIONS.length];
+
+    /**
+     * Requests a server can send in an interval before it is blacklisted, or 0 to never blacklist for it
+     */
+    private final long blacklistRequests;
+
+    /**
+     * When counting started for this interval, in milliseconds
+     */
+    private volatile long intervalStart = System.currentTimeMillis();
+
+    public HeavyHitters(MCStats mcstats) {
+        this(Integer.parseInt(mcstats.getConfig().getProperty("heavyhitters.topK", "50")),
+                Integer.parseInt(mcstats.getConfig().getProperty("heavyhitters.width", "16384")),
+                Long.parseLong(mcstats.getConfig().getProperty("heavyhitters.blacklistRequests", "0")));
+    }
+
+    /**
+     * @param size the amount of keys kept in each list
+     * @param width counters per sketch row
+     * @param blacklistRequests requests a server can send in an interval before it is blacklisted, or 0 to disable
+     */
+    public HeavyHitters(int size, int width, long blacklistRequests) {
+        this.blacklistRequests = blacklistRequests;
+
+        for (int kind = 0; kind < sketches.length; kind++) {
+            for (int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+                sketches[kind][dimension] = new CountMinSketch(width);
+                lists[kind][dimension] = new TopK(size);
+            }
+        }
+    }
+
+    /**
+     * Count a request
+     *
+     * @param pluginName
+     * @param serverId
+     * @param countryCode
+     */
+    public void recordRequest(String pluginName, String serverId, String countryCode) {
+        record(Kind.REQUESTS, pluginName, serverId, countryCode);
+    }
+
+    /**
+     * Count a violation
+     *
+     * @param pluginName
+     * @param serverId
+     * @param countryCode
+     */
+    public void recordViolation(String pluginName, String serverId, String countryCode) {
+        record(Kind.VIOLATIONS, pluginName, serverId, countryCode);
+    }
+
+    /**
+     * Get the estimated count of a key this interval
+     *
+     * @param kind
+     * @param dimension
+     * @param key
+     * @return
+     */
+    public long estimate(Kind kind, Dimension dimension, String key) {
+        return sketches[kind.ordinal()][dimension.ordinal()].estimate(key);
+    }
+
+    /**
+     * Check if a server sent so many requests this interval that it should be blacklisted
+     *
+     * @param serverId
+     * @return
+     */
+    public boolean isFlooding(String serverId) {
+        return blacklistRequests > 0 && serverId != null && estimate(Kind.REQUESTS, Dimension.SERVER, serverId) >= blacklistRequests;
+    }
+
+    /**
+     * Get the top keys and their estimated counts this interval, highest first
+     *
+     * @param kind
+     * @param dimension
+     * @return
+     */
+    public List<Tuple<String, Long>> getTop(Kind kind, Dimension dimension) {
+        return lists[kind.ordinal()][dimension.ordinal()].get();
+    }
+
+    /**
+     * Get when counting started for this interval, in milliseconds
+     *
+     * @return
+     */
+    public long getIntervalStart() {
+        return intervalStart;
+    }
+
+    /**
+     * Clear all counts for a new interval
+     */
+    public void reset() {
+        for (int kind = 0; kind < sketches.length; kind++) {
+            for (int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+                sketches[kind][dimension].reset();
+                lists[kind][dimension].reset();
+            }
+        }
+
+        intervalStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Count a key in every dimension
+     *
+     * @param kind
+     * @param pluginName
+     * @param serverId
+     * @param countryCode
+     */
+    private void record(Kind kind, String pluginName, String serverId, String countryCode) {
+        record(kind, Dimension.PLUGIN, pluginName);
+        record(kind, Dimension.SERVER, serverId);
+        record(kind, Dimension.COUNTRY, countryCode);
+    }
+
+    private void record(Kind kind, Dimension dimension, String key) {
+        if (key == null) {
+            return;
+        }
+
+        long estimate = sketches[kind.ordinal()][dimension.ordinal()].add(key);
+        lists[kind.ordinal()][dimension.ordinal()].offer(key, estimate);
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.mcstats.handler;
+
+import org.mcstats.util.LatencyHistogram;
+
+/**
+ * Latency of each stage of handling a report, reset every graphing interval
+ */
+public class IngestMetrics {
+
+    public enum Stage {
+
+        /**
+         * Looking up the plugin a report is for
+         */
+        PLUGIN_LOOKUP("Plugin lookup"),
+
+        /**
+         * Decoding a body sent by a revision 7+ client
+         */
+        DECODE_MODERN("Decode (modern)"),
+
+        /**
+         * Decoding a form encoded body sent by an older client
+         */
+        DECODE_LEGACY("Decode (legacy)"),
+
+        /**
+         * Publishing the decoded request to the request log
+         */
+        REQUEST_LOG("Request log"),
+
+        /**
+         * Loading the server, including creating it on a cache miss
+         */
+        LOAD_SERVER("Load server"),
+
+        /**
+         * Loading the server's plugin, including creating it
+         */
+        LOAD_SERVER_PLUGIN("Load server plugin"),
+
+        /**
+         * Identifying the server software and game version
+         */
+        BUILD_IDENTIFIER("Build identifier"),
+
+        /**
+         * Updating the server and server plugin fields
+         */
+        FIELD_UPDATE("Field update"),
+
+        /**
+         * Applying the updated server to the incremental graph totals
+         */
+        INCREMENTAL_AGGREGATION("Incremental aggregation");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    /**
+     * One histogram per stage, indexed by ordinal
+     */
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    public IngestMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the time since a stage started
+     *
+     * @param stage
+     * @param start when the stage started, from {@link System#nanoTime()}
+     * @return the current time, so it can be used as the start of the next stage
+     */
+    public long record(Stage stage, long start) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - start);
+        return now;
+    }
+
+    /**
+     * Get the histogram of a stage
+     *
+     * @param stage
+     * @return
+     */
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Clear every stage for a new interval
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+}
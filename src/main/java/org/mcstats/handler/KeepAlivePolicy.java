@@ -0,0 +1,146 @@
+package org.mcstats.handler;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.mcstats.MCStats;
+
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Decides if a connection may be reused after a response. Only connections from trusted proxies are kept alive, and
+ * only for a limited amount of requests; every other connection is closed after its response as before.
+ */
+public class KeepAlivePolicy {
+
+    private static final Logger logger = Logger.getLogger("KeepAlivePolicy");
+
+    /**
+     * If connections can be kept alive at all
+     */
+    private final boolean enabled;
+
+    /**
+     * Addresses connections can be kept alive for
+     */
+    private final Set<InetAddress> trustedProxies;
+
+    /**
+     * The idle timeout of a kept alive connection, in milliseconds
+     */
+    private final long idleTimeout;
+
+    /**
+     * The maximum amount of requests served on one connection
+     */
+    private final int maxRequests;
+
+    public KeepAlivePolicy(MCStats mcstats) {
+        this(mcstats.getConfig());
+    }
+
+    private KeepAlivePolicy(Properties config) {
+        this(Boolean.parseBoolean(config.getProperty("keepalive.enabled", "false")),
+                parseAddresses(config.getProperty("keepalive.trustedProxies", "127.0.0.1")),
+                Long.parseLong(config.getProperty("keepalive.idleTimeout", "30000")),
+                Integer.parseInt(config.getProperty("keepalive.maxRequests", "1000")));
+    }
+
+    public KeepAlivePolicy(boolean enabled, Set<InetAddress> trustedProxies, long idleTimeout, int maxRequests) {
+        this.enabled = enabled;
+        this.trustedProxies = Collections.unmodifiableSet(new HashSet<>(trustedProxies));
+        this.idleTimeout = idleTimeout;
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Start a response. Connections that will not be kept alive get a Connection: close header.
+     *
+     * @param baseRequest
+     * @param response
+     * @return true if the connection will be kept alive
+     */
+    public boolean begin(Request baseRequest, HttpServletResponse response) {
+        if (!isKeepAlive(baseRequest)) {
+            response.setHeader("Connection", "close");
+            return false;
+        }
+
+        baseRequest.getHttpChannel().getEndPoint().setIdleTimeout(idleTimeout);
+        return true;
+    }
+
+    /**
+     * Finish a response, closing the connection unless it is kept alive
+     *
+     * @param baseRequest
+     */
+    public void end(Request baseRequest) {
+        if (!isKeepAlive(baseRequest)) {
+            baseRequest.getHttpChannel().getEndPoint().close();
+        }
+    }
+
+    /**
+     * Check if the connection a request came in on is kept alive
+     *
+     * @param baseRequest
+     * @return
+     */
+    public boolean isKeepAlive(Request baseRequest) {
+        if (!enabled) {
+            return false;
+        }
+
+        HttpChannel<?> channel = baseRequest.getHttpChannel();
+
+        // the count includes the current request
+        if (channel.getRequests() >= maxRequests) {
+            return false;
+        }
+
+        EndPoint endPoint = channel.getEndPoint();
+        InetSocketAddress remote = endPoint.getRemoteAddress();
+
+        return remote != null && trustedProxies.contains(remote.getAddress());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Parse a comma separated list of addresses
+     *
+     * @param value
+     * @return
+     */
+    private static Set<InetAddress> parseAddresses(String value) {
+        Set<InetAddress> addresses = new HashSet<>();
+
+        for (String address : value.split(",")) {
+            address = address.trim();
+
+            if (address.isEmpty()) {
+                continue;
+            }
+
+            try {
+                addresses.add(InetAddress.getByName(address));
+            } catch (UnknownHostException e) {
+                logger.error("Invalid trusted proxy address \"" + address + "\"", e);
+            }
+        }
+
+        return addresses;
+    }
+
+}
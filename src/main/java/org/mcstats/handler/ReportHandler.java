@@ -3,48 +3,33 @@ package org.mcstats.handler;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
-import org.eclipse.jetty.util.ByteArrayISO8859Writer;
 import org.mcstats.MCStats;
+import org.mcstats.cache.LastSendCache;
 import org.mcstats.decoder.DecodedRequest;
 import org.mcstats.decoder.LegacyRequestDecoder;
 import org.mcstats.decoder.ModernRequestDecoder;
 import org.mcstats.decoder.RequestDecoder;
+import org.mcstats.log.RequestLog;
 import org.mcstats.model.Column;
 import org.mcstats.model.Graph;
 import org.mcstats.model.Plugin;
-import org.mcstats.model.Server;
-import org.mcstats.model.ServerPlugin;
 import org.mcstats.util.URLUtils;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPOutputStream;
 
 public class ReportHandler extends AbstractHandler {
 
     private Logger logger = Logger.getLogger("ReportHandler");
 
     /**
-     * If requests should be soft ignored temporarily
+     * The graphing interval, in seconds
      */
-    public static boolean SOFT_IGNORE_REQUESTS = false;
-
-    /**
-     * The maximum amount of allowable version switches in a graph interval before they are blacklisted;
-     */
-    private static final int MAX_VIOLATIONS_ALLOWED = 7;
+    public static final int INTERVAL_LENGTH = 30 * 60;
 
     /**
      * The MCStats object
@@ -61,127 +46,112 @@ public class ReportHandler extends AbstractHandler {
      */
     private final RequestDecoder legacyDecoder;
 
+    /**
+     * Applies decoded requests to the server state
+     */
+    private final ServerStateUpdater updater;
+
+    /**
+     * Shards the server state is updated on, or null to update it on the request thread
+     */
+    private final RequestApplier applier;
+
+    /**
+     * Decides which connections are kept alive after a response
+     */
+    private final KeepAlivePolicy keepAlivePolicy;
+
     /**
      * Cache of the last sent times
      */
-    private Map<String, Integer> serverLastSendCache = new ConcurrentHashMap<>();
+    private final LastSendCache serverLastSendCache;
 
     /**
-     * Writer to the log file
+     * The log every decoded request is written to
      */
-    private BufferedWriter logWriter = null;
-    private final Object logWriterLock = new Object();
-    private AtomicLong lastRequestLogTime = new AtomicLong(-1);
+    private final RequestLog requestLog;
 
     public ReportHandler(MCStats mcstats) {
         this.mcstats = mcstats;
         modernDecoder = new ModernRequestDecoder(mcstats);
         legacyDecoder = new LegacyRequestDecoder(mcstats);
+        updater = new ServerStateUpdater(mcstats);
+        keepAlivePolicy = new KeepAlivePolicy(mcstats);
+        requestLog = new RequestLog(mcstats);
+        serverLastSendCache = new LastSendCache(INTERVAL_LENGTH, 2, Integer.parseInt(mcstats.getConfig().getProperty("lastsend.maxEntries", "2000000")));
+
+        if (Integer.parseInt(mcstats.getConfig().getProperty("applier.shards", "4")) > 0) {
+            applier = new RequestApplier(mcstats, updater);
+        } else {
+            applier = null;
+        }
     }
 
     /**
-     * Clear the current thread queue
+     * Get the size of the work queue in the background
+     *
+     * @return
      */
-    public void clearQueue() {
-        // executor.getQueue().clear();
+    public int queueSize() {
+        return applier == null ? 0 : applier.size();
     }
 
     /**
-     * Get the size of the work queue in the background
+     * Get the cache of the last time each server sent data for a plugin
      *
      * @return
      */
-    public int queueSize() {
-        return 0;
+    public LastSendCache getServerLastSendCache() {
+        return serverLastSendCache;
     }
 
     /**
-     * Finish a request and end it by closing it immediately
+     * Get the request log
+     *
+     * @return
+     */
+    public RequestLog getRequestLog() {
+        return requestLog;
+    }
+
+    /**
+     * Get the sharded request applier
+     *
+     * @return the applier or null if requests are applied on the request thread
+     */
+    public RequestApplier getApplier() {
+        return applier;
+    }
+
+    /**
+     * Finish a request and end it by closing it immediately, unless the connection is kept alive
      *
      * @param decoded
+     * @param outcome
      * @param responseType
      * @param message
      * @param baseRequest
      * @param response
      * @throws IOException
      */
-    private void finishRequest(DecodedRequest decoded, ResponseType responseType, String message, Request baseRequest, HttpServletResponse response) throws IOException {
-        ByteArrayISO8859Writer writer = new ByteArrayISO8859Writer(1500);
-        if (decoded != null && decoded.revision >= 7) {
-            if (responseType == ResponseType.OK) {
-                writer.write("0");
-            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
-                writer.write("1");
-            } else if (responseType == ResponseType.OK_REGENERATE_GUID) {
-                writer.write("2");
-            } else if (responseType == ResponseType.ERROR) {
-                writer.write("7");
-            }
-            if (!message.isEmpty()) {
-                writer.write((new StringBuilder()).append(",").append(message).toString());
-            }
-        } else {
-            if (responseType == ResponseType.OK || responseType == ResponseType.OK_REGENERATE_GUID) {
-                writer.write("OK");
-            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
-                writer.write("OK This is your first update this hour.");
-            } else if (responseType == ResponseType.ERROR) {
-                writer.write("ERR");
-            }
-            if (!message.isEmpty()) {
-                writer.write((new StringBuilder()).append(" ").append(message).toString());
-            }
-        }
-        writer.flush();
-        response.setContentLength(writer.size());
-        OutputStream outputStream = response.getOutputStream();
-        writer.writeTo(outputStream);
-        outputStream.close();
-        writer.close();
-        baseRequest.getHttpChannel().getEndPoint().close();
+    private void finishRequest(DecodedRequest decoded, RequestMeters.Outcome outcome, ResponseType responseType, String message, Request baseRequest, HttpServletResponse response) throws IOException {
+        mcstats.getRequestMeters().mark(outcome);
+        ResponseTable.write(baseRequest, ResponseTable.get(responseType, decoded != null && decoded.revision >= 7, message));
+        keepAlivePolicy.end(baseRequest);
     }
 
     /**
      * Finish a request and end it by closing it immediately
      *
      * @param decoded
+     * @param outcome
      * @param responseType
      * @param baseRequest
      * @param response
      * @throws IOException
      */
-    private void finishRequest(DecodedRequest decoded, ResponseType responseType, Request baseRequest, HttpServletResponse response) throws IOException {
-        finishRequest(decoded, responseType, "", baseRequest, response);
-    }
-
-    /**
-     * Creates the writer to be used on the log. It can return null, if some error occurred.
-     *
-     * @return
-     */
-    private BufferedWriter createLogWriter() {
-        Path baseLogDirectory = Paths.get(mcstats.getConfig().getProperty("logs.path", "logs"));
-        baseLogDirectory = baseLogDirectory.resolve("plugin-telemetry-modern");
-
-        if (!Files.exists(baseLogDirectory)) {
-            try {
-                Files.createDirectories(baseLogDirectory);
-            } catch (IOException e) {
-                logger.error("Failed to create base log directory", e);
-                return null;
-            }
-        }
-
-        String logFileName = normalizeTime() + ".log.gz";
-
-        Path logFilePath = baseLogDirectory.resolve(logFileName);
-
-        try {
-            return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(logFilePath))));
-        } catch (IOException e) {
-            logger.error("Failed to create log writer", e);
-            return null;
-        }
+    private void finishRequest(DecodedRequest decoded, RequestMeters.Outcome outcome, ResponseType responseType, Request baseRequest, HttpServletResponse response) throws IOException {
+        finishRequest(decoded, outcome, responseType, "", baseRequest, response);
     }
 
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
@@ -190,49 +160,48 @@ public class ReportHandler extends AbstractHandler {
                 return;
             }
 
-            if (serverLastSendCache.size() > 200000) {
-                serverLastSendCache.clear();
-            }
-
             request.setCharacterEncoding("UTF-8");
-            response.setHeader("Connection", "close");
+            keepAlivePolicy.begin(baseRequest, response);
             baseRequest.setHandled(true);
             response.setStatus(200);
             response.setContentType("text/plain");
-            mcstats.incrementAndGetRequests();
-
-            if (SOFT_IGNORE_REQUESTS) {
-                finishRequest(null, ResponseType.OK, baseRequest, response);
-                return;
-            }
+            mcstats.getRequestMeters().mark();
 
             String pluginName = URLUtils.decode(getPluginName(request));
 
             if (pluginName == null) {
-                finishRequest(null, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
+                finishRequest(null, RequestMeters.Outcome.ERROR, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
                 return;
             }
 
+            IngestMetrics metrics = mcstats.getIngestMetrics();
+            long stageStart = System.nanoTime();
+
             final Plugin plugin = mcstats.loadPlugin(pluginName);
+            stageStart = metrics.record(IngestMetrics.Stage.PLUGIN_LOOKUP, stageStart);
 
             String userAgent = request.getHeader("User-Agent");
             final DecodedRequest decoded;
 
             try {
                 if (userAgent != null && userAgent.startsWith("MCStats/")) {
+                    mcstats.getRequestMeters().mark(RequestMeters.Decoder.MODERN);
                     decoded = modernDecoder.decode(plugin, baseRequest);
+                    metrics.record(IngestMetrics.Stage.DECODE_MODERN, stageStart);
                 } else {
+                    mcstats.getRequestMeters().mark(RequestMeters.Decoder.LEGACY);
                     decoded = legacyDecoder.decode(plugin, baseRequest);
+                    metrics.record(IngestMetrics.Stage.DECODE_LEGACY, stageStart);
                 }
             } catch (IOException e) {
                 // Trap IOException from the decoder because it's common for decoding to fail
                 // when a request is malformed.
-                finishRequest(null, ResponseType.OK, baseRequest, response);
+                finishRequest(null, RequestMeters.Outcome.ERROR, ResponseType.OK, baseRequest, response);
                 return;
             }
 
             if (decoded == null) {
-                finishRequest(decoded, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
+                finishRequest(decoded, RequestMeters.Outcome.ERROR, ResponseType.ERROR, "Invalid arguments.", baseRequest, response);
                 return;
             }
 
@@ -250,188 +219,49 @@ public class ReportHandler extends AbstractHandler {
                 logger.debug("Processing request for " + plugin.getName() + " request=" + decoded);
             }
 
-            long currentNormalizedTime = ReportHandler.normalizeTime();
-            if (lastRequestLogTime.getAndSet(currentNormalizedTime) != currentNormalizedTime) {
-                synchronized (logWriterLock) {
-                    if (logWriter != null) {
-                        logWriter.close();
-                    }
+            mcstats.getHeavyHitters().recordRequest(decoded.pluginName, decoded.serverId, decoded.countryCode);
 
-                    logWriter = createLogWriter();
-                }
-            }
-
-            synchronized (logWriterLock) {
-                if (logWriter != null) {
-                    logWriter.write(decoded.toJson().toJSONString());
-                    logWriter.newLine();
-                }
-            }
+            stageStart = System.nanoTime();
+            requestLog.log(decoded);
+            metrics.record(IngestMetrics.Stage.REQUEST_LOG, stageStart);
 
             if (plugin.getId() == -1) {
-                finishRequest(decoded, ResponseType.ERROR, "Rejected.", baseRequest, response);
+                finishRequest(decoded, RequestMeters.Outcome.REJECTED, ResponseType.ERROR, "Rejected.", baseRequest, response);
                 return;
             }
 
             int normalizedTime = normalizeTime();
 
-            long lastSent = 0L;
-
-            String serverCacheKey = decoded.serverId + "/" + plugin.getId();
-
-            if (serverLastSendCache.containsKey(serverCacheKey)) {
-                lastSent = serverLastSendCache.get(serverCacheKey);
-            }
+            int lastSent = serverLastSendCache.getAndSet(decoded.serverId, plugin.getId(), (int) (System.currentTimeMillis() / 1000L));
 
             if (((plugin.getId() != 1) || (decoded.revision != 7)) ||
                     (lastSent > normalizedTime)) {
-                finishRequest(decoded, ResponseType.OK, baseRequest, response);
+                finishRequest(decoded, RequestMeters.Outcome.OK, ResponseType.OK, baseRequest, response);
             } else {
-                finishRequest(decoded, ResponseType.OK_FIRST_REQUEST, baseRequest, response);
+                finishRequest(decoded, RequestMeters.Outcome.FIRST_REQUEST, ResponseType.OK_FIRST_REQUEST, baseRequest, response);
             }
 
-            serverLastSendCache.put(serverCacheKey, (int) System.currentTimeMillis());
-
             if (plugin.getId() == 4930) {
                 return;
             }
 
+            // the request is already answered, so failing to apply it must not finish it again
             try {
-                Server server = mcstats.loadServer(decoded.serverId);
-
-                if ((server.getViolationCount() >= MAX_VIOLATIONS_ALLOWED) && (!server.isBlacklisted())) {
-                    server.setBlacklisted(true);
-                    mcstats.getDatabase().blacklistServer(server);
-                    return;
-                }
-
-                if ((plugin == null) || (server == null)) {
-                    return;
-                }
-
-                ServerPlugin serverPlugin = mcstats.loadServerPlugin(server, plugin, decoded.pluginVersion);
-
-                if (serverPlugin == null) {
-                    return;
-                }
-
-                if ((!serverPlugin.getVersion().equals(decoded.pluginVersion)) && (!server.isBlacklisted())) {
-                    serverPlugin.addVersionChange(serverPlugin.getVersion(), decoded.pluginVersion);
-                    serverPlugin.setVersion(decoded.pluginVersion);
-                    server.incrementViolations();
-                }
-
-                if (serverPlugin.getRevision() != decoded.revision) {
-                    serverPlugin.setRevision(decoded.revision);
-                }
-
-                if (!server.getServerVersion().equals(decoded.serverVersion)) {
-                    server.setServerVersion(decoded.serverVersion);
-                }
-
-                if ((server.getPlayers() != decoded.playersOnline) && (decoded.playersOnline >= 0)) {
-                    server.setPlayers(decoded.playersOnline);
-                }
-
-                if (!geoipCountryCode.isEmpty() && !server.getCountry().equals(geoipCountryCode)) {
-                    server.setCountry(geoipCountryCode);
-                }
-
-                String canonicalServerVersion = mcstats.getServerBuildIdentifier().getServerVersion(decoded.serverVersion);
-                String minecraftVersion = mcstats.getServerBuildIdentifier().getMinecraftVersion(decoded.serverVersion);
-
-                if (canonicalServerVersion.equals("CraftBukkit")) {
-                    ServerPlugin cbplusplus = server.getPlugin(mcstats.loadPlugin(137));
-
-                    if (cbplusplus != null) {
-                        if (cbplusplus.recentlyUpdated()) {
-                            canonicalServerVersion = "CraftBukkit++";
-                        }
-                    }
-                }
-
-                // BungeeCord doesn't send a proper version string, so detect it via the metrics data it sends with the server
-                ServerPlugin bungeeCordPlugin = server.getPlugin(mcstats.loadPlugin(5921));
-
-                if (bungeeCordPlugin != null) {
-                    canonicalServerVersion = "BungeeCord";
-                }
-
-                if (!server.getServerSoftware().equals(canonicalServerVersion)) {
-                    server.setServerSoftware(canonicalServerVersion);
-                }
-
-                if (!server.getMinecraftVersion().equals(minecraftVersion)) {
-                    server.setMinecraftVersion(minecraftVersion);
-                }
-
-                if (!decoded.isPing) {
-                    plugin.setGlobalHits(plugin.getGlobalHits() + 1);
-                }
-
-                if ((decoded.revision >= 4) && (!server.getCountry().equals("SG")) && ((geoipCountryCode == null) || (!geoipCountryCode.equals("SG")))) {
-                    serverPlugin.setCustomData(decoded.customData);
-                }
-
-                if (decoded.revision >= 6) {
-                    if ((decoded.osarch != null) && (decoded.osarch.equals("i386"))) {
-                        decoded.osarch = "x86";
-                    }
-
-                    if ((decoded.osarch != null) && (decoded.osarch.equals("amd64"))) {
-                        decoded.osarch = "x86_64";
-                    }
-
-                    if ((decoded.osname.startsWith("Windows")) && (decoded.osname.length() > 8)) {
-                        decoded.osversion = decoded.osname.substring(8);
-                        decoded.osname = "Windows";
-                    }
-
-                    if (decoded.osversion.equals("6.1")) {
-                        decoded.osversion = "7";
-                        decoded.osname = "Windows";
-                    }
-
-                    if (!decoded.osname.equals(server.getOSName())) {
-                        server.setOSName(decoded.osname);
-                    }
-
-                    if ((decoded.osarch != null) && (!decoded.osarch.equals(server.getOSArch()))) {
-                        server.setOSArch(decoded.osarch);
-                    }
-
-                    if (!decoded.osversion.equals(server.getOSVersion())) {
-                        server.setOSVersion(decoded.osversion);
-                    }
-
-                    if (server.getCores() != decoded.cores) {
-                        server.setCores(decoded.cores);
-                    }
-
-                    if (server.getOnlineMode() != decoded.authMode) {
-                        server.setOnlineMode(decoded.authMode);
-                    }
-
-                    if (!decoded.javaName.equals(server.getJavaName())) {
-                        server.setJavaName(decoded.javaName);
-                    }
-
-                    if (!decoded.javaVersion.equals(server.getJavaVersion())) {
-                        server.setJavaVersion(decoded.javaVersion);
-                    }
-
+                if (applier != null) {
+                    applier.offer(plugin, decoded);
+                } else {
+                    updater.update(plugin, decoded);
                 }
-
-                serverPlugin.setUpdated((int) (System.currentTimeMillis() / 1000L));
-                plugin.setLastUpdated((int) (System.currentTimeMillis() / 1000L));
-                server.setLastSentData((int) (System.currentTimeMillis() / 1000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while queueing the update of " + decoded.serverId + " for " + plugin.getName());
             } catch (Exception e) {
                 e.printStackTrace();
             }
         } catch (Exception e) {
             e.printStackTrace();
 
-            finishRequest(null, ResponseType.OK, baseRequest, response);
+            finishRequest(null, RequestMeters.Outcome.ERROR, ResponseType.OK, baseRequest, response);
         }
     }
 
@@ -441,14 +271,21 @@ public class ReportHandler extends AbstractHandler {
      * @return
      */
     public static int normalizeTime() {
-        int currentTimeSeconds = (int) (System.currentTimeMillis() / 1000);
+        return normalizeTime(System.currentTimeMillis() / 1000);
+    }
 
-        // The graphing interval in minutes
-        // TODO not hardcoded :3
-        int interval = 30;
+    /**
+     * Normalize a time to the nearest graphing period
+     *
+     * @param timestamp unix timestamp in seconds
+     * @return
+     */
+    public static int normalizeTime(long timestamp) {
+        int currentTimeSeconds = (int) timestamp;
 
         // calculate the devisor denominator
-        int denom = interval * 60;
+        // TODO not hardcoded :3
+        int denom = INTERVAL_LENGTH;
 
         return (int) Math.round((currentTimeSeconds - (denom / 2d)) / denom) * denom;
     }
@@ -0,0 +1,239 @@
+package org.mcstats.handler;
+
+import org.apache.log4j.Logger;
+import org.mcstats.MCStats;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.model.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies decoded requests to the server state on a fixed set of shard threads.
+ *
+ * Requests are routed by the hash of the server's GUID so every server is only ever written to by one shard. Plugin
+ * wide counters (global hits, last updated) are still shared between shards the same way they were shared between
+ * request threads.
+ */
+public class RequestApplier {
+
+    private Logger logger = Logger.getLogger("RequestApplier");
+
+    /**
+     * The updater requests are applied with
+     */
+    private final ServerStateUpdater updater;
+
+    /**
+     * The shards requests are routed to
+     */
+    private final List<Shard> shards = new ArrayList<>();
+
+    public RequestApplier(MCStats mcstats, ServerStateUpdater updater) {
+        this.updater = updater;
+        int shardCount = Integer.parseInt(mcstats.getConfig().getProperty("applier.shards", "4"));
+        int queueSize = Integer.parseInt(mcstats.getConfig().getProperty("applier.queueSize", "100000"));
+
+        for (int i = 0; i < shardCount; i++) {
+            Shard shard = new Shard(i + 1, queueSize);
+            shards.add(shard);
+
+            Thread thread = new Thread(shard, "RequestApplier Shard #" + shard.getId());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        logger.info("Started " + shardCount + " request applier shards");
+    }
+
+    /**
+     * Queue a request to be applied by the shard that owns its server. Blocks if that shard's queue is full.
+     *
+     * @param plugin
+     * @param decoded
+     * @throws InterruptedException
+     */
+    public void offer(Plugin plugin, DecodedRequest decoded) throws InterruptedException {
+        shardFor(decoded.serverId).queue.put(new PendingRequest(plugin, decoded));
+    }
+
+    /**
+     * Get the number of requests waiting to be applied across all shards
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+
+        for (Shard shard : shards) {
+            size += shard.queue.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Get an unmodifiable list of the shards
+     *
+     * @return
+     */
+    public List<Shard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * Get the shard that owns the given server
+     *
+     * @param serverId
+     * @return
+     */
+    private Shard shardFor(String serverId) {
+        int hash = serverId.hashCode();
+        hash ^= (hash >>> 16);
+        return shards.get((hash & Integer.MAX_VALUE) % shards.size());
+    }
+
+    /**
+     * A request waiting to be applied
+     */
+    private static class PendingRequest {
+
+        private final Plugin plugin;
+        private final DecodedRequest decoded;
+
+        /**
+         * When the request was queued, in nanoseconds
+         */
+        private final long queued = System.nanoTime();
+
+        public PendingRequest(Plugin plugin, DecodedRequest decoded) {
+            this.plugin = plugin;
+            this.decoded = decoded;
+        }
+
+    }
+
+    public class Shard implements Runnable {
+
+        /**
+         * This shard's unique id
+         */
+        private final int id;
+
+        /**
+         * Requests waiting to be applied by this shard
+         */
+        private final BlockingQueue<PendingRequest> queue;
+
+        /**
+         * The amount of requests applied
+         */
+        private final AtomicLong applied = new AtomicLong();
+
+        /**
+         * Total and max time spent applying requests, in nanoseconds
+         */
+        private final AtomicLong applyTime = new AtomicLong();
+        private final AtomicLong maxApplyTime = new AtomicLong();
+
+        /**
+         * Total time requests spent waiting in the queue, in nanoseconds
+         */
+        private final AtomicLong waitTime = new AtomicLong();
+
+        public Shard(int id, int queueSize) {
+            this.id = id;
+            queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        public void run() {
+            while (true) {
+                PendingRequest request;
+
+                try {
+                    request = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+
+                try {
+                    updater.update(request.plugin, request.decoded);
+                } catch (Exception e) {
+                    // Fallback gracefully so we don't exit the thread
+                    e.printStackTrace();
+                }
+
+                long end = System.nanoTime();
+                long elapsed = end - start;
+
+                // only this thread writes the counters, so plain sets are enough
+                applied.lazySet(applied.get() + 1);
+                applyTime.lazySet(applyTime.get() + elapsed);
+                waitTime.lazySet(waitTime.get() + (start - request.queued));
+
+                if (elapsed > maxApplyTime.get()) {
+                    maxApplyTime.lazySet(elapsed);
+                }
+            }
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Get the number of requests waiting to be applied
+         *
+         * @return
+         */
+        public int getQueueSize() {
+            return queue.size();
+        }
+
+        /**
+         * Get the amount of requests applied
+         *
+         * @return
+         */
+        public long getApplied() {
+            return applied.get();
+        }
+
+        /**
+         * Get the average time it took to apply a request, in microseconds
+         *
+         * @return
+         */
+        public double getAverageApplyTime() {
+            long count = applied.get();
+            return count == 0 ? 0 : applyTime.get() / 1000d / count;
+        }
+
+        /**
+         * Get the longest time it took to apply a request, in microseconds
+         *
+         * @return
+         */
+        public double getMaxApplyTime() {
+            return maxApplyTime.get() / 1000d;
+        }
+
+        /**
+         * Get the average time requests waited in the queue, in microseconds
+         *
+         * @return
+         */
+        public double getAverageWaitTime() {
+            long count = applied.get();
+            return count == 0 ? 0 : waitTime.get() / 1000d / count;
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.mcstats.handler;
+
+import org.mcstats.util.RateMeter;
+
+/**
+ * Request rates, in total and split by outcome and by decoder
+ */
+public class RequestMeters {
+
+    /**
+     * Windows rates are shown for, in seconds
+     */
+    public static final int[] WINDOWS = { 1, 5, 60, 5 * 60, 30 * 60 };
+
+    public enum Outcome {
+
+        /**
+         * Accepted
+         */
+        OK("OK"),
+
+        /**
+         * Accepted, and the first report from the server this interval
+         */
+        FIRST_REQUEST("First request"),
+
+        /**
+         * Malformed or failed while handling it
+         */
+        ERROR("Error"),
+
+        /**
+         * The plugin is rejected
+         */
+        REJECTED("Rejected");
+
+        private final String displayName;
+
+        Outcome(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+    }
+
+    public enum Decoder {
+
+        MODERN("Modern"),
+
+        LEGACY("Legacy");
+
+        private final String displayName;
+
+        Decoder(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+    }
+
+    /**
+     * Every request
+     */
+    private final RateMeter total = new RateMeter();
+
+    /**
+     * Meters indexed by outcome ordinal
+     */
+    private final RateMeter[] outcomes = new RateMeter[Outcome.values().length];
+
+    /**
+     * Meters indexed by decoder ordinal
+     */
+    private final RateMeter[] decoders = new RateMeter[Decoder.values().length];
+
+    public RequestMeters() {
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new RateMeter();
+        }
+
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i] = new RateMeter();
+        }
+    }
+
+    /**
+     * Count a request
+     */
+    public void mark() {
+        total.mark();
+    }
+
+    /**
+     * Count the outcome of a request
+     *
+     * @param outcome
+     */
+    public void mark(Outcome outcome) {
+        outcomes[outcome.ordinal()].mark();
+    }
+
+    /**
+     * Count the decoder used for a request
+     *
+     * @param decoder
+     */
+    public void mark(Decoder decoder) {
+        decoders[decoder.ordinal()].mark();
+    }
+
+    /**
+     * Get the meter of every request
+     *
+     * @return
+     */
+    public RateMeter getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the meter of an outcome
+     *
+     * @param outcome
+     * @return
+     */
+    public RateMeter get(Outcome outcome) {
+        return outcomes[outcome.ordinal()];
+    }
+
+    /**
+     * Get the meter of a decoder
+     *
+     * @param decoder
+     * @return
+     */
+    public RateMeter get(Decoder decoder) {
+        return decoders[decoder.ordinal()];
+    }
+
+}
@@ -0,0 +1,296 @@
+package org.mcstats.handler;
+
+import org.apache.log4j.Logger;
+import org.mcstats.MCStats;
+import org.mcstats.cron.CronGraphGenerator;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.log.RequestLogReader;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays logged requests through the same state update path {@link ReportHandler} uses, without HTTP. Requests are
+ * applied on the {@link RequestApplier} shards when they are enabled, otherwise on the calling thread.
+ *
+ * Requests are replayed either as fast as possible or time-scaled, keeping the gaps between their logged timestamps
+ * divided by the speed. Nothing is written to the request log while replaying.
+ */
+public class RequestReplayer {
+
+    private Logger logger = Logger.getLogger("RequestReplayer");
+
+    /**
+     * The MCStats object
+     */
+    private final MCStats mcstats;
+
+    private final ServerStateUpdater updater;
+
+    /**
+     * Shards the server state is updated on, or null to update it on the replaying thread
+     */
+    private final RequestApplier applier;
+
+    /**
+     * Playback speed relative to the logged timestamps, or 0 to replay as fast as possible
+     */
+    private final double speed;
+
+    /**
+     * Generates graphs at the end of each replayed interval, or null to not generate graphs
+     */
+    private final CronGraphGenerator generator;
+
+    /**
+     * Applied count of the shards when the replay started
+     */
+    private final long appliedBefore;
+
+    /**
+     * Logged timestamp of the first request and the time it was replayed, in nanoseconds
+     */
+    private long firstTimestamp = -1;
+    private long startedAt;
+
+    /**
+     * The interval being replayed, or -1 before the first request
+     */
+    private int currentInterval = -1;
+
+    /**
+     * Request counters
+     */
+    private long replayed = 0;
+    private long skipped = 0;
+    private long intervals = 0;
+
+    /**
+     * @param mcstats
+     * @param speed playback speed, 1 for real time or 0 for as fast as possible
+     * @param generateGraphs true to generate graphs at the end of each interval
+     */
+    public RequestReplayer(MCStats mcstats, double speed, boolean generateGraphs) {
+        this.mcstats = mcstats;
+        this.speed = speed;
+        updater = new ServerStateUpdater(mcstats);
+        generator = generateGraphs ? new CronGraphGenerator(mcstats) : null;
+
+        if (Integer.parseInt(mcstats.getConfig().getProperty("applier.shards", "4")) > 0) {
+            applier = new RequestApplier(mcstats, updater);
+        } else {
+            applier = null;
+        }
+
+        appliedBefore = countApplied();
+    }
+
+    /**
+     * Replay every request from a reader
+     *
+     * @param reader
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void replay(RequestLogReader reader) throws IOException, InterruptedException {
+        DecodedRequest decoded;
+
+        while ((decoded = reader.read()) != null) {
+            replay(decoded);
+        }
+    }
+
+    /**
+     * Replay a single request
+     *
+     * @param decoded
+     * @throws InterruptedException
+     */
+    public void replay(DecodedRequest decoded) throws InterruptedException {
+        if (speed > 0) {
+            pace(decoded.timestamp);
+        }
+
+        int interval = ReportHandler.normalizeTime(decoded.timestamp);
+
+        // like the log itself, only move forward so late requests stay in the interval being replayed
+        if (interval > currentInterval) {
+            if (currentInterval != -1) {
+                finishInterval();
+            }
+
+            currentInterval = interval;
+        }
+
+        mcstats.getHeavyHitters().recordRequest(decoded.pluginName, decoded.serverId, decoded.countryCode);
+
+        Plugin plugin = decoded.pluginName == null ? null : mcstats.loadPlugin(decoded.pluginName);
+
+        if (plugin == null || plugin.getId() == -1 || plugin.getId() == 4930 || decoded.serverId == null) {
+            skipped++;
+            return;
+        }
+
+        decoded.customData = resolveCustomData(plugin, decoded.customData);
+
+        if (applier != null) {
+            applier.offer(plugin, decoded);
+        } else {
+            try {
+                updater.update(plugin, decoded);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        replayed++;
+    }
+
+    /**
+     * Wait for every replayed request to be applied and finish the last interval
+     *
+     * @throws InterruptedException
+     */
+    public void finish() throws InterruptedException {
+        if (currentInterval != -1) {
+            finishInterval();
+        }
+    }
+
+    /**
+     * Get the amount of requests replayed
+     *
+     * @return
+     */
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Get the amount of requests skipped because their plugin is unknown or rejected
+     *
+     * @return
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Get the amount of intervals finished
+     *
+     * @return
+     */
+    public long getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * Wait until a request is due relative to the first replayed request
+     *
+     * @param timestamp logged timestamp in seconds
+     * @throws InterruptedException
+     */
+    private void pace(long timestamp) throws InterruptedException {
+        if (firstTimestamp == -1) {
+            firstTimestamp = timestamp;
+            startedAt = System.nanoTime();
+            return;
+        }
+
+        long due = startedAt + (long) (TimeUnit.SECONDS.toNanos(timestamp - firstTimestamp) / speed);
+        long wait = due - System.nanoTime();
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Wait for the interval's requests to be applied and generate its graphs
+     *
+     * @throws InterruptedException
+     */
+    private void finishInterval() throws InterruptedException {
+        awaitApplied();
+        intervals++;
+
+        if (generator != null) {
+            // the graphs for an interval are generated once it has ended, at the start of the next one
+            int epoch = currentInterval + ReportHandler.INTERVAL_LENGTH;
+            logger.info("Generating graphs for replayed interval " + currentInterval + " at epoch " + epoch);
+            generator.generate(epoch);
+        }
+    }
+
+    /**
+     * Wait until the shards have applied every replayed request
+     *
+     * @throws InterruptedException
+     */
+    private void awaitApplied() throws InterruptedException {
+        if (applier == null) {
+            return;
+        }
+
+        while (countApplied() - appliedBefore < replayed) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    /**
+     * Count the requests applied by all shards
+     *
+     * @return
+     */
+    private long countApplied() {
+        if (applier == null) {
+            return 0;
+        }
+
+        long applied = 0;
+
+        for (RequestApplier.Shard shard : applier.getShards()) {
+            applied += shard.getApplied();
+        }
+
+        return applied;
+    }
+
+    /**
+     * Swap the detached columns of a logged request for the plugin's real columns, by graph and column name
+     *
+     * @param plugin
+     * @param logged
+     * @return
+     */
+    private Map<Column, Long> resolveCustomData(Plugin plugin, Map<Column, Long> logged) {
+        Map<Column, Long> customData = new HashMap<>();
+
+        if (logged == null) {
+            return customData;
+        }
+
+        for (Map.Entry<Column, Long> entry : logged.entrySet()) {
+            Column detached = entry.getKey();
+            Graph graph = mcstats.loadGraph(plugin, detached.getGraph().getName());
+
+            if (graph == null || graph.getActive() == 0) {
+                continue;
+            }
+
+            Column column = graph.loadColumn(detached.getName());
+
+            if (column != null) {
+                customData.put(column, entry.getValue());
+            }
+        }
+
+        return customData;
+    }
+
+}
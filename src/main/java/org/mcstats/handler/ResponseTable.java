@@ -0,0 +1,117 @@
+package org.mcstats.handler;
+
+import org.eclipse.jetty.server.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-encoded response bodies. Every combination of response type, protocol generation and common message is encoded
+ * once into a read-only direct buffer so writing a response does not create any garbage.
+ */
+public final class ResponseTable {
+
+    /**
+     * Messages that have a pre-encoded body
+     */
+    private static final String[] MESSAGES = { "", "Invalid arguments.", "Rejected." };
+
+    private static final ResponseType[] TYPES = ResponseType.values();
+
+    /**
+     * Bodies indexed by [modern][type][message]
+     */
+    private static final ByteBuffer[][][] BODIES = new ByteBuffer[2][TYPES.length][MESSAGES.length];
+
+    static {
+        for (int modern = 0; modern < 2; modern++) {
+            for (ResponseType type : TYPES) {
+                for (int message = 0; message < MESSAGES.length; message++) {
+                    byte[] body = encode(type, modern == 1, MESSAGES[message]);
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(body.length);
+                    buffer.put(body).flip();
+                    BODIES[modern][type.ordinal()][message] = buffer.asReadOnlyBuffer();
+                }
+            }
+        }
+    }
+
+    private ResponseTable() {
+    }
+
+    /**
+     * Get the body for a response. The returned buffer is shared and must not have its position changed; use
+     * {@link #write(Request, ByteBuffer)} to send it.
+     *
+     * @param responseType
+     * @param modern true if the client is on revision 7 or later
+     * @param message
+     * @return
+     */
+    public static ByteBuffer get(ResponseType responseType, boolean modern, String message) {
+        for (int i = 0; i < MESSAGES.length; i++) {
+            if (MESSAGES[i].equals(message)) {
+                return BODIES[modern ? 1 : 0][responseType.ordinal()][i];
+            }
+        }
+
+        // not a common message, so it has to be encoded now
+        return ByteBuffer.wrap(encode(responseType, modern, message)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write a body as the complete response content
+     *
+     * @param baseRequest
+     * @param body
+     * @throws IOException
+     */
+    public static void write(Request baseRequest, ByteBuffer body) throws IOException {
+        baseRequest.getResponse().setContentLength(body.remaining());
+
+        // the duplicate shares the direct memory, only the position is private to this write
+        baseRequest.getResponse().getHttpOutput().sendContent(body.duplicate());
+    }
+
+    /**
+     * Encode a response body
+     *
+     * @param responseType
+     * @param modern
+     * @param message
+     * @return
+     */
+    private static byte[] encode(ResponseType responseType, boolean modern, String message) {
+        String body = "";
+
+        if (modern) {
+            if (responseType == ResponseType.OK) {
+                body = "0";
+            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
+                body = "1";
+            } else if (responseType == ResponseType.OK_REGENERATE_GUID) {
+                body = "2";
+            } else if (responseType == ResponseType.ERROR) {
+                body = "7";
+            }
+            if (!message.isEmpty()) {
+                body += "," + message;
+            }
+        } else {
+            if (responseType == ResponseType.OK || responseType == ResponseType.OK_REGENERATE_GUID) {
+                body = "OK";
+            } else if (responseType == ResponseType.OK_FIRST_REQUEST) {
+                body = "OK This is your first update this hour.";
+            } else if (responseType == ResponseType.ERROR) {
+                body = "ERR";
+            }
+            if (!message.isEmpty()) {
+                body += " " + message;
+            }
+        }
+
+        return body.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+}
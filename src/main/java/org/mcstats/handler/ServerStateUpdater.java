@@ -0,0 +1,208 @@
+package org.mcstats.handler;
+
+import org.mcstats.MCStats;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.generator.IncrementalAggregation;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.UpdateGate;
+
+/**
+ * Applies a decoded request to the in-memory server, server plugin and plugin state.
+ *
+ * The model objects are not thread safe; callers must make sure only one thread updates a given server at a time.
+ */
+public class ServerStateUpdater {
+
+    /**
+     * The maximum amount of allowable version switches in a graph interval before they are blacklisted;
+     */
+    private static final int MAX_VIOLATIONS_ALLOWED = 7;
+
+    /**
+     * The MCStats object
+     */
+    private final MCStats mcstats;
+
+    public ServerStateUpdater(MCStats mcstats) {
+        this.mcstats = mcstats;
+    }
+
+    /**
+     * Apply a request to the server that sent it. The interval is not frozen while the request is applied.
+     *
+     * @param plugin
+     * @param decoded
+     */
+    public void update(Plugin plugin, DecodedRequest decoded) {
+        UpdateGate gate = mcstats.getIntervalGate();
+        gate.enter();
+
+        try {
+            apply(plugin, decoded);
+        } finally {
+            gate.exit();
+        }
+    }
+
+    /**
+     * Apply a request to the server that sent it
+     *
+     * @param plugin
+     * @param decoded
+     */
+    private void apply(Plugin plugin, DecodedRequest decoded) {
+        IngestMetrics metrics = mcstats.getIngestMetrics();
+        long stageStart = System.nanoTime();
+
+        Server server = mcstats.loadServer(decoded.serverId);
+        stageStart = metrics.record(IngestMetrics.Stage.LOAD_SERVER, stageStart);
+
+        if ((plugin == null) || (server == null)) {
+            return;
+        }
+
+        // a server flooding us is blacklisted right away instead of waiting for it to rack up violations
+        if (((server.getViolationCount() >= MAX_VIOLATIONS_ALLOWED) || mcstats.getHeavyHitters().isFlooding(server.getGUID())) && (!server.isBlacklisted())) {
+            server.setBlacklisted(true);
+            mcstats.getDatabase().blacklistServer(server);
+            return;
+        }
+
+        ServerPlugin serverPlugin = mcstats.loadServerPlugin(server, plugin, decoded.pluginVersion);
+        stageStart = metrics.record(IngestMetrics.Stage.LOAD_SERVER_PLUGIN, stageStart);
+
+        if (serverPlugin == null) {
+            return;
+        }
+
+        if ((!serverPlugin.getVersion().equals(decoded.pluginVersion)) && (!server.isBlacklisted())) {
+            serverPlugin.addVersionChange(serverPlugin.getVersion(), decoded.pluginVersion);
+            serverPlugin.setVersion(decoded.pluginVersion);
+            server.incrementViolations();
+            mcstats.getHeavyHitters().recordViolation(plugin.getName(), server.getGUID(), decoded.countryCode);
+        }
+
+        if (serverPlugin.getRevision() != decoded.revision) {
+            serverPlugin.setRevision(decoded.revision);
+        }
+
+        if (!server.getServerVersion().equals(decoded.serverVersion)) {
+            server.setServerVersion(decoded.serverVersion);
+        }
+
+        if ((server.getPlayers() != decoded.playersOnline) && (decoded.playersOnline >= 0)) {
+            server.setPlayers(decoded.playersOnline);
+        }
+
+        String geoipCountryCode = decoded.countryCode;
+
+        if (!geoipCountryCode.isEmpty() && !server.getCountry().equals(geoipCountryCode)) {
+            server.setCountry(geoipCountryCode);
+        }
+
+        long identifierStart = System.nanoTime();
+        String canonicalServerVersion = mcstats.getServerBuildIdentifier().getServerVersion(decoded.serverVersion);
+        String minecraftVersion = mcstats.getServerBuildIdentifier().getMinecraftVersion(decoded.serverVersion);
+        long identifierTime = System.nanoTime() - identifierStart;
+        metrics.get(IngestMetrics.Stage.BUILD_IDENTIFIER).record(identifierTime);
+
+        if (canonicalServerVersion.equals("CraftBukkit")) {
+            ServerPlugin cbplusplus = server.getPlugin(mcstats.loadPlugin(137));
+
+            if (cbplusplus != null) {
+                if (cbplusplus.recentlyUpdated()) {
+                    canonicalServerVersion = "CraftBukkit++";
+                }
+            }
+        }
+
+        // BungeeCord doesn't send a proper version string, so detect it via the metrics data it sends with the server
+        ServerPlugin bungeeCordPlugin = server.getPlugin(mcstats.loadPlugin(5921));
+
+        if (bungeeCordPlugin != null) {
+            canonicalServerVersion = "BungeeCord";
+        }
+
+        if (!server.getServerSoftware().equals(canonicalServerVersion)) {
+            server.setServerSoftware(canonicalServerVersion);
+        }
+
+        if (!server.getMinecraftVersion().equals(minecraftVersion)) {
+            server.setMinecraftVersion(minecraftVersion);
+        }
+
+        if (!decoded.isPing) {
+            plugin.setGlobalHits(plugin.getGlobalHits() + 1);
+        }
+
+        if ((decoded.revision >= 4) && (!server.getCountry().equals("SG")) && (!geoipCountryCode.equals("SG"))) {
+            serverPlugin.setCustomData(decoded.customData);
+        }
+
+        if (decoded.revision >= 6) {
+            if ((decoded.osarch != null) && (decoded.osarch.equals("i386"))) {
+                decoded.osarch = "x86";
+            }
+
+            if ((decoded.osarch != null) && (decoded.osarch.equals("amd64"))) {
+                decoded.osarch = "x86_64";
+            }
+
+            if ((decoded.osname.startsWith("Windows")) && (decoded.osname.length() > 8)) {
+                decoded.osversion = decoded.osname.substring(8);
+                decoded.osname = "Windows";
+            }
+
+            if (decoded.osversion.equals("6.1")) {
+                decoded.osversion = "7";
+                decoded.osname = "Windows";
+            }
+
+            if (!decoded.osname.equals(server.getOSName())) {
+                server.setOSName(decoded.osname);
+            }
+
+            if ((decoded.osarch != null) && (!decoded.osarch.equals(server.getOSArch()))) {
+                server.setOSArch(decoded.osarch);
+            }
+
+            if (!decoded.osversion.equals(server.getOSVersion())) {
+                server.setOSVersion(decoded.osversion);
+            }
+
+            if (server.getCores() != decoded.cores) {
+                server.setCores(decoded.cores);
+            }
+
+            if (server.getOnlineMode() != decoded.authMode) {
+                server.setOnlineMode(decoded.authMode);
+            }
+
+            if (!decoded.javaName.equals(server.getJavaName())) {
+                server.setJavaName(decoded.javaName);
+            }
+
+            if (!decoded.javaVersion.equals(server.getJavaVersion())) {
+                server.setJavaVersion(decoded.javaVersion);
+            }
+        }
+
+        serverPlugin.setUpdated((int) (System.currentTimeMillis() / 1000L));
+        plugin.setLastUpdated((int) (System.currentTimeMillis() / 1000L));
+        server.setLastSentData((int) (System.currentTimeMillis() / 1000L));
+
+        // everything after loading the server plugin except the build identifier
+        metrics.get(IngestMetrics.Stage.FIELD_UPDATE).record(System.nanoTime() - stageStart - identifierTime);
+
+        IncrementalAggregation aggregation = mcstats.getIncrementalAggregation();
+
+        if (aggregation != null) {
+            long aggregationStart = System.nanoTime();
+            aggregation.update(server, serverPlugin);
+            metrics.record(IngestMetrics.Stage.INCREMENTAL_AGGREGATION, aggregationStart);
+        }
+    }
+
+}
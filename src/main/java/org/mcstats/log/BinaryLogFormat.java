@@ -0,0 +1,53 @@
+package org.mcstats.log;
+
+/**
+ * Layout of binary request log segments.
+ *
+ * <pre>
+ * segment  := MAGIC VERSION block* end
+ * block    := varint(rawLength) varint(compressedLength) deflate(records)
+ * end      := varint(0)
+ * record   := TAG_RECORD zigzag(timestamp - previous timestamp) zigzag(revision) byte(isPing)
+ *             string(pluginName) string(serverId) string(countryCode) string(serverVersion) string(pluginVersion)
+ *             zigzag(playersOnline) string(osname) string(osversion) string(osarch) string(javaName)
+ *             string(javaVersion) zigzag(cores) zigzag(authMode)
+ *             varint(customDataCount) (string(graph) string(column) zigzag(value))*
+ * string   := varint(0)                               null
+ *           | varint(id)                              a string already in the dictionary
+ *           | varint(dictionarySize + 1) varint(byteLength) utf8   a new string, added to the dictionary
+ * </pre>
+ *
+ * The dictionary is shared by all blocks in a segment, so blocks must be read in order. A segment that was not
+ * finished (no end marker) can still be read up to its last complete block.
+ */
+final class BinaryLogFormat {
+
+    /**
+     * First bytes of every segment
+     */
+    public static final byte[] MAGIC = { 'M', 'C', 'R', 'L' };
+
+    /**
+     * Format version
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Raw bytes collected before a block is compressed
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Marks the start of a record
+     */
+    public static final int TAG_RECORD = 1;
+
+    /**
+     * File extension of binary segments
+     */
+    public static final String EXTENSION = ".rlog";
+
+    private BinaryLogFormat() {
+    }
+
+}
@@ -0,0 +1,291 @@
+package org.mcstats.log;
+
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads requests from the binary segment format described by {@link BinaryLogFormat}
+ */
+public class BinaryRequestLogReader implements RequestLogReader {
+
+    private final InputStream input;
+
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Strings read so far, indexed by id - 1
+     */
+    private String[] dictionary = new String[1024];
+    private int dictionarySize = 0;
+
+    /**
+     * Resolves the names in custom data to detached columns
+     */
+    private final DetachedColumns columns = new DetachedColumns();
+
+    /**
+     * The current decompressed block
+     */
+    private byte[] block = new byte[BinaryLogFormat.BLOCK_SIZE + 4096];
+    private int blockLength = 0;
+    private int position = 0;
+
+    private byte[] compressed = new byte[BinaryLogFormat.BLOCK_SIZE + 4096];
+
+    private long previousTimestamp = 0;
+
+    /**
+     * If the end of the segment was reached
+     */
+    private boolean finished = false;
+
+    public BinaryRequestLogReader(InputStream input) throws IOException {
+        this.input = new BufferedInputStream(input, 65536);
+
+        byte[] magic = new byte[BinaryLogFormat.MAGIC.length];
+        readFully(magic, magic.length);
+
+        if (!Arrays.equals(magic, BinaryLogFormat.MAGIC)) {
+            throw new IOException("Not a binary request log");
+        }
+
+        int version = this.input.read();
+
+        if (version != BinaryLogFormat.VERSION) {
+            throw new IOException("Unsupported binary request log version " + version);
+        }
+    }
+
+    public DecodedRequest read() throws IOException {
+        if (position == blockLength && !nextBlock()) {
+            return null;
+        }
+
+        int tag = (int) readVarint();
+
+        if (tag != BinaryLogFormat.TAG_RECORD) {
+            throw new IOException("Unknown record tag " + tag);
+        }
+
+        DecodedRequest request = new DecodedRequest();
+        request.timestamp = previousTimestamp + readZigzag();
+        previousTimestamp = request.timestamp;
+        request.revision = (int) readZigzag();
+        request.isPing = readByte() != 0;
+        request.pluginName = readString();
+        request.serverId = readString();
+        request.countryCode = readString();
+        request.serverVersion = readString();
+        request.pluginVersion = readString();
+        request.playersOnline = (int) readZigzag();
+        request.osname = readString();
+        request.osversion = readString();
+        request.osarch = readString();
+        request.javaName = readString();
+        request.javaVersion = readString();
+        request.cores = (int) readZigzag();
+        request.authMode = (int) readZigzag();
+
+        int customDataCount = (int) readVarint();
+        request.customData = new HashMap<>();
+
+        for (int i = 0; i < customDataCount; i++) {
+            String graphName = readString();
+            String columnName = readString();
+            request.customData.put(columns.get(request.pluginName, graphName, columnName), readZigzag());
+        }
+
+        return request;
+    }
+
+    public void close() throws IOException {
+        inflater.end();
+        input.close();
+    }
+
+    /**
+     * Read and decompress the next block
+     *
+     * @return false at the end of the segment
+     * @throws IOException
+     */
+    private boolean nextBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        long rawLength;
+
+        try {
+            rawLength = readStreamVarint();
+        } catch (EOFException e) {
+            // the segment was not finished, everything up to here is still valid
+            finished = true;
+            return false;
+        }
+
+        if (rawLength == 0) {
+            finished = true;
+            return false;
+        }
+
+        int compressedLength = (int) readStreamVarint();
+
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+
+        if (block.length < rawLength) {
+            block = new byte[(int) rawLength];
+        }
+
+        try {
+            readFully(compressed, compressedLength);
+        } catch (EOFException e) {
+            finished = true;
+            return false;
+        }
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+
+        try {
+            blockLength = 0;
+
+            while (blockLength < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(block, blockLength, (int) rawLength - blockLength);
+
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                blockLength += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block", e);
+        }
+
+        if (blockLength != rawLength) {
+            throw new IOException("Corrupt block: expected " + rawLength + " bytes but got " + blockLength);
+        }
+
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Read a string through the dictionary
+     *
+     * @return
+     * @throws IOException
+     */
+    private String readString() throws IOException {
+        int id = (int) readVarint();
+
+        if (id == 0) {
+            return null;
+        }
+
+        if (id <= dictionarySize) {
+            return dictionary[id - 1];
+        }
+
+        if (id != dictionarySize + 1) {
+            throw new IOException("Unknown string id " + id);
+        }
+
+        int length = (int) readVarint();
+
+        if (length < 0 || position + length > blockLength) {
+            throw new IOException("Truncated string");
+        }
+
+        String value = new String(block, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        if (dictionarySize == dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+        }
+
+        dictionary[dictionarySize++] = value;
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (position >= blockLength) {
+            throw new IOException("Truncated record");
+        }
+
+        return block[position++] & 0xFF;
+    }
+
+    private long readZigzag() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read a varint from the underlying stream
+     *
+     * @return
+     * @throws IOException
+     */
+    private long readStreamVarint() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.read();
+
+            if (b == -1) {
+                throw new EOFException();
+            }
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int offset = 0;
+
+        while (offset < length) {
+            int read = input.read(buffer, offset, length - offset);
+
+            if (read == -1) {
+                throw new EOFException();
+            }
+
+            offset += read;
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package org.mcstats.log;
+
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.model.Column;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes requests in the binary segment format described by {@link BinaryLogFormat}
+ */
+public class BinaryRequestLogWriter implements RequestLogWriter {
+
+    private final OutputStream output;
+
+    private final Deflater deflater;
+
+    /**
+     * Ids of the strings written so far
+     */
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    /**
+     * Raw bytes of the current block
+     */
+    private byte[] block = new byte[BinaryLogFormat.BLOCK_SIZE + 4096];
+    private int blockLength = 0;
+
+    /**
+     * Compressed bytes of the current block
+     */
+    private byte[] compressed = new byte[BinaryLogFormat.BLOCK_SIZE + 4096];
+
+    /**
+     * Header scratch space for block lengths
+     */
+    private final byte[] header = new byte[10];
+
+    private long previousTimestamp = 0;
+
+    public BinaryRequestLogWriter(OutputStream output) throws IOException {
+        this(output, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public BinaryRequestLogWriter(OutputStream output, int compressionLevel) throws IOException {
+        this.output = output;
+        deflater = new Deflater(compressionLevel);
+        output.write(BinaryLogFormat.MAGIC);
+        output.write(BinaryLogFormat.VERSION);
+    }
+
+    public void write(DecodedRequest request) throws IOException {
+        writeVarint(BinaryLogFormat.TAG_RECORD);
+        writeZigzag(request.timestamp - previousTimestamp);
+        previousTimestamp = request.timestamp;
+        writeZigzag(request.revision);
+        writeByte(request.isPing ? 1 : 0);
+        writeString(request.pluginName);
+        writeString(request.serverId);
+        writeString(request.countryCode);
+        writeString(request.serverVersion);
+        writeString(request.pluginVersion);
+        writeZigzag(request.playersOnline);
+        writeString(request.osname);
+        writeString(request.osversion);
+        writeString(request.osarch);
+        writeString(request.javaName);
+        writeString(request.javaVersion);
+        writeZigzag(request.cores);
+        writeZigzag(request.authMode);
+
+        if (request.customData == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(request.customData.size());
+
+            for (Map.Entry<Column, Long> entry : request.customData.entrySet()) {
+                writeString(entry.getKey().getGraph().getName());
+                writeString(entry.getKey().getName());
+                writeZigzag(entry.getValue());
+            }
+        }
+
+        if (blockLength >= BinaryLogFormat.BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            output.write(0);
+            output.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compress and write the current block
+     *
+     * @throws IOException
+     */
+    private void flushBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+
+        int compressedLength = 0;
+
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        int headerLength = putVarint(header, 0, blockLength);
+        headerLength = putVarint(header, headerLength, compressedLength);
+        output.write(header, 0, headerLength);
+        output.write(compressed, 0, compressedLength);
+        blockLength = 0;
+    }
+
+    /**
+     * Write a string through the dictionary
+     *
+     * @param value
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+
+        Integer id = dictionary.get(value);
+
+        if (id != null) {
+            writeVarint(id);
+            return;
+        }
+
+        id = dictionary.size() + 1;
+        dictionary.put(value, id);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(id);
+        writeVarint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, block, blockLength, bytes.length);
+        blockLength += bytes.length;
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        block[blockLength++] = (byte) value;
+    }
+
+    private void writeZigzag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        blockLength = putVarint(block, blockLength, value);
+    }
+
+    private void ensureCapacity(int length) {
+        if (blockLength + length > block.length) {
+            block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + length));
+        }
+    }
+
+    /**
+     * Put an unsigned varint into a buffer
+     *
+     * @param buffer
+     * @param offset
+     * @param value
+     * @return the offset after the varint
+     */
+    private static int putVarint(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.mcstats.log;
+
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columns read back from a request log. They are not backed by the database; every distinct plugin/graph/column name
+ * gets its own object with a unique id so they can be used as map keys.
+ */
+class DetachedColumns {
+
+    private final Map<String, Plugin> plugins = new HashMap<>();
+    private final Map<String, Graph> graphs = new HashMap<>();
+    private final Map<String, Column> columns = new HashMap<>();
+
+    private int nextId = 1;
+
+    /**
+     * Get the column for the given names
+     *
+     * @param pluginName
+     * @param graphName
+     * @param columnName
+     * @return
+     */
+    public Column get(String pluginName, String graphName, String columnName) {
+        String graphKey = pluginName + '\0' + graphName;
+        String columnKey = graphKey + '\0' + columnName;
+        Column column = columns.get(columnKey);
+
+        if (column != null) {
+            return column;
+        }
+
+        Plugin plugin = plugins.get(pluginName);
+
+        if (plugin == null) {
+            plugin = new Plugin(null);
+            plugin.setId(nextId++);
+            plugin.setName(pluginName);
+            plugins.put(pluginName, plugin);
+        }
+
+        Graph graph = graphs.get(graphKey);
+
+        if (graph == null) {
+            graph = new Graph(null, plugin);
+            graph.setId(nextId++);
+            graph.setName(graphName);
+            graphs.put(graphKey, graph);
+        }
+
+        column = new Column(null, graph, plugin);
+        column.setId(nextId++);
+        column.setName(columnName);
+        columns.put(columnKey, column);
+        return column;
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.mcstats.log;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads requests from gzipped JSON lines written by {@link JsonRequestLogWriter}
+ */
+public class JsonRequestLogReader implements RequestLogReader {
+
+    private final BufferedReader reader;
+
+    /**
+     * Resolves the names in custom data to detached columns
+     */
+    private final DetachedColumns columns = new DetachedColumns();
+
+    public JsonRequestLogReader(InputStream input) throws IOException {
+        reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(input, 65536)), 65536);
+    }
+
+    public DecodedRequest read() throws IOException {
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            Object parsed = JSONValue.parse(line);
+
+            if (!(parsed instanceof JSONObject)) {
+                throw new IOException("Invalid request log line: " + line);
+            }
+
+            return decode((JSONObject) parsed);
+        }
+
+        return null;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Convert a JSON object back to a request
+     *
+     * @param root
+     * @return
+     */
+    private DecodedRequest decode(JSONObject root) {
+        DecodedRequest request = new DecodedRequest();
+        request.timestamp = getLong(root, "timestamp");
+        request.serverId = (String) root.get("serverId");
+        request.pluginName = (String) root.get("pluginName");
+        request.countryCode = (String) root.get("countryCode");
+        request.revision = (int) getLong(root, "revision");
+        request.isPing = Boolean.parseBoolean(String.valueOf(root.get("isPing")));
+        request.serverVersion = (String) root.get("serverVersion");
+        request.pluginVersion = (String) root.get("pluginVersion");
+        request.playersOnline = (int) getLong(root, "playersOnline");
+        request.osname = (String) root.get("osname");
+        request.osversion = (String) root.get("osversion");
+        request.osarch = (String) root.get("osarch");
+        request.javaName = (String) root.get("javaName");
+        request.javaVersion = (String) root.get("javaVersion");
+        request.cores = (int) getLong(root, "cores");
+        request.authMode = (int) getLong(root, "authMode");
+        request.customData = new HashMap<>();
+
+        Object customData = root.get("customData");
+
+        if (customData instanceof Map) {
+            for (Map.Entry<?, ?> graph : ((Map<?, ?>) customData).entrySet()) {
+                if (!(graph.getValue() instanceof Map)) {
+                    continue;
+                }
+
+                for (Map.Entry<?, ?> column : ((Map<?, ?>) graph.getValue()).entrySet()) {
+                    if (column.getValue() instanceof Number) {
+                        request.customData.put(columns.get(request.pluginName, (String) graph.getKey(), (String) column.getKey()), ((Number) column.getValue()).longValue());
+                    }
+                }
+            }
+        }
+
+        return request;
+    }
+
+    /**
+     * Get a number from a JSON object
+     *
+     * @param root
+     * @param key
+     * @return the number or 0 if it is missing
+     */
+    private long getLong(JSONObject root, String key) {
+        Object value = root.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.mcstats.log;
+
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes requests as gzipped JSON lines, one {@link DecodedRequest#toJson()} object per line
+ */
+public class JsonRequestLogWriter implements RequestLogWriter {
+
+    private final BufferedWriter writer;
+
+    public JsonRequestLogWriter(OutputStream output) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(output, 65536)), 65536);
+    }
+
+    public void write(DecodedRequest request) throws IOException {
+        writer.write(request.toJson().toJSONString());
+        writer.newLine();
+    }
+
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
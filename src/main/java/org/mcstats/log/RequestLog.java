@@ -0,0 +1,566 @@
+package org.mcstats.log;
+
+import org.apache.log4j.Logger;
+import org.mcstats.MCStats;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.handler.ReportHandler;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of every decoded request, one segment per graphing interval. Segments are gzipped JSON lines, or the binary
+ * format when logs.format is binary.
+ *
+ * Request threads only publish records into a {@link RingBuffer}; a dedicated writer thread serializes, compresses
+ * and writes them. The file for the next interval is opened ahead of time on a rotation thread, so when the first
+ * record for a new interval arrives the writer only swaps it in and hands the old file back to be finished.
+ *
+ * On shutdown the writer writes what is left in the buffer and finishes its file, so the last segment is not cut off.
+ */
+public class RequestLog {
+
+    private Logger logger = Logger.getLogger("RequestLog");
+
+    /**
+     * The most records the writer takes from the buffer at once
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * How long {@link #close()} waits for the writer and the rotation thread, in seconds
+     */
+    private static final int CLOSE_TIMEOUT = 10;
+
+    /**
+     * What to do with a record when the buffer is full
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Wait for the writer to make room
+         */
+        BLOCK,
+
+        /**
+         * Drop the record being published
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest record in the buffer to make room
+         */
+        DROP_OLDEST
+
+    }
+
+    /**
+     * The MCStats object
+     */
+    private final MCStats mcstats;
+
+    /**
+     * Records waiting to be written
+     */
+    private final RingBuffer<DecodedRequest> buffer;
+
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * If segments are written in the binary format instead of JSON lines
+     */
+    private final boolean binary;
+
+    /**
+     * Record counters
+     */
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Compressed bytes written to disk
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * Bytes written per second, measured over the last second by the writer
+     */
+    private volatile long bytesPerSecond = 0;
+
+    /**
+     * Runs segment preparation and finishes old segments
+     */
+    private final ScheduledExecutorService rotation = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RequestLog Rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * How many seconds before an interval starts its segment is opened
+     */
+    private final int preopenSeconds;
+
+    /**
+     * Guards opening segments so the writer and the rotation thread never open the same file
+     */
+    private final Object segmentLock = new Object();
+
+    /**
+     * The segment opened ahead of time for the next interval
+     */
+    private final AtomicReference<LogSegment> prepared = new AtomicReference<>();
+
+    /**
+     * The interval the writer is currently writing, guarded by segmentLock
+     */
+    private int currentInterval = -1;
+
+    /**
+     * Rotation counters; the pauses are how long the writer stopped writing to swap segments, in nanoseconds
+     */
+    private final AtomicLong rotations = new AtomicLong();
+    private volatile long lastRotationPause = 0;
+    private volatile long maxRotationPause = 0;
+
+    /**
+     * The thread running the {@link Writer}
+     */
+    private final Thread writerThread;
+
+    /**
+     * If the writer should stop once the buffer is empty
+     */
+    private volatile boolean closed = false;
+
+    public RequestLog(MCStats mcstats) {
+        this.mcstats = mcstats;
+        buffer = new RingBuffer<>(Integer.parseInt(mcstats.getConfig().getProperty("logs.bufferSize", "65536")));
+        overflowPolicy = OverflowPolicy.valueOf(mcstats.getConfig().getProperty("logs.overflowPolicy", "BLOCK").toUpperCase());
+        binary = mcstats.getConfig().getProperty("logs.format", "json").equalsIgnoreCase("binary");
+        preopenSeconds = Integer.parseInt(mcstats.getConfig().getProperty("logs.preopenSeconds", "60"));
+
+        rotation.scheduleWithFixedDelay(() -> {
+            try {
+                prepareNextSegment();
+            } catch (Exception e) {
+                logger.error("Failed to prepare the next log segment", e);
+            }
+        }, 5, 5, TimeUnit.SECONDS);
+
+        writerThread = new Thread(new Writer(), "RequestLog Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "RequestLog Shutdown"));
+    }
+
+    /**
+     * Publish a request to be logged. The request is copied, so it can still be changed afterwards.
+     *
+     * @param decoded
+     */
+    public void log(DecodedRequest decoded) {
+        DecodedRequest record = decoded.copy();
+
+        if (buffer.offer(record)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (!buffer.offer(record)) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+                break;
+
+            case DROP_NEWEST:
+                dropped.incrementAndGet();
+                break;
+
+            case DROP_OLDEST:
+                while (!buffer.offer(record)) {
+                    if (buffer.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stop the writer once it wrote every record published so far, and finish its segment. Records published
+     * afterwards are not written.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+
+            // lets the previous segment handed off by the writer be finished too
+            rotation.shutdown();
+            rotation.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            logger.error("Request log writer did not stop within " + CLOSE_TIMEOUT + " seconds");
+        }
+
+        synchronized (segmentLock) {
+            LogSegment next = prepared.getAndSet(null);
+
+            if (next != null) {
+                discardSegment(next);
+            }
+        }
+    }
+
+    /**
+     * Get the amount of records written
+     *
+     * @return
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Get the amount of records dropped because the buffer was full
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Get the amount of compressed bytes written
+     *
+     * @return
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Get the amount of compressed bytes written in the last second
+     *
+     * @return
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Get the amount of records waiting to be written
+     *
+     * @return
+     */
+    public int getPending() {
+        return buffer.size();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Get the amount of times the log moved to a new file
+     *
+     * @return
+     */
+    public long getRotations() {
+        return rotations.get();
+    }
+
+    /**
+     * Get how long the writer paused for the last rotation, in microseconds
+     *
+     * @return
+     */
+    public long getLastRotationPause() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRotationPause);
+    }
+
+    /**
+     * Get the longest the writer paused for a rotation, in microseconds
+     *
+     * @return
+     */
+    public long getMaxRotationPause() {
+        return TimeUnit.NANOSECONDS.toMicros(maxRotationPause);
+    }
+
+    /**
+     * Open the segment for the next interval ahead of time so the writer only has to swap it in
+     */
+    private void prepareNextSegment() {
+        int upcoming = ReportHandler.normalizeTime(System.currentTimeMillis() / 1000 + preopenSeconds);
+
+        synchronized (segmentLock) {
+            LogSegment next = prepared.get();
+
+            // a segment for an interval the writer skipped is never going to be used
+            if (next != null && next.interval <= currentInterval) {
+                prepared.set(null);
+                discardSegment(next);
+                next = null;
+            }
+
+            if (next == null && upcoming > currentInterval) {
+                prepared.set(openSegment(upcoming));
+            }
+        }
+    }
+
+    /**
+     * Get the segment for an interval, swapping in the prepared one if it is for that interval
+     *
+     * @param interval
+     * @return the segment or null if it could not be opened
+     */
+    private LogSegment takeSegment(int interval) {
+        synchronized (segmentLock) {
+            currentInterval = interval;
+            LogSegment next = prepared.get();
+
+            if (next != null && next.interval == interval) {
+                prepared.set(null);
+                return next;
+            }
+
+            return openSegment(interval);
+        }
+    }
+
+    /**
+     * Opens the segment for the given interval. It can return null, if some error occurred.
+     *
+     * @param interval
+     * @return
+     */
+    private LogSegment openSegment(int interval) {
+        Path baseLogDirectory = Paths.get(mcstats.getConfig().getProperty("logs.path", "logs"));
+        baseLogDirectory = baseLogDirectory.resolve("plugin-telemetry-modern");
+
+        if (!Files.exists(baseLogDirectory)) {
+            try {
+                Files.createDirectories(baseLogDirectory);
+            } catch (IOException e) {
+                logger.error("Failed to create base log directory", e);
+                return null;
+            }
+        }
+
+        String logFileName = interval + (binary ? RequestLogs.BINARY_EXTENSION : RequestLogs.JSON_EXTENSION);
+
+        Path logFilePath = baseLogDirectory.resolve(logFileName);
+
+        try {
+            OutputStream output = new CountingOutputStream(Files.newOutputStream(logFilePath));
+            RequestLogWriter writer = RequestLogs.openWriter(output, binary);
+            return new LogSegment(interval, logFilePath, writer);
+        } catch (IOException e) {
+            logger.error("Failed to create log writer", e);
+            return null;
+        }
+    }
+
+    /**
+     * Finish a segment, writing the gzip trailer and closing the file
+     *
+     * @param segment
+     */
+    private void finishSegment(LogSegment segment) {
+        try {
+            segment.writer.close();
+        } catch (IOException e) {
+            logger.error("Failed to close log file " + segment.path, e);
+        }
+    }
+
+    /**
+     * Finish a segment that never got any records and remove its file
+     *
+     * @param segment
+     */
+    private void discardSegment(LogSegment segment) {
+        finishSegment(segment);
+
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.error("Failed to remove unused log file " + segment.path, e);
+        }
+    }
+
+    /**
+     * A log file for one interval
+     */
+    private static class LogSegment {
+
+        private final int interval;
+        private final Path path;
+        private final RequestLogWriter writer;
+
+        public LogSegment(int interval, Path path, RequestLogWriter writer) {
+            this.interval = interval;
+            this.path = path;
+            this.writer = writer;
+        }
+
+    }
+
+    /**
+     * Counts the bytes that reach the file
+     */
+    private class CountingOutputStream extends FilterOutputStream {
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten.addAndGet(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten.addAndGet(len);
+        }
+
+    }
+
+    private class Writer implements Runnable {
+
+        /**
+         * The open log file
+         */
+        private LogSegment segment = null;
+
+        /**
+         * Records taken from the buffer but not written yet
+         */
+        private final List<DecodedRequest> batch = new ArrayList<>(BATCH_SIZE);
+
+        /**
+         * When bytes per second was last measured
+         */
+        private long lastMeasured = System.nanoTime();
+        private long lastBytesWritten = 0;
+
+        public void run() {
+            while (true) {
+                measure();
+
+                // read before draining, so everything published before closing is still written
+                boolean stopping = closed;
+
+                if (buffer.drainTo(batch, BATCH_SIZE) == 0) {
+                    if (stopping) {
+                        break;
+                    }
+
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    continue;
+                }
+
+                for (DecodedRequest record : batch) {
+                    try {
+                        write(record);
+                    } catch (Exception e) {
+                        // Fallback gracefully so we don't exit the thread
+                        logger.error("Failed to write request log record", e);
+                    }
+                }
+
+                batch.clear();
+            }
+
+            if (segment != null) {
+                finishSegment(segment);
+                segment = null;
+            }
+        }
+
+        /**
+         * Write a record, moving to the file for its interval if needed
+         *
+         * @param record
+         * @throws IOException
+         */
+        private void write(DecodedRequest record) throws IOException {
+            int interval = ReportHandler.normalizeTime(record.timestamp);
+
+            // only move forward; a record published just before the boundary still goes into the current file
+            if (segment == null || interval > segment.interval) {
+                rotate(interval);
+            }
+
+            if (segment != null) {
+                segment.writer.write(record);
+                written.lazySet(written.get() + 1);
+            }
+        }
+
+        /**
+         * Swap in the segment for a new interval and hand the old one off to be finished
+         *
+         * @param interval
+         */
+        private void rotate(int interval) {
+            long start = System.nanoTime();
+            LogSegment previous = segment;
+            segment = takeSegment(interval);
+
+            if (previous != null) {
+                rotation.execute(() -> finishSegment(previous));
+            }
+
+            long pause = System.nanoTime() - start;
+            lastRotationPause = pause;
+
+            if (pause > maxRotationPause) {
+                maxRotationPause = pause;
+            }
+
+            rotations.incrementAndGet();
+        }
+
+        /**
+         * Update bytes per second if a second has passed
+         */
+        private void measure() {
+            long now = System.nanoTime();
+            long elapsed = now - lastMeasured;
+
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                long bytes = bytesWritten.get();
+                bytesPerSecond = (bytes - lastBytesWritten) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+                lastBytesWritten = bytes;
+                lastMeasured = now;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.mcstats.log;
+
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads decoded requests back from a request log segment.
+ *
+ * Custom data columns are detached from the database: each distinct graph/column name pair in a segment gets its own
+ * {@link org.mcstats.model.Column} with a unique id, so only the names are meaningful.
+ */
+public interface RequestLogReader extends Closeable {
+
+    /**
+     * Read the next request
+     *
+     * @return the request or null at the end of the segment
+     * @throws IOException
+     */
+    DecodedRequest read() throws IOException;
+
+}
@@ -0,0 +1,21 @@
+package org.mcstats.log;
+
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes decoded requests to a request log segment
+ */
+public interface RequestLogWriter extends Closeable {
+
+    /**
+     * Write a request
+     *
+     * @param request
+     * @throws IOException
+     */
+    void write(DecodedRequest request) throws IOException;
+
+}
@@ -0,0 +1,132 @@
+package org.mcstats.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Opens request log segments in either format, picked by file extension
+ */
+public final class RequestLogs {
+
+    /**
+     * File extension of JSON segments
+     */
+    public static final String JSON_EXTENSION = ".log.gz";
+
+    /**
+     * File extension of binary segments
+     */
+    public static final String BINARY_EXTENSION = BinaryLogFormat.EXTENSION;
+
+    private RequestLogs() {
+    }
+
+    /**
+     * Check if a path is a binary segment
+     *
+     * @param path
+     * @return
+     */
+    public static boolean isBinary(Path path) {
+        return path.getFileName().toString().endsWith(BINARY_EXTENSION);
+    }
+
+    /**
+     * Check if a path is a request log segment in any format
+     *
+     * @param path
+     * @return
+     */
+    public static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(JSON_EXTENSION) || name.endsWith(BINARY_EXTENSION);
+    }
+
+    /**
+     * Get the interval a segment holds from its file name
+     *
+     * @param path
+     * @return the interval or -1 if the name does not start with one
+     */
+    public static int getInterval(Path path) {
+        String name = path.getFileName().toString();
+        int end = name.indexOf('.');
+
+        try {
+            return Integer.parseInt(end == -1 ? name : name.substring(0, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * List the segments in a directory, oldest interval first
+     *
+     * @param directory
+     * @return
+     * @throws IOException
+     */
+    public static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (isSegment(path)) {
+                    segments.add(path);
+                }
+            }
+        }
+
+        segments.sort(Comparator.comparingInt(RequestLogs::getInterval).thenComparing(Path::getFileName));
+        return segments;
+    }
+
+    /**
+     * Open a segment for reading
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static RequestLogReader openReader(Path path) throws IOException {
+        if (isBinary(path)) {
+            return new BinaryRequestLogReader(Files.newInputStream(path));
+        } else {
+            return new JsonRequestLogReader(Files.newInputStream(path));
+        }
+    }
+
+    /**
+     * Open a segment for writing, replacing it if it exists
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static RequestLogWriter openWriter(Path path) throws IOException {
+        return openWriter(Files.newOutputStream(path), isBinary(path));
+    }
+
+    /**
+     * Create a writer on a stream
+     *
+     * @param output
+     * @param binary
+     * @return
+     * @throws IOException
+     */
+    public static RequestLogWriter openWriter(OutputStream output, boolean binary) throws IOException {
+        if (binary) {
+            return new BinaryRequestLogWriter(output);
+        } else {
+            return new JsonRequestLogWriter(output);
+        }
+    }
+
+}
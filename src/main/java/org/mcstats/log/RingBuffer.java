@@ -0,0 +1,143 @@
+package org.mcstats.log;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue backed by a ring of slots, each with its own sequence number.
+ *
+ * Any amount of threads can offer at the same time. Polling is also lock-free, which lets a producer make room by
+ * dropping the oldest element while the consumer is draining.
+ *
+ * @param <E>
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+
+    /**
+     * The sequence each slot is waiting for: equal to the position when it can be written, position + 1 when it holds
+     * an element that can be read
+     */
+    private final AtomicLongArray sequences;
+
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * The next position to write to
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position to read from
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        elements = new AtomicReferenceArray<>(size);
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element to the end of the buffer
+     *
+     * @param element
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Remove the element at the front of the buffer
+     *
+     * @return the element or null if the buffer is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Remove up to a given amount of elements from the front of the buffer
+     *
+     * @param target the collection to add the elements to, in order
+     * @param max
+     * @return the amount of elements removed
+     */
+    public int drainTo(Collection<? super E> target, int max) {
+        int drained = 0;
+
+        while (drained < max) {
+            E element = poll();
+
+            if (element == null) {
+                break;
+            }
+
+            target.add(element);
+            drained++;
+        }
+
+        return drained;
+    }
+
+    /**
+     * Get the approximate amount of elements in the buffer
+     *
+     * @return
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * Get the capacity of the buffer
+     *
+     * @return
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+}
@@ -59,6 +59,12 @@ public class Graph {
      */
     private Map<String, Column> columns = new ConcurrentHashMap<>();
 
+    /**
+     * The same columns by the names they were asked for, so names aggregators see again and again are not lowercased
+     * every time
+     */
+    private Map<String, Column> columnsByName = new ConcurrentHashMap<>();
+
     /**
      * If the columns were loaded from the database
      */
@@ -91,31 +97,61 @@ public class Graph {
      * @return
      */
     public Column loadColumn(String name) {
+        Column column = columnsByName.get(name);
+
+        if (column != null) {
+            return column;
+        }
+
         if (!didTryLoadColumns && columns.size() == 0) {
-            for (Column column : mcstats.getDatabase().loadColumns(this)) {
-                columns.put(column.getName().toLowerCase(), column);
+            for (Column loaded : mcstats.getDatabase().loadColumns(this)) {
+                columns.put(loaded.getName().toLowerCase(), loaded);
             }
 
             didTryLoadColumns = true;
         }
 
-        Column column = columns.get(name.toLowerCase());
+        String key = name.toLowerCase();
+        column = columns.get(key);
 
         if (column != null) {
+            columnsByName.put(name, column);
             return column;
         }
 
-        column = mcstats.getDatabase().createColumn(this, name);
+        // graphs are generated on several threads, so make sure only one of them creates the column
+        synchronized (this) {
+            column = columns.get(key);
+
+            if (column != null) {
+                columnsByName.put(name, column);
+                return column;
+            }
+
+            column = mcstats.getDatabase().createColumn(this, name);
 
-        if (column == null) {
-            if (mcstats.isDebug()) {
-                logger.error("Failed to create Column for " + name + " , \"" + name + "\"");
+            if (column == null) {
+                if (mcstats.isDebug()) {
+                    logger.error("Failed to create Column for " + name + " , \"" + name + "\"");
+                }
+                return null;
             }
-            return null;
+
+            columns.put(key, column);
+            columnsByName.put(name, column);
+            return column;
         }
+    }
 
-        columns.put(name.toLowerCase(), column);
-        return column;
+    /**
+     * Get a column that was already loaded or created, without going to the database
+     *
+     * @param name
+     * @return the column, or null if it is not loaded
+     */
+    public Column getColumn(String name) {
+        Column column = columnsByName.get(name);
+        return column != null ? column : columns.get(name.toLowerCase());
     }
 
     public int getId() {
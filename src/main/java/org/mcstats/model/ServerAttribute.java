@@ -0,0 +1,138 @@
+package org.mcstats.model;
+
+import org.mcstats.util.NumberStrings;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The server attributes graphs can be generated from, read through the server's getters instead of reflection. Numeric
+ * attributes are read without boxing.
+ */
+public enum ServerAttribute {
+
+    COUNTRY("country", Server::getCountry),
+
+    PLAYERS("players", Server::getPlayers),
+
+    SERVER_VERSION("serverVersion", Server::getServerVersion),
+
+    OS_NAME("osname", Server::getOSName),
+
+    OS_ARCH("osarch", Server::getOSArch),
+
+    OS_VERSION("osversion", Server::getOSVersion),
+
+    JAVA_NAME("java_name", Server::getJavaName),
+
+    JAVA_VERSION("java_version", Server::getJavaVersion),
+
+    CORES("cores", Server::getCores),
+
+    ONLINE_MODE("online_mode", Server::getOnlineMode),
+
+    SERVER_SOFTWARE("serverSoftware", Server::getServerSoftware),
+
+    MINECRAFT_VERSION("minecraftVersion", Server::getMinecraftVersion);
+
+    /**
+     * The name of the field in {@link Server}
+     */
+    private final String fieldName;
+
+    /**
+     * Reads the attribute if it is a string, otherwise null
+     */
+    private final Function<Server, String> stringGetter;
+
+    /**
+     * Reads the attribute if it is numeric, otherwise null
+     */
+    private final ToIntFunction<Server> intGetter;
+
+    ServerAttribute(String fieldName, Function<Server, String> stringGetter) {
+        this.fieldName = fieldName;
+        this.stringGetter = stringGetter;
+        this.intGetter = null;
+    }
+
+    ServerAttribute(String fieldName, ToIntFunction<Server> intGetter) {
+        this.fieldName = fieldName;
+        this.stringGetter = null;
+        this.intGetter = intGetter;
+    }
+
+    /**
+     * Find the attribute stored in a field of {@link Server}
+     *
+     * @param fieldName
+     * @return the attribute, or null if there is none for the field
+     */
+    public static ServerAttribute forField(String fieldName) {
+        for (ServerAttribute attribute : values()) {
+            if (attribute.fieldName.equals(fieldName)) {
+                return attribute;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the name of the field in {@link Server}
+     *
+     * @return
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Check if the attribute is numeric
+     *
+     * @return
+     */
+    public boolean isNumeric() {
+        return intGetter != null;
+    }
+
+    /**
+     * Get the attribute of a server as a string
+     *
+     * @param server
+     * @return
+     */
+    public String getString(Server server) {
+        if (intGetter != null) {
+            return NumberStrings.toString(intGetter.applyAsInt(server));
+        }
+
+        return stringGetter.apply(server);
+    }
+
+    /**
+     * Get the attribute of a server as a number, parsing it if it is a string
+     *
+     * @param server
+     * @param defaultValue returned if the attribute is a string that is not a number
+     * @return
+     */
+    public long getLong(Server server, long defaultValue) {
+        if (intGetter != null) {
+            return intGetter.applyAsInt(server);
+        }
+
+        String value = stringGetter.apply(server);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.mcstats.tools;
+
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.log.RequestLogReader;
+import org.mcstats.log.RequestLogWriter;
+import org.mcstats.log.RequestLogs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts request log segments between the JSON lines (.log.gz) and binary (.rlog) formats. The format of each file
+ * is picked by its extension.
+ *
+ * Usage: ConvertRequestLog &lt;input&gt; &lt;output&gt;
+ */
+public class ConvertRequestLog {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ConvertRequestLog <input" + RequestLogs.JSON_EXTENSION + "|input" + RequestLogs.BINARY_EXTENSION
+                    + "> <output" + RequestLogs.JSON_EXTENSION + "|output" + RequestLogs.BINARY_EXTENSION + ">");
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+
+        if (!RequestLogs.isSegment(input) || !RequestLogs.isSegment(output)) {
+            System.err.println("Files must end in " + RequestLogs.JSON_EXTENSION + " or " + RequestLogs.BINARY_EXTENSION);
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        long records = 0;
+
+        try (RequestLogReader reader = RequestLogs.openReader(input); RequestLogWriter writer = RequestLogs.openWriter(output)) {
+            DecodedRequest request;
+
+            while ((request = reader.read()) != null) {
+                writer.write(request);
+                records++;
+            }
+        }
+
+        long inputSize = Files.size(input);
+        long outputSize = Files.size(output);
+
+        System.out.printf("Converted %,d records in %,d ms%n", records, System.currentTimeMillis() - start);
+        System.out.printf("%s: %,d bytes%n", input, inputSize);
+        System.out.printf("%s: %,d bytes (%.2fx)%n", output, outputSize, inputSize / (double) Math.max(1, outputSize));
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.mcstats.tools;
+
+import org.mcstats.MCStats;
+import org.mcstats.handler.RequestReplayer;
+import org.mcstats.log.RequestLogReader;
+import org.mcstats.log.RequestLogs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays request log segments into the in-memory server state, using mcstats.properties like the backend does but
+ * without opening the web server. Set graphs.store=local to keep generated graph data in memory instead of MongoDB.
+ *
+ * Usage: ReplayRequestLog [--speed &lt;factor&gt;] [--generate] &lt;segment|directory&gt;...
+ *
+ * Without --speed requests are replayed as fast as possible; --speed 1 replays them in real time, --speed 10 ten
+ * times faster. --generate generates graphs at the end of every replayed interval.
+ */
+public class ReplayRequestLog {
+
+    public static void main(String[] args) throws Exception {
+        double speed = 0;
+        boolean generate = false;
+        List<Path> segments = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--speed") && i + 1 < args.length) {
+                speed = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--generate")) {
+                generate = true;
+            } else {
+                Path path = Paths.get(args[i]);
+
+                if (Files.isDirectory(path)) {
+                    segments.addAll(RequestLogs.listSegments(path));
+                } else if (RequestLogs.isSegment(path)) {
+                    segments.add(path);
+                } else {
+                    System.err.println("Not a request log segment: " + path);
+                    System.exit(1);
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            System.err.println("Usage: ReplayRequestLog [--speed <factor>] [--generate] <segment|directory>...");
+            System.exit(1);
+        }
+
+        MCStats mcstats = MCStats.getInstance();
+
+        if (!mcstats.init()) {
+            System.exit(1);
+        }
+
+        RequestReplayer replayer = new RequestReplayer(mcstats, speed, generate);
+        long start = System.nanoTime();
+
+        for (Path segment : segments) {
+            long segmentStart = System.nanoTime();
+            long before = replayer.getReplayed();
+
+            try (RequestLogReader reader = RequestLogs.openReader(segment)) {
+                replayer.replay(reader);
+            }
+
+            System.out.printf("%s: %,d requests in %,d ms%n", segment, replayer.getReplayed() - before, (System.nanoTime() - segmentStart) / 1000000);
+        }
+
+        replayer.finish();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replayed %,d requests (%,d skipped) over %,d intervals in %.2f s: %,.0f req/s%n", replayer.getReplayed(),
+                replayer.getSkipped(), replayer.getIntervals(), seconds, replayer.getReplayed() / seconds);
+        System.out.printf("Servers in memory: %,d%n", mcstats.getCachedServers().size());
+
+        // the database queue workers never exit on their own
+        System.exit(0);
+    }
+
+}
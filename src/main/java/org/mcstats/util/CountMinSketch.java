@@ -0,0 +1,183 @@
+package org.mcstats.util;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size frequency estimate of strings. An estimate only exceeds the true count when other keys share all of its
+ * counters, which conservative updates (only the counters that are at the current minimum are raised) keep small.
+ *
+ * Keys are hashed with SipHash-2-4 under a random key picked per sketch, so which keys share counters cannot be worked
+ * out from the keys alone, and nobody can pick keys that inflate the estimate of another.
+ *
+ * Updates are lock-free: a counter that another thread raised in the meantime is left alone, so under contention a
+ * count can be lost and an estimate can fall below the true count, but no count is invented.
+ */
+public class CountMinSketch {
+
+    /**
+     * Amount of hash rows
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Counters per row, a power of two
+     */
+    private final int width;
+
+    private final AtomicLongArray counters;
+
+    /**
+     * The key keys are hashed with
+     */
+    private final long k0;
+    private final long k1;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int width) {
+        this(width, new SecureRandom());
+    }
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     * @param random picks the key keys are hashed with
+     */
+    CountMinSketch(int width, Random random) {
+        this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        counters = new AtomicLongArray(DEPTH * this.width);
+        k0 = random.nextLong();
+        k1 = random.nextLong();
+    }
+
+    /**
+     * Count a key once
+     *
+     * @param key
+     * @return the new estimate for the key
+     */
+    public long add(String key) {
+        long hash = hash(k0, k1, key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, h1, h2)));
+        }
+
+        long target = estimate + 1;
+
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(row, h1, h2);
+            long current = counters.get(index);
+
+            if (current < target) {
+                counters.compareAndSet(index, current, target);
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * Get the estimated count of a key
+     *
+     * @param key
+     * @return
+     */
+    public long estimate(String key) {
+        long hash = hash(k0, k1, key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, h1, h2)));
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Clear all counts
+     */
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Get the counter of a key in a row
+     *
+     * @param row
+     * @param h1
+     * @param h2
+     * @return
+     */
+    private int index(int row, int h1, int h2) {
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+
+    /**
+     * SipHash-2-4 of the UTF-16LE bytes of a string, read straight from its chars
+     *
+     * @param k0 the first half of the key
+     * @param k1 the second half of the key
+     * @param key
+     * @return
+     */
+    static long hash(long k0, long k1, String key) {
+        long v0 = k0 ^ 0x736F6D6570736575L;
+        long v1 = k1 ^ 0x646F72616E646F6DL;
+        long v2 = k0 ^ 0x6C7967656E657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+
+        int length = key.length();
+        int blocks = length / 4;
+
+        // four chars make a block, the last one holds the remaining chars and the length in bytes
+        for (int block = 0; block <= blocks; block++) {
+            long m;
+
+            if (block < blocks) {
+                int i = block * 4;
+                m = key.charAt(i) | (long) key.charAt(i + 1) << 16 | (long) key.charAt(i + 2) << 32 | (long) key.charAt(i + 3) << 48;
+            } else {
+                m = (long) (length * 2) << 56;
+
+                for (int i = blocks * 4; i < length; i++) {
+                    m |= (long) key.charAt(i) << (16 * (i - blocks * 4));
+                }
+            }
+
+            v3 ^= m;
+
+            for (int round = 0; round < 2; round++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+
+            v0 ^= m;
+        }
+
+        v2 ^= 0xFF;
+
+        for (int round = 0; round < 4; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.mcstats.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Values are counted in log-linear buckets: every power of two is
+ * split into 16 buckets, so quantiles are accurate to about 6%. Recording is one atomic increment on a stripe picked
+ * by the recording thread, so threads rarely share a counter, and it never allocates.
+ *
+ * Reads and resets are not atomic with concurrent recording; a read during a reset can be off by the requests recorded
+ * while it ran.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Buckets per power of two, as a power of two
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The largest power of two that gets its own buckets; larger values are counted in the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * Total amount of buckets
+     */
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * Amount of stripes, must be a power of two
+     */
+    private static final int STRIPES = 8;
+
+    /**
+     * Bucket counts of all stripes in one array, stripe after stripe
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+    /**
+     * The largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucketOf(nanos));
+
+        long current = max.get();
+
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get the amount of recorded values
+     *
+     * @return
+     */
+    public long getCount() {
+        long count = 0;
+
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the largest recorded value
+     *
+     * @return
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get a quantile of the recorded values
+     *
+     * @param quantile between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the upper bound of the bucket the quantile falls in, at most the max, or 0 if nothing was recorded
+     */
+    public long getQuantile(double quantile) {
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < counts.length(); i++) {
+            long value = counts.get(i);
+            merged[i % BUCKETS] += value;
+            count += value;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += merged[bucket];
+
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+
+        max.set(0);
+    }
+
+    /**
+     * Get the bucket a value is counted in
+     *
+     * @param value
+     * @return
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest value counted in a bucket
+     *
+     * @param bucket
+     * @return
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.mcstats.util;
+
+public class NumberStrings {
+
+    /**
+     * The strings of 0 up to this are created once and shared
+     */
+    private static final int CACHED = 4096;
+
+    private static final String[] strings = new String[CACHED];
+
+    static {
+        for (int i = 0; i < CACHED; i++) {
+            strings[i] = Integer.toString(i);
+        }
+    }
+
+    /**
+     * Get a number as a string. Small non-negative numbers, e.g. core counts and plugin revisions, do not allocate.
+     *
+     * @param number
+     * @return
+     */
+    public static String toString(int number) {
+        if (number >= 0 && number < CACHED) {
+            return strings[number];
+        }
+
+        return Integer.toString(number);
+    }
+
+}
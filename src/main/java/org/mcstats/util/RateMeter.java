@@ -0,0 +1,152 @@
+package org.mcstats.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and their rate over recent windows of up to {@link #MAX_WINDOW} seconds.
+ *
+ * Events are counted in a ring of one-second buckets. Every bucket is striped by thread, and each stripe packs the
+ * second it counts in the high 32 bits and the count in the low 32 bits, so moving a bucket to a new second and
+ * counting in it is a single compare-and-set. Reading never changes anything; buckets that belong to an older second
+ * are simply skipped.
+ */
+public class RateMeter {
+
+    /**
+     * The longest window a rate can be read for, in seconds
+     */
+    public static final int MAX_WINDOW = 30 * 60;
+
+    /**
+     * One-second buckets in the ring, a power of two larger than the longest window
+     */
+    private static final int SLOTS = 2048;
+
+    /**
+     * Amount of stripes, must be a power of two
+     */
+    private static final int STRIPES = 8;
+
+    /**
+     * Packed second and count of every stripe of every bucket, stripe after stripe
+     */
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SLOTS);
+
+    /**
+     * Total amount of events
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * When the meter was created, in seconds
+     */
+    private final long start;
+
+    public RateMeter() {
+        this(System.currentTimeMillis() / 1000);
+    }
+
+    RateMeter(long start) {
+        this.start = start;
+    }
+
+    /**
+     * Count an event
+     */
+    public void mark() {
+        mark(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Count an event at the given second
+     *
+     * @param second
+     */
+    void mark(long second) {
+        count.increment();
+
+        int index = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * SLOTS + (int) (second & (SLOTS - 1));
+        long stamp = second << 32;
+
+        while (true) {
+            long current = cells.get(index);
+            long next = (current & 0xFFFFFFFF00000000L) == stamp ? current + 1 : stamp | 1;
+
+            if (cells.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the total amount of events
+     *
+     * @return
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the average events per second over the last complete seconds
+     *
+     * @param seconds the window, at most {@link #MAX_WINDOW}
+     * @return
+     */
+    public double getRate(int seconds) {
+        return getRate(seconds, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Get the average events per second over the complete seconds before the given one
+     *
+     * @param seconds
+     * @param now
+     * @return
+     */
+    double getRate(int seconds, long now) {
+        if (seconds < 1 || seconds > MAX_WINDOW) {
+            throw new IllegalArgumentException("Window must be between 1 and " + MAX_WINDOW + " seconds");
+        }
+
+        // don't spread the events over seconds from before the meter existed
+        int window = (int) Math.max(1, Math.min(seconds, now - start));
+        long events = 0;
+
+        for (long second = now - window; second < now; second++) {
+            int slot = (int) (second & (SLOTS - 1));
+            long stamp = second << 32;
+
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                long cell = cells.get(stripe * SLOTS + slot);
+
+                if ((cell & 0xFFFFFFFF00000000L) == stamp) {
+                    events += cell & 0xFFFFFFFFL;
+                }
+            }
+        }
+
+        return events / (double) window;
+    }
+
+    /**
+     * Get the average events per second since the meter was created
+     *
+     * @return
+     */
+    public double getAllTimeRate() {
+        long elapsed = System.currentTimeMillis() / 1000 - start;
+        return getCount() / (double) Math.max(1, elapsed);
+    }
+
+    /**
+     * Get when the meter was created, in seconds
+     *
+     * @return
+     */
+    public long getStart() {
+        return start;
+    }
+
+}
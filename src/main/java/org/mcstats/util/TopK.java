@@ -0,0 +1,146 @@
+package org.mcstats.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The keys with the highest counts seen so far, fed with estimates from a {@link CountMinSketch}.
+ *
+ * Kept keys are raised with a compare-and-set on their own counter, without locking. Only a key that is not kept and
+ * whose count is higher than the lowest kept count takes the lock to replace the lowest key; everything else is turned
+ * away by reading the threshold.
+ */
+public class TopK {
+
+    /**
+     * The amount of keys kept
+     */
+    private final int size;
+
+    /**
+     * Counts of the kept keys. Keys are only added and removed while holding the lock.
+     */
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    /**
+     * The lowest kept count when it was last looked for, 0 until the list is full. Kept keys only rise, so the lowest
+     * count is at least this.
+     */
+    private volatile long threshold = 0;
+
+    /**
+     * @param size the amount of keys kept
+     */
+    public TopK(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Offer the current count of a key
+     *
+     * @param key
+     * @param count
+     */
+    public void offer(String key, long count) {
+        AtomicLong kept = counts.get(key);
+
+        if (kept != null) {
+            raise(kept, count);
+            return;
+        }
+
+        // nothing at or below the lowest kept count can get into the list
+        if (count <= threshold) {
+            return;
+        }
+
+        synchronized (this) {
+            kept = counts.get(key);
+
+            if (kept != null) {
+                raise(kept, count);
+                return;
+            }
+
+            if (counts.size() < size) {
+                counts.put(key, new AtomicLong(count));
+
+                if (counts.size() == size) {
+                    threshold = findMin().getValue().get();
+                }
+
+                return;
+            }
+
+            // kept keys may have risen since the threshold was set, so look for the lowest one again
+            Map.Entry<String, AtomicLong> min = findMin();
+
+            if (count > min.getValue().get()) {
+                counts.remove(min.getKey());
+                counts.put(key, new AtomicLong(count));
+                min = findMin();
+            }
+
+            threshold = min.getValue().get();
+        }
+    }
+
+    /**
+     * Get the kept keys, highest count first
+     *
+     * @return
+     */
+    public List<Tuple<String, Long>> get() {
+        List<Tuple<String, Long>> top = new ArrayList<>(counts.size());
+
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            top.add(new Tuple<>(entry.getKey(), entry.getValue().get()));
+        }
+
+        top.sort((a, b) -> Long.compare(b.second(), a.second()));
+        return top;
+    }
+
+    /**
+     * Clear the list
+     */
+    public synchronized void reset() {
+        counts.clear();
+        threshold = 0;
+    }
+
+    /**
+     * Raise a kept count to the given count if it is higher
+     *
+     * @param kept
+     * @param count
+     */
+    private void raise(AtomicLong kept, long count) {
+        long current = kept.get();
+
+        while (count > current && !kept.compareAndSet(current, count)) {
+            current = kept.get();
+        }
+    }
+
+    /**
+     * Find the kept key with the lowest count. The list must not be empty.
+     *
+     * @return
+     */
+    private Map.Entry<String, AtomicLong> findMin() {
+        Map.Entry<String, AtomicLong> min = null;
+
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            if (min == null || entry.getValue().get() < min.getValue().get()) {
+                min = entry;
+            }
+        }
+
+        return min;
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.mcstats.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets any number of threads update shared state while one thread can close the gate and wait until nobody is updating
+ * anymore, e.g. to swap the state out.
+ *
+ * Threads entering count themselves in a stripe picked by their thread id, each stripe on its own cache line, and then
+ * check the closed flag. Closing sets the flag and then waits for every stripe to drop to zero. Entering while the gate
+ * is open therefore only writes the thread's own stripe and reads a flag that rarely changes, instead of every thread
+ * writing the same lock word.
+ */
+public class UpdateGate {
+
+    /**
+     * Amount of stripes, must be a power of two
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Ints between two stripes, so every stripe is on its own cache line
+     */
+    private static final int PADDING = 16;
+
+    /**
+     * Threads currently inside, per stripe
+     */
+    private final AtomicIntegerArray inside = new AtomicIntegerArray(STRIPES * PADDING);
+
+    /**
+     * If threads have to wait before entering
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Enter the gate, waiting while it is closed. Every call has to be followed by {@link #exit()}.
+     */
+    public void enter() {
+        int cell = cell();
+
+        while (true) {
+            inside.incrementAndGet(cell);
+
+            if (!closed) {
+                return;
+            }
+
+            // closed after all, so step back out and wait for it to open again
+            inside.decrementAndGet(cell);
+
+            synchronized (this) {
+                while (closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Leave the gate
+     */
+    public void exit() {
+        inside.decrementAndGet(cell());
+    }
+
+    /**
+     * Close the gate and wait until every thread inside left it. Only one thread may close the gate at a time, and it
+     * must not be inside itself.
+     */
+    public void close() {
+        closed = true;
+
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            while (inside.get(stripe * PADDING) != 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+    }
+
+    /**
+     * Open the gate again and let the waiting threads in
+     */
+    public synchronized void open() {
+        closed = false;
+        notifyAll();
+    }
+
+    /**
+     * Get the cell of the current thread's stripe
+     *
+     * @return
+     */
+    private static int cell() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+    }
+
+}
@@ -0,0 +1,37 @@
+<%@ page contentType="application/json; charset=UTF-8" %>
+<%@ page import="org.json.simple.JSONArray" %>
+<%@ page import="org.json.simple.JSONObject" %>
+<%@ page import="org.mcstats.MCStats" %>
+<%@ page import="org.mcstats.handler.HeavyHitters" %>
+<%@ page import="org.mcstats.util.Tuple" %>
+<%
+    // Top plugins, servers and countries by requests and violations this interval.
+    // Estimates never undercount; rates are per second since the interval started.
+    HeavyHitters heavyHitters = MCStats.getInstance().getHeavyHitters();
+    double seconds = Math.max(1, (System.currentTimeMillis() - heavyHitters.getIntervalStart()) / 1000d);
+
+    JSONObject root = new JSONObject();
+    root.put("intervalStart", heavyHitters.getIntervalStart() / 1000);
+
+    for (HeavyHitters.Kind kind : HeavyHitters.Kind.values()) {
+        JSONObject kindRoot = new JSONObject();
+
+        for (HeavyHitters.Dimension dimension : HeavyHitters.Dimension.values()) {
+            JSONArray top = new JSONArray();
+
+            for (Tuple<String, Long> entry : heavyHitters.getTop(kind, dimension)) {
+                JSONObject item = new JSONObject();
+                item.put("key", entry.first());
+                item.put("count", entry.second());
+                item.put("rate", entry.second() / seconds);
+                top.add(item);
+            }
+
+            kindRoot.put(dimension.name().toLowerCase(), top);
+        }
+
+        root.put(kind.name().toLowerCase(), kindRoot);
+    }
+
+    out.print(root.toJSONString());
+%>
@@ -2,11 +2,23 @@
 <%@ page import="org.mcstats.MCStats" %>
 <%@ page import="org.mcstats.util.TimeUtils" %>
 <%@ page import="java.text.DecimalFormat" %>
+<%@ page import="java.util.ArrayList" %>
+<%@ page import="java.util.List" %>
 <%@ page import="org.mcstats.db.MySQLDatabase" %>
+<%@ page import="org.mcstats.db.BulkGraphWriter" %>
+<%@ page import="org.mcstats.db.GraphStore" %>
+<%@ page import="org.mcstats.db.MongoDBGraphStore" %>
+<%@ page import="org.mcstats.db.SegmentGraphStore" %>
+<%@ page import="org.mcstats.handler.RequestApplier" %>
+<%@ page import="org.mcstats.handler.IngestMetrics" %>
+<%@ page import="org.mcstats.handler.RequestMeters" %>
+<%@ page import="org.mcstats.util.RateMeter" %>
+<%@ page import="org.mcstats.util.LatencyHistogram" %>
 <%
     MCStats mcstats = MCStats.getInstance();
-    long requests = mcstats.incrementAndGetRequests();
+    RequestMeters meters = mcstats.getRequestMeters();
     DecimalFormat numberFormatter = new DecimalFormat( "###,###,###,###" );
+    DecimalFormat microsFormatter = new DecimalFormat( "###,###,##0.0" );
 %>
 <!DOCTYPE html>
 <html lang="en">
@@ -149,7 +161,7 @@
                             Time running
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= TimeUtils.timeToString((System.currentTimeMillis() - mcstats.getRequestCalculatorAllTime().getStart()) / 1000) %>
+                            <%= TimeUtils.timeToString(System.currentTimeMillis() / 1000 - meters.getTotal().getStart()) %>
                         </td>
                     </tr>
 
@@ -173,19 +185,95 @@
 
                     <tr>
                         <td style="width: 20px; text-align: center;">
-                            Thread pool queue size
+                            Applier queue size
                         </td>
                         <td style="width: 100px; text-align: center;">
                             <%= numberFormatter.format(mcstats.getReportHandler().queueSize()) %>
                         </td>
                     </tr>
 
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Last send cache
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getReportHandler().getServerLastSendCache().size()) %>
+                            (<%= Math.round(mcstats.getReportHandler().getServerLastSendCache().getHitRate() * 100) %>% hits,
+                            <%= Math.round(mcstats.getReportHandler().getServerLastSendCache().getOccupancy() * 100) %>% occupied)
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Request log
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getWritten()) %> written,
+                            <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getDropped()) %> dropped,
+                            <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getPending()) %> pending,
+                            <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getBytesPerSecond() / 1024) %> KiB/s,
+                            rotation pause <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getLastRotationPause()) %>&micro;s
+                            (max <%= numberFormatter.format(mcstats.getReportHandler().getRequestLog().getMaxRotationPause()) %>&micro;s)
+                        </td>
+                    </tr>
+
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Server snapshot
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <% if (mcstats.getServerSnapshot().getAge() >= 0) { %>
+                            written <%= TimeUtils.timeToString(mcstats.getServerSnapshot().getAge()) %> ago,
+                            <%= numberFormatter.format(mcstats.getServerSnapshot().getLastSize() / 1024) %> KiB in
+                            <%= numberFormatter.format(mcstats.getServerSnapshot().getLastWriteTime()) %>ms
+                            <% } else { %>
+                            not written yet
+                            <% } %>
+                            <% if (mcstats.getServerSnapshot().getRestoredAge() >= 0) { %>
+                            <br/>restored <%= numberFormatter.format(mcstats.getServerSnapshot().getRestoredServers()) %> servers,
+                            <%= TimeUtils.timeToString(mcstats.getServerSnapshot().getRestoredAge()) %> stale
+                            <% } %>
+                        </td>
+                    </tr>
+
+                    <% GraphStore graphStore = mcstats.getGraphStore();
+
+                    if (graphStore instanceof SegmentGraphStore) { %>
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Graph segments
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(((SegmentGraphStore) graphStore).getAppended()) %> records appended
+                        </td>
+                    </tr>
+                    <% graphStore = ((SegmentGraphStore) graphStore).getNext();
+                    }
+
+                    if (graphStore instanceof MongoDBGraphStore) {
+                        BulkGraphWriter graphWriter = ((MongoDBGraphStore) graphStore).getWriter(); %>
+                    <tr>
+                        <td style="width: 20px; text-align: center;">
+                            Graph writes
+                        </td>
+                        <td style="width: 100px; text-align: center;">
+                            <%= numberFormatter.format(graphWriter.getDocuments()) %> documents,
+                            <%= numberFormatter.format(graphWriter.getBytes() / 1024) %> KiB,
+                            <%= numberFormatter.format(graphWriter.getFailed()) %> failed,
+                            <%= numberFormatter.format(graphWriter.getRetried()) %> retries
+                            <br/>bulk p50 <%= microsFormatter.format(graphWriter.getLatency().getQuantile(0.5) / 1000000d) %>ms,
+                            p99 <%= microsFormatter.format(graphWriter.getLatency().getQuantile(0.99) / 1000000d) %>ms,
+                            max <%= microsFormatter.format(graphWriter.getLatency().getMax() / 1000000d) %>ms
+                        </td>
+                    </tr>
+                    <% } %>
+
                     <tr>
                         <td style="width: 20px; text-align: center;">
                             Total requests
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= numberFormatter.format(requests) %>
+                            <%= numberFormatter.format(meters.getTotal().getCount()) %>
                         </td>
                     </tr>
 
@@ -194,7 +282,7 @@
                             Requests per second
                         </td>
                         <td style="width: 100px; text-align: center;">
-                            <%= numberFormatter.format(mcstats.getRequestCalculatorAllTime().calculateRequestsPerSecond()) %>
+                            <%= numberFormatter.format(meters.getTotal().getAllTimeRate()) %>
                         </td>
                     </tr>
 
@@ -211,6 +299,114 @@
 
                 </table>
 
+                <% if (mcstats.getReportHandler().getApplier() != null) { %>
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr>
+                        <th style="text-align: center;">Shard</th>
+                        <th style="text-align: center;">Queued</th>
+                        <th style="text-align: center;">Applied</th>
+                        <th style="text-align: center;">Avg apply (&micro;s)</th>
+                        <th style="text-align: center;">Max apply (&micro;s)</th>
+                        <th style="text-align: center;">Avg wait (&micro;s)</th>
+                    </tr>
+                    </thead>
+
+                    <tbody>
+
+                    <% for (RequestApplier.Shard shard : mcstats.getReportHandler().getApplier().getShards()) { %>
+                    <tr>
+                        <td style="text-align: center;"><%= shard.getId() %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(shard.getQueueSize()) %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(shard.getApplied()) %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(shard.getAverageApplyTime()) %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(shard.getMaxApplyTime()) %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(shard.getAverageWaitTime()) %></td>
+                    </tr>
+                    <% } %>
+
+                    </tbody>
+
+                </table>
+                <% } %>
+
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr>
+                        <th style="text-align: center;">Requests per second</th>
+                        <th style="text-align: center;">1s</th>
+                        <th style="text-align: center;">5s</th>
+                        <th style="text-align: center;">1m</th>
+                        <th style="text-align: center;">5m</th>
+                        <th style="text-align: center;">30m</th>
+                    </tr>
+                    </thead>
+
+                    <tbody>
+
+                    <%
+                        List<String> meterNames = new ArrayList<String>();
+                        List<RateMeter> meterList = new ArrayList<RateMeter>();
+                        meterNames.add("All");
+                        meterList.add(meters.getTotal());
+
+                        for (RequestMeters.Outcome outcome : RequestMeters.Outcome.values()) {
+                            meterNames.add(outcome.getDisplayName());
+                            meterList.add(meters.get(outcome));
+                        }
+
+                        for (RequestMeters.Decoder decoder : RequestMeters.Decoder.values()) {
+                            meterNames.add(decoder.getDisplayName() + " decoder");
+                            meterList.add(meters.get(decoder));
+                        }
+
+                        for (int i = 0; i < meterList.size(); i++) {
+                    %>
+                    <tr>
+                        <td style="text-align: center;"><%= meterNames.get(i) %></td>
+                        <% for (int window : RequestMeters.WINDOWS) { %>
+                        <td style="text-align: center;"><%= numberFormatter.format(meterList.get(i).getRate(window)) %></td>
+                        <% } %>
+                    </tr>
+                    <% } %>
+
+                    </tbody>
+
+                </table>
+
+                <table class="table table-striped table-bordered">
+
+                    <thead>
+                    <tr>
+                        <th style="text-align: center;">Stage (this interval)</th>
+                        <th style="text-align: center;">Count</th>
+                        <th style="text-align: center;">p50 (&micro;s)</th>
+                        <th style="text-align: center;">p99 (&micro;s)</th>
+                        <th style="text-align: center;">p99.9 (&micro;s)</th>
+                        <th style="text-align: center;">Max (&micro;s)</th>
+                    </tr>
+                    </thead>
+
+                    <tbody>
+
+                    <% for (IngestMetrics.Stage stage : IngestMetrics.Stage.values()) {
+                        LatencyHistogram histogram = mcstats.getIngestMetrics().get(stage); %>
+                    <tr>
+                        <td style="text-align: center;"><%= stage.getDisplayName() %></td>
+                        <td style="text-align: center;"><%= numberFormatter.format(histogram.getCount()) %></td>
+                        <td style="text-align: center;"><%= microsFormatter.format(histogram.getQuantile(0.5) / 1000d) %></td>
+                        <td style="text-align: center;"><%= microsFormatter.format(histogram.getQuantile(0.99) / 1000d) %></td>
+                        <td style="text-align: center;"><%= microsFormatter.format(histogram.getQuantile(0.999) / 1000d) %></td>
+                        <td style="text-align: center;"><%= microsFormatter.format(histogram.getMax() / 1000d) %></td>
+                    </tr>
+                    <% } %>
+
+                    </tbody>
+
+                </table>
+
                 <table class="table table-striped table-bordered">
 
                     <tbody>
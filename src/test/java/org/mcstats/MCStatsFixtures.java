@@ -0,0 +1,31 @@
+package org.mcstats;
+
+import org.mcstats.db.MemoryDatabase;
+
+import java.util.Properties;
+
+/**
+ * Creates MCStats instances for tests that need one of their own instead of the shared singleton
+ */
+public class MCStatsFixtures {
+
+    /**
+     * Create an MCStats backed by an empty {@link MemoryDatabase}, without the web server or database queue workers
+     *
+     * @return
+     */
+    public static MCStats create() {
+        MCStats mcstats = new MCStats();
+
+        Properties config = new Properties();
+        config.setProperty("debug", "false");
+        config.setProperty("queue.workers", "0");
+        config.setProperty("queue.flushes", "1");
+        config.setProperty("queue.maxSize", "1000");
+        config.setProperty("graphs.store", "local");
+        mcstats.init(config, new MemoryDatabase(mcstats));
+
+        return mcstats;
+    }
+
+}
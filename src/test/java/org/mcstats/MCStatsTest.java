@@ -0,0 +1,43 @@
+package org.mcstats;
+
+import org.junit.Test;
+import org.mcstats.db.Database;
+import org.mcstats.db.MemoryDatabase;
+import org.mcstats.model.Plugin;
+
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class MCStatsTest {
+
+    @Test
+    public void testInitConnectsToDatabase() {
+        MCStats mcstats = new MCStats() {
+            @Override
+            Database connectToDatabase() {
+                MemoryDatabase database = new MemoryDatabase(this);
+                database.addCountry("DE", "Germany");
+                Plugin plugin = database.createPlugin("Connected");
+                database.createGraph(plugin, "Global Statistics");
+                return database;
+            }
+        };
+
+        Properties config = new Properties();
+        config.setProperty("debug", "false");
+        config.setProperty("queue.workers", "0");
+        config.setProperty("queue.flushes", "1");
+        config.setProperty("queue.maxSize", "1000");
+        config.setProperty("graphs.store", "local");
+        mcstats.init(config, null);
+
+        assertTrue(mcstats.getDatabase() instanceof MemoryDatabase);
+        assertEquals("Germany", mcstats.getCountryName("DE"));
+
+        Plugin plugin = mcstats.loadPlugin("Connected");
+        assertNotNull(plugin);
+        assertNotNull(plugin.getGraph("Global Statistics"));
+    }
+
+}
@@ -0,0 +1,177 @@
+package org.mcstats.benchmark;
+
+import com.sun.management.ThreadMXBean;
+import org.mcstats.IntervalState;
+import org.mcstats.MCStats;
+import org.mcstats.db.MemoryDatabase;
+import org.mcstats.generator.FusedAggregator;
+import org.mcstats.generator.GraphGenerator;
+import org.mcstats.generator.IncrementAggregator;
+import org.mcstats.generator.ReflectionAggregator;
+import org.mcstats.generator.aggregator.CountryAggregator;
+import org.mcstats.generator.aggregator.RevisionAggregator;
+import org.mcstats.generator.aggregator.VersionDemographicsAggregator;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Wall clock time of one fused aggregation pass over a synthetic interval, including grouping the generated columns by
+ * graph for storage, on the calling thread and on fork/join pools of increasing size. The sequential passes also report
+ * how much they allocated. The real aggregators run against MCStats initialized with an in-memory database, so graphs
+ * and columns are looked up the same way as in production.
+ *
+ * Usage: GraphGenerationBenchmark [servers] [plugins] [plugins per server]
+ * Run with a large enough heap, e.g. -Xmx4g for the defaults.
+ */
+public class GraphGenerationBenchmark {
+
+    /**
+     * Passes run per configuration, the first few of which warm up
+     */
+    private static final int PASSES = 8;
+
+    private static final String[] SOFTWARE = {"CraftBukkit", "Spigot", "PaperSpigot", "Cauldron", "BungeeCord"};
+
+    private static final String[] VERSIONS = {"1.7.10", "1.8", "1.8.3", "1.8.7", "1.8.8"};
+
+    private static final String[] COUNTRIES = {"US", "DE", "GB", "FR", "RU", "BR", "PL", "NL", "CA", "SE"};
+
+    public static void main(String[] args) throws Exception {
+        int serverCount = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+        int pluginCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int pluginsPerServer = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        MCStats mcstats = MCStats.getInstance();
+        MemoryDatabase database = new MemoryDatabase(mcstats);
+        int now = (int) (System.currentTimeMillis() / 1000L);
+        Random random = new Random(0);
+
+        for (String country : COUNTRIES) {
+            database.addCountry(country, "Country " + country);
+        }
+
+        for (int i = 0; i < pluginCount; i++) {
+            database.createPlugin("Plugin" + i).setLastUpdated(now);
+        }
+
+        Properties config = new Properties();
+        config.setProperty("debug", "false");
+        config.setProperty("queue.workers", "0");
+        config.setProperty("queue.flushes", "1");
+        config.setProperty("queue.maxSize", "1000");
+        config.setProperty("graphs.store", "local");
+        mcstats.init(config, database);
+
+        Plugin allServers = mcstats.loadPlugin(-1);
+        List<Plugin> plugins = new ArrayList<>();
+
+        for (int i = 0; i < pluginCount; i++) {
+            plugins.add(mcstats.loadPlugin("Plugin" + i));
+        }
+
+        List<Server> servers = new ArrayList<>();
+        Map<Plugin, Set<ServerPlugin>> serverPlugins = new HashMap<>();
+
+        for (int i = 0; i < serverCount; i++) {
+            Server server = new Server(mcstats);
+            server.setId(i + 1);
+            server.setGUID("server-" + i);
+            server.setServerSoftware(SOFTWARE[random.nextInt(SOFTWARE.length)]);
+            server.setMinecraftVersion(VERSIONS[random.nextInt(VERSIONS.length)]);
+            server.setCountry(COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            server.setPlayers(random.nextInt(100));
+            server.setCores(1 + random.nextInt(16));
+            server.setLastSentData(now);
+            servers.add(server);
+
+            for (int j = 0; j < pluginsPerServer; j++) {
+                // a few plugins are on most servers, most plugins are on a few
+                double skew = random.nextDouble();
+                Plugin plugin = plugins.get((int) (skew * skew * skew * pluginCount));
+
+                ServerPlugin serverPlugin = new ServerPlugin(mcstats, server, plugin);
+                serverPlugin.setVersion(VERSIONS[random.nextInt(VERSIONS.length)]);
+                serverPlugin.setRevision(random.nextInt(20));
+                serverPlugin.setUpdated(now);
+                server.addPlugin(serverPlugin);
+                serverPlugins.computeIfAbsent(plugin, key -> new HashSet<>()).add(serverPlugin);
+            }
+        }
+
+        IntervalState interval = new IntervalState(servers, serverPlugins, null);
+
+        List<GraphGenerator> generators = new ArrayList<>();
+        generators.add(new IncrementAggregator("Global Statistics", "Servers"));
+        generators.add(new ReflectionAggregator("players", "Global Statistics", "Players"));
+        generators.add(new ReflectionAggregator("serverSoftware", "Server Software"));
+        generators.add(new ReflectionAggregator("minecraftVersion", "Game Version"));
+        generators.add(new ReflectionAggregator("cores", "System Cores"));
+        generators.add(new CountryAggregator("Server Locations"));
+        generators.add(new VersionDemographicsAggregator("Version Demographics"));
+        generators.add(new RevisionAggregator("Revision Demographics"));
+
+        System.out.printf("%,d servers, %,d plugins, %,d server plugins, %d aggregators%n", serverCount, pluginCount,
+                serverCount * pluginsPerServer, generators.size());
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        double sequential = run(mcstats, interval, allServers, plugins, generators, null);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        System.out.printf("%-14s %,8.1f ms, %,.1f MB allocated per pass%n", "sequential", sequential, allocated / (double) PASSES / 1048576d);
+        System.out.printf("%,d graphs and columns created%n", database.getCreated());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            double time = run(mcstats, interval, allServers, plugins, generators, pool);
+            pool.shutdown();
+
+            System.out.printf("%-14s %,8.1f ms (%.2fx)%n", parallelism + " threads", time, sequential / time);
+
+            if (parallelism == cores) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Time the best of several passes
+     *
+     * @return the fastest pass, in milliseconds
+     */
+    private static double run(MCStats mcstats, IntervalState interval, Plugin allServers, List<Plugin> plugins, List<GraphGenerator> generators, ForkJoinPool pool) {
+        FusedAggregator aggregator = new FusedAggregator(generators, pool);
+        long best = Long.MAX_VALUE;
+
+        // the first passes warm up and create the columns
+        for (int i = 0; i < PASSES; i++) {
+            long start = System.nanoTime();
+            aggregator.aggregate(mcstats, interval, allServers, plugins);
+
+            for (GraphGenerator generator : generators) {
+                aggregator.get(generator).slotsByGraph();
+            }
+            long time = System.nanoTime() - start;
+
+            if (i >= 3) {
+                best = Math.min(best, time);
+            }
+        }
+
+        return best / 1000000d;
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.mcstats.benchmark;
+
+import org.mcstats.db.GraphStore;
+import org.mcstats.db.LocalGraphStore;
+import org.mcstats.db.SegmentGraphStore;
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Time taken to store one generation's worth of graph data in the embedded stores, so generation can be benchmarked
+ * against a sink that needs no database. Each store gets a fresh epoch per pass; the fastest pass is reported.
+ *
+ * Usage: GraphStoreBenchmark [plugins] [graphs per plugin] [columns per graph]
+ */
+public class GraphStoreBenchmark {
+
+    private static final int PASSES = 8;
+
+    public static void main(String[] args) throws IOException {
+        int pluginCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int graphsPerPlugin = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int columnsPerGraph = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        ColumnTable table = new ColumnTable();
+        int nextId = 0;
+
+        for (int i = 0; i < pluginCount; i++) {
+            // nothing is saved, so no MCStats instance is needed
+            Plugin plugin = new Plugin(null);
+            plugin.setId(i + 1);
+
+            for (int j = 0; j < graphsPerPlugin; j++) {
+                Graph graph = new Graph(null, plugin);
+                graph.setId(++nextId);
+
+                for (int k = 0; k < columnsPerGraph; k++) {
+                    Column column = new Column(null, graph, plugin);
+                    column.setId(nextId * columnsPerGraph + k);
+                    table.emit(column, k);
+                }
+            }
+        }
+
+        Map<Graph, int[]> graphs = table.slotsByGraph();
+        System.out.printf("%,d columns in %,d graphs%n", table.size(), graphs.size());
+
+        Path directory = Files.createTempDirectory("graphs");
+
+        try {
+            report("local", table, graphs, new LocalGraphStore());
+            report("segments", table, graphs, new SegmentGraphStore(directory, null));
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+
+            Files.delete(directory);
+        }
+    }
+
+    private static void report(String name, ColumnTable table, Map<Graph, int[]> graphs, GraphStore store) {
+        long best = Long.MAX_VALUE;
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            int epoch = 1400000000 + pass * 1800;
+            long start = System.nanoTime();
+
+            for (Map.Entry<Graph, int[]> entry : graphs.entrySet()) {
+                store.batchInsert(entry.getKey(), table, entry.getValue(), epoch);
+            }
+
+            store.finishGeneration(epoch);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-10s %,8.1f ms (%,.0f columns/s)%n", name, best / 1000000d, table.size() / (best / 1000000000d));
+    }
+
+}
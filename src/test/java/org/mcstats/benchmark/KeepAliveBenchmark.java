@@ -0,0 +1,189 @@
+package org.mcstats.benchmark;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.mcstats.handler.BlackholeHandler;
+import org.mcstats.handler.KeepAlivePolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback throughput of the blackhole handler with connections closed after every response versus kept alive.
+ *
+ * Usage: KeepAliveBenchmark [threads] [seconds]
+ */
+public class KeepAliveBenchmark {
+
+    private static final byte[] REQUEST = ("POST /plugin/Benchmark HTTP/1.1\r\n"
+            + "Host: 127.0.0.1\r\n"
+            + "User-Agent: MCStats/7\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: 15\r\n"
+            + "\r\n"
+            + "{\"guid\":\"test\"}").getBytes(StandardCharsets.ISO_8859_1);
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // warm up both paths before measuring
+        run(false, threads, 2);
+        run(true, threads, 2);
+
+        double close = run(false, threads, seconds);
+        double keepAlive = run(true, threads, seconds);
+
+        System.out.printf("close:      %,.0f req/s%n", close);
+        System.out.printf("keep-alive: %,.0f req/s (%.2fx)%n", keepAlive, keepAlive / close);
+    }
+
+    /**
+     * Run one measurement
+     *
+     * @param keepAlive
+     * @param threads
+     * @param seconds
+     * @return requests per second
+     */
+    private static double run(boolean keepAlive, int threads, int seconds) throws Exception {
+        KeepAlivePolicy policy = new KeepAlivePolicy(keepAlive, Collections.singleton(InetAddress.getByName("127.0.0.1")), 30000, Integer.MAX_VALUE);
+
+        Server server = new Server();
+        server.setHandler(new BlackholeHandler(policy));
+        ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        connector.setSoLingerTime(0);
+        server.addConnector(connector);
+        server.start();
+
+        int port = connector.getLocalPort();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        AtomicLong completed = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    long count = keepAlive ? persistent(port, deadline) : reconnecting(port, deadline);
+                    completed.addAndGet(count);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+        server.stop();
+
+        return completed.get() / (double) seconds;
+    }
+
+    /**
+     * Send requests on a new connection each
+     *
+     * @param port
+     * @param deadline
+     * @return the amount of requests completed
+     */
+    private static long reconnecting(int port, long deadline) throws IOException {
+        byte[] buffer = new byte[1024];
+        long count = 0;
+
+        while (System.nanoTime() < deadline) {
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setTcpNoDelay(true);
+                socket.getOutputStream().write(REQUEST);
+
+                InputStream input = socket.getInputStream();
+                while (input.read(buffer) != -1) {
+                    // read until the server closes the connection
+                }
+            }
+
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Send all requests on one connection
+     *
+     * @param port
+     * @param deadline
+     * @return the amount of requests completed
+     */
+    private static long persistent(int port, long deadline) throws IOException {
+        byte[] buffer = new byte[1024];
+        long count = 0;
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+
+            while (System.nanoTime() < deadline) {
+                output.write(REQUEST);
+                readResponse(input, buffer);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Read one response with a Content-Length body from a connection
+     *
+     * @param input
+     * @param buffer
+     */
+    private static void readResponse(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        int headerEnd = -1;
+
+        while (headerEnd == -1) {
+            int read = input.read(buffer, length, buffer.length - length);
+
+            if (read == -1) {
+                throw new IOException("Connection closed by server");
+            }
+
+            length += read;
+
+            for (int i = 3; i < length; i++) {
+                if (buffer[i - 3] == '\r' && buffer[i - 2] == '\n' && buffer[i - 1] == '\r' && buffer[i] == '\n') {
+                    headerEnd = i + 1;
+                    break;
+                }
+            }
+        }
+
+        String headers = new String(buffer, 0, headerEnd, StandardCharsets.ISO_8859_1).toLowerCase();
+        int start = headers.indexOf("content-length:") + "content-length:".length();
+        int contentLength = Integer.parseInt(headers.substring(start, headers.indexOf('\r', start)).trim());
+        int remaining = contentLength - (length - headerEnd);
+
+        while (remaining > 0) {
+            int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
+
+            if (read == -1) {
+                throw new IOException("Connection closed by server");
+            }
+
+            remaining -= read;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.mcstats.benchmark;
+
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerAttribute;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Cost of reading server attributes the way the reflection aggregators used to (Field.get, then toString or parsing the
+ * boxed value) versus through {@link ServerAttribute}. Each mode is warmed up, then measured over several iterations
+ * and the fastest is reported, in the spirit of a JMH average time benchmark.
+ *
+ * Usage: ServerAttributeBenchmark [servers] [iterations]
+ */
+public class ServerAttributeBenchmark {
+
+    private static final String[] SOFTWARE = {"CraftBukkit", "Spigot", "PaperSpigot", "Cauldron", "BungeeCord"};
+
+    /**
+     * Keeps the JIT from removing the reads
+     */
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int serverCount = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(0);
+        Server[] servers = new Server[serverCount];
+
+        for (int i = 0; i < serverCount; i++) {
+            // nothing is saved, so no MCStats instance is needed
+            Server server = new Server(null);
+            server.setPlayers(random.nextInt(100));
+            server.setCores(1 + random.nextInt(16));
+            server.setOnlineMode(random.nextInt(2));
+            server.setServerSoftware(SOFTWARE[random.nextInt(SOFTWARE.length)]);
+            servers[i] = server;
+        }
+
+        ServerAttribute[] attributes = {ServerAttribute.PLAYERS, ServerAttribute.CORES, ServerAttribute.ONLINE_MODE, ServerAttribute.SERVER_SOFTWARE};
+
+        for (ServerAttribute attribute : attributes) {
+            Field field = Server.class.getDeclaredField(attribute.getFieldName());
+            field.setAccessible(true);
+
+            // column names are strings for every attribute, column values only make sense for numeric ones
+            double reflectiveName = measure(iterations, () -> reflectiveName(servers, field));
+            double typedName = measure(iterations, () -> typedName(servers, attribute));
+            System.out.printf("%-16s name   reflective %6.2f ns/op, typed %6.2f ns/op (%.2fx)%n", attribute.getFieldName(),
+                    reflectiveName / serverCount, typedName / serverCount, reflectiveName / typedName);
+
+            if (attribute.isNumeric()) {
+                double reflectiveValue = measure(iterations, () -> reflectiveValue(servers, field));
+                double typedValue = measure(iterations, () -> typedValue(servers, attribute));
+                System.out.printf("%-16s value  reflective %6.2f ns/op, typed %6.2f ns/op (%.2fx)%n", attribute.getFieldName(),
+                        reflectiveValue / serverCount, typedValue / serverCount, reflectiveValue / typedValue);
+            }
+        }
+    }
+
+    /**
+     * Warm up, then time the fastest of the measured iterations
+     *
+     * @param iterations
+     * @param pass
+     * @return nanoseconds taken by the fastest pass
+     */
+    private static double measure(int iterations, Pass pass) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            sink += pass.run();
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink += pass.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+
+    private static long reflectiveName(Server[] servers, Field field) throws IllegalAccessException {
+        long hash = 0;
+
+        for (Server server : servers) {
+            hash += field.get(server).toString().length();
+        }
+
+        return hash;
+    }
+
+    private static long typedName(Server[] servers, ServerAttribute attribute) {
+        long hash = 0;
+
+        for (Server server : servers) {
+            hash += attribute.getString(server).length();
+        }
+
+        return hash;
+    }
+
+    private static long reflectiveValue(Server[] servers, Field field) throws IllegalAccessException {
+        long sum = 0;
+
+        for (Server server : servers) {
+            sum += Long.parseLong(field.get(server).toString());
+        }
+
+        return sum;
+    }
+
+    private static long typedValue(Server[] servers, ServerAttribute attribute) {
+        long sum = 0;
+
+        for (Server server : servers) {
+            sum += attribute.getLong(server, 1);
+        }
+
+        return sum;
+    }
+
+    private interface Pass {
+
+        long run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.mcstats.benchmark;
+
+import org.mcstats.db.GraphStore;
+import org.mcstats.db.LocalGraphStore;
+import org.mcstats.db.WriteBehindGraphStore;
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time taken to generate and store a generation when the store is slow, storing on the generating thread and through
+ * the write-behind queue. Generating is simulated by spinning and the store sleeps for every graph, so the numbers show
+ * how much of the two overlaps rather than how fast either is.
+ *
+ * Usage: WriteBehindBenchmark [generators] [graphs per generator] [compute ms per generator] [store us per graph]
+ */
+public class WriteBehindBenchmark {
+
+    public static void main(String[] args) {
+        int generatorCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int graphsPerGenerator = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long computeMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        long storeMicros = args.length > 3 ? Long.parseLong(args[3]) : 250;
+
+        System.out.printf("%d generators, %d graphs each: %d ms compute and %d ms storing per generator%n", generatorCount, graphsPerGenerator,
+                computeMillis, graphsPerGenerator * storeMicros / 1000);
+
+        report("direct", new SleepingGraphStore(storeMicros), generatorCount, graphsPerGenerator, computeMillis);
+        report("1 writer", new WriteBehindGraphStore(new SleepingGraphStore(storeMicros), 1, 4096), generatorCount, graphsPerGenerator, computeMillis);
+        report("4 writers", new WriteBehindGraphStore(new SleepingGraphStore(storeMicros), 4, 4096), generatorCount, graphsPerGenerator, computeMillis);
+        report("64 queued", new WriteBehindGraphStore(new SleepingGraphStore(storeMicros), 1, 64), generatorCount, graphsPerGenerator, computeMillis);
+    }
+
+    private static void report(String name, GraphStore store, int generatorCount, int graphsPerGenerator, long computeMillis) {
+        long start = System.nanoTime();
+        int epoch = 1400000000;
+
+        for (int i = 0; i < generatorCount; i++) {
+            ColumnTable data = generate(i, graphsPerGenerator, computeMillis);
+
+            for (Map.Entry<Graph, int[]> entry : data.slotsByGraph().entrySet()) {
+                store.batchInsert(entry.getKey(), data, entry.getValue(), epoch);
+            }
+        }
+
+        store.finishGeneration(epoch);
+        System.out.printf("%-10s %,8.1f ms%n", name, (System.nanoTime() - start) / 1000000d);
+    }
+
+    /**
+     * Spin for a while, then make a table with one column in each graph
+     */
+    private static ColumnTable generate(int generator, int graphs, long computeMillis) {
+        long until = System.nanoTime() + computeMillis * 1000000L;
+
+        while (System.nanoTime() < until) {
+            // busy, like a generator
+        }
+
+        Plugin plugin = new Plugin(null);
+        plugin.setId(generator + 1);
+        ColumnTable data = new ColumnTable();
+
+        for (int i = 0; i < graphs; i++) {
+            Graph graph = new Graph(null, plugin);
+            graph.setId(generator * graphs + i + 1);
+
+            Column column = new Column(null, graph, plugin);
+            column.setId(graph.getId());
+            data.emit(column, i);
+        }
+
+        return data;
+    }
+
+    /**
+     * Store that sleeps for every graph, like one waiting on the network
+     */
+    private static class SleepingGraphStore extends LocalGraphStore {
+
+        private final long micros;
+
+        private SleepingGraphStore(long micros) {
+            this.micros = micros;
+        }
+
+        @Override
+        public void batchInsert(Graph graph, ColumnTable batchData, int[] slots, int epoch) {
+            // waiting rather than spinning, so it leaves the cpu to the generators
+            LockSupport.parkNanos(micros * 1000);
+            super.batchInsert(graph, batchData, slots, epoch);
+        }
+
+    }
+
+}
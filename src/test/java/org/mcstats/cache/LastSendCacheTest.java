@@ -0,0 +1,76 @@
+package org.mcstats.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LastSendCacheTest {
+
+    private static final int INTERVAL = 1800;
+
+    @Test
+    public void testGetAndSet() {
+        LastSendCache cache = new LastSendCache(INTERVAL, 2, 1000000);
+        int now = 1000 * INTERVAL;
+
+        assertEquals(0, cache.getAndSet("guid", 1, now));
+        assertEquals(now, cache.getAndSet("guid", 1, now + 10));
+        assertEquals(now + 10, cache.getAndSet("guid", 1, now + 20));
+
+        // the plugin id is part of the key
+        assertEquals(0, cache.getAndSet("guid", 2, now));
+        assertEquals(0, cache.getAndSet("other", 1, now));
+
+        assertEquals(3, cache.size());
+        assertEquals(5, cache.getLookups());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testExpiry() {
+        LastSendCache cache = new LastSendCache(INTERVAL, 2, 1000000);
+        int now = 1000 * INTERVAL;
+
+        cache.getAndSet("guid", 1, now);
+
+        // still known in the next interval
+        assertEquals(now, cache.getAndSet("guid", 1, now + INTERVAL));
+
+        cache.getAndSet("expired", 1, now);
+
+        // gone once the interval is no longer kept
+        assertEquals(0, cache.getAndSet("expired", 1, now + 2 * INTERVAL));
+        assertEquals(now + INTERVAL, cache.getAndSet("guid", 1, now + 2 * INTERVAL + 1));
+    }
+
+    @Test
+    public void testGrowth() {
+        LastSendCache cache = new LastSendCache(INTERVAL, 2, 10000000);
+        int now = 1000 * INTERVAL;
+
+        for (int i = 0; i < 100000; i++) {
+            cache.getAndSet("guid-" + i, i % 7, now + 1);
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(now + 1, cache.getAndSet("guid-" + i, i % 7, now + 2));
+        }
+
+        assertEquals(100000, cache.size());
+        assertTrue(cache.getOccupancy() > 0.3 && cache.getOccupancy() <= 0.75);
+    }
+
+    @Test
+    public void testBounded() {
+        LastSendCache cache = new LastSendCache(INTERVAL, 2, 64 * 10);
+        int now = 1000 * INTERVAL;
+
+        for (int i = 0; i < 10000; i++) {
+            cache.getAndSet("guid-" + i, 1, now);
+        }
+
+        assertTrue(cache.size() <= 64 * 10);
+        assertEquals(10000 - cache.size(), cache.getRejected());
+    }
+
+}
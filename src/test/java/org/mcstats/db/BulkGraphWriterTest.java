@@ -0,0 +1,35 @@
+package org.mcstats.db;
+
+import com.mongodb.BasicDBObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkGraphWriterTest {
+
+    @Test
+    public void testSizeOfFlatDocument() {
+        // length + (type + "a\0" + int32) + terminator
+        assertEquals(4 + 1 + 2 + 4 + 1, BulkGraphWriter.sizeOf(new BasicDBObject("a", 1)));
+
+        // int64
+        assertEquals(4 + 1 + 2 + 8 + 1, BulkGraphWriter.sizeOf(new BasicDBObject("a", 1L)));
+
+        // string: length + bytes + terminator
+        assertEquals(4 + 1 + 2 + 4 + 3 + 1, BulkGraphWriter.sizeOf(new BasicDBObject("a", "hi")));
+    }
+
+    @Test
+    public void testSizeOfGraphDocument() {
+        BasicDBObject column = new BasicDBObject().append("sum", 10).append("count", 3000000000L);
+        BasicDBObject data = new BasicDBObject("1234", column);
+        BasicDBObject document = new BasicDBObject().append("epoch", 1400000000).append("plugin", 1).append("graph", 2).append("data", data);
+
+        int columnSize = 4 + (1 + 4 + 4) + (1 + 6 + 8) + 1;
+        int dataSize = 4 + (1 + 5 + columnSize) + 1;
+        int documentSize = 4 + (1 + 6 + 4) + (1 + 7 + 4) + (1 + 6 + 4) + (1 + 5 + dataSize) + 1;
+
+        assertEquals(documentSize, BulkGraphWriter.sizeOf(document));
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.mcstats.db;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GraphRollupTest {
+
+    private static DBObject document(int epoch, int plugin, int graph, BasicDBObject data) {
+        return new BasicDBObject().append("epoch", epoch).append("plugin", plugin).append("graph", graph).append("data", data);
+    }
+
+    private static BasicDBObject column(long sum, long count) {
+        BasicDBObject column = new BasicDBObject();
+
+        if (sum != 0) {
+            column.append("sum", MongoDBGraphStore.toBson(sum));
+        }
+
+        if (count != 0) {
+            column.append("count", MongoDBGraphStore.toBson(count));
+        }
+
+        return column;
+    }
+
+    private static DBObject find(List<DBObject> documents, int plugin, int graph) {
+        for (DBObject document : documents) {
+            if (((Number) document.get("plugin")).intValue() == plugin && ((Number) document.get("graph")).intValue() == graph) {
+                return document;
+            }
+        }
+
+        fail("No document for graph " + graph + " of plugin " + plugin);
+        return null;
+    }
+
+    private static long get(DBObject document, String column, String field) {
+        Object value = ((DBObject) ((DBObject) document.get("data")).get(column)).get(field);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    @Test
+    public void testBuckets() {
+        // 2014-05-13 16:53:20 UTC, a tuesday
+        int epoch = 1400000000;
+
+        assertEquals(1399998600, GraphRollup.Resolution.RAW.bucket(epoch));
+        assertEquals(1399996800, GraphRollup.Resolution.HOURLY.bucket(epoch));
+        assertEquals(1399939200, GraphRollup.Resolution.DAILY.bucket(epoch));
+
+        // monday 2014-05-12 00:00 UTC
+        assertEquals(1399852800, GraphRollup.Resolution.WEEKLY.bucket(epoch));
+        assertEquals(1399852800, GraphRollup.Resolution.WEEKLY.bucket(1399852800));
+        assertEquals(1399852800 - 7 * 86400, GraphRollup.Resolution.WEEKLY.bucket(1399852799));
+    }
+
+    @Test
+    public void testMergeRawEpochs() {
+        GraphRollup.Bucket bucket = new GraphRollup.Bucket();
+        assertTrue(bucket.isEmpty());
+
+        bucket.add(document(1399996800, 1, 10, new BasicDBObject().append("100", column(40, 4)).append("101", column(3000000000L, 2))));
+        bucket.add(document(1399998600, 1, 10, new BasicDBObject().append("100", column(60, 5)).append("101", column(0, 1))));
+        bucket.add(document(1399998600, 2, 10, new BasicDBObject("200", column(7, 1))));
+
+        List<DBObject> documents = bucket.toDocuments(1399996800);
+        assertEquals(2, documents.size());
+
+        DBObject first = find(documents, 1, 10);
+        assertEquals(1399996800, ((Number) first.get("epoch")).intValue());
+
+        assertEquals(100, get(first, "100", "sum"));
+        assertEquals(9, get(first, "100", "count"));
+        assertEquals(40, get(first, "100", "min"));
+        assertEquals(60, get(first, "100", "max"));
+        assertEquals(2, get(first, "100", "epochs"));
+
+        // a zero sum is left out like in raw documents, but still counts as the smallest value
+        assertEquals(3000000000L, get(first, "101", "sum"));
+        assertTrue(((DBObject) first.get("data")).get("101") instanceof DBObject);
+        assertEquals(0, get(first, "101", "min"));
+        assertEquals(3000000000L, get(first, "101", "max"));
+
+        // same graph id, other plugin
+        assertEquals(7, get(find(documents, 2, 10), "200", "sum"));
+    }
+
+    @Test
+    public void testMergeStoredMinAndMax() {
+        GraphRollup.Bucket bucket = new GraphRollup.Bucket();
+        bucket.add(document(1399996800, 1, 10, new BasicDBObject("100", column(40, 4).append("min", 2).append("max", 25))));
+        bucket.add(document(1399998600, 1, 10, new BasicDBObject("100", column(60, 5).append("min", 0).append("max", 18))));
+
+        // legacy document without a min and max, its sum counts as both
+        bucket.add(document(1399998600, 2, 10, new BasicDBObject("200", column(7, 1))));
+
+        List<DBObject> documents = bucket.toDocuments(1399996800);
+        DBObject first = find(documents, 1, 10);
+        assertEquals(100, get(first, "100", "sum"));
+        assertEquals(9, get(first, "100", "count"));
+        assertEquals(0, get(first, "100", "min"));
+        assertEquals(25, get(first, "100", "max"));
+        assertEquals(2, get(first, "100", "epochs"));
+
+        DBObject legacy = find(documents, 2, 10);
+        assertEquals(7, get(legacy, "200", "min"));
+        assertEquals(7, get(legacy, "200", "max"));
+    }
+
+    @Test
+    public void testMergeRolledUp() {
+        GraphRollup.Bucket hourly = new GraphRollup.Bucket();
+        hourly.add(document(1399996800, 1, 10, new BasicDBObject("100", column(40, 4))));
+        hourly.add(document(1399998600, 1, 10, new BasicDBObject("100", column(60, 5))));
+
+        GraphRollup.Bucket other = new GraphRollup.Bucket();
+        other.add(document(1400000400, 1, 10, new BasicDBObject("100", column(10, 1))));
+
+        // a daily bucket made of two hours gives the same result as the three raw epochs
+        GraphRollup.Bucket daily = new GraphRollup.Bucket();
+        daily.add(hourly.toDocuments(1399996800).get(0));
+        daily.add(other.toDocuments(1400000400).get(0));
+
+        DBObject document = daily.toDocuments(1399939200).get(0);
+        assertEquals(110, get(document, "100", "sum"));
+        assertEquals(10, get(document, "100", "count"));
+        assertEquals(10, get(document, "100", "min"));
+        assertEquals(60, get(document, "100", "max"));
+        assertEquals(3, get(document, "100", "epochs"));
+    }
+
+    @Test
+    public void testRawEndStopsAtIncompleteEpoch() {
+        BasicDBObject statistic = new BasicDBObject("max", new BasicDBObject("epoch", 1400001800));
+        assertEquals(1400003600, GraphRollup.rawEnd(statistic));
+
+        statistic.append("incomplete", Arrays.asList(1400000000, 1399998200));
+        assertEquals(1399998200, GraphRollup.rawEnd(statistic));
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.mcstats.db;
+
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.util.Map;
+
+/**
+ * Generated data and helpers shared by the graph store tests
+ */
+public class GraphStoreFixtures {
+
+    /**
+     * Make a table of one plugin's graphs. Every column gets two values, one above the int range and one not above 0,
+     * so its count is 2 and its min and max differ.
+     *
+     * @param pluginId
+     * @param firstGraphId the id of the first graph, the others follow it
+     * @param graphs
+     * @param columnsPerGraph
+     * @return
+     */
+    public static ColumnTable createTable(int pluginId, int firstGraphId, int graphs, int columnsPerGraph) {
+        Plugin plugin = new Plugin(null);
+        plugin.setId(pluginId);
+        ColumnTable table = new ColumnTable();
+
+        for (int i = 0; i < graphs; i++) {
+            Graph graph = new Graph(null, plugin);
+            graph.setId(firstGraphId + i);
+
+            for (int j = 0; j < columnsPerGraph; j++) {
+                Column column = new Column(null, graph, plugin);
+                column.setId(i * columnsPerGraph + j + 1);
+                table.emit(column, 3000000000L + j);
+                table.emit(column, -j);
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Store a table the way the graph generator does, one batch per graph
+     *
+     * @param store
+     * @param table
+     * @param epoch
+     */
+    public static void store(GraphStore store, ColumnTable table, int epoch) {
+        for (Map.Entry<Graph, int[]> entry : table.slotsByGraph().entrySet()) {
+            store.batchInsert(entry.getKey(), table, entry.getValue(), epoch);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.mcstats.db;
+
+import org.mcstats.MCStats;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.PluginVersion;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Database kept in memory, for tests and benchmarks that need a working MCStats without MySQL
+ */
+public class MemoryDatabase implements Database {
+
+    private final MCStats mcstats;
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final Map<String, String> countries = new HashMap<>();
+
+    private final Map<Integer, Plugin> plugins = new ConcurrentHashMap<>();
+
+    private final Map<Plugin, Map<String, Graph>> graphs = new ConcurrentHashMap<>();
+
+    private final Map<Graph, Map<String, Column>> columns = new ConcurrentHashMap<>();
+
+    private final Map<String, Server> servers = new ConcurrentHashMap<>();
+
+    /**
+     * Counts every graph and column created
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Creates the All Servers plugin
+     *
+     * @param mcstats
+     */
+    public MemoryDatabase(MCStats mcstats) {
+        this.mcstats = mcstats;
+
+        Plugin allServers = new Plugin(mcstats);
+        allServers.setId(-1);
+        allServers.setName("All Servers");
+        allServers.setParent(-1);
+        plugins.put(-1, allServers);
+    }
+
+    /**
+     * Add a country
+     *
+     * @param shortCode
+     * @param name
+     */
+    public void addCountry(String shortCode, String name) {
+        countries.put(shortCode, name);
+    }
+
+    /**
+     * Get the amount of graphs and columns created
+     *
+     * @return
+     */
+    public int getCreated() {
+        return created.get();
+    }
+
+    public void executeUpdate(String query) {
+    }
+
+    public Map<String, String> loadCountries() {
+        return new HashMap<>(countries);
+    }
+
+    public Plugin createPlugin(String name) {
+        Plugin plugin = new Plugin(mcstats);
+        plugin.setId(nextId.incrementAndGet());
+        plugin.setName(name);
+        plugin.setParent(-1);
+        plugins.put(plugin.getId(), plugin);
+        return plugin;
+    }
+
+    public List<Plugin> loadPlugins() {
+        return new ArrayList<>(plugins.values());
+    }
+
+    public Plugin loadPlugin(int id) {
+        return plugins.get(id);
+    }
+
+    public Plugin loadPlugin(String name) {
+        for (Plugin plugin : plugins.values()) {
+            if (plugin.getName().equalsIgnoreCase(name)) {
+                return plugin;
+            }
+        }
+
+        return null;
+    }
+
+    public void savePlugin(Plugin plugin) {
+    }
+
+    public PluginVersion createPluginVersion(Plugin plugin, String version) {
+        PluginVersion pluginVersion = new PluginVersion(mcstats, plugin);
+        pluginVersion.setId(nextId.incrementAndGet());
+        pluginVersion.setVersion(version);
+        return pluginVersion;
+    }
+
+    public List<PluginVersion> loadPluginVersions(Plugin plugin) {
+        return new ArrayList<>();
+    }
+
+    public PluginVersion loadPluginVersion(Plugin plugin, String version) {
+        return null;
+    }
+
+    public ServerPlugin createServerPlugin(Server server, Plugin plugin, String version) {
+        ServerPlugin serverPlugin = new ServerPlugin(mcstats, server, plugin);
+        serverPlugin.setVersion(version);
+        return serverPlugin;
+    }
+
+    public ServerPlugin loadServerPlugin(Server server, Plugin plugin) {
+        return null;
+    }
+
+    public List<ServerPlugin> loadServerPlugins(Server server) {
+        return new ArrayList<>();
+    }
+
+    public void saveServerPlugin(ServerPlugin serverPlugin) {
+    }
+
+    public void addPluginVersionHistory(Server server, PluginVersion version) {
+    }
+
+    public Server createServer(String guid) {
+        Server server = new Server(mcstats);
+        server.setId(nextId.incrementAndGet());
+        server.setGUID(guid);
+        servers.put(guid, server);
+        return server;
+    }
+
+    public Server loadServer(String guid) {
+        return servers.get(guid);
+    }
+
+    public void saveServer(Server server) {
+    }
+
+    public Graph createGraph(Plugin plugin, String name) {
+        Graph graph = new Graph(mcstats, plugin);
+        graph.setId(nextId.incrementAndGet());
+        graph.setName(name);
+        graphs.computeIfAbsent(plugin, key -> new ConcurrentHashMap<>()).put(name.toLowerCase(), graph);
+        created.incrementAndGet();
+        return graph;
+    }
+
+    public Graph loadGraph(Plugin plugin, String name) {
+        Map<String, Graph> pluginGraphs = graphs.get(plugin);
+        return pluginGraphs == null ? null : pluginGraphs.get(name.toLowerCase());
+    }
+
+    public List<Graph> loadGraphs(Plugin plugin) {
+        Map<String, Graph> pluginGraphs = graphs.get(plugin);
+        return pluginGraphs == null ? new ArrayList<>() : new ArrayList<>(pluginGraphs.values());
+    }
+
+    public Column createColumn(Graph graph, String name) {
+        Column column = new Column(mcstats, graph, graph.getPlugin());
+        column.setId(nextId.incrementAndGet());
+        column.setName(name);
+        columns.computeIfAbsent(graph, key -> new ConcurrentHashMap<>()).put(name.toLowerCase(), column);
+        created.incrementAndGet();
+        return column;
+    }
+
+    public Column loadColumn(Graph graph, String name) {
+        Map<String, Column> graphColumns = columns.get(graph);
+        return graphColumns == null ? null : graphColumns.get(name.toLowerCase());
+    }
+
+    public List<Column> loadColumns(Graph graph) {
+        Map<String, Column> graphColumns = columns.get(graph);
+        return graphColumns == null ? new ArrayList<>() : new ArrayList<>(graphColumns.values());
+    }
+
+    public void blacklistServer(Server server) {
+    }
+
+    public boolean isServerBlacklisted(Server server) {
+        return false;
+    }
+
+}
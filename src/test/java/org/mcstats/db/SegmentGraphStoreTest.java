@@ -0,0 +1,147 @@
+package org.mcstats.db;
+
+import org.junit.Test;
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Column;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mcstats.db.GraphStoreFixtures.createTable;
+import static org.mcstats.db.GraphStoreFixtures.store;
+
+public class SegmentGraphStoreTest {
+
+    private static List<long[]> read(SegmentGraphStore store, int epoch, boolean finished) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        assertEquals(finished, store.read(epoch, (plugin, graph, column, recordEpoch, sum, count, min, max) ->
+                records.add(new long[] {plugin, graph, column, recordEpoch, sum, count, min, max})));
+        return records;
+    }
+
+    private static int slotOf(ColumnTable table, int columnId) {
+        for (int slot = 0; slot < table.size(); slot++) {
+            if (table.getColumn(slot).getId() == columnId) {
+                return slot;
+            }
+        }
+
+        fail("No column " + columnId);
+        return -1;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path directory = Files.createTempDirectory("graphs");
+
+        try {
+            // enough records to grow the mapping
+            ColumnTable table = createTable(7, 100, 40, 500);
+            SegmentGraphStore store = new SegmentGraphStore(directory, null);
+            store(store, table, 1400000000);
+            store.finishGeneration(1400000000);
+
+            assertEquals(table.size(), store.getAppended());
+            assertEquals(Arrays.asList(1400000000), store.listEpochs());
+
+            List<long[]> records = read(store, 1400000000, true);
+            assertEquals(table.size(), records.size());
+
+            Map<Integer, Integer> slots = new HashMap<>();
+
+            for (int slot = 0; slot < table.size(); slot++) {
+                slots.put(table.getColumn(slot).getId(), slot);
+            }
+
+            for (long[] record : records) {
+                int slot = slots.get((int) record[2]);
+                Column column = table.getColumn(slot);
+
+                assertEquals(7, record[0]);
+                assertEquals(column.getGraph().getId(), record[1]);
+                assertEquals(1400000000, record[3]);
+                assertEquals(table.getSum(slot), record[4]);
+                assertEquals(2, record[5]);
+                assertEquals(table.getMin(slot), record[6]);
+                assertEquals(table.getMax(slot), record[7]);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testAppendToUnfinishedEpoch() throws IOException {
+        Path directory = Files.createTempDirectory("graphs");
+
+        try {
+            ColumnTable table = createTable(7, 100, 2, 3);
+
+            // a store that stopped before finishing the epoch
+            store(new SegmentGraphStore(directory, null), table, 1400000000);
+
+            SegmentGraphStore store = new SegmentGraphStore(directory, null);
+            assertEquals(6, read(store, 1400000000, false).size());
+
+            // generating the epoch again replaces what the first run stored
+            ColumnTable again = new ColumnTable();
+
+            for (int slot = 0; slot < table.size(); slot++) {
+                again.emit(table.getColumn(slot), slot);
+            }
+
+            store(store, again, 1400000000);
+            store.finishGeneration(1400000000);
+
+            List<long[]> records = read(store, 1400000000, true);
+            assertEquals(6, records.size());
+
+            for (long[] record : records) {
+                int slot = again.slotOf(table.getColumn(slotOf(table, (int) record[2])));
+                assertEquals(slot, record[4]);
+                assertEquals(1, record[5]);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testWriteThrough() throws IOException {
+        Path directory = Files.createTempDirectory("graphs");
+
+        try {
+            LocalGraphStore local = new LocalGraphStore();
+            SegmentGraphStore store = new SegmentGraphStore(directory, local);
+            ColumnTable table = createTable(7, 100, 3, 4);
+
+            store(store, table, 1400001800);
+            store.finishGeneration(1400001800);
+
+            assertEquals(12, local.getInserts());
+            assertEquals(1400001800, local.getLastGeneration());
+            assertEquals(12, read(store, 1400001800, true).size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+}
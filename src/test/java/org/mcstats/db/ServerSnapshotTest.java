@@ -0,0 +1,176 @@
+package org.mcstats.db;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mcstats.MCStats;
+import org.mcstats.MCStatsFixtures;
+import org.mcstats.model.Column;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+import org.mcstats.util.Tuple;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ServerSnapshotTest {
+
+    private final int now = (int) (System.currentTimeMillis() / 1000L);
+
+    private MCStats source;
+
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        source = MCStatsFixtures.create();
+        path = Files.createTempDirectory("snapshot").resolve("servers.snap");
+    }
+
+    /**
+     * Create an MCStats to restore into, with the plugins of the source that were not deleted since
+     *
+     * @param plugins
+     * @return
+     */
+    private MCStats target(String... plugins) {
+        MCStats target = MCStatsFixtures.create();
+        MemoryDatabase database = (MemoryDatabase) target.getDatabase();
+
+        for (String name : plugins) {
+            Plugin plugin = database.createPlugin(name);
+            assertEquals(source.loadPlugin(name).getId(), plugin.getId());
+        }
+
+        return target;
+    }
+
+    private Server server(String guid) {
+        Server server = source.getDatabase().createServer(guid);
+        server.setCountry("DE");
+        server.setPlayers(12);
+        server.setServerVersion("git-Spigot-1.8");
+        server.setOSName("Linux");
+        server.setOSVersion("3.13");
+        server.setJavaName("OpenJDK");
+        server.setJavaVersion("1.8.0");
+        server.setCores(4);
+        server.setOnlineMode(1);
+        server.setCreated(now - 86400);
+        server.setServerSoftware("Spigot");
+        server.setMinecraftVersion("1.8");
+        server.setViolationCount(2);
+        server.setLastSentData(now);
+        source.cacheServer(server);
+        return server;
+    }
+
+    private ServerPlugin plugin(Server server, Plugin plugin, String version) {
+        ServerPlugin serverPlugin = source.getDatabase().createServerPlugin(server, plugin, version);
+        serverPlugin.setRevision(7);
+        serverPlugin.setUpdated(now);
+        server.addPlugin(serverPlugin);
+        return serverPlugin;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MemoryDatabase database = (MemoryDatabase) source.getDatabase();
+        Plugin kept = database.createPlugin("Kept");
+        Plugin deleted = database.createPlugin("Deleted");
+
+        Server first = server("first");
+        first.setOSArch(null);
+        first.setJavaName(null);
+        ServerPlugin firstKept = plugin(first, kept, "1.1");
+        firstKept.addVersionChange("1.0", "1.1");
+        Map<Column, Long> customData = new HashMap<>();
+        customData.put(source.loadGraph(kept, "Worlds").loadColumn("Nether"), 3L);
+        customData.put(source.loadGraph(kept, "Worlds").loadColumn("End"), 3000000000L);
+        firstKept.setCustomData(customData);
+        plugin(first, deleted, "2.0").addVersionChange("1.9", "2.0");
+
+        Server second = server("second");
+        second.setBlacklisted(true);
+        plugin(second, deleted, "2.0");
+
+        new ServerSnapshot(source).write(path, Arrays.asList(first, second));
+
+        MCStats target = target("Kept");
+        assertEquals(2, new ServerSnapshot(target).restore(path, 3600, target.getDatabase()));
+
+        Server restored = target.loadServer("first");
+        assertEquals("DE", restored.getCountry());
+        assertEquals(12, restored.getPlayers());
+        assertEquals("git-Spigot-1.8", restored.getServerVersion());
+        assertEquals("Linux", restored.getOSName());
+        assertNull(restored.getOSArch());
+        assertEquals("3.13", restored.getOSVersion());
+        assertNull(restored.getJavaName());
+        assertEquals("1.8.0", restored.getJavaVersion());
+        assertEquals(4, restored.getCores());
+        assertEquals(1, restored.getOnlineMode());
+        assertEquals(now - 86400, restored.getCreated());
+        assertEquals("Spigot", restored.getServerSoftware());
+        assertEquals("1.8", restored.getMinecraftVersion());
+        assertEquals(2, restored.getViolationCount());
+        assertEquals(now, restored.getLastSentData());
+        assertFalse(restored.isBlacklisted());
+
+        // the deleted plugin is dropped along with its version changes
+        Plugin restoredKept = target.loadPlugin("Kept");
+        assertEquals(1, restored.getPlugins().size());
+
+        ServerPlugin restoredPlugin = restored.getPlugin(restoredKept);
+        assertEquals("1.1", restoredPlugin.getVersion());
+        assertEquals(7, restoredPlugin.getRevision());
+        assertEquals(now, restoredPlugin.getUpdated());
+        assertEquals(1, restoredPlugin.getVersionChanges().size());
+
+        Tuple<String, String> change = restoredPlugin.getVersionChanges().iterator().next();
+        assertEquals("1.0", change.first());
+        assertEquals("1.1", change.second());
+
+        Map<String, Long> restoredData = new HashMap<>();
+
+        for (Map.Entry<Column, Long> entry : restoredPlugin.getCustomData().entrySet()) {
+            assertSame(target.loadGraph(restoredKept, "Worlds"), entry.getKey().getGraph());
+            restoredData.put(entry.getKey().getName(), entry.getValue());
+        }
+
+        assertEquals(2, restoredData.size());
+        assertEquals(3L, (long) restoredData.get("Nether"));
+        assertEquals(3000000000L, (long) restoredData.get("End"));
+
+        Server blacklisted = target.loadServer("second");
+        assertTrue(blacklisted.isBlacklisted());
+        assertTrue(blacklisted.getPlugins().isEmpty());
+    }
+
+    @Test
+    public void testMaxAge() throws IOException {
+        server("old");
+        new ServerSnapshot(source).write(path, source.getCachedServers());
+
+        // pretend the snapshot was written two hours ago
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(8);
+            file.writeLong(System.currentTimeMillis() - 2 * 3600 * 1000L);
+        }
+
+        MCStats target = target();
+        assertEquals(0, new ServerSnapshot(target).restore(path, 3600, target.getDatabase()));
+        assertNull(target.getDatabase().loadServer("old"));
+
+        assertEquals(1, new ServerSnapshot(target).restore(path, 3 * 3600, target.getDatabase()));
+        assertEquals(12, target.loadServer("old").getPlayers());
+    }
+
+}
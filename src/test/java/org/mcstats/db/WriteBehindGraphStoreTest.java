@@ -0,0 +1,95 @@
+package org.mcstats.db;
+
+import org.junit.Test;
+import org.mcstats.generator.ColumnTable;
+import org.mcstats.model.Graph;
+
+import static org.junit.Assert.*;
+import static org.mcstats.db.GraphStoreFixtures.createTable;
+import static org.mcstats.db.GraphStoreFixtures.store;
+
+public class WriteBehindGraphStoreTest {
+
+    /**
+     * Store that takes a while for every batch and records whether it was finished before everything was inserted
+     */
+    private static class SlowGraphStore extends LocalGraphStore {
+
+        private final long delay;
+
+        private volatile long insertsWhenFinished = -1;
+
+        private SlowGraphStore(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void batchInsert(Graph graph, ColumnTable batchData, int[] slots, int epoch) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            super.batchInsert(graph, batchData, slots, epoch);
+        }
+
+        @Override
+        public void finishGeneration(int epoch) {
+            insertsWhenFinished = getInserts();
+            super.finishGeneration(epoch);
+        }
+
+    }
+
+    @Test
+    public void testFinishWaitsForQueue() {
+        SlowGraphStore slow = new SlowGraphStore(1);
+        WriteBehindGraphStore store = new WriteBehindGraphStore(slow, 3, 64);
+        ColumnTable table = createTable(3, 10, 50, 4);
+
+        store(store, table, 1400000000);
+        store.finishGeneration(1400000000);
+
+        assertEquals(200, slow.insertsWhenFinished);
+        assertEquals(1400000000, slow.getLastGeneration());
+        assertEquals(50, store.getStored());
+        assertEquals(0, store.getQueued());
+        assertEquals(table.size(), slow.get(1400000000).size());
+    }
+
+    @Test
+    public void testFullQueueBlocks() {
+        SlowGraphStore slow = new SlowGraphStore(20);
+        WriteBehindGraphStore store = new WriteBehindGraphStore(slow, 1, 1);
+
+        // one batch being stored, one queued, so the rest have to wait for the writer
+        store(store, createTable(3, 10, 5, 1), 1400001800);
+        assertTrue(store.getBlockedTime() > 0);
+
+        store.finishGeneration(1400001800);
+        assertEquals(5, slow.insertsWhenFinished);
+    }
+
+    @Test
+    public void testFailedInsertDoesNotStall() {
+        LocalGraphStore local = new LocalGraphStore();
+        WriteBehindGraphStore store = new WriteBehindGraphStore(new LocalGraphStore() {
+            @Override
+            public void batchInsert(Graph graph, ColumnTable batchData, int[] slots, int epoch) {
+                if (graph.getId() == 11) {
+                    throw new IllegalStateException("unavailable");
+                }
+
+                local.batchInsert(graph, batchData, slots, epoch);
+            }
+        }, 2, 8);
+
+        store(store, createTable(3, 10, 3, 2), 1400003600);
+        store.finishGeneration(1400003600);
+
+        assertEquals(4, local.getInserts());
+        assertEquals(2, store.getStored());
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.mcstats.decoder;
+
+import org.junit.Test;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class LegacyRequestDecoderTest {
+
+    /**
+     * Decoder that resolves graphs and columns without a database
+     */
+    private static class TestDecoder extends LegacyRequestDecoder {
+
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+
+        public TestDecoder() {
+            super(null);
+        }
+
+        @Override
+        Graph loadGraph(Plugin plugin, String name) {
+            Graph graph = new Graph(null, plugin);
+            graph.setName(name);
+            graph.setActive(name.equals("Disabled") ? 0 : 1);
+            return graph;
+        }
+
+        @Override
+        Column loadColumn(Graph graph, String name) {
+            String key = graph.getName() + "/" + name;
+            Column column = columns.get(key);
+
+            if (column == null) {
+                column = new Column(null, graph, graph.getPlugin());
+                column.setId(columns.size() + 1);
+                column.setName(name);
+                columns.put(key, column);
+            }
+
+            return column;
+        }
+
+    }
+
+    @Test
+    public void testBasicFields() throws IOException {
+        DecodedRequest decoded = decode("guid=abc&server=git-Bukkit+1.7.9&version=1.0%2B2&players=5&ping=true");
+
+        assertEquals("abc", decoded.serverId);
+        assertEquals("git-Bukkit 1.7.9", decoded.serverVersion);
+        assertEquals("1.0+2", decoded.pluginVersion);
+        assertEquals(5, decoded.playersOnline);
+        assertEquals(4, decoded.revision);
+        assertTrue(decoded.isPing);
+        assertNull(decoded.osname);
+    }
+
+    @Test
+    public void testRequiredFields() throws IOException {
+        assertNull(decode("server=s&version=v"));
+        assertNull(decode("guid=abc&version=v"));
+        assertNull(decode("guid=abc&server=s&version=v&revision=x"));
+        assertNull(decode(""));
+    }
+
+    @Test
+    public void testPairSplitting() throws IOException {
+        // a trailing separator is ignored but a second one in the middle drops the pair
+        DecodedRequest decoded = decode("guid=abc=&server=s&version=v&players==3&osname=\r\nLinux");
+
+        assertEquals("abc", decoded.serverId);
+        assertEquals(0, decoded.playersOnline);
+        assertFalse(decoded.isPing);
+    }
+
+    @Test
+    public void testPlayerBounds() throws IOException {
+        assertEquals(0, decode("guid=abc&server=s&version=v&players=2001").playersOnline);
+        assertEquals(0, decode("guid=abc&server=s&version=v&players=-1").playersOnline);
+        assertEquals(2000, decode("guid=abc&server=s&version=v&players=2000").playersOnline);
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        assertEquals("\u00E9\u65E5\uD83D\uDE00", decode("guid=%C3%A9%E6%97%A5%F0%9F%98%80&server=s&version=v").serverId);
+        assertEquals("a\uFFFDb", decode("guid=a%FFb&server=s&version=v").serverId);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidEscape() throws IOException {
+        decode("guid=abc&server=s&version=v&unknown=%zz");
+    }
+
+    @Test(expected = IOException.class)
+    public void testIncompleteEscape() throws IOException {
+        decode("guid=abc&server=s&version=v%2");
+    }
+
+    @Test
+    public void testServerInformation() throws IOException {
+        DecodedRequest decoded = decode("guid=abc&server=s&version=v&revision=6&osname=Linux&osarch=amd64&osversion=3.2&java_version=1.7.0_51&cores=8&online-mode=true");
+
+        assertEquals("Linux", decoded.osname);
+        assertEquals("amd64", decoded.osarch);
+        assertEquals("3.2", decoded.osversion);
+        assertEquals("1.7", decoded.javaName);
+        assertEquals("0_51", decoded.javaVersion);
+        assertEquals(8, decoded.cores);
+        assertEquals(1, decoded.authMode);
+
+        decoded = decode("guid=abc&server=s&version=v&revision=6&cores=x&online-mode=true");
+
+        assertEquals("Unknown", decoded.osname);
+        assertEquals("Unknown", decoded.osversion);
+        assertEquals("Unknown", decoded.javaVersion);
+        assertEquals("", decoded.javaName);
+        assertEquals(0, decoded.cores);
+        assertEquals(-1, decoded.authMode);
+    }
+
+    @Test
+    public void testCustomData() throws IOException {
+        DecodedRequest decoded = decode("guid=abc&server=s&version=v&revision=5"
+                + "&C~~Graph~~Column=3&C~~Graph~~Other~~=4&C~~Graph~~Bad~~x=5&C~~Graph~~NaN=x"
+                + "&C~~Disabled~~Column=6&C~~Graph%7E%7ESpace+Column=7&C~~Graph~~=8");
+
+        assertEquals("Graph/Column=3, Graph/Other=4, Graph/Space Column=7", customData(decoded));
+    }
+
+    @Test
+    public void testLegacyCustomData() throws IOException {
+        DecodedRequest decoded = decode("guid=abc&server=s&version=v&Custom_Some_Column=3&CustomOther=-4&C~~Graph~~Column=5&Custom=x");
+
+        assertEquals("Default/ Some Column=3, Default/Other=-4", customData(decoded));
+    }
+
+    @Test
+    public void testReaderIsReusable() throws IOException {
+        StringBuilder body = new StringBuilder("guid=first&server=s&version=v&revision=5");
+
+        for (int i = 0; i < 500; i++) {
+            body.append("&C~~Graph~~Column+").append(i).append('=').append(i);
+        }
+
+        assertEquals(500, decode(body.toString()).customData.size());
+
+        DecodedRequest second = decode("guid=second&server=s&version=v&revision=5");
+        assertEquals("second", second.serverId);
+        assertEquals(0, second.customData.size());
+    }
+
+    private String customData(DecodedRequest decoded) {
+        TreeSet<String> customData = new TreeSet<>();
+
+        for (Map.Entry<Column, Long> entry : decoded.customData.entrySet()) {
+            customData.add(entry.getKey().getGraph().getName() + "/" + entry.getKey().getName() + "=" + entry.getValue());
+        }
+
+        return String.join(", ", customData);
+    }
+
+    private DecodedRequest decode(String body) throws IOException {
+        return new TestDecoder().decode(new Plugin(null), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
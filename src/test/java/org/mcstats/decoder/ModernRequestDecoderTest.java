@@ -0,0 +1,214 @@
+package org.mcstats.decoder;
+
+import org.junit.Test;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class ModernRequestDecoderTest {
+
+    /**
+     * Decoder that resolves graphs and columns without a database
+     */
+    private static class TestDecoder extends ModernRequestDecoder {
+
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+
+        public TestDecoder() {
+            super(null);
+        }
+
+        @Override
+        Graph loadGraph(Plugin plugin, String name) {
+            if (name.equals("Missing")) {
+                return null;
+            }
+
+            Graph graph = new Graph(null, plugin);
+            graph.setName(name);
+            graph.setActive(name.equals("Disabled") ? 0 : 1);
+            return graph;
+        }
+
+        @Override
+        Column loadColumn(Graph graph, String name) {
+            String key = graph.getName() + "/" + name;
+            Column column = columns.get(key);
+
+            if (column == null) {
+                column = new Column(null, graph, graph.getPlugin());
+                column.setId(columns.size() + 1);
+                column.setName(name);
+                columns.put(key, column);
+            }
+
+            return column;
+        }
+
+    }
+
+    /**
+     * A request in the corpus
+     */
+    private static class Case {
+        String name;
+        String agent;
+        String body;
+        String expect;
+        Map<String, String> fields = new LinkedHashMap<>();
+    }
+
+    @Test
+    public void testCorpus() throws IOException {
+        List<Case> cases = loadCorpus();
+        assertTrue(cases.size() > 0);
+
+        for (Case test : cases) {
+            check(test);
+        }
+    }
+
+    @Test
+    public void testReaderIsReusable() throws IOException {
+        TestDecoder decoder = new TestDecoder();
+        Plugin plugin = new Plugin(null);
+
+        DecodedRequest first = decode(decoder, plugin, "{\"guid\":\"a\",\"cores\":4,\"graphs\":{\"G\":{\"A\":1}}}");
+        DecodedRequest second = decode(decoder, plugin, "{\"guid\":\"b\"}");
+
+        assertEquals("a", first.serverId);
+        assertEquals(4, first.cores);
+        assertEquals(1, first.customData.size());
+        assertEquals("b", second.serverId);
+        assertEquals(0, second.cores);
+        assertEquals(0, second.customData.size());
+    }
+
+    @Test
+    public void testLargeBody() throws IOException {
+        StringBuilder body = new StringBuilder("{\"guid\":\"g\",\"graphs\":{");
+
+        for (int graph = 0; graph < 40; graph++) {
+            body.append(graph == 0 ? "" : ",").append("\"Graph ").append(graph).append("\":{");
+
+            for (int column = 0; column < 50; column++) {
+                body.append(column == 0 ? "" : ",").append("\"Column ").append(column).append("\":").append(graph * column);
+            }
+
+            body.append('}');
+        }
+
+        body.append("}}");
+
+        DecodedRequest decoded = decode(new TestDecoder(), new Plugin(null), body.toString());
+
+        assertEquals(40 * 50, decoded.customData.size());
+
+        for (Map.Entry<Column, Long> entry : decoded.customData.entrySet()) {
+            int graph = Integer.parseInt(entry.getKey().getGraph().getName().substring("Graph ".length()));
+            int column = Integer.parseInt(entry.getKey().getName().substring("Column ".length()));
+            assertEquals(graph * column, (long) entry.getValue());
+        }
+    }
+
+    private void check(Case test) throws IOException {
+        DecodedRequest decoded;
+
+        try {
+            decoded = new TestDecoder().decode(new Plugin(null), new ByteArrayInputStream(test.body.getBytes(StandardCharsets.UTF_8)), test.agent);
+        } catch (Exception e) {
+            assertEquals(test.name + " threw " + e, "error", test.expect);
+            return;
+        }
+
+        if (test.expect != null) {
+            assertEquals(test.name, test.expect, String.valueOf(decoded));
+            return;
+        }
+
+        assertNotNull(test.name, decoded);
+
+        Map<String, String> actual = new LinkedHashMap<>();
+        actual.put("serverId", decoded.serverId);
+        actual.put("serverVersion", decoded.serverVersion);
+        actual.put("pluginVersion", decoded.pluginVersion);
+        actual.put("isPing", Boolean.toString(decoded.isPing));
+        actual.put("revision", Integer.toString(decoded.revision));
+        actual.put("playersOnline", Integer.toString(decoded.playersOnline));
+        actual.put("osname", decoded.osname);
+        actual.put("osarch", decoded.osarch);
+        actual.put("osversion", decoded.osversion);
+        actual.put("javaName", decoded.javaName);
+        actual.put("javaVersion", decoded.javaVersion);
+        actual.put("cores", Integer.toString(decoded.cores));
+        actual.put("authMode", Integer.toString(decoded.authMode));
+
+        TreeSet<String> customData = new TreeSet<>();
+        for (Map.Entry<Column, Long> entry : decoded.customData.entrySet()) {
+            customData.add(entry.getKey().getGraph().getName() + "/" + entry.getKey().getName() + "=" + entry.getValue());
+        }
+        actual.put("customData", String.join(", ", customData));
+
+        for (Map.Entry<String, String> entry : actual.entrySet()) {
+            String expected = test.fields.get(entry.getKey());
+
+            // unlisted fields keep their defaults
+            if (expected == null && !test.fields.containsKey(entry.getKey())) {
+                String actualValue = entry.getValue();
+                assertTrue(test.name + ": unexpected " + entry.getKey() + " = " + actualValue, actualValue == null || actualValue.equals("0"));
+                continue;
+            }
+
+            assertEquals(test.name + ": " + entry.getKey(), expected, entry.getValue());
+        }
+    }
+
+    private DecodedRequest decode(TestDecoder decoder, Plugin plugin, String body) throws IOException {
+        return decoder.decode(plugin, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "MCStats/7");
+    }
+
+    private List<Case> loadCorpus() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("modern-requests.txt"), StandardCharsets.UTF_8));
+        Case current = null;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#") || line.trim().isEmpty()) {
+                continue;
+            }
+
+            if (line.startsWith("=== ")) {
+                current = new Case();
+                current.name = line.substring(4);
+                cases.add(current);
+            } else if (line.startsWith("agent:")) {
+                current.agent = line.substring(6).trim();
+            } else if (line.startsWith("body:")) {
+                current.body = line.substring(5).trim();
+            } else if (line.startsWith("expect ")) {
+                current.expect = line.substring(7).trim();
+            } else {
+                int separator = line.indexOf(':');
+                current.fields.put(line.substring(0, separator), line.substring(separator + 1).trim());
+            }
+        }
+
+        reader.close();
+        return cases;
+    }
+
+}
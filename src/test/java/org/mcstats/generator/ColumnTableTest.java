@@ -0,0 +1,117 @@
+package org.mcstats.generator;
+
+import org.junit.Test;
+import org.mcstats.model.Column;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ColumnTableTest {
+
+    private static Column column(Graph graph, int id) {
+        Column column = new Column(null, graph, graph.getPlugin());
+        column.setId(id);
+        column.setName("Column" + id);
+        return column;
+    }
+
+    private static Column column(int id) {
+        return column(new Graph(null, new Plugin(null)), id);
+    }
+
+    @Test
+    public void testEmit() {
+        Column first = column(1);
+        Column second = column(2);
+        ColumnTable table = new ColumnTable();
+
+        table.emit(first, 5);
+        table.emit(first, 3);
+        table.emit(second, 1);
+        table.emit(null, 100);
+
+        assertEquals(2, table.size());
+        int slot = table.slotOf(first);
+        assertEquals(first, table.getColumn(slot));
+        assertEquals(2, table.getCount(slot));
+        assertEquals(8, table.getSum(slot));
+        assertEquals(4, table.getAverage(slot));
+        assertEquals(1, table.getCount(table.slotOf(second)));
+        assertEquals(-1, table.slotOf(column(3)));
+    }
+
+    @Test
+    public void testMinMaxPerValue() {
+        Column column = column(1);
+        ColumnTable table = new ColumnTable();
+
+        for (long value : new long[] {4, -2, 7, 0, -10}) {
+            table.emit(column, value);
+        }
+
+        int slot = table.slotOf(column);
+        assertEquals(5, table.getCount(slot));
+        assertEquals(-1, table.getSum(slot));
+        assertEquals(-10, table.getMin(slot));
+        assertEquals(7, table.getMax(slot));
+    }
+
+    @Test
+    public void testSumDoesNotOverflow() {
+        Column column = column(1);
+        ColumnTable table = new ColumnTable();
+
+        for (int i = 0; i < 3; i++) {
+            table.emit(column, Integer.MAX_VALUE);
+        }
+
+        assertEquals(3L * Integer.MAX_VALUE, table.getSum(table.slotOf(column)));
+    }
+
+    @Test
+    public void testMergeAndGrow() {
+        ColumnTable left = new ColumnTable();
+        ColumnTable right = new ColumnTable();
+
+        for (int i = 0; i < 100; i++) {
+            left.emit(column(i), 1);
+            right.emit(column(i + 50), 2);
+        }
+
+        right.emit(column(75), -5);
+        left.merge(right);
+
+        assertEquals(150, left.size());
+        assertEquals(1, left.getSum(left.slotOf(column(0))));
+        assertEquals(-2, left.getSum(left.slotOf(column(75))));
+        assertEquals(3, left.getCount(left.slotOf(column(75))));
+        assertEquals(-5, left.getMin(left.slotOf(column(75))));
+        assertEquals(2, left.getMax(left.slotOf(column(75))));
+        assertEquals(2, left.getSum(left.slotOf(column(149))));
+
+        left.clear();
+        assertEquals(0, left.size());
+        assertEquals(-1, left.slotOf(column(0)));
+    }
+
+    @Test
+    public void testSlotsByGraph() {
+        Plugin plugin = new Plugin(null);
+        Graph first = new Graph(null, plugin);
+        Graph second = new Graph(null, plugin);
+        ColumnTable table = new ColumnTable();
+
+        table.emit(column(first, 1), 1);
+        table.emit(column(second, 2), 1);
+        table.emit(column(first, 3), 1);
+
+        Map<Graph, int[]> grouped = table.slotsByGraph();
+        assertEquals(2, grouped.size());
+        assertArrayEquals(new int[] {0, 2}, grouped.get(first));
+        assertArrayEquals(new int[] {1}, grouped.get(second));
+    }
+
+}
@@ -0,0 +1,252 @@
+package org.mcstats.generator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mcstats.IntervalState;
+import org.mcstats.MCStats;
+import org.mcstats.db.MemoryDatabase;
+import org.mcstats.generator.aggregator.CountryAggregator;
+import org.mcstats.generator.aggregator.CustomDataAggregator;
+import org.mcstats.generator.aggregator.RevisionAggregator;
+import org.mcstats.generator.aggregator.VersionDemographicsAggregator;
+import org.mcstats.model.Graph;
+import org.mcstats.model.Plugin;
+import org.mcstats.model.Server;
+import org.mcstats.model.ServerPlugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IncrementalAggregationTest {
+
+    private static MemoryDatabase database;
+
+    private final MCStats mcstats = MCStats.getInstance();
+
+    private final int now = (int) (System.currentTimeMillis() / 1000L);
+
+    private Plugin first;
+
+    private Plugin second;
+
+    private final List<Server> servers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // MCStats is a singleton, so every test shares one in-memory database
+        if (database == null) {
+            database = new MemoryDatabase(mcstats);
+            database.addCountry("DE", "Germany");
+            database.addCountry("US", "United States");
+            database.createPlugin("First").setLastUpdated(now);
+            database.createPlugin("Second").setLastUpdated(now);
+
+            Properties config = new Properties();
+            config.setProperty("debug", "false");
+            config.setProperty("queue.workers", "0");
+            config.setProperty("queue.flushes", "1");
+            config.setProperty("queue.maxSize", "1000");
+            config.setProperty("graphs.store", "local");
+            mcstats.init(config, database);
+        }
+
+        first = mcstats.loadPlugin("First");
+        second = mcstats.loadPlugin("Second");
+    }
+
+    private Server server(int id, String guid, String software, int players, String country) {
+        Server server = new Server(mcstats);
+        server.setId(id);
+        server.setGUID(guid);
+        server.setServerSoftware(software);
+        server.setPlayers(players);
+        server.setCountry(country);
+        server.setLastSentData(now);
+        servers.add(server);
+        return server;
+    }
+
+    private ServerPlugin plugin(Server server, Plugin plugin, String version, int revision) {
+        ServerPlugin serverPlugin = new ServerPlugin(mcstats, server, plugin);
+        serverPlugin.setVersion(version);
+        serverPlugin.setRevision(revision);
+        serverPlugin.setUpdated(now);
+        server.addPlugin(serverPlugin);
+        return serverPlugin;
+    }
+
+    private IntervalState interval(IncrementalAggregation.Totals totals) {
+        Map<Plugin, Set<ServerPlugin>> serverPlugins = new HashMap<>();
+
+        for (Server server : servers) {
+            for (ServerPlugin serverPlugin : server.getPlugins().values()) {
+                serverPlugins.computeIfAbsent(serverPlugin.getPlugin(), key -> new HashSet<>()).add(serverPlugin);
+            }
+        }
+
+        return new IntervalState(servers, serverPlugins, totals);
+    }
+
+    /**
+     * Scan every generator and compare it to what the totals give
+     */
+    private void assertMatchesScan(IncrementalAggregation aggregation, List<GraphGenerator> generators) {
+        IncrementalAggregation.Totals totals = aggregation.getTotals();
+        IntervalState interval = interval(totals);
+
+        for (GraphGenerator generator : generators) {
+            assertTrue(generator.toString(), aggregation.isComplete(generator, totals));
+
+            ColumnTable scanned = generator.generate(mcstats, interval);
+            assertEquals(generator.toString(), new ArrayList<String>(), IncrementalAggregation.diff(scanned, aggregation.generate(generator, totals)));
+        }
+    }
+
+    @Test
+    public void testReplayMatchesScan() {
+        List<GraphGenerator> generators = Arrays.asList(
+                new IncrementAggregator("Global Statistics", "Servers"),
+                new ReflectionAggregator("players", "Global Statistics", "Players"),
+                new ReflectionAggregator("serverSoftware", "Server Software"),
+                new CountryAggregator("Server Locations"),
+                new MergeAggregator(new VersionDemographicsAggregator("Version Demographics"), new RevisionAggregator("Revision")),
+                new CustomDataAggregator()
+        );
+
+        Server one = server(1, "replay-1", "Spigot", 10, "DE");
+        Server two = server(2, "replay-2", "Paper", 20, "US");
+        Server three = server(3, "replay-3", "Spigot", 30, "DE");
+        ServerPlugin oneFirst = plugin(one, first, "1.0", 1);
+        plugin(one, second, "2.0", 0);
+        plugin(two, first, "1.1", 2);
+        ServerPlugin threeSecond = plugin(three, second, "2.1", 0);
+
+        Graph custom = mcstats.loadGraph(first, "Custom");
+        oneFirst.getCustomData().put(custom.loadColumn("Worlds"), 3L);
+        threeSecond.getCustomData().put(mcstats.loadGraph(second, "Custom").loadColumn("Worlds"), 5L);
+
+        // scanning once creates every column used below, which the totals only look up
+        IntervalState warmup = interval(null);
+
+        for (GraphGenerator generator : generators) {
+            generator.generate(mcstats, warmup);
+        }
+
+        // and the values the servers change to later
+        custom.loadColumn("Homes");
+        mcstats.loadGraph(second, "Server Software").loadColumn("Paper");
+
+        IncrementalAggregation aggregation = new IncrementalAggregation(mcstats, generators);
+
+        // join
+        for (Server server : servers) {
+            for (ServerPlugin serverPlugin : server.getPlugins().values()) {
+                aggregation.update(server, serverPlugin);
+            }
+        }
+
+        assertEquals(3, aggregation.getTotals().countServers());
+        assertEquals(4, aggregation.getTotals().countServerPlugins());
+        assertMatchesScan(aggregation, generators);
+
+        // field change, the biggest server shrinking moves the max
+        three.setPlayers(5);
+        three.setServerSoftware("Paper");
+        aggregation.update(three, threeSecond);
+        assertMatchesScan(aggregation, generators);
+
+        // plugin change
+        oneFirst.setVersion("1.1");
+        oneFirst.setRevision(2);
+        oneFirst.setCustomData(new HashMap<>());
+        oneFirst.getCustomData().put(custom.loadColumn("Homes"), 7L);
+        aggregation.update(one, oneFirst);
+        assertMatchesScan(aggregation, generators);
+
+        // the server is loaded again as a new object with the same GUID
+        servers.remove(two);
+        Server reloaded = server(2, "replay-2", "Paper", 20, "US");
+        plugin(reloaded, first, "1.1", 2);
+        aggregation.update(reloaded, reloaded.getPlugin(first));
+        assertEquals(3, aggregation.getTotals().countServers());
+        assertMatchesScan(aggregation, generators);
+
+        // evicted from the server cache
+        servers.remove(reloaded);
+        aggregation.evict("replay-2");
+        assertEquals(2, aggregation.getTotals().countServers());
+        assertMatchesScan(aggregation, generators);
+
+        // stopped sending data, i.e. its last request was an hour ago
+        three.setLastSentData(now - 3600);
+        threeSecond.setUpdated(now - 3600);
+        aggregation.update(three, threeSecond);
+        aggregation.getTotals().expire();
+        assertEquals(1, aggregation.getTotals().countServers());
+        assertEquals(2, aggregation.getTotals().countServerPlugins());
+        assertMatchesScan(aggregation, generators);
+    }
+
+    @Test
+    public void testMinAndMaxFollowValuesTakenOut() {
+        List<GraphGenerator> generators = Arrays.asList(new ReflectionAggregator("players", "Global Statistics", "Players"));
+        Server server = server(5, "players-1", "Spigot", 10, "DE");
+        plugin(server, first, "1.0", 0);
+
+        for (GraphGenerator generator : generators) {
+            generator.generate(mcstats, interval(null));
+        }
+
+        IncrementalAggregation aggregation = new IncrementalAggregation(mcstats, generators);
+        aggregation.update(server, server.getPlugin(first));
+
+        // the only value of a column is replaced by another one
+        server.setPlayers(20);
+        aggregation.update(server, server.getPlugin(first));
+        assertMatchesScan(aggregation, generators);
+
+        // a second server, then the largest value is taken out and put back
+        Server other = server(6, "players-2", "Spigot", 5, "US");
+        plugin(other, first, "1.0", 0);
+        aggregation.update(other, other.getPlugin(first));
+        server.setPlayers(1);
+        aggregation.update(server, server.getPlugin(first));
+        assertMatchesScan(aggregation, generators);
+
+        server.setPlayers(30);
+        aggregation.update(server, server.getPlugin(first));
+        assertMatchesScan(aggregation, generators);
+    }
+
+    @Test
+    public void testNewColumnsAreLeftToTheScan() {
+        List<GraphGenerator> generators = Arrays.asList(new ReflectionAggregator("serverSoftware", "New Software"));
+        Server server = server(4, "new-1", "Spigot", 1, "DE");
+        plugin(server, first, "1.0", 0);
+
+        IncrementalAggregation aggregation = new IncrementalAggregation(mcstats, generators);
+        int created = database.getCreated();
+        aggregation.update(server, server.getPlugin(first));
+
+        // nothing is created while requests are applied
+        assertEquals(created, database.getCreated());
+        assertFalse(aggregation.isComplete(generators.get(0), aggregation.getTotals()));
+
+        // the scan creates the graphs and columns, so the next interval's totals have them
+        generators.get(0).generate(mcstats, interval(null));
+        assertTrue(database.getCreated() > created);
+
+        aggregation.freeze();
+        aggregation.update(server, server.getPlugin(first));
+        assertMatchesScan(aggregation, generators);
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.mcstats.handler;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ResponseTableTest {
+
+    @Test
+    public void testModernBodies() {
+        assertEquals("0", body(ResponseType.OK, true, ""));
+        assertEquals("1", body(ResponseType.OK_FIRST_REQUEST, true, ""));
+        assertEquals("2", body(ResponseType.OK_REGENERATE_GUID, true, ""));
+        assertEquals("7,Invalid arguments.", body(ResponseType.ERROR, true, "Invalid arguments."));
+        assertEquals("7,Rejected.", body(ResponseType.ERROR, true, "Rejected."));
+    }
+
+    @Test
+    public void testLegacyBodies() {
+        assertEquals("OK", body(ResponseType.OK, false, ""));
+        assertEquals("OK", body(ResponseType.OK_REGENERATE_GUID, false, ""));
+        assertEquals("OK This is your first update this hour.", body(ResponseType.OK_FIRST_REQUEST, false, ""));
+        assertEquals("ERR Invalid arguments.", body(ResponseType.ERROR, false, "Invalid arguments."));
+        assertEquals("ERR Rejected.", body(ResponseType.ERROR, false, "Rejected."));
+    }
+
+    @Test
+    public void testSharedBuffers() {
+        ByteBuffer first = ResponseTable.get(ResponseType.ERROR, true, "Rejected.");
+
+        assertSame(first, ResponseTable.get(ResponseType.ERROR, true, "Rejected."));
+        assertTrue(first.isDirect());
+        assertTrue(first.isReadOnly());
+
+        // uncommon messages still work, they are just not cached
+        assertEquals("ERR Something else", body(ResponseType.ERROR, false, "Something else"));
+    }
+
+    private String body(ResponseType type, boolean modern, String message) {
+        ByteBuffer buffer = ResponseTable.get(type, modern, message).duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+}
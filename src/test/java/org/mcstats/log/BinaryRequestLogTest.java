@@ -0,0 +1,118 @@
+package org.mcstats.log;
+
+import org.junit.Test;
+import org.mcstats.decoder.DecodedRequest;
+import org.mcstats.model.Column;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BinaryRequestLogTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DetachedColumns columns = new DetachedColumns();
+        List<DecodedRequest> requests = new ArrayList<>();
+
+        // enough records to span several blocks
+        for (int i = 0; i < 20000; i++) {
+            DecodedRequest request = new DecodedRequest();
+            request.timestamp = 1400000000L + i / 10;
+            request.revision = i % 3 == 0 ? 7 : 5;
+            request.isPing = i % 2 == 0;
+            request.pluginName = "Plugin" + (i % 17);
+            request.serverId = "guid-" + (i % 5000);
+            request.countryCode = i % 4 == 0 ? "US" : "DE";
+            request.serverVersion = "git-Bukkit-1.7.9-R0.2 (MC: 1.7.9)";
+            request.pluginVersion = "1." + (i % 9);
+            request.playersOnline = i % 200;
+            request.osname = i % 5 == 0 ? null : "Linux";
+            request.osversion = "3.2.0";
+            request.osarch = "x86_64";
+            request.javaName = "1.7";
+            request.javaVersion = "0_55";
+            request.cores = i % 16;
+            request.authMode = (i % 3) - 1;
+            request.customData = new HashMap<>();
+
+            for (int j = 0; j < i % 4; j++) {
+                request.customData.put(columns.get(request.pluginName, "Graph " + j, "Column \u00e9 " + (i % 7)), (long) (i - 10000) * 1000000L);
+            }
+
+            requests.add(request);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryRequestLogWriter writer = new BinaryRequestLogWriter(bytes)) {
+            for (DecodedRequest request : requests) {
+                writer.write(request);
+            }
+        }
+
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (DecodedRequest expected : requests) {
+                assertEquals(describe(expected), describe(reader.read()));
+            }
+
+            assertNull(reader.read());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testUnfinishedSegment() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter(bytes);
+
+        for (int i = 0; i < 10000; i++) {
+            DecodedRequest request = new DecodedRequest();
+            request.serverId = "guid-" + i;
+            request.customData = new HashMap<>();
+            writer.write(request);
+        }
+
+        // cut the segment off in the middle of its last block, as if the process died
+        byte[] data = bytes.toByteArray();
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        int read = 0;
+        try (BinaryRequestLogReader reader = new BinaryRequestLogReader(new ByteArrayInputStream(truncated))) {
+            DecodedRequest request;
+
+            while ((request = reader.read()) != null) {
+                assertEquals("guid-" + read, request.serverId);
+                read++;
+            }
+        }
+
+        assertTrue(read > 0 && read < 10000);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotBinary() throws IOException {
+        new BinaryRequestLogReader(new ByteArrayInputStream("{\"serverId\":\"x\"}".getBytes()));
+    }
+
+    private String describe(DecodedRequest request) {
+        Map<String, Long> customData = new TreeMap<>();
+
+        for (Map.Entry<Column, Long> entry : request.customData.entrySet()) {
+            customData.put(entry.getKey().getGraph().getName() + "/" + entry.getKey().getName(), entry.getValue());
+        }
+
+        return request.timestamp + "|" + request.revision + "|" + request.isPing + "|" + request.pluginName + "|" + request.serverId
+                + "|" + request.countryCode + "|" + request.serverVersion + "|" + request.pluginVersion + "|" + request.playersOnline
+                + "|" + request.osname + "|" + request.osversion + "|" + request.osarch + "|" + request.javaName + "|" + request.javaVersion
+                + "|" + request.cores + "|" + request.authMode + "|" + customData;
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.mcstats.log;
+
+import org.junit.Test;
+import org.mcstats.MCStats;
+import org.mcstats.MCStatsFixtures;
+import org.mcstats.decoder.DecodedRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestLogTest {
+
+    @Test
+    public void testCloseFinishesSegment() throws IOException {
+        Path directory = Files.createTempDirectory("requests");
+        MCStats mcstats = MCStatsFixtures.create();
+        mcstats.getConfig().setProperty("logs.path", directory.toString());
+        mcstats.getConfig().setProperty("logs.format", "binary");
+
+        RequestLog log = new RequestLog(mcstats);
+        long timestamp = System.currentTimeMillis() / 1000L;
+
+        for (int i = 0; i < 5000; i++) {
+            DecodedRequest request = new DecodedRequest();
+            request.timestamp = timestamp;
+            request.pluginName = "Plugin";
+            request.serverId = "guid-" + i;
+            request.customData = new HashMap<>();
+            log.log(request);
+        }
+
+        log.close();
+        assertEquals(5000, log.getWritten());
+
+        // the last block is only written when the segment is finished
+        List<Path> segments = RequestLogs.listSegments(directory.resolve("plugin-telemetry-modern"));
+        int read = 0;
+
+        for (Path segment : segments) {
+            try (RequestLogReader reader = RequestLogs.openReader(segment)) {
+                DecodedRequest request;
+
+                while ((request = reader.read()) != null) {
+                    assertEquals("guid-" + read, request.serverId);
+                    read++;
+                }
+            }
+        }
+
+        assertEquals(5000, read);
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.mcstats.log;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestLogsTest {
+
+    @Test
+    public void testGetInterval() {
+        assertEquals(1400000400, RequestLogs.getInterval(Paths.get("logs", "1400000400.log.gz")));
+        assertEquals(1400000400, RequestLogs.getInterval(Paths.get("1400000400.rlog")));
+        assertEquals(-1, RequestLogs.getInterval(Paths.get("latest.log.gz")));
+    }
+
+    @Test
+    public void testListSegmentsOldestFirst() throws IOException {
+        Path directory = Files.createTempDirectory("segments");
+
+        try {
+            Files.createFile(directory.resolve("1400003600.log.gz"));
+            Files.createFile(directory.resolve("999999000.rlog"));
+            Files.createFile(directory.resolve("1400001800.rlog"));
+            Files.createFile(directory.resolve("notes.txt"));
+
+            List<Path> segments = RequestLogs.listSegments(directory);
+
+            assertEquals(3, segments.size());
+            assertEquals("999999000.rlog", segments.get(0).getFileName().toString());
+            assertEquals("1400001800.rlog", segments.get(1).getFileName().toString());
+            assertEquals("1400003600.log.gz", segments.get(2).getFileName().toString());
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+
+            Files.delete(directory);
+        }
+    }
+
+}
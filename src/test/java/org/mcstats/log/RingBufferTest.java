@@ -0,0 +1,105 @@
+package org.mcstats.log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void testFifo() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+
+        assertEquals(4, buffer.capacity());
+        assertNull(buffer.poll());
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+
+            assertFalse(buffer.offer(4));
+            assertEquals(4, buffer.size());
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, (int) buffer.poll());
+            }
+
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    public void testDrainTo() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(8);
+        List<Integer> drained = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertEquals(3, buffer.drainTo(drained, 3));
+        assertEquals(2, buffer.drainTo(drained, 3));
+        assertEquals(0, buffer.drainTo(drained, 3));
+        assertEquals(5, drained.size());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, (int) drained.get(i));
+        }
+    }
+
+    @Test
+    public void testCapacityRoundsUp() {
+        assertEquals(8, new RingBuffer<>(5).capacity());
+        assertEquals(2, new RingBuffer<>(1).capacity());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 100000;
+        RingBuffer<Long> buffer = new RingBuffer<>(1024);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            final long producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(producer * perProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long[] next = new long[producers];
+        int received = 0;
+
+        while (received < producers * perProducer) {
+            Long value = buffer.poll();
+
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+
+            // every producer's elements arrive in the order they were offered
+            int producer = (int) (value / perProducer);
+            assertEquals(next[producer], value % perProducer);
+            next[producer]++;
+            received++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(buffer.poll());
+    }
+
+}
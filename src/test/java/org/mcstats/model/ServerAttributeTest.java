@@ -0,0 +1,53 @@
+package org.mcstats.model;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.*;
+
+public class ServerAttributeTest {
+
+    @Test
+    public void testMatchesReflection() throws Exception {
+        Server server = new Server(null);
+        server.setCountry("DE");
+        server.setPlayers(42);
+        server.setServerVersion("git-Spigot-1.8.8");
+        server.setOSName("Linux");
+        server.setOSArch("x86_64");
+        server.setOSVersion("3.16");
+        server.setJavaName("1.8");
+        server.setJavaVersion("0_66");
+        server.setCores(8);
+        server.setOnlineMode(1);
+        server.setServerSoftware("Spigot");
+        server.setMinecraftVersion("1.8.8");
+
+        for (ServerAttribute attribute : ServerAttribute.values()) {
+            Field field = Server.class.getDeclaredField(attribute.getFieldName());
+            field.setAccessible(true);
+
+            assertEquals(attribute.getFieldName(), field.get(server).toString(), attribute.getString(server));
+            assertEquals(attribute, ServerAttribute.forField(attribute.getFieldName()));
+        }
+    }
+
+    @Test
+    public void testGetLong() {
+        Server server = new Server(null);
+        server.setCores(4);
+        server.setOSVersion("10");
+        server.setJavaName("1.8");
+
+        assertEquals(4, ServerAttribute.CORES.getLong(server, 1));
+        assertEquals(10, ServerAttribute.OS_VERSION.getLong(server, 1));
+        assertEquals(1, ServerAttribute.JAVA_NAME.getLong(server, 1));
+    }
+
+    @Test
+    public void testUnknownField() {
+        assertNull(ServerAttribute.forField("guid"));
+    }
+
+}
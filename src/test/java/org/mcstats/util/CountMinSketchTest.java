@@ -0,0 +1,134 @@
+package org.mcstats.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void testNeverUndercounts() {
+        CountMinSketch sketch = new CountMinSketch(1024);
+
+        for (int i = 0; i < 20000; i++) {
+            sketch.add("key-" + (i % 2000));
+        }
+
+        long totalError = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            long estimate = sketch.estimate("key-" + i);
+            assertTrue(estimate >= 10);
+            totalError += estimate - 10;
+        }
+
+        // conservative updates keep the average overcount small even with twice as many keys as counters
+        assertTrue("average error " + totalError / 2000d, totalError / 2000d < 10);
+    }
+
+    @Test
+    public void testReset() {
+        CountMinSketch sketch = new CountMinSketch(64);
+        sketch.add("a");
+        sketch.reset();
+
+        assertEquals(0, sketch.estimate("a"));
+    }
+
+    @Test
+    public void testSipHashVectors() {
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0F0E0D0C0B0A0908L;
+
+        // reference vectors for the empty message and the bytes 00..07, as UTF-16LE chars
+        assertEquals(0x726FDB47DD0E0E31L, CountMinSketch.hash(k0, k1, ""));
+        assertEquals(0x93F5F5799A932462L, CountMinSketch.hash(k0, k1, "\u0100\u0302\u0504\u0706"));
+    }
+
+    @Test
+    public void testEqualHashCodesAreCountedApart() {
+        CountMinSketch sketch = new CountMinSketch(1024, new Random(42));
+
+        // every string made of these blocks has the same String.hashCode
+        String[] blocks = { "Aa", "BB" };
+        assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("AaAaAaAa");
+        }
+
+        int inflated = 0;
+
+        for (int i = 0; i < 16; i++) {
+            String key = blocks[i & 1] + blocks[(i >> 1) & 1] + blocks[(i >> 2) & 1] + blocks[(i >> 3) & 1];
+
+            if (!key.equals("AaAaAaAa") && sketch.estimate(key) > 0) {
+                inflated++;
+            }
+        }
+
+        assertEquals(0, inflated);
+    }
+
+    @Test
+    public void testHeavyHittersFound() {
+        CountMinSketch sketch = new CountMinSketch(4096);
+        TopK top = new TopK(3);
+
+        for (int i = 0; i < 100000; i++) {
+            String key;
+
+            if (i % 10 == 0) {
+                key = "flood";
+            } else if (i % 25 == 0) {
+                key = "busy";
+            } else {
+                key = "guid-" + i;
+            }
+
+            top.offer(key, sketch.add(key));
+        }
+
+        List<Tuple<String, Long>> result = top.get();
+
+        assertEquals(3, result.size());
+        assertEquals("flood", result.get(0).first());
+        assertEquals("busy", result.get(1).first());
+        assertTrue(result.get(0).second() >= 10000);
+    }
+
+    @Test
+    public void testKeptKeysRiseInPlace() {
+        TopK top = new TopK(2);
+        top.offer("a", 5);
+        top.offer("b", 3);
+
+        // both rise past the threshold the list had when it filled up
+        top.offer("a", 10);
+        top.offer("b", 8);
+
+        // higher than the old threshold, but not than the lowest kept count
+        top.offer("c", 4);
+
+        List<Tuple<String, Long>> result = top.get();
+        assertEquals(2, result.size());
+        assertEquals("a", result.get(0).first());
+        assertEquals(10L, (long) result.get(0).second());
+        assertEquals("b", result.get(1).first());
+        assertEquals(8L, (long) result.get(1).second());
+
+        top.offer("c", 9);
+        result = top.get();
+        assertEquals("a", result.get(0).first());
+        assertEquals("c", result.get(1).first());
+        assertEquals(9L, (long) result.get(1).second());
+
+        // counts never go down
+        top.offer("a", 2);
+        assertEquals(10L, (long) top.get().get(0).second());
+    }
+
+}
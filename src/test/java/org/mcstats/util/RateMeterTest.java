@@ -0,0 +1,73 @@
+package org.mcstats.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateMeterTest {
+
+    private static final long START = 1400000000L;
+
+    @Test
+    public void testWindows() {
+        RateMeter meter = new RateMeter(START);
+
+        // 10 events per second for 30 minutes, then 100 per second for the last 5 seconds
+        for (long second = START; second < START + 1800; second++) {
+            int events = second >= START + 1795 ? 100 : 10;
+
+            for (int i = 0; i < events; i++) {
+                meter.mark(second);
+            }
+        }
+
+        long now = START + 1800;
+
+        assertEquals(100, meter.getRate(1, now), 0.0001);
+        assertEquals(100, meter.getRate(5, now), 0.0001);
+        assertEquals((55 * 10 + 5 * 100) / 60d, meter.getRate(60, now), 0.0001);
+        assertEquals((1795 * 10 + 5 * 100) / 1800d, meter.getRate(1800, now), 0.0001);
+        assertEquals(1795 * 10 + 5 * 100, meter.getCount());
+    }
+
+    @Test
+    public void testCurrentSecondNotCounted() {
+        RateMeter meter = new RateMeter(START);
+        meter.mark(START + 10);
+
+        assertEquals(0, meter.getRate(1, START + 10), 0.0001);
+        assertEquals(1, meter.getRate(1, START + 11), 0.0001);
+    }
+
+    @Test
+    public void testOldBucketsIgnoredAfterWrap() {
+        RateMeter meter = new RateMeter(START);
+        meter.mark(START + 1);
+
+        // the same slot, one trip around the ring later
+        long later = START + 1 + 2048;
+        assertEquals(0, meter.getRate(1800, later + 1), 0.0001);
+
+        meter.mark(later);
+        meter.mark(later);
+        assertEquals(2, meter.getRate(1, later + 1), 0.0001);
+    }
+
+    @Test
+    public void testYoungMeterUsesElapsedTime() {
+        RateMeter meter = new RateMeter(START);
+
+        for (int i = 0; i < 30; i++) {
+            meter.mark(START + i % 3);
+        }
+
+        // only 3 seconds have passed, so the 5 minute rate is over those 3
+        assertEquals(10, meter.getRate(300, START + 3), 0.0001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowTooLong() {
+        new RateMeter(START).getRate(RateMeter.MAX_WINDOW + 1, START + 10);
+    }
+
+}
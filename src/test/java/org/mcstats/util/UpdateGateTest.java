@@ -0,0 +1,74 @@
+package org.mcstats.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class UpdateGateTest {
+
+    @Test
+    public void testCloseWaitsForThreadsInside() throws InterruptedException {
+        UpdateGate gate = new UpdateGate();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean left = new AtomicBoolean(false);
+
+        Thread updater = new Thread(() -> {
+            gate.enter();
+            entered.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            left.set(true);
+            gate.exit();
+        });
+        updater.start();
+        entered.await();
+
+        Thread closer = new Thread(gate::close);
+        closer.start();
+        closer.join(100);
+        assertTrue(closer.isAlive());
+
+        release.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+        assertTrue(left.get());
+        gate.open();
+    }
+
+    @Test
+    public void testEnterWaitsWhileClosed() throws InterruptedException {
+        UpdateGate gate = new UpdateGate();
+        AtomicInteger applied = new AtomicInteger();
+        gate.close();
+
+        Thread updater = new Thread(() -> {
+            gate.enter();
+            applied.incrementAndGet();
+            gate.exit();
+        });
+        updater.start();
+        updater.join(100);
+        assertEquals(0, applied.get());
+
+        gate.open();
+        updater.join(5000);
+        assertEquals(1, applied.get());
+
+        // nobody is inside anymore, so closing again returns right away
+        long start = System.nanoTime();
+        gate.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+}